@@ -0,0 +1,191 @@
+package com.cs.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * The samples of every scenario and metric of a run of the regression gate, and
+ * the settings they were measured with, stored in a properties file.
+ * <br><br>
+ * The file keeps every sample instead of a mean, so a later run can test whether
+ * it differs significantly. Its lines are sorted, so a changed baseline reads well
+ * in a diff. The format version is raised when the meaning of a value changes, and
+ * a baseline of another version has to be recorded again.
+ */
+class Baseline
+{
+	static final int FORMAT_VERSION = 1;
+
+	private static final String SAMPLE_PREFIX = "scenario.";
+
+	// Settings that change the results, a baseline is only compared with runs that used the same
+	private final Map< String, String > SETTINGS = new TreeMap< String, String >();
+	private final Map< String, String > ENVIRONMENT = new TreeMap< String, String >();
+	private final Map< String, double[] > SAMPLES = new TreeMap< String, double[] >();
+
+	Baseline()
+	{
+		ENVIRONMENT.put( "created", new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss", Locale.ROOT ).format( new Date() ) );
+		ENVIRONMENT.put( "java", System.getProperty( "java.vm.name" ) + " " + System.getProperty( "java.version" ) );
+		ENVIRONMENT.put( "os", System.getProperty( "os.name" ) + " " + System.getProperty( "os.version" ) + " " + System.getProperty( "os.arch" ) );
+		ENVIRONMENT.put( "processors", String.valueOf( Runtime.getRuntime().availableProcessors() ) );
+		ENVIRONMENT.put( "maxHeap", String.valueOf( Runtime.getRuntime().maxMemory() ) );
+	}
+
+	void setSetting( String name, Object value )
+	{
+		SETTINGS.put( name, String.valueOf( value ) );
+	}
+
+	Map< String, String > getSettings()
+	{
+		return SETTINGS;
+	}
+
+	Map< String, String > getEnvironment()
+	{
+		return ENVIRONMENT;
+	}
+
+	void setSamples( String scenario, Metric metric, double[] samples )
+	{
+		SAMPLES.put( scenario + "." + metric.getKey(), samples );
+	}
+
+	/**
+	 * @return The samples of a metric, or null if the scenario was not run.
+	 */
+	double[] getSamples( String scenario, Metric metric )
+	{
+		return SAMPLES.get( scenario + "." + metric.getKey() );
+	}
+
+	/**
+	 * Reads a baseline file.
+	 *
+	 * @throws IOException If the file can not be read or has another format version.
+	 */
+	static Baseline load( Path file ) throws IOException
+	{
+		Properties properties = new Properties();
+
+		try ( InputStream in = Files.newInputStream( file ) )
+		{
+			properties.load( in );
+		}
+
+		String version = properties.getProperty( "format" );
+
+		if ( String.valueOf( FORMAT_VERSION ).equals( version ) == false )
+		{
+			throw new IOException( "The baseline " + file + " has format version " + version + ", version " + FORMAT_VERSION + " is needed. Record it again." );
+		}
+
+		Baseline baseline = new Baseline();
+		baseline.ENVIRONMENT.clear();
+
+		for ( String name : properties.stringPropertyNames() )
+		{
+			String value = properties.getProperty( name );
+
+			if ( name.startsWith( "setting." ) )
+			{
+				baseline.SETTINGS.put( name.substring( 8 ), value );
+			}
+			else if ( name.startsWith( "environment." ) )
+			{
+				baseline.ENVIRONMENT.put( name.substring( 12 ), value );
+			}
+			else if ( name.startsWith( SAMPLE_PREFIX ) )
+			{
+				baseline.SAMPLES.put( name.substring( SAMPLE_PREFIX.length() ), parseSamples( name, value ) );
+			}
+		}
+
+		return baseline;
+	}
+
+	void save( Path file ) throws IOException
+	{
+		try ( Writer out = Files.newBufferedWriter( file, StandardCharsets.ISO_8859_1 ) )
+		{
+			out.write( "# Performance baseline of Coffee Spider, written by com.cs.benchmarks.RegressionGate -record\n" );
+			out.write( "# Samples are the results of every round, compare them only on the machine that recorded them.\n" );
+			out.write( "format=" + FORMAT_VERSION + "\n" );
+
+			for ( Map.Entry< String, String > environment : ENVIRONMENT.entrySet() )
+			{
+				out.write( "environment." + environment.getKey() + "=" + escape( environment.getValue() ) + "\n" );
+			}
+
+			for ( Map.Entry< String, String > setting : SETTINGS.entrySet() )
+			{
+				out.write( "setting." + setting.getKey() + "=" + escape( setting.getValue() ) + "\n" );
+			}
+
+			for ( Map.Entry< String, double[] > samples : SAMPLES.entrySet() )
+			{
+				out.write( SAMPLE_PREFIX + samples.getKey() + "=" );
+
+				for ( int i = 0; i < samples.getValue().length; i++ )
+				{
+					out.write( ( ( i > 0 ) ? "," : "" ) + String.format( Locale.ROOT, "%.3f", samples.getValue()[ i ] ) );
+				}
+
+				out.write( "\n" );
+			}
+		}
+	}
+
+	private static double[] parseSamples( String name, String value ) throws IOException
+	{
+		String[] parts = value.split( "," );
+		double[] samples = new double[ parts.length ];
+
+		try
+		{
+			for ( int i = 0; i < parts.length; i++ )
+			{
+				samples[ i ] = Double.parseDouble( parts[ i ].trim() );
+			}
+		}
+		catch ( NumberFormatException e )
+		{
+			throw new IOException( "Invalid samples for " + name + ": " + value );
+		}
+
+		return samples;
+	}
+
+	/**
+	 * Escapes the characters a properties file reads differently.
+	 */
+	private static String escape( String value )
+	{
+		StringBuilder escaped = new StringBuilder( value.length() );
+
+		for ( int i = 0; i < value.length(); i++ )
+		{
+			char c = value.charAt( i );
+
+			if ( c == '\\' || c == '=' || c == ':' || c == '#' || c == '!' )
+			{
+				escaped.append( '\\' );
+			}
+
+			escaped.append( ( c < 0x20 || c > 0x7e ) ? '?' : c );
+		}
+
+		return escaped.toString();
+	}
+}
@@ -0,0 +1,304 @@
+package com.cs.benchmarks;
+
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the average time and the allocated bytes of an operation, in the way of
+ * the average time mode of JMH.
+ * <br><br>
+ * Every benchmark runs warmup iterations, so the JIT compiler has compiled the
+ * operation, and then measurement iterations of a fixed time each. The operation is
+ * called in batches that take about 100 microseconds, so reading the clock does not
+ * add to the time of fast operations. The error is the 99.9% confidence interval of
+ * the iterations.
+ * <br><br>
+ * Allocated bytes are counted by the JVM for the benchmark thread, like the
+ * gc.alloc.rate.norm figure of the GC profiler of JMH. They include the bytes the
+ * benchmark allocates for its input, which the benchmarks keep to a minimum.
+ */
+public class BenchmarkRunner
+{
+	private final static long BATCH_NANOS = TimeUnit.MICROSECONDS.toNanos( 100 );
+	private final static int MAX_BATCH = 1 << 20;
+	// Two sided 99.9% quantiles of the t distribution for 1 to 10 degrees of freedom
+	private final static double[] T_QUANTILES = { 636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587 };
+
+	private final int WARMUPITERATIONS;
+	private final int ITERATIONS;
+	private final long ITERATIONNANOS;
+	private final Pattern FILTER;
+	private final Blackhole BLACKHOLE = new Blackhole();
+	private final com.sun.management.ThreadMXBean ALLOCATIONS = getAllocationBean();
+	private final List< Result > RESULTS = new ArrayList< Result >();
+
+	/**
+	 * @param warmupIterations Iterations run before measuring.
+	 * @param iterations Iterations measured.
+	 * @param iterationMillis Milliseconds every iteration runs.
+	 * @param filter Regular expression a benchmark name must contain to run, or null to run all.
+	 */
+	public BenchmarkRunner( int warmupIterations, int iterations, long iterationMillis, String filter )
+	{
+		this.WARMUPITERATIONS = warmupIterations;
+		this.ITERATIONS = iterations;
+		this.ITERATIONNANOS = TimeUnit.MILLISECONDS.toNanos( iterationMillis );
+		this.FILTER = ( filter == null ) ? null : Pattern.compile( filter );
+	}
+
+	/**
+	 * Runs a benchmark unless its name does not match the filter.
+	 */
+	public void run( String name, Operation operation ) throws Exception
+	{
+		if ( FILTER != null && FILTER.matcher( name ).find() == false )
+		{
+			return;
+		}
+
+		System.out.println( "# Benchmark: " + name );
+		int batch = calibrate( operation );
+
+		for ( int i = 1; i <= WARMUPITERATIONS; i++ )
+		{
+			Iteration iteration = iterate( operation, batch );
+			System.out.println( String.format( Locale.ROOT, "# Warmup Iteration %3d: %12.3f ns/op", i, iteration.getNanosPerOperation() ) );
+		}
+
+		Result result = new Result( name );
+		long gcCount = getGcCount();
+
+		for ( int i = 1; i <= ITERATIONS; i++ )
+		{
+			Iteration iteration = iterate( operation, batch );
+			result.add( iteration );
+			System.out.println( String.format( Locale.ROOT, "Iteration %3d: %12.3f ns/op %12.1f B/op", i, iteration.getNanosPerOperation(), iteration.getBytesPerOperation() ) );
+		}
+
+		result.gcCount = getGcCount() - gcCount;
+		RESULTS.add( result );
+		System.out.println();
+	}
+
+	/**
+	 * Prints the results of all benchmarks run as a table.
+	 */
+	public void printResults( PrintStream out )
+	{
+		int width = "Benchmark".length();
+
+		for ( Result result : RESULTS )
+		{
+			width = Math.max( width, result.NAME.length() + ":gc.alloc.rate.norm".length() );
+		}
+
+		String row = "%-" + width + "s  %4s  %3s  %12s    %10s  %-6s%n";
+		out.printf( Locale.ROOT, row, "Benchmark", "Mode", "Cnt", "Score", "Error", "Units" );
+
+		for ( Result result : RESULTS )
+		{
+			double[] times = new double[ result.ITERATIONS.size() ];
+			double[] bytes = new double[ times.length ];
+			double[] rates = new double[ times.length ];
+
+			for ( int i = 0; i < times.length; i++ )
+			{
+				Iteration iteration = result.ITERATIONS.get( i );
+				times[ i ] = iteration.getNanosPerOperation();
+				bytes[ i ] = iteration.getBytesPerOperation();
+				rates[ i ] = iteration.getMegabytesPerSecond();
+			}
+
+			printRow( out, row, result.NAME, times, "ns/op" );
+
+			if ( ALLOCATIONS != null )
+			{
+				printRow( out, row, result.NAME + ":gc.alloc.rate", rates, "MB/sec" );
+				printRow( out, row, result.NAME + ":gc.alloc.rate.norm", bytes, "B/op" );
+			}
+
+			out.printf( Locale.ROOT, row, result.NAME + ":gc.count", "avgt", times.length, result.gcCount, "", "counts" );
+		}
+	}
+
+	private void printRow( PrintStream out, String row, String name, double[] values, String unit )
+	{
+		out.printf( Locale.ROOT, row, name, "avgt", values.length, String.format( Locale.ROOT, "%.3f", mean( values ) ), String.format( Locale.ROOT, "+- %.3f", error( values ) ), unit );
+	}
+
+	/**
+	 * Finds the number of calls of a batch that takes at least {@link #BATCH_NANOS}.
+	 */
+	private int calibrate( Operation operation ) throws Exception
+	{
+		int batch = 1;
+
+		while ( batch < MAX_BATCH )
+		{
+			long start = System.nanoTime();
+
+			for ( int i = 0; i < batch; i++ )
+			{
+				operation.run( BLACKHOLE );
+			}
+
+			if ( System.nanoTime() - start >= BATCH_NANOS )
+			{
+				break;
+			}
+
+			batch *= 2;
+		}
+
+		return batch;
+	}
+
+	private Iteration iterate( Operation operation, int batch ) throws Exception
+	{
+		long operations = 0;
+		long allocated = getAllocatedBytes();
+		long start = System.nanoTime();
+		long end = start + ITERATIONNANOS;
+		long now;
+
+		do
+		{
+			for ( int i = 0; i < batch; i++ )
+			{
+				operation.run( BLACKHOLE );
+			}
+
+			operations += batch;
+			now = System.nanoTime();
+		}
+		while ( now < end );
+
+		return new Iteration( operations, now - start, getAllocatedBytes() - allocated );
+	}
+
+	private long getAllocatedBytes()
+	{
+		return ( ALLOCATIONS == null ) ? 0 : ALLOCATIONS.getThreadAllocatedBytes( Thread.currentThread().getId() );
+	}
+
+	private static long getGcCount()
+	{
+		long count = 0;
+
+		for ( GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans() )
+		{
+			count += Math.max( 0, collector.getCollectionCount() );
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return The bean counting the bytes allocated by threads, or null if the JVM does not count them.
+	 */
+	static com.sun.management.ThreadMXBean getAllocationBean()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		if ( threads instanceof com.sun.management.ThreadMXBean )
+		{
+			com.sun.management.ThreadMXBean allocations = ( com.sun.management.ThreadMXBean ) threads;
+
+			if ( allocations.isThreadAllocatedMemorySupported() )
+			{
+				allocations.setThreadAllocatedMemoryEnabled( true );
+				return allocations;
+			}
+		}
+
+		System.out.println( "# Allocated bytes are not counted by this JVM" );
+		return null;
+	}
+
+	private static double mean( double[] values )
+	{
+		double sum = 0;
+
+		for ( double value : values )
+		{
+			sum += value;
+		}
+
+		return sum / values.length;
+	}
+
+	private static double error( double[] values )
+	{
+		if ( values.length < 2 )
+		{
+			return Double.NaN;
+		}
+
+		double mean = mean( values );
+		double squares = 0;
+
+		for ( double value : values )
+		{
+			squares += ( value - mean ) * ( value - mean );
+		}
+
+		double deviation = Math.sqrt( squares / ( values.length - 1 ) );
+		int degrees = values.length - 1;
+		double quantile = ( degrees <= T_QUANTILES.length ) ? T_QUANTILES[ degrees - 1 ] : ( degrees <= 30 ? 3.646 : 3.291 );
+
+		return quantile * deviation / Math.sqrt( values.length );
+	}
+
+	private static class Iteration
+	{
+		private final long operations;
+		private final long nanos;
+		private final long bytes;
+
+		Iteration( long operations, long nanos, long bytes )
+		{
+			this.operations = operations;
+			this.nanos = nanos;
+			this.bytes = bytes;
+		}
+
+		double getNanosPerOperation()
+		{
+			return ( double ) nanos / operations;
+		}
+
+		double getBytesPerOperation()
+		{
+			return ( double ) bytes / operations;
+		}
+
+		double getMegabytesPerSecond()
+		{
+			return bytes / ( 1024.0 * 1024.0 ) / ( nanos / 1e9 );
+		}
+	}
+
+	private static class Result
+	{
+		private final String NAME;
+		private final List< Iteration > ITERATIONS = new ArrayList< Iteration >();
+		private long gcCount;
+
+		Result( String name )
+		{
+			this.NAME = name;
+		}
+
+		void add( Iteration iteration )
+		{
+			ITERATIONS.add( iteration );
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package com.cs.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.cs.interfaces.HttpRequest;
+import com.cs.interfaces.HttpResponse;
+import com.cs.server.HttpWorker;
+
+/**
+ * A worker without a connection or server, that opens the parsing and sending
+ * methods of {@link HttpWorker} to the benchmarks.
+ */
+class BenchmarkWorker extends HttpWorker
+{
+	BenchmarkWorker()
+	{
+		super( null, null );
+	}
+
+	String readRequestLine( InputStream inputStream ) throws IOException
+	{
+		return readLine( inputStream );
+	}
+
+	HttpRequest parse( InputStream inputStream ) throws IOException
+	{
+		return parseRequest( inputStream );
+	}
+
+	void send( HttpResponse response, OutputStream outputStream ) throws IOException
+	{
+		sendResponse( response, outputStream );
+	}
+}
@@ -0,0 +1,32 @@
+package com.cs.benchmarks;
+
+/**
+ * Consumes the results of benchmarked code, so the JIT compiler can not remove the
+ * code as dead because nothing reads what it computed.
+ * <br><br>
+ * A result is compared with a volatile field that never matches it, which costs a
+ * read but no write, like the blackhole of JMH.
+ */
+public class Blackhole
+{
+	private volatile Object neverEqual = new Object();
+	private volatile long neverEqualLong = Long.MIN_VALUE + 12345;
+	// Written only if the impossible happens, read by nothing
+	public Object sink;
+
+	public void consume( Object value )
+	{
+		if ( value == neverEqual )
+		{
+			sink = value;
+		}
+	}
+
+	public void consume( long value )
+	{
+		if ( value == neverEqualLong )
+		{
+			sink = value;
+		}
+	}
+}
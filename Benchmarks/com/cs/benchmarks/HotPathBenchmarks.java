@@ -0,0 +1,277 @@
+package com.cs.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import com.cs.http.BasicHttpResponse;
+import com.cs.http.Http;
+import com.cs.http.HttpMethod;
+import com.cs.http.HttpStatusCode;
+import com.cs.http.HttpVersion;
+import com.cs.routes.HandleGetRequest;
+
+/**
+ * Micro benchmarks of the code every HTTP/1.1 request runs through: reading and
+ * parsing the request, finding the content type and the route, and writing the
+ * response.
+ * <br><br>
+ * Run with: java -cp bin com.cs.benchmarks.HotPathBenchmarks [-wi 5] [-i 5] [-r 1] [filter]
+ * <br>
+ * -wi and -i set the number of warmup and measured iterations, -r the seconds of an
+ * iteration, and filter is a regular expression that selects benchmarks by name.
+ * Run with -Xms and -Xmx set to the same size and nothing else running, so the
+ * results of two runs can be compared.
+ * <br><br>
+ * The requests are captures of a browser loading the index page, a form post and a
+ * script requesting an asset. Routing is measured for routes that do not read the
+ * file system, a missing route would measure the log file instead.
+ */
+public class HotPathBenchmarks
+{
+	private final static String BROWSER_GET = "GET / HTTP/1.1\r\n"
+			+ "Host: localhost:8080\r\n"
+			+ "Connection: keep-alive\r\n"
+			+ "Cache-Control: max-age=0\r\n"
+			+ "sec-ch-ua: \"Chromium\";v=\"118\", \"Google Chrome\";v=\"118\", \"Not=A?Brand\";v=\"99\"\r\n"
+			+ "sec-ch-ua-mobile: ?0\r\n"
+			+ "sec-ch-ua-platform: \"Linux\"\r\n"
+			+ "Upgrade-Insecure-Requests: 1\r\n"
+			+ "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/118.0.0.0 Safari/537.36\r\n"
+			+ "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8,application/signed-exchange;v=b3;q=0.7\r\n"
+			+ "Sec-Fetch-Site: none\r\n"
+			+ "Sec-Fetch-Mode: navigate\r\n"
+			+ "Sec-Fetch-User: ?1\r\n"
+			+ "Sec-Fetch-Dest: document\r\n"
+			+ "Accept-Encoding: gzip, deflate, br\r\n"
+			+ "Accept-Language: en-GB,en-US;q=0.9,en;q=0.8\r\n"
+			+ "Cookie: session=6f1c2a9d0b7e4c3f8a5d2e1b0c9f8e7d; theme=dark\r\n"
+			+ "\r\n";
+
+	private final static String FORM_POST = "POST /contact HTTP/1.1\r\n"
+			+ "Host: localhost:8080\r\n"
+			+ "Connection: keep-alive\r\n"
+			+ "Content-Length: 95\r\n"
+			+ "Origin: http://localhost:8080\r\n"
+			+ "Content-Type: application/x-www-form-urlencoded\r\n"
+			+ "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:109.0) Gecko/20100101 Firefox/119.0\r\n"
+			+ "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+			+ "Referer: http://localhost:8080/contact\r\n"
+			+ "Accept-Encoding: gzip, deflate, br\r\n"
+			+ "Accept-Language: en-GB,en;q=0.5\r\n"
+			+ "\r\n"
+			+ "name=Jane+Doe&email=jane.doe%40example.com&subject=Hello&message=Is+the+shop+open+on+Sunday%3F+";
+
+	private final static String SCRIPT_GET = "GET /assets/css/site.css HTTP/1.1\r\n"
+			+ "Host: localhost:8080\r\n"
+			+ "User-Agent: curl/8.4.0\r\n"
+			+ "Accept: */*\r\n"
+			+ "\r\n";
+
+	private final static String[] EXTENSIONS = { "html", "css", "js", "png", "woff2", "svg", "txt" };
+
+	public static void main( String[] args ) throws Exception
+	{
+		int warmupIterations = 5;
+		int iterations = 5;
+		int iterationSeconds = 1;
+		String filter = null;
+
+		for ( int i = 0; i < args.length; i++ )
+		{
+			switch ( args[ i ] )
+			{
+				case "-wi":
+					warmupIterations = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-i":
+					iterations = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-r":
+					iterationSeconds = Integer.parseInt( args[ ++i ] );
+					break;
+				default:
+					filter = args[ i ];
+					break;
+			}
+		}
+
+		BenchmarkRunner runner = new BenchmarkRunner( warmupIterations, iterations, iterationSeconds * 1000L, filter );
+		final BenchmarkWorker worker = new BenchmarkWorker();
+
+		runParsing( runner, worker );
+		runSending( runner, worker );
+		runLookups( runner );
+
+		System.out.println();
+		runner.printResults( System.out );
+	}
+
+	private static void runParsing( BenchmarkRunner runner, final BenchmarkWorker worker ) throws Exception
+	{
+		final ByteArrayInputStream browserGet = capture( BROWSER_GET );
+		final ByteArrayInputStream formPost = capture( FORM_POST );
+		final ByteArrayInputStream scriptGet = capture( SCRIPT_GET );
+
+		runner.run( "parseRequest.browserGet", new Operation()
+		{
+			@Override
+			public void run( Blackhole blackhole ) throws Exception
+			{
+				browserGet.reset();
+				blackhole.consume( worker.parse( browserGet ) );
+			}
+		} );
+
+		runner.run( "parseRequest.formPost", new Operation()
+		{
+			@Override
+			public void run( Blackhole blackhole ) throws Exception
+			{
+				formPost.reset();
+				blackhole.consume( worker.parse( formPost ) );
+			}
+		} );
+
+		runner.run( "parseRequest.scriptGet", new Operation()
+		{
+			@Override
+			public void run( Blackhole blackhole ) throws Exception
+			{
+				scriptGet.reset();
+				blackhole.consume( worker.parse( scriptGet ) );
+			}
+		} );
+
+		runner.run( "readLine.userAgent", new Operation()
+		{
+			@Override
+			public void run( Blackhole blackhole ) throws Exception
+			{
+				// The user agent is the longest header line of the browser request
+				browserGet.reset();
+				browserGet.skip( BROWSER_GET.indexOf( "User-Agent" ) );
+				blackhole.consume( worker.readRequestLine( browserGet ) );
+			}
+		} );
+	}
+
+	private static void runSending( BenchmarkRunner runner, final BenchmarkWorker worker ) throws Exception
+	{
+		final OutputStream discard = new OutputStream()
+		{
+			@Override
+			public void write( int b )
+			{
+				// Discarded
+			}
+
+			@Override
+			public void write( byte[] b, int off, int len )
+			{
+				// Discarded
+			}
+		};
+
+		final BasicHttpResponse page = new BasicHttpResponse();
+		page.setVersion( HttpVersion.VERSION_1_1 );
+		page.setStatusCode( HttpStatusCode.OK );
+		page.setHeaders( new HashMap< String, String >() );
+		page.getHeaders().put( Http.CONTENT_TYPE, "text/html" );
+		page.getHeaders().put( Http.DATE, "Thu, 19 Oct 2023 08:12:31 GMT" );
+		page.getHeaders().put( Http.CACHE_CONTROL, "no-cache" );
+		page.getHeaders().put( Http.SERVER, "Coffee Spider" );
+
+		byte[] html = new byte[ 2048 ];
+		Arrays.fill( html, ( byte ) 'x' );
+		page.setEntity( html );
+
+		final BasicHttpResponse notModified = new BasicHttpResponse();
+		notModified.setVersion( HttpVersion.VERSION_1_1 );
+		notModified.setStatusCode( HttpStatusCode.NOT_MODIFIED );
+		notModified.setHeaders( new HashMap< String, String >() );
+		notModified.getHeaders().put( Http.DATE, "Thu, 19 Oct 2023 08:12:31 GMT" );
+		notModified.getHeaders().put( Http.ETAG, "\"5d8c72a5edda8\"" );
+
+		runner.run( "sendResponse.page2k", new Operation()
+		{
+			@Override
+			public void run( Blackhole blackhole ) throws Exception
+			{
+				worker.send( page, discard );
+			}
+		} );
+
+		runner.run( "sendResponse.notModified", new Operation()
+		{
+			@Override
+			public void run( Blackhole blackhole ) throws Exception
+			{
+				worker.send( notModified, discard );
+			}
+		} );
+	}
+
+	private static void runLookups( BenchmarkRunner runner ) throws Exception
+	{
+		final String requestLine = BROWSER_GET.substring( 0, BROWSER_GET.indexOf( '\r' ) );
+
+		runner.run( "extractVersion", new Operation()
+		{
+			@Override
+			public void run( Blackhole blackhole ) throws Exception
+			{
+				blackhole.consume( HttpVersion.extractVersion( requestLine ) );
+			}
+		} );
+
+		runner.run( "extractMethod", new Operation()
+		{
+			@Override
+			public void run( Blackhole blackhole ) throws Exception
+			{
+				blackhole.consume( HttpMethod.extractMethod( requestLine ) );
+			}
+		} );
+
+		runner.run( "getContentType", new Operation()
+		{
+			private int next = 0;
+
+			@Override
+			public void run( Blackhole blackhole ) throws Exception
+			{
+				blackhole.consume( Http.getContentType( EXTENSIONS[ next ] ) );
+				next = ( next + 1 ) % EXTENSIONS.length;
+			}
+		} );
+
+		runner.run( "processRequest.index", new Operation()
+		{
+			@Override
+			public void run( Blackhole blackhole ) throws Exception
+			{
+				blackhole.consume( HandleGetRequest.processRequest( new BasicHttpResponse(), "/", null ) );
+			}
+		} );
+
+		runner.run( "processRequest.asset", new Operation()
+		{
+			@Override
+			public void run( Blackhole blackhole ) throws Exception
+			{
+				blackhole.consume( HandleGetRequest.processRequest( new BasicHttpResponse(), "/assets/css/site.css", null ) );
+			}
+		} );
+	}
+
+	/**
+	 * @return A stream of the request, which benchmarks reset instead of creating a new stream every call.
+	 */
+	private static ByteArrayInputStream capture( String request )
+	{
+		return new ByteArrayInputStream( request.getBytes( StandardCharsets.ISO_8859_1 ) );
+	}
+}
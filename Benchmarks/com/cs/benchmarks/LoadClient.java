@@ -0,0 +1,191 @@
+package com.cs.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.net.SocketFactory;
+
+/**
+ * One connection of the load test, sending the requests of a scenario until the
+ * end of the run.
+ * <br><br>
+ * With an interval every request has a planned send time and its latency is
+ * measured from that time, so a slow response delays the requests behind it and
+ * that delay is counted. Without an interval the client sends as fast as the server
+ * answers, and latencies longer than the expected interval are corrected by
+ * recording the requests that a steady client would have sent in the meantime.
+ */
+class LoadClient implements Runnable
+{
+	private final static int TIMEOUT_MILLIS = 10000;
+
+	private final Scenario SCENARIO;
+	private final InetSocketAddress ADDRESS;
+	private final SocketFactory SOCKETS;
+	private final ScenarioResult RESULT;
+	private final long START;
+	private final long END;
+	private final long INTERVALNANOS;
+	private final long EXPECTEDMICROS;
+	private final ResponseReader RESPONSE = new ResponseReader();
+
+	private Socket socket;
+	private InputStream in;
+	private OutputStream out;
+
+	/**
+	 * @param start Time in nanoseconds the first request is planned.
+	 * @param end Time in nanoseconds the client stops.
+	 * @param intervalNanos Nanoseconds between two planned requests, 0 to send as fast as the server answers.
+	 * @param expectedMicros Latency of a request without stalls, used to correct latencies without an interval.
+	 */
+	LoadClient( Scenario scenario, InetSocketAddress address, SocketFactory sockets, ScenarioResult result, long start, long end, long intervalNanos, long expectedMicros )
+	{
+		this.SCENARIO = scenario;
+		this.ADDRESS = address;
+		this.SOCKETS = sockets;
+		this.RESULT = result;
+		this.START = start;
+		this.END = end;
+		this.INTERVALNANOS = intervalNanos;
+		this.EXPECTEDMICROS = expectedMicros;
+	}
+
+	@Override
+	public void run()
+	{
+		int pipeline = SCENARIO.getPipeline();
+		long planned = START;
+
+		while ( planned < END )
+		{
+			if ( INTERVALNANOS > 0 )
+			{
+				waitUntil( planned );
+			}
+
+			long sent = System.nanoTime();
+
+			try
+			{
+				if ( socket == null )
+				{
+					connect();
+				}
+
+				for ( int i = 0; i < pipeline; i++ )
+				{
+					out.write( SCENARIO.getRequest() );
+				}
+				out.flush();
+
+				for ( int i = 0; i < pipeline; i++ )
+				{
+					readResponse();
+					record( ( INTERVALNANOS > 0 ) ? planned : sent, sent );
+				}
+
+				if ( SCENARIO.isKeepAlive() == false )
+				{
+					disconnect();
+				}
+			}
+			catch ( IOException e )
+			{
+				RESULT.ERRORS.add( pipeline );
+				disconnect();
+			}
+
+			planned = ( INTERVALNANOS > 0 ) ? planned + INTERVALNANOS * pipeline : System.nanoTime();
+		}
+
+		disconnect();
+	}
+
+	private void record( long planned, long sent )
+	{
+		long now = System.nanoTime();
+		long latency = TimeUnit.NANOSECONDS.toMicros( now - planned );
+
+		RESULT.UNCORRECTED.record( TimeUnit.NANOSECONDS.toMicros( now - sent ) );
+		RESULT.CORRECTED.record( latency );
+
+		if ( INTERVALNANOS == 0 && EXPECTEDMICROS > 0 )
+		{
+			// The requests a steady client would have sent while this one was stalled
+			for ( long missed = latency - EXPECTEDMICROS; missed >= EXPECTEDMICROS; missed -= EXPECTEDMICROS )
+			{
+				RESULT.CORRECTED.record( missed );
+			}
+		}
+	}
+
+	/**
+	 * Reads a response and counts it, a status other than 200 counts as an error.
+	 */
+	private void readResponse() throws IOException
+	{
+		RESPONSE.read( in, false );
+
+		if ( RESPONSE.getStatus() == 200 )
+		{
+			RESULT.REQUESTS.increment();
+			RESULT.BYTES.add( RESPONSE.getBodyLength() );
+		}
+		else
+		{
+			RESULT.ERRORS.increment();
+		}
+	}
+
+	private void connect() throws IOException
+	{
+		socket = SOCKETS.createSocket();
+		socket.setTcpNoDelay( true );
+		socket.setSoTimeout( TIMEOUT_MILLIS );
+
+		if ( SCENARIO.isKeepAlive() == false )
+		{
+			// Reset instead of closing, otherwise thousands of closed connections wait in TIME_WAIT and use up the local ports
+			socket.setSoLinger( true, 0 );
+		}
+		socket.connect( ADDRESS, TIMEOUT_MILLIS );
+
+		in = new BufferedInputStream( socket.getInputStream(), 16384 );
+		out = new BufferedOutputStream( socket.getOutputStream(), 16384 );
+	}
+
+	private void disconnect()
+	{
+		if ( socket != null )
+		{
+			try
+			{
+				socket.close();
+			}
+			catch ( IOException e )
+			{
+				// Closed anyway
+			}
+
+			socket = null;
+		}
+	}
+
+	private static void waitUntil( long time )
+	{
+		long remaining;
+
+		while ( ( remaining = time - System.nanoTime() ) > 0 )
+		{
+			LockSupport.parkNanos( remaining );
+		}
+	}
+}
@@ -0,0 +1,542 @@
+package com.cs.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import com.cs.filters.FilterChain;
+import com.cs.main.Config;
+import com.cs.routes.HandleGetRequest;
+import com.cs.server.HttpServer;
+import com.cs.server.HttpsServer;
+import com.cs.server.WorkerPools;
+
+/**
+ * Starts the server in this process and measures it with clients on the loopback
+ * interface.
+ * <br><br>
+ * The server gets its own config file, resource folder and keystore in a temporary
+ * folder, which is removed afterwards except for the log files. Every scenario runs
+ * for the warmup time first, so the JIT compiler has compiled the server, and then
+ * for the measured time with new connections. The report has the throughput, the latency
+ * percentiles corrected for coordinated omission, the uncorrected 99th percentile
+ * and the bytes the threads of the server allocated per request.
+ * <br><br>
+ * Run with: java -Xms1g -Xmx1g -cp bin com.cs.benchmarks.LoadTest [-c 16] [-w 3] [-d 10] [-rate 0] [-https] [filter]
+ * <br>
+ * -c sets the connections, -w and -d the warmup and measured seconds of every
+ * scenario, -rate the requests per second of all connections together, 0 to send as
+ * fast as the server answers. -https adds the HTTPS scenarios and filter is a
+ * regular expression that selects scenarios by name. Only errors are logged, so
+ * logging does not decide the results.
+ */
+public class LoadTest
+{
+	private final static String KEYSTORE_PASSWORD = "loadtest1";
+	private final static String KEY_PASSWORD = "loadtest2";
+	private final static int PIPELINE_DEPTH = 8;
+
+	private final int CONNECTIONS;
+	private final long WARMUPMILLIS;
+	private final long DURATIONMILLIS;
+	private final int RATE;
+	private final boolean HTTPS;
+	private final com.sun.management.ThreadMXBean ALLOCATIONS = BenchmarkRunner.getAllocationBean();
+
+	private Path directory;
+	private WorkerPools pools;
+	private HttpServer httpServer;
+	private HttpsServer httpsServer;
+	private InetSocketAddress httpAddress;
+	private InetSocketAddress httpsAddress;
+	private SocketFactory tlsSockets;
+
+	/**
+	 * @param connections Connections every scenario opens at the same time.
+	 * @param warmupMillis Milliseconds every scenario runs before it is measured.
+	 * @param durationMillis Milliseconds every scenario is measured.
+	 * @param rate Requests per second of all connections together, 0 to send as fast as the server answers.
+	 * @param https Whether the HTTPS scenarios are run as well.
+	 */
+	public LoadTest( int connections, long warmupMillis, long durationMillis, int rate, boolean https )
+	{
+		this.CONNECTIONS = connections;
+		this.WARMUPMILLIS = warmupMillis;
+		this.DURATIONMILLIS = durationMillis;
+		this.RATE = rate;
+		this.HTTPS = https;
+	}
+
+	public static void main( String[] args ) throws Exception
+	{
+		int connections = 16;
+		int warmupSeconds = 3;
+		int durationSeconds = 10;
+		int rate = 0;
+		boolean https = false;
+		String filter = null;
+
+		for ( int i = 0; i < args.length; i++ )
+		{
+			switch ( args[ i ] )
+			{
+				case "-c":
+					connections = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-w":
+					warmupSeconds = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-d":
+					durationSeconds = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-rate":
+					rate = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-https":
+					https = true;
+					break;
+				default:
+					filter = args[ i ];
+					break;
+			}
+		}
+
+		LoadTest test = new LoadTest( connections, warmupSeconds * 1000L, durationSeconds * 1000L, rate, https );
+		List< ScenarioResult > results;
+
+		test.start();
+
+		try
+		{
+			results = test.run( filter );
+		}
+		finally
+		{
+			test.stop();
+		}
+
+		System.out.println();
+		printResults( results, System.out );
+
+		// The event loops and the logger do not end the JVM on their own
+		System.exit( 0 );
+	}
+
+	/**
+	 * Creates the temporary folder and starts the servers.
+	 */
+	public void start() throws IOException, InterruptedException
+	{
+		directory = Files.createTempDirectory( "coffee-spider-load" );
+		createResources( directory.resolve( "Resources" ) );
+
+		int httpPort = getFreePort();
+		int httpsPort = getFreePort();
+		Path config = directory.resolve( "config.xml" );
+		Path keyFile = directory.resolve( "identity.jks" );
+
+		if ( HTTPS )
+		{
+			createKeyStore( keyFile );
+			tlsSockets = createTrustingContext().getSocketFactory();
+		}
+
+		Files.write( config, createConfig( httpPort, keyFile ).getBytes( StandardCharsets.UTF_8 ) );
+		Config.Initialize( config.toString() );
+
+		if ( Config.validateConfig() == false )
+		{
+			throw new IOException( "The config file of the load test is not valid" );
+		}
+
+		HandleGetRequest.registerCachedRoutes();
+		pools = new WorkerPools();
+
+		httpServer = new HttpServer( httpPort, FilterChain.createDefault( false ).append( new LoadTestRoutes() ), pools );
+		httpServer.start();
+		httpAddress = new InetSocketAddress( InetAddress.getLoopbackAddress(), httpPort );
+
+		if ( HTTPS )
+		{
+			httpsServer = new HttpsServer( httpsPort, FilterChain.createDefault( true ).append( new LoadTestRoutes() ), pools );
+			httpsServer.start();
+			httpsAddress = new InetSocketAddress( InetAddress.getLoopbackAddress(), httpsPort );
+		}
+	}
+
+	/**
+	 * Stops the servers and removes the temporary folder, except for the log files.
+	 */
+	public void stop() throws IOException
+	{
+		if ( httpsServer != null )
+		{
+			httpsServer.stop();
+		}
+
+		if ( httpServer != null )
+		{
+			httpServer.stop();
+		}
+
+		if ( pools != null )
+		{
+			pools.stop();
+		}
+
+		if ( directory != null )
+		{
+			// The logger writes until the JVM ends, so its folder is kept
+			deleteDirectory( directory.resolve( "Resources" ) );
+			Files.deleteIfExists( directory.resolve( "config.xml" ) );
+			Files.deleteIfExists( directory.resolve( "identity.jks" ) );
+
+			System.out.println( "# Server log: " + directory.resolve( "logs" ) );
+		}
+	}
+
+	/**
+	 * Runs every scenario whose name matches the filter.
+	 *
+	 * @param filter Regular expression a scenario name must contain to run, or null to run all.
+	 * @return The results of the measured runs.
+	 */
+	public List< ScenarioResult > run( String filter ) throws InterruptedException
+	{
+		Pattern pattern = ( filter == null ) ? null : Pattern.compile( filter );
+		List< ScenarioResult > results = new ArrayList< ScenarioResult >();
+
+		for ( Scenario scenario : createScenarios( HTTPS ) )
+		{
+			if ( pattern != null && pattern.matcher( scenario.getName() ).find() == false )
+			{
+				continue;
+			}
+
+			System.out.println( "# Scenario: " + scenario.getName() );
+			ScenarioResult warmup = runScenario( scenario, WARMUPMILLIS, 0 );
+
+			// Without a planned rate the mean latency of the warmup is the interval a steady client would keep
+			long expectedMicros = ( warmup.UNCORRECTED.getCount() == 0 ) ? 0 : warmup.UNCORRECTED.getSum() / warmup.UNCORRECTED.getCount();
+			ScenarioResult result = runScenario( scenario, DURATIONMILLIS, expectedMicros );
+
+			System.out.println( String.format( Locale.ROOT, "%d requests, %d errors, %.1f requests/s", result.getRequests(), result.getErrors(), result.getRequestsPerSecond() ) );
+			results.add( result );
+		}
+
+		return results;
+	}
+
+	private ScenarioResult runScenario( Scenario scenario, long millis, long expectedMicros ) throws InterruptedException
+	{
+		ScenarioResult result = new ScenarioResult( scenario.getName(), CONNECTIONS );
+		InetSocketAddress address = scenario.isSecure() ? httpsAddress : httpAddress;
+		SocketFactory sockets = scenario.isSecure() ? tlsSockets : SocketFactory.getDefault();
+		long interval = ( RATE > 0 ) ? TimeUnit.SECONDS.toNanos( CONNECTIONS ) / RATE : 0;
+
+		long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( 50 );
+		long end = start + TimeUnit.MILLISECONDS.toNanos( millis );
+		Thread[] clients = new Thread[ CONNECTIONS ];
+
+		for ( int i = 0; i < CONNECTIONS; i++ )
+		{
+			// Spread the planned send times of the connections over the interval
+			LoadClient client = new LoadClient( scenario, address, sockets, result, start + interval * i / CONNECTIONS, end, interval, expectedMicros );
+			clients[ i ] = new Thread( client, "Load client " + i );
+		}
+
+		// The clients are not started yet, so they are not part of the snapshot of the server threads
+		Map< Long, Long > allocated = getAllocatedBytes();
+
+		for ( Thread client : clients )
+		{
+			client.start();
+		}
+
+		for ( Thread client : clients )
+		{
+			client.join();
+		}
+
+		result.setDuration( Math.max( 1, System.nanoTime() - start ) );
+
+		if ( ALLOCATIONS != null )
+		{
+			result.setServerAllocatedBytes( getAllocatedSince( allocated ) );
+		}
+
+		return result;
+	}
+
+	/**
+	 * @return The scenarios of the load test, in the order they run.
+	 */
+	static List< Scenario > createScenarios( boolean https )
+	{
+		List< Scenario > scenarios = new ArrayList< Scenario >();
+
+		scenarios.add( new Scenario( "static-1k", "GET", "/", 0, true, 1, false ) );
+		scenarios.add( new Scenario( "static-16k", "GET", "/assets/static-16k.css", 0, true, 1, false ) );
+		scenarios.add( new Scenario( "static-256k", "GET", "/assets/static-256k.js", 0, true, 1, false ) );
+		scenarios.add( new Scenario( "static-1k-close", "GET", "/", 0, false, 1, false ) );
+		scenarios.add( new Scenario( "static-1k-pipelined", "GET", "/", 0, true, PIPELINE_DEPTH, false ) );
+		scenarios.add( new Scenario( "dynamic", "GET", LoadTestRoutes.DYNAMIC, 0, true, 1, false ) );
+		scenarios.add( new Scenario( "dynamic-pipelined", "GET", LoadTestRoutes.DYNAMIC, 0, true, PIPELINE_DEPTH, false ) );
+		scenarios.add( new Scenario( "post-4k", "POST", LoadTestRoutes.ECHO, 4096, true, 1, false ) );
+
+		if ( https )
+		{
+			scenarios.add( new Scenario( "https-static-16k", "GET", "/assets/static-16k.css", 0, true, 1, true ) );
+			scenarios.add( new Scenario( "https-dynamic", "GET", LoadTestRoutes.DYNAMIC, 0, true, 1, true ) );
+			scenarios.add( new Scenario( "https-static-1k-close", "GET", "/", 0, false, 1, true ) );
+		}
+
+		return scenarios;
+	}
+
+	/**
+	 * Prints the results as a table, latencies in milliseconds.
+	 */
+	static void printResults( List< ScenarioResult > results, PrintStream out )
+	{
+		String row = "%-22s %5s %10s %7s %10s %9s %9s %9s %9s %9s %9s %10s %10s%n";
+		out.printf( Locale.ROOT, row, "Scenario", "Conns", "Requests", "Errors", "Req/s", "MB/s", "p50", "p90", "p99", "p99.9", "max", "p99 uncorr", "B/req" );
+
+		for ( ScenarioResult result : results )
+		{
+			out.printf( Locale.ROOT, row, result.getName(), result.getConnections(), result.getRequests(), result.getErrors(),
+					String.format( Locale.ROOT, "%.1f", result.getRequestsPerSecond() ),
+					String.format( Locale.ROOT, "%.2f", result.getMegabytesPerSecond() ),
+					toMillis( result.getLatency( 0.5 ) ), toMillis( result.getLatency( 0.9 ) ), toMillis( result.getLatency( 0.99 ) ),
+					toMillis( result.getLatency( 0.999 ) ), toMillis( result.getMaxLatency() ), toMillis( result.getUncorrectedLatency( 0.99 ) ),
+					( result.getBytesPerRequest() < 0 ) ? "n/a" : String.format( Locale.ROOT, "%.0f", result.getBytesPerRequest() ) );
+		}
+	}
+
+	private static String toMillis( long micros )
+	{
+		return String.format( Locale.ROOT, "%.3f", micros / 1000.0 );
+	}
+
+	/**
+	 * @return The bytes every live thread has allocated so far, by thread id.
+	 */
+	private Map< Long, Long > getAllocatedBytes()
+	{
+		Map< Long, Long > allocated = new HashMap< Long, Long >();
+
+		if ( ALLOCATIONS == null )
+		{
+			return allocated;
+		}
+
+		long[] ids = ALLOCATIONS.getAllThreadIds();
+		long[] bytes = ALLOCATIONS.getThreadAllocatedBytes( ids );
+
+		for ( int i = 0; i < ids.length; i++ )
+		{
+			if ( bytes[ i ] >= 0 )
+			{
+				allocated.put( ids[ i ], bytes[ i ] );
+			}
+		}
+
+		return allocated;
+	}
+
+	/**
+	 * Adds up the bytes the threads of the server allocated since the snapshot. The
+	 * clients have ended and the thread running the test is left out, so only the
+	 * server is counted. Threads of the server that ended meanwhile are not counted.
+	 */
+	private long getAllocatedSince( Map< Long, Long > before )
+	{
+		long total = 0;
+		long self = Thread.currentThread().getId();
+
+		for ( Map.Entry< Long, Long > thread : getAllocatedBytes().entrySet() )
+		{
+			if ( thread.getKey() != self )
+			{
+				Long start = before.get( thread.getKey() );
+				total += thread.getValue() - ( ( start == null ) ? 0 : start );
+			}
+		}
+
+		return total;
+	}
+
+	private static String createConfig( int httpPort, Path keyFile )
+	{
+		StringBuilder xml = new StringBuilder( 1024 );
+		xml.append( "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>\n<JWAS>\n" );
+		xml.append( "\t<web><type>http</type><port>" ).append( httpPort ).append( "</port>" );
+		xml.append( "<keyfile>" ).append( keyFile ).append( "</keyfile>" );
+		xml.append( "<password1>" ).append( KEYSTORE_PASSWORD ).append( "</password1><password2>" ).append( KEY_PASSWORD ).append( "</password2>" );
+		xml.append( "<createFolders>true</createFolders></web>\n" );
+		xml.append( "\t<log><path>" ).append( keyFile.getParent().resolve( "logs" ) ).append( "</path>" );
+		xml.append( "<dateFormat>yyyy-MM-dd HH.mm.ss</dateFormat><logLevel>3</logLevel></log>\n" );
+		xml.append( "\t<recourse><path>" ).append( keyFile.getParent().resolve( "Resources" ) ).append( "</path></recourse>\n" );
+		xml.append( "\t<tls><reloadKeystore>false</reloadKeystore></tls>\n" );
+		xml.append( "</JWAS>\n" );
+
+		return xml.toString();
+	}
+
+	private static void createResources( Path resources ) throws IOException
+	{
+		Files.createDirectories( resources );
+
+		Files.write( resources.resolve( "index.html" ), createFile( "<!DOCTYPE html>\n<html><body>\n", 1024, "</body></html>\n" ) );
+		Files.write( resources.resolve( "static-16k.css" ), createFile( "body { margin: 0; }\n", 16 * 1024, "\n" ) );
+		Files.write( resources.resolve( "static-256k.js" ), createFile( "'use strict';\n", 256 * 1024, "\n" ) );
+		Files.write( resources.resolve( LoadTestRoutes.VIEW.substring( 1 ) ), LoadTestRoutes.TEMPLATE.getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	/**
+	 * @return A text file of the given size, filled with comment lines between the start and the end.
+	 */
+	private static byte[] createFile( String start, int size, String end )
+	{
+		byte[] file = new byte[ size ];
+		byte[] startBytes = start.getBytes( StandardCharsets.US_ASCII );
+		byte[] endBytes = end.getBytes( StandardCharsets.US_ASCII );
+
+		for ( int i = 0; i < size; i++ )
+		{
+			file[ i ] = ( byte ) ( ( i % 64 == 63 ) ? '\n' : ' ' );
+		}
+
+		System.arraycopy( startBytes, 0, file, 0, startBytes.length );
+		System.arraycopy( endBytes, 0, file, size - endBytes.length, endBytes.length );
+		return file;
+	}
+
+	/**
+	 * Creates a self-signed keystore with the keytool of the JRE running the test.
+	 */
+	private static void createKeyStore( Path keyFile ) throws IOException, InterruptedException
+	{
+		String keytool = System.getProperty( "java.home" ) + File.separator + "bin" + File.separator + "keytool";
+
+		Process process = new ProcessBuilder( Arrays.asList( keytool, "-genkeypair", "-alias", "loadtest", "-keyalg", "RSA", "-keysize", "2048",
+				"-sigalg", "SHA256withRSA", "-validity", "2", "-dname", "CN=localhost", "-storetype", "JKS", "-keystore", keyFile.toString(),
+				"-storepass", KEYSTORE_PASSWORD, "-keypass", KEY_PASSWORD ) ).redirectErrorStream( true ).start();
+
+		byte[] output = readAll( process );
+
+		if ( process.waitFor() != 0 )
+		{
+			throw new IOException( "Unable to create the keystore: " + new String( output, StandardCharsets.UTF_8 ) );
+		}
+	}
+
+	private static byte[] readAll( Process process ) throws IOException
+	{
+		byte[] buffer = new byte[ 4096 ];
+		int length = 0;
+		int n;
+
+		while ( ( n = process.getInputStream().read( buffer, length, buffer.length - length ) ) != -1 )
+		{
+			length += n;
+
+			if ( length == buffer.length )
+			{
+				buffer = Arrays.copyOf( buffer, buffer.length * 2 );
+			}
+		}
+
+		return Arrays.copyOf( buffer, length );
+	}
+
+	/**
+	 * @return A TLS context that trusts the self-signed certificate of the load test.
+	 */
+	static SSLContext createTrustingContext() throws IOException
+	{
+		TrustManager trustAll = new X509TrustManager()
+		{
+			@Override
+			public void checkClientTrusted( X509Certificate[] chain, String authType )
+			{
+				// Only the server is authenticated
+			}
+
+			@Override
+			public void checkServerTrusted( X509Certificate[] chain, String authType )
+			{
+				// The server runs in this process with a certificate created for the test
+			}
+
+			@Override
+			public X509Certificate[] getAcceptedIssuers()
+			{
+				return new X509Certificate[ 0 ];
+			}
+		};
+
+		try
+		{
+			SSLContext context = SSLContext.getInstance( "TLS" );
+			context.init( null, new TrustManager[] { trustAll }, new SecureRandom() );
+			return context;
+		}
+		catch ( Exception e )
+		{
+			throw new IOException( "Unable to create the TLS context of the clients", e );
+		}
+	}
+
+	private static int getFreePort() throws IOException
+	{
+		try ( ServerSocket socket = new ServerSocket( 0 ) )
+		{
+			return socket.getLocalPort();
+		}
+	}
+
+	private static void deleteDirectory( Path directory ) throws IOException
+	{
+		Files.walkFileTree( directory, new SimpleFileVisitor< Path >()
+		{
+			@Override
+			public FileVisitResult visitFile( Path file, BasicFileAttributes attributes ) throws IOException
+			{
+				Files.delete( file );
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory( Path dir, IOException e ) throws IOException
+			{
+				Files.delete( dir );
+				return FileVisitResult.CONTINUE;
+			}
+		} );
+	}
+}
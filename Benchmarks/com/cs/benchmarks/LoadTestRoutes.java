@@ -0,0 +1,88 @@
+package com.cs.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.cs.filters.BasicFilter;
+import com.cs.http.BasicHttpResponse;
+import com.cs.http.Http;
+import com.cs.http.HttpMethod;
+import com.cs.http.HttpStatusCode;
+import com.cs.interfaces.HttpRequest;
+import com.cs.views.RenderBuffer;
+import com.cs.views.Template;
+import com.cs.views.TemplateEngine;
+
+/**
+ * The dynamic routes of the load test, answered before the routes of the
+ * application so the load test does not depend on them.
+ * <br><br>
+ * GET /dynamic builds a model and renders the "/dynamic.html" view like a route
+ * would, POST /echo reads the request body and answers with its size.
+ */
+class LoadTestRoutes extends BasicFilter
+{
+	static final String DYNAMIC = "/dynamic";
+	static final String ECHO = "/echo";
+	static final String VIEW = "/dynamic.html";
+	static final String TEMPLATE = "<!DOCTYPE html>\n<html>\n<head><title>{{title}}</title></head>\n<body>\n<h1>{{title}}</h1>\n<ul>\n"
+			+ "{{#items}}<li id=\"item-{{id}}\">{{name}} - {{price}}{{#onSale}} <b>sale</b>{{/onSale}}</li>\n{{/items}}</ul>\n</body>\n</html>\n";
+
+	private static final int ITEMS = 20;
+
+	@Override
+	public boolean beforeRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		if ( request.getHttpMethod() == HttpMethod.GET && DYNAMIC.equals( request.getRequestUri() ) )
+		{
+			render( response );
+			return false;
+		}
+		else if ( request.getHttpMethod() == HttpMethod.POST && ECHO.equals( request.getRequestUri() ) )
+		{
+			int received = ( request.getEntity() == null ) ? 0 : request.getEntity().length;
+
+			response.setStatusCode( HttpStatusCode.OK );
+			response.setEntity( ( "{\"received\":" + received + "}" ).getBytes( StandardCharsets.UTF_8 ) );
+			response.getHeaders().put( Http.CONTENT_TYPE, "application/json" );
+			return false;
+		}
+
+		return true;
+	}
+
+	private static void render( BasicHttpResponse response )
+	{
+		List< Map< String, Object > > items = new ArrayList< Map< String, Object > >( ITEMS );
+
+		for ( int i = 0; i < ITEMS; i++ )
+		{
+			Map< String, Object > item = new HashMap< String, Object >();
+			item.put( "id", i );
+			item.put( "name", "Coffee <" + i + ">" );
+			item.put( "price", 2.5 + i );
+			item.put( "onSale", i % 3 == 0 );
+			items.add( item );
+		}
+
+		Map< String, Object > model = new HashMap< String, Object >();
+		model.put( "title", "Menu" );
+		model.put( "items", items );
+
+		Template template = TemplateEngine.getTemplate( VIEW );
+
+		if ( template == null )
+		{
+			response.setStatusCode( HttpStatusCode.NOT_FOUND );
+			return;
+		}
+
+		RenderBuffer body = TemplateEngine.render( template, model );
+		response.setStatusCode( HttpStatusCode.OK );
+		response.setEntity( body.getBuffer(), body.size() );
+		response.getHeaders().put( Http.CONTENT_TYPE, "text/html" );
+	}
+}
@@ -0,0 +1,56 @@
+package com.cs.benchmarks;
+
+/**
+ * The figures of a scenario the regression gate compares with the baseline.
+ */
+enum Metric
+{
+	THROUGHPUT( "throughput", "req/s", true ),
+	P99_LATENCY( "p99", "ms", false ),
+	ALLOCATION( "allocation", "B/req", false );
+
+	private final String key;
+	private final String unit;
+	private final boolean higherIsBetter;
+
+	private Metric( String key, String unit, boolean higherIsBetter )
+	{
+		this.key = key;
+		this.unit = unit;
+		this.higherIsBetter = higherIsBetter;
+	}
+
+	/**
+	 * @return Name of the metric in the baseline file.
+	 */
+	String getKey()
+	{
+		return key;
+	}
+
+	String getUnit()
+	{
+		return unit;
+	}
+
+	boolean isHigherBetter()
+	{
+		return higherIsBetter;
+	}
+
+	/**
+	 * @return The value of this metric in a result, or NaN if it was not measured.
+	 */
+	double getValue( ScenarioResult result )
+	{
+		switch ( this )
+		{
+			case THROUGHPUT:
+				return result.getRequestsPerSecond();
+			case P99_LATENCY:
+				return result.getLatency( 0.99 ) / 1000.0;
+			default:
+				return ( result.getBytesPerRequest() < 0 ) ? Double.NaN : result.getBytesPerRequest();
+		}
+	}
+}
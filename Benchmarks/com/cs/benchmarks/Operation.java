@@ -0,0 +1,12 @@
+package com.cs.benchmarks;
+
+/**
+ * One invocation of the code a benchmark measures.
+ */
+public interface Operation
+{
+	/**
+	 * @param blackhole Consumes every result, so it is not optimized away.
+	 */
+	void run( Blackhole blackhole ) throws Exception;
+}
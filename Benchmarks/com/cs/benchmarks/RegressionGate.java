@@ -0,0 +1,331 @@
+package com.cs.benchmarks;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs the load test a number of rounds and compares the results with a baseline
+ * file, so changes that slow down the server fail a build instead of going
+ * unnoticed.
+ * <br><br>
+ * A metric of a scenario regresses when its mean is worse than the baseline by more
+ * than its threshold and the difference is significant in a one-sided Welch t-test
+ * of the rounds. Both are needed: a significant difference of a percent is noise of
+ * the machine, a large difference between noisy rounds is not proven. Errors in a
+ * scenario fail the gate as well.
+ * <br><br>
+ * Record a baseline on the machine that runs the gate, and record it again when a
+ * slower result is accepted:
+ * <br>
+ * java -Xms1g -Xmx1g -cp bin com.cs.benchmarks.RegressionGate -record [-baseline Benchmarks/baseline.properties]
+ * <br>
+ * Compare a build with it:
+ * <br>
+ * java -Xms1g -Xmx1g -cp bin com.cs.benchmarks.RegressionGate [-rounds 5] [-throughput 5] [-p99 10] [-allocation 5] [-alpha 0.05] [filter]
+ * <br><br>
+ * The thresholds are percentages. -c, -w, -d, -rate and -https are those of the
+ * {@link LoadTest} and must be the same as when the baseline was recorded. The exit
+ * code is 0 if nothing regressed, 1 if something did and 2 if the gate could not
+ * run.
+ */
+public class RegressionGate
+{
+	private final static String DEFAULT_BASELINE = "Benchmarks/baseline.properties";
+
+	public static void main( String[] args )
+	{
+		try
+		{
+			System.exit( run( args ) ? 0 : 1 );
+		}
+		catch ( IllegalArgumentException | IOException | InterruptedException e )
+		{
+			System.out.println( "ERROR: " + e.getMessage() );
+			System.exit( 2 );
+		}
+	}
+
+	private static boolean run( String[] args ) throws IOException, InterruptedException
+	{
+		Path baselineFile = Paths.get( DEFAULT_BASELINE );
+		boolean record = false;
+		int rounds = 5;
+		double alpha = 0.05;
+		Map< Metric, Double > thresholds = new EnumMap< Metric, Double >( Metric.class );
+		thresholds.put( Metric.THROUGHPUT, 5.0 );
+		thresholds.put( Metric.P99_LATENCY, 10.0 );
+		thresholds.put( Metric.ALLOCATION, 5.0 );
+
+		int connections = 16;
+		int warmupSeconds = 2;
+		int durationSeconds = 5;
+		int rate = 0;
+		boolean https = false;
+		String filter = null;
+
+		for ( int i = 0; i < args.length; i++ )
+		{
+			switch ( args[ i ] )
+			{
+				case "-record":
+					record = true;
+					break;
+				case "-baseline":
+					baselineFile = Paths.get( args[ ++i ] );
+					break;
+				case "-rounds":
+					rounds = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-alpha":
+					alpha = Double.parseDouble( args[ ++i ] );
+					break;
+				case "-throughput":
+					thresholds.put( Metric.THROUGHPUT, Double.parseDouble( args[ ++i ] ) );
+					break;
+				case "-p99":
+					thresholds.put( Metric.P99_LATENCY, Double.parseDouble( args[ ++i ] ) );
+					break;
+				case "-allocation":
+					thresholds.put( Metric.ALLOCATION, Double.parseDouble( args[ ++i ] ) );
+					break;
+				case "-c":
+					connections = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-w":
+					warmupSeconds = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-d":
+					durationSeconds = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-rate":
+					rate = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-https":
+					https = true;
+					break;
+				default:
+					filter = args[ i ];
+					break;
+			}
+		}
+
+		if ( rounds < 2 )
+		{
+			throw new IllegalArgumentException( "At least 2 rounds are needed to test the significance of a difference" );
+		}
+
+		Baseline current = new Baseline();
+		current.setSetting( "connections", connections );
+		current.setSetting( "warmupSeconds", warmupSeconds );
+		current.setSetting( "durationSeconds", durationSeconds );
+		current.setSetting( "rate", rate );
+		current.setSetting( "https", https );
+
+		// Read the baseline first, so a missing or outdated one fails before the rounds are run
+		Baseline baseline = null;
+
+		if ( record == false )
+		{
+			if ( Files.exists( baselineFile ) == false )
+			{
+				throw new IOException( "There is no baseline " + baselineFile + ", record one with -record" );
+			}
+
+			baseline = Baseline.load( baselineFile );
+
+			if ( baseline.getSettings().equals( current.getSettings() ) == false )
+			{
+				throw new IllegalArgumentException( "The baseline was recorded with " + baseline.getSettings() + ", this run uses " + current.getSettings() );
+			}
+		}
+
+		Map< String, List< ScenarioResult > > results = runRounds( new LoadTest( connections, warmupSeconds * 1000L, durationSeconds * 1000L, rate, https ), rounds, filter );
+		long errors = 0;
+
+		for ( Map.Entry< String, List< ScenarioResult > > scenario : results.entrySet() )
+		{
+			for ( Metric metric : Metric.values() )
+			{
+				double[] samples = new double[ scenario.getValue().size() ];
+
+				for ( int i = 0; i < samples.length; i++ )
+				{
+					samples[ i ] = metric.getValue( scenario.getValue().get( i ) );
+				}
+
+				current.setSamples( scenario.getKey(), metric, samples );
+			}
+
+			for ( ScenarioResult result : scenario.getValue() )
+			{
+				errors += result.getErrors();
+			}
+		}
+
+		if ( record )
+		{
+			if ( errors > 0 )
+			{
+				throw new IOException( errors + " requests failed, a baseline is only recorded from a run without errors" );
+			}
+
+			current.save( baselineFile );
+			System.out.println( "Recorded the baseline " + baselineFile + " from " + rounds + " rounds of " + results.size() + " scenarios" );
+			return true;
+		}
+
+		return compare( baseline, current, results, thresholds, alpha, System.out );
+	}
+
+	/**
+	 * Runs all scenarios once per round, so a slow period of the machine affects every scenario a little instead of one a lot.
+	 * A first round is run and discarded.
+	 *
+	 * @return The results of every scenario, one per round.
+	 */
+	private static Map< String, List< ScenarioResult > > runRounds( LoadTest test, int rounds, String filter ) throws IOException, InterruptedException
+	{
+		Map< String, List< ScenarioResult > > results = new LinkedHashMap< String, List< ScenarioResult > >();
+
+		test.start();
+
+		try
+		{
+			// The first round compiles the whole server and runs slower than the ones after it
+			System.out.println( "# Warmup round" );
+			test.run( filter );
+
+			for ( int round = 1; round <= rounds; round++ )
+			{
+				System.out.println( "# Round " + round + " of " + rounds );
+
+				for ( ScenarioResult result : test.run( filter ) )
+				{
+					if ( results.containsKey( result.getName() ) == false )
+					{
+						results.put( result.getName(), new ArrayList< ScenarioResult >() );
+					}
+
+					results.get( result.getName() ).add( result );
+				}
+			}
+		}
+		finally
+		{
+			test.stop();
+		}
+
+		return results;
+	}
+
+	/**
+	 * Prints the differences between the baseline and this run.
+	 *
+	 * @return true if nothing regressed.
+	 */
+	private static boolean compare( Baseline baseline, Baseline current, Map< String, List< ScenarioResult > > results, Map< Metric, Double > thresholds, double alpha, PrintStream out )
+	{
+		String row = "%-22s %-18s %14s %14s %9s %9s  %s%n";
+		List< String > failures = new ArrayList< String >();
+
+		out.println();
+		out.println( "Baseline recorded " + baseline.getEnvironment().get( "created" ) + " on " + baseline.getEnvironment().get( "java" ) + ", " + baseline.getEnvironment().get( "os" ) );
+		out.println( "This run on " + current.getEnvironment().get( "java" ) + ", " + current.getEnvironment().get( "os" ) );
+		out.println();
+		out.printf( Locale.ROOT, row, "Scenario", "Metric", "Baseline", "Current", "Change", "p-value", "Result" );
+
+		for ( Map.Entry< String, List< ScenarioResult > > scenario : results.entrySet() )
+		{
+			String name = scenario.getKey();
+
+			for ( Metric metric : Metric.values() )
+			{
+				double[] before = baseline.getSamples( name, metric );
+				double[] after = current.getSamples( name, metric );
+				String label = metric.getKey() + " " + metric.getUnit();
+
+				if ( before == null )
+				{
+					out.printf( Locale.ROOT, row, name, label, "-", format( Statistics.mean( after ) ), "", "", "new, not in the baseline" );
+					continue;
+				}
+				else if ( Double.isNaN( Statistics.mean( before ) ) || Double.isNaN( Statistics.mean( after ) ) )
+				{
+					out.printf( Locale.ROOT, row, name, label, format( Statistics.mean( before ) ), format( Statistics.mean( after ) ), "", "", "not measured" );
+					continue;
+				}
+
+				double baselineMean = Statistics.mean( before );
+				double currentMean = Statistics.mean( after );
+				double change = ( baselineMean == 0 ) ? 0 : ( currentMean - baselineMean ) * 100 / baselineMean;
+
+				// A regression is a lower value of a metric where higher is better, a higher value of the others
+				double worse = metric.isHigherBetter() ? -change : change;
+				double pValue = metric.isHigherBetter() ? Statistics.pValueGreater( after, before ) : Statistics.pValueGreater( before, after );
+				double improvedPValue = metric.isHigherBetter() ? Statistics.pValueGreater( before, after ) : Statistics.pValueGreater( after, before );
+				String result;
+
+				if ( worse > thresholds.get( metric ) && pValue < alpha )
+				{
+					result = "REGRESSION";
+					failures.add( String.format( Locale.ROOT, "%s %s is %.1f%% worse than the baseline (threshold %.1f%%, p=%.4f)", name, metric.getKey(), worse, thresholds.get( metric ), pValue ) );
+				}
+				else if ( -worse > thresholds.get( metric ) && improvedPValue < alpha )
+				{
+					result = "improved";
+					pValue = improvedPValue;
+				}
+				else
+				{
+					result = ( worse > thresholds.get( metric ) ) ? "ok, not significant" : "ok";
+				}
+
+				out.printf( Locale.ROOT, row, name, label, format( baselineMean ), format( currentMean ), String.format( Locale.ROOT, "%+.1f%%", change ), String.format( Locale.ROOT, "%.4f", pValue ), result );
+			}
+
+			long errors = 0;
+
+			for ( ScenarioResult result : scenario.getValue() )
+			{
+				errors += result.getErrors();
+			}
+
+			if ( errors > 0 )
+			{
+				out.printf( Locale.ROOT, row, name, "errors", "0", String.valueOf( errors ), "", "", "REGRESSION" );
+				failures.add( name + " had " + errors + " failed requests" );
+			}
+		}
+
+		out.println();
+
+		if ( failures.isEmpty() )
+		{
+			out.println( "No regressions" );
+			return true;
+		}
+
+		out.println( failures.size() + " regressions:" );
+
+		for ( String failure : failures )
+		{
+			out.println( "\t" + failure );
+		}
+
+		return false;
+	}
+
+	private static String format( double value )
+	{
+		return String.format( Locale.ROOT, "%.3f", value );
+	}
+}
@@ -0,0 +1,217 @@
+package com.cs.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.net.SocketFactory;
+
+import com.cs.logs.CapturedRequest;
+
+/**
+ * One connection of a replay. The clients of a replay take the captured requests in
+ * the order they arrived, wait for the time the request is due and compare the
+ * response with the captured one.
+ * <br><br>
+ * Latencies are measured from the time a request was due, so requests that wait
+ * for a free connection count that wait. Without a schedule they are measured from
+ * the time they are sent.
+ */
+class ReplayClient implements Runnable
+{
+	private final static int TIMEOUT_MILLIS = 10000;
+	// Longest part of a path shown in the mismatches, query strings make paths unique
+	private final static int MAX_PATH_LENGTH = 60;
+
+	private final List< CapturedRequest > REQUESTS;
+	private final AtomicInteger NEXT;
+	private final InetSocketAddress ADDRESS;
+	private final SocketFactory SOCKETS;
+	private final ScenarioResult RESULT;
+	private final ConcurrentHashMap< String, LongAdder > MISMATCHES;
+	private final long START;
+	private final double SPEED;
+	private final ResponseReader RESPONSE = new ResponseReader();
+
+	private Socket socket;
+	private InputStream in;
+	private OutputStream out;
+
+	/**
+	 * @param requests The captured requests, in the order they arrived.
+	 * @param next Index of the next request, shared by the clients of a replay.
+	 * @param mismatches Number of responses that differ from the captured ones, by request and difference.
+	 * @param start Time in nanoseconds the first request is due.
+	 * @param speed Factor the time between requests is divided by, 0 to send as fast as the server answers.
+	 */
+	ReplayClient( List< CapturedRequest > requests, AtomicInteger next, InetSocketAddress address, SocketFactory sockets, ScenarioResult result, ConcurrentHashMap< String, LongAdder > mismatches, long start, double speed )
+	{
+		this.REQUESTS = requests;
+		this.NEXT = next;
+		this.ADDRESS = address;
+		this.SOCKETS = sockets;
+		this.RESULT = result;
+		this.MISMATCHES = mismatches;
+		this.START = start;
+		this.SPEED = speed;
+	}
+
+	@Override
+	public void run()
+	{
+		long firstOffset = REQUESTS.get( 0 ).getOffsetMicros();
+		int index;
+
+		while ( ( index = NEXT.getAndIncrement() ) < REQUESTS.size() )
+		{
+			CapturedRequest captured = REQUESTS.get( index );
+			long sent;
+			long due;
+
+			if ( SPEED > 0 )
+			{
+				due = START + ( long ) ( TimeUnit.MICROSECONDS.toNanos( captured.getOffsetMicros() - firstOffset ) / SPEED );
+				waitUntil( due );
+				sent = System.nanoTime();
+			}
+			else
+			{
+				sent = System.nanoTime();
+				due = sent;
+			}
+
+			try
+			{
+				if ( socket == null )
+				{
+					connect();
+				}
+
+				out.write( captured.getRequest() );
+				out.flush();
+
+				String requestLine = getRequestLine( captured.getRequest() );
+				RESPONSE.read( in, requestLine.startsWith( "HEAD " ) );
+
+				long now = System.nanoTime();
+				RESULT.CORRECTED.record( TimeUnit.NANOSECONDS.toMicros( now - due ) );
+				RESULT.UNCORRECTED.record( TimeUnit.NANOSECONDS.toMicros( now - sent ) );
+				RESULT.REQUESTS.increment();
+				RESULT.BYTES.add( RESPONSE.getBodyLength() );
+
+				compare( requestLine, captured );
+
+				if ( RESPONSE.isClose() )
+				{
+					disconnect();
+				}
+			}
+			catch ( IOException e )
+			{
+				RESULT.ERRORS.increment();
+				count( getRequestLine( captured.getRequest() ), "status " + captured.getStatus() + " -> " + e.getClass().getSimpleName() );
+				disconnect();
+			}
+		}
+
+		disconnect();
+	}
+
+	/**
+	 * Counts the response as a mismatch if its status or, for the same status, its body length differs.
+	 */
+	private void compare( String requestLine, CapturedRequest captured )
+	{
+		if ( RESPONSE.getStatus() != captured.getStatus() )
+		{
+			count( requestLine, "status " + captured.getStatus() + " -> " + RESPONSE.getStatus() );
+		}
+		else if ( RESPONSE.getBodyLength() != captured.getBytes() )
+		{
+			count( requestLine, "bytes " + captured.getBytes() + " -> " + RESPONSE.getBodyLength() );
+		}
+	}
+
+	private void count( String requestLine, String difference )
+	{
+		String[] parts = requestLine.split( " " );
+		String request = ( parts.length < 2 ) ? requestLine : parts[ 0 ] + " " + parts[ 1 ];
+
+		if ( request.length() > MAX_PATH_LENGTH )
+		{
+			request = request.substring( 0, MAX_PATH_LENGTH ) + "...";
+		}
+
+		String key = request + "  " + difference;
+		LongAdder counter = MISMATCHES.get( key );
+
+		if ( counter == null )
+		{
+			MISMATCHES.putIfAbsent( key, new LongAdder() );
+			counter = MISMATCHES.get( key );
+		}
+
+		counter.increment();
+	}
+
+	private static String getRequestLine( byte[] request )
+	{
+		int end = 0;
+
+		while ( end < request.length && request[ end ] != '\r' && request[ end ] != '\n' )
+		{
+			end++;
+		}
+
+		return new String( request, 0, end, StandardCharsets.ISO_8859_1 );
+	}
+
+	private void connect() throws IOException
+	{
+		socket = SOCKETS.createSocket();
+		socket.setTcpNoDelay( true );
+		socket.setSoTimeout( TIMEOUT_MILLIS );
+		socket.connect( ADDRESS, TIMEOUT_MILLIS );
+
+		in = new BufferedInputStream( socket.getInputStream(), 16384 );
+		out = new BufferedOutputStream( socket.getOutputStream(), 16384 );
+	}
+
+	private void disconnect()
+	{
+		if ( socket != null )
+		{
+			try
+			{
+				socket.close();
+			}
+			catch ( IOException e )
+			{
+				// Closed anyway
+			}
+
+			socket = null;
+		}
+	}
+
+	private static void waitUntil( long time )
+	{
+		long remaining;
+
+		while ( ( remaining = time - System.nanoTime() ) > 0 )
+		{
+			LockSupport.parkNanos( remaining );
+		}
+	}
+}
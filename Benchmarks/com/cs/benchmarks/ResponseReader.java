@@ -0,0 +1,132 @@
+package com.cs.benchmarks;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads HTTP/1.1 responses from a connection and keeps the figures of the last one,
+ * the body is read and thrown away. Not thread safe, every connection has its own.
+ */
+class ResponseReader
+{
+	private final byte[] SCRATCH = new byte[ 65536 ];
+
+	private int status;
+	private long bodyLength;
+	private boolean close;
+
+	/**
+	 * Reads the next response.
+	 *
+	 * @param in The stream of the connection.
+	 * @param head Whether the response answers a HEAD request, which has no body whatever its headers say.
+	 * @throws IOException If the connection closed before the response was complete.
+	 */
+	void read( InputStream in, boolean head ) throws IOException
+	{
+		String statusLine = readLine( in );
+		long contentLength = -1;
+		close = false;
+		String line;
+
+		while ( ( line = readLine( in ) ).isEmpty() == false )
+		{
+			if ( line.regionMatches( true, 0, "Content-Length:", 0, 15 ) )
+			{
+				contentLength = Long.parseLong( line.substring( 15 ).trim() );
+			}
+			else if ( line.regionMatches( true, 0, "Connection:", 0, 11 ) )
+			{
+				close = line.substring( 11 ).trim().equalsIgnoreCase( "close" );
+			}
+		}
+
+		status = parseStatus( statusLine );
+
+		if ( head || status == 204 || status == 304 )
+		{
+			bodyLength = 0;
+			return;
+		}
+
+		long bytes = 0;
+
+		while ( contentLength < 0 || bytes < contentLength )
+		{
+			int max = ( contentLength < 0 ) ? SCRATCH.length : ( int ) Math.min( SCRATCH.length, contentLength - bytes );
+			int n = in.read( SCRATCH, 0, max );
+
+			if ( n == -1 )
+			{
+				if ( contentLength < 0 )
+				{
+					// The body ends with the connection
+					close = true;
+					break;
+				}
+
+				throw new EOFException( "Connection closed in the response body" );
+			}
+
+			bytes += n;
+		}
+
+		bodyLength = bytes;
+	}
+
+	/**
+	 * Returns the status code of the last response, -1 if its status line could not be read.
+	 */
+	int getStatus()
+	{
+		return status;
+	}
+
+	long getBodyLength()
+	{
+		return bodyLength;
+	}
+
+	/**
+	 * Returns whether the server closes the connection after the last response.
+	 */
+	boolean isClose()
+	{
+		return close;
+	}
+
+	private static int parseStatus( String statusLine )
+	{
+		int start = statusLine.indexOf( ' ' );
+
+		try
+		{
+			return Integer.parseInt( statusLine.substring( start + 1, start + 4 ) );
+		}
+		catch ( RuntimeException e )
+		{
+			return -1;
+		}
+	}
+
+	private static String readLine( InputStream in ) throws IOException
+	{
+		StringBuilder line = new StringBuilder( 64 );
+		int n;
+
+		while ( ( n = in.read() ) != '\n' )
+		{
+			if ( n == -1 )
+			{
+				throw new EOFException( "Connection closed in the response head" );
+			}
+			else if ( n != '\r' )
+			{
+				line.append( ( char ) n );
+			}
+		}
+
+		return line.toString();
+	}
+}
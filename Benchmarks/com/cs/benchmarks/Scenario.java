@@ -0,0 +1,84 @@
+package com.cs.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A kind of request the load test sends, and how it is sent.
+ */
+class Scenario
+{
+	private final String NAME;
+	private final byte[] REQUEST;
+	private final boolean KEEPALIVE;
+	private final int PIPELINE;
+	private final boolean SECURE;
+
+	/**
+	 * @param name Name in the report.
+	 * @param method Request method.
+	 * @param path Request path.
+	 * @param bodySize Bytes of the request body, 0 for none.
+	 * @param keepAlive Whether requests reuse the connection, otherwise every request opens a new one.
+	 * @param pipeline Requests sent before the first response is read, 1 to not pipeline.
+	 * @param secure Whether the requests are sent over TLS.
+	 */
+	Scenario( String name, String method, String path, int bodySize, boolean keepAlive, int pipeline, boolean secure )
+	{
+		this.NAME = name;
+		this.KEEPALIVE = keepAlive;
+		this.PIPELINE = keepAlive ? pipeline : 1;
+		this.SECURE = secure;
+
+		StringBuilder head = new StringBuilder( 256 );
+		head.append( method ).append( ' ' ).append( path ).append( " HTTP/1.1\r\n" );
+		head.append( "Host: localhost\r\n" );
+		head.append( "User-Agent: Coffee Spider load test\r\n" );
+		head.append( "Accept: */*\r\n" );
+		head.append( "Accept-Encoding: gzip, deflate\r\n" );
+
+		if ( keepAlive == false )
+		{
+			head.append( "Connection: close\r\n" );
+		}
+
+		if ( bodySize > 0 )
+		{
+			head.append( "Content-Type: application/x-www-form-urlencoded\r\n" );
+			head.append( "Content-Length: " ).append( bodySize ).append( "\r\n" );
+		}
+
+		head.append( "\r\n" );
+
+		byte[] headBytes = head.toString().getBytes( StandardCharsets.ISO_8859_1 );
+		byte[] request = Arrays.copyOf( headBytes, headBytes.length + bodySize );
+		Arrays.fill( request, headBytes.length, request.length, ( byte ) 'a' );
+
+		this.REQUEST = request;
+	}
+
+	String getName()
+	{
+		return NAME;
+	}
+
+	byte[] getRequest()
+	{
+		return REQUEST;
+	}
+
+	boolean isKeepAlive()
+	{
+		return KEEPALIVE;
+	}
+
+	int getPipeline()
+	{
+		return PIPELINE;
+	}
+
+	boolean isSecure()
+	{
+		return SECURE;
+	}
+}
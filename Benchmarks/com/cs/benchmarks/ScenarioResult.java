@@ -0,0 +1,99 @@
+package com.cs.benchmarks;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.cs.metrics.LatencyHistogram;
+
+/**
+ * The figures of one measured run of a scenario. Latencies are in microseconds.
+ * <br><br>
+ * The corrected latencies count the time a request waited to be sent because the
+ * one before it was slow, which is what a client sending at a steady rate would
+ * have seen. The uncorrected latencies only count the time from sending a request
+ * to reading its response, which hides stalls of the server.
+ */
+class ScenarioResult
+{
+	final LatencyHistogram CORRECTED = new LatencyHistogram();
+	final LatencyHistogram UNCORRECTED = new LatencyHistogram();
+	final LongAdder REQUESTS = new LongAdder();
+	final LongAdder ERRORS = new LongAdder();
+	final LongAdder BYTES = new LongAdder();
+
+	private final String NAME;
+	private final int CONNECTIONS;
+	private long nanos;
+	private long serverAllocatedBytes = -1;
+
+	ScenarioResult( String name, int connections )
+	{
+		this.NAME = name;
+		this.CONNECTIONS = connections;
+	}
+
+	String getName()
+	{
+		return NAME;
+	}
+
+	int getConnections()
+	{
+		return CONNECTIONS;
+	}
+
+	long getRequests()
+	{
+		return REQUESTS.sum();
+	}
+
+	long getErrors()
+	{
+		return ERRORS.sum();
+	}
+
+	double getRequestsPerSecond()
+	{
+		return REQUESTS.sum() / ( nanos / 1e9 );
+	}
+
+	double getMegabytesPerSecond()
+	{
+		return BYTES.sum() / ( 1024.0 * 1024.0 ) / ( nanos / 1e9 );
+	}
+
+	/**
+	 * @return The corrected latency at a quantile, ie. 0.99.
+	 */
+	long getLatency( double quantile )
+	{
+		return CORRECTED.getValuesAtQuantiles( quantile )[ 0 ];
+	}
+
+	long getUncorrectedLatency( double quantile )
+	{
+		return UNCORRECTED.getValuesAtQuantiles( quantile )[ 0 ];
+	}
+
+	long getMaxLatency()
+	{
+		return CORRECTED.getMax();
+	}
+
+	/**
+	 * @return Bytes the threads of the server allocated per request, or -1 if the JVM does not count them.
+	 */
+	double getBytesPerRequest()
+	{
+		return ( serverAllocatedBytes < 0 || REQUESTS.sum() == 0 ) ? -1 : ( double ) serverAllocatedBytes / REQUESTS.sum();
+	}
+
+	void setDuration( long nanos )
+	{
+		this.nanos = nanos;
+	}
+
+	void setServerAllocatedBytes( long bytes )
+	{
+		this.serverAllocatedBytes = bytes;
+	}
+}
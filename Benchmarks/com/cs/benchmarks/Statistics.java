@@ -0,0 +1,160 @@
+package com.cs.benchmarks;
+
+/**
+ * The statistics the regression gate needs: means, variances and Welch's t-test.
+ */
+class Statistics
+{
+	private Statistics()
+	{
+		// no instances...
+	}
+
+	static double mean( double[] values )
+	{
+		double sum = 0;
+
+		for ( double value : values )
+		{
+			sum += value;
+		}
+
+		return sum / values.length;
+	}
+
+	/**
+	 * @return The sample variance, 0 for a single value.
+	 */
+	static double variance( double[] values )
+	{
+		if ( values.length < 2 )
+		{
+			return 0;
+		}
+
+		double mean = mean( values );
+		double squares = 0;
+
+		for ( double value : values )
+		{
+			squares += ( value - mean ) * ( value - mean );
+		}
+
+		return squares / ( values.length - 1 );
+	}
+
+	/**
+	 * Tests with Welch's t-test whether the mean of the current samples is greater
+	 * than the mean of the baseline samples. Welch's test does not assume both have
+	 * the same variance, which runs on a busy machine do not.
+	 *
+	 * @return The one-sided p-value, small if the current mean is significantly greater.
+	 */
+	static double pValueGreater( double[] baseline, double[] current )
+	{
+		double baselineError = variance( baseline ) / baseline.length;
+		double currentError = variance( current ) / current.length;
+		double difference = mean( current ) - mean( baseline );
+
+		if ( baselineError + currentError == 0 )
+		{
+			// Values without noise, like allocated bytes, differ for certain or not at all
+			return ( difference > 0 ) ? 0 : 1;
+		}
+
+		double t = difference / Math.sqrt( baselineError + currentError );
+		double degrees = ( baselineError + currentError ) * ( baselineError + currentError )
+				/ ( baselineError * baselineError / Math.max( 1, baseline.length - 1 ) + currentError * currentError / Math.max( 1, current.length - 1 ) );
+
+		return 1 - studentCdf( t, degrees );
+	}
+
+	/**
+	 * @return The probability that a value of the t distribution is at most t.
+	 */
+	static double studentCdf( double t, double degrees )
+	{
+		double tail = 0.5 * regularizedBeta( degrees / ( degrees + t * t ), degrees / 2, 0.5 );
+		return ( t > 0 ) ? 1 - tail : tail;
+	}
+
+	/**
+	 * The regularized incomplete beta function, evaluated with its continued fraction.
+	 */
+	private static double regularizedBeta( double x, double a, double b )
+	{
+		if ( x <= 0 )
+		{
+			return 0;
+		}
+		else if ( x >= 1 )
+		{
+			return 1;
+		}
+
+		double front = Math.exp( logGamma( a + b ) - logGamma( a ) - logGamma( b ) + a * Math.log( x ) + b * Math.log( 1 - x ) );
+
+		// The continued fraction converges quickly below this point, above it the symmetry is used
+		if ( x < ( a + 1 ) / ( a + b + 2 ) )
+		{
+			return front * betaFraction( x, a, b ) / a;
+		}
+
+		return 1 - front * betaFraction( 1 - x, b, a ) / b;
+	}
+
+	private static double betaFraction( double x, double a, double b )
+	{
+		final double tiny = 1e-300;
+		double c = 1;
+		double d = 1 - ( a + b ) * x / ( a + 1 );
+		d = 1 / ( Math.abs( d ) < tiny ? tiny : d );
+		double result = d;
+
+		for ( int m = 1; m <= 300; m++ )
+		{
+			double numerator = m * ( b - m ) * x / ( ( a + 2 * m - 1 ) * ( a + 2 * m ) );
+			d = 1 / nonZero( 1 + numerator * d, tiny );
+			c = nonZero( 1 + numerator / c, tiny );
+			result *= d * c;
+
+			numerator = -( a + m ) * ( a + b + m ) * x / ( ( a + 2 * m ) * ( a + 2 * m + 1 ) );
+			d = 1 / nonZero( 1 + numerator * d, tiny );
+			c = nonZero( 1 + numerator / c, tiny );
+			double step = d * c;
+			result *= step;
+
+			if ( Math.abs( step - 1 ) < 1e-12 )
+			{
+				break;
+			}
+		}
+
+		return result;
+	}
+
+	private static double nonZero( double value, double tiny )
+	{
+		return ( Math.abs( value ) < tiny ) ? tiny : value;
+	}
+
+	/**
+	 * The logarithm of the gamma function, with the Lanczos approximation.
+	 */
+	private static double logGamma( double x )
+	{
+		final double[] coefficients = { 76.18009172947146, -86.50532032941677, 24.01409824083091, -1.231739572450155, 0.1208650973866179e-2, -0.5395239384953e-5 };
+
+		double y = x;
+		double tmp = x + 5.5;
+		tmp -= ( x + 0.5 ) * Math.log( tmp );
+		double series = 1.000000000190015;
+
+		for ( double coefficient : coefficients )
+		{
+			series += coefficient / ++y;
+		}
+
+		return -tmp + Math.log( 2.5066282746310005 * series / x );
+	}
+}
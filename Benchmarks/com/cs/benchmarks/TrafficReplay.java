@@ -0,0 +1,204 @@
+package com.cs.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.SocketFactory;
+
+import com.cs.logs.CaptureReader;
+import com.cs.logs.CapturedRequest;
+
+/**
+ * Sends the requests of a traffic capture to a running server and compares the
+ * responses with the captured ones, so the parser, the routes and the caches can be
+ * profiled with the requests the server really gets.
+ * <br><br>
+ * Start the server with the config file and resources it was captured with, then:
+ * <br>
+ * java -cp bin com.cs.benchmarks.TrafficReplay [-host localhost] [-port 80] [-https] [-c 16] [-speed 1] capture-file
+ * <br><br>
+ * -speed 1 sends every request at the time it arrived after the start of the
+ * capture, 2 twice as fast, and 0 as fast as the connections are answered. -c sets
+ * the connections the requests are sent on; requests are not sent on the connection
+ * they were captured on, those are not recorded. -https trusts any certificate.
+ * <br><br>
+ * A response differs when its status or, for the same status, its body length is not
+ * the captured one. Requests with redacted credentials or cookies are expected to
+ * differ, and so are pages whose content changed since the capture.
+ */
+public class TrafficReplay
+{
+	// Number of different mismatches that are listed
+	private final static int MAX_MISMATCHES = 20;
+
+	public static void main( String[] args ) throws Exception
+	{
+		String host = "localhost";
+		int port = 80;
+		boolean https = false;
+		int connections = 16;
+		double speed = 1;
+		File file = null;
+
+		for ( int i = 0; i < args.length; i++ )
+		{
+			switch ( args[ i ] )
+			{
+				case "-host":
+					host = args[ ++i ];
+					break;
+				case "-port":
+					port = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-https":
+					https = true;
+					break;
+				case "-c":
+					connections = Integer.parseInt( args[ ++i ] );
+					break;
+				case "-speed":
+					speed = Double.parseDouble( args[ ++i ] );
+					break;
+				default:
+					file = new File( args[ i ] );
+					break;
+			}
+		}
+
+		if ( file == null )
+		{
+			System.out.println( "ERROR: No capture file given." );
+			System.exit( 2 );
+		}
+
+		CaptureReader reader = new CaptureReader( file );
+		List< CapturedRequest > requests = readAll( reader );
+
+		if ( requests.isEmpty() )
+		{
+			System.out.println( "ERROR: " + file + " has no requests." );
+			System.exit( 2 );
+		}
+
+		long capturedMicros = requests.get( requests.size() - 1 ).getOffsetMicros() - requests.get( 0 ).getOffsetMicros();
+		System.out.println( "# Replaying " + requests.size() + " requests captured " + new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss" ).format( new Date( reader.getStartMillis() ) )
+				+ String.format( Locale.ROOT, " over %.1f seconds", capturedMicros / 1e6 ) + ( ( speed > 0 ) ? " at " + speed + "x speed" : " as fast as possible" ) );
+
+		SocketFactory sockets = https ? LoadTest.createTrustingContext().getSocketFactory() : SocketFactory.getDefault();
+		ScenarioResult result = new ScenarioResult( "replay", connections );
+		ConcurrentHashMap< String, LongAdder > mismatches = new ConcurrentHashMap< String, LongAdder >();
+
+		replay( requests, new InetSocketAddress( host, port ), sockets, connections, speed, result, mismatches );
+
+		System.out.println();
+		List< ScenarioResult > results = new ArrayList< ScenarioResult >();
+		results.add( result );
+		LoadTest.printResults( results, System.out );
+		printMismatches( mismatches, result.getRequests() + result.getErrors(), System.out );
+	}
+
+	/**
+	 * Reads every request of a capture, sorted by the time they arrived.
+	 */
+	private static List< CapturedRequest > readAll( CaptureReader reader ) throws IOException
+	{
+		List< CapturedRequest > requests = new ArrayList< CapturedRequest >();
+
+		try
+		{
+			CapturedRequest request;
+
+			while ( ( request = reader.read() ) != null )
+			{
+				requests.add( request );
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+
+		// Requests are captured when they are answered, a slow one is written after the ones that arrived behind it
+		Collections.sort( requests, new Comparator< CapturedRequest >()
+		{
+			@Override
+			public int compare( CapturedRequest a, CapturedRequest b )
+			{
+				return Long.compare( a.getOffsetMicros(), b.getOffsetMicros() );
+			}
+		} );
+
+		return requests;
+	}
+
+	private static void replay( List< CapturedRequest > requests, InetSocketAddress address, SocketFactory sockets, int connections, double speed, ScenarioResult result, ConcurrentHashMap< String, LongAdder > mismatches ) throws InterruptedException
+	{
+		AtomicInteger next = new AtomicInteger();
+		// Scheduled requests start a little later, so the clients are started when the first one is due
+		long start = System.nanoTime() + ( ( speed > 0 ) ? TimeUnit.MILLISECONDS.toNanos( 50 ) : 0 );
+		Thread[] clients = new Thread[ connections ];
+
+		for ( int i = 0; i < connections; i++ )
+		{
+			clients[ i ] = new Thread( new ReplayClient( requests, next, address, sockets, result, mismatches, start, speed ), "Replay client " + i );
+			clients[ i ].start();
+		}
+
+		for ( Thread client : clients )
+		{
+			client.join();
+		}
+
+		result.setDuration( Math.max( 1, System.nanoTime() - start ) );
+	}
+
+	/**
+	 * Prints the most frequent differences between the responses and the captured ones.
+	 */
+	private static void printMismatches( Map< String, LongAdder > mismatches, long replayed, PrintStream out )
+	{
+		List< Map.Entry< String, LongAdder > > sorted = new ArrayList< Map.Entry< String, LongAdder > >( mismatches.entrySet() );
+		long total = 0;
+
+		for ( Map.Entry< String, LongAdder > mismatch : sorted )
+		{
+			total += mismatch.getValue().sum();
+		}
+
+		out.println();
+		out.printf( Locale.ROOT, "%d of %d responses differ from the capture (%.2f%%)%n", total, replayed, ( replayed == 0 ) ? 0 : total * 100.0 / replayed );
+
+		Collections.sort( sorted, new Comparator< Map.Entry< String, LongAdder > >()
+		{
+			@Override
+			public int compare( Map.Entry< String, LongAdder > a, Map.Entry< String, LongAdder > b )
+			{
+				return Long.compare( b.getValue().sum(), a.getValue().sum() );
+			}
+		} );
+
+		for ( int i = 0; i < Math.min( MAX_MISMATCHES, sorted.size() ); i++ )
+		{
+			out.printf( Locale.ROOT, "%10d  %s%n", sorted.get( i ).getValue().sum(), sorted.get( i ).getKey() );
+		}
+
+		if ( sorted.size() > MAX_MISMATCHES )
+		{
+			out.println( "\t" + ( sorted.size() - MAX_MISMATCHES ) + " more" );
+		}
+	}
+}
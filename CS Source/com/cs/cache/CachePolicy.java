@@ -0,0 +1,60 @@
+package com.cs.cache;
+
+/**
+ * Describes how the responses of a cached route are stored.
+ */
+public class CachePolicy
+{
+	private final long timeToLive;
+	private final long staleWhileRevalidate;
+	private final String[] queryParameters;
+	private final String[] varyHeaders;
+
+	/**
+	 * Creates a cache policy for a route.
+	 *
+	 * @param timeToLive Time in milliseconds a response is served without being recomputed.
+	 * @param staleWhileRevalidate Time in milliseconds after the TTL during which the stale response is still
+	 *        served while it is recomputed in the background.
+	 * @param queryParameters Query parameters that select a different response. All other parameters are ignored.
+	 * @param varyHeaders Request headers that select a different response.
+	 */
+	public CachePolicy( long timeToLive, long staleWhileRevalidate, String[] queryParameters, String[] varyHeaders )
+	{
+		this.timeToLive = timeToLive;
+		this.staleWhileRevalidate = staleWhileRevalidate;
+		this.queryParameters = ( queryParameters == null ) ? new String[ 0 ] : queryParameters.clone();
+		this.varyHeaders = ( varyHeaders == null ) ? new String[ 0 ] : varyHeaders.clone();
+	}
+
+	/**
+	 * Creates a cache policy that ignores the query string and request headers.
+	 *
+	 * @param timeToLive Time in milliseconds a response is served without being recomputed.
+	 * @param staleWhileRevalidate Time in milliseconds a stale response is served while it is recomputed.
+	 */
+	public CachePolicy( long timeToLive, long staleWhileRevalidate )
+	{
+		this( timeToLive, staleWhileRevalidate, null, null );
+	}
+
+	public long getTimeToLive()
+	{
+		return timeToLive;
+	}
+
+	public long getStaleWhileRevalidate()
+	{
+		return staleWhileRevalidate;
+	}
+
+	public String[] getQueryParameters()
+	{
+		return queryParameters;
+	}
+
+	public String[] getVaryHeaders()
+	{
+		return varyHeaders;
+	}
+}
@@ -0,0 +1,133 @@
+package com.cs.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.cs.http.BasicHttpResponse;
+import com.cs.http.Http;
+import com.cs.http.HttpStatusCode;
+import com.cs.interfaces.HttpResponse;
+
+/**
+ * A response of a cached route held by the {@link ResponseCache}.
+ * <br><br>
+ * Only what the route created is stored: the status, the headers and the body. The
+ * status line is written for the request that is answered, and the filters run on
+ * every request, so their headers are never shared between clients. The
+ * Connection and Content-Length headers are left out because they depend on the
+ * request and the transport.
+ */
+public class CachedResponse
+{
+	private final HttpStatusCode statusCode;
+	private final Map< String, String > headers;
+	private final byte[] body;
+	private final int size;
+	private final long expires;
+	private final long staleUntil;
+	private final AtomicBoolean refreshing = new AtomicBoolean( false );
+
+	private CachedResponse( HttpStatusCode statusCode, Map< String, String > headers, byte[] body, long expires, long staleUntil )
+	{
+		this.statusCode = statusCode;
+		this.headers = headers;
+		this.body = body;
+		this.expires = expires;
+		this.staleUntil = staleUntil;
+
+		int headerSize = 0;
+		for ( Map.Entry< String, String > header : headers.entrySet() )
+		{
+			headerSize += header.getKey().length() + header.getValue().length() + 4;
+		}
+		this.size = headerSize + body.length;
+	}
+
+	/**
+	 * Stores the response a route created.
+	 *
+	 * @param response Response to store, before the filters ran. Its entity array is copied.
+	 * @param policy Cache policy of the route.
+	 * @return The stored response.
+	 */
+	public static CachedResponse create( HttpResponse response, CachePolicy policy )
+	{
+		Map< String, String > headers = new HashMap< String, String >();
+
+		for ( Map.Entry< String, String > header : response.getHeaders().entrySet() )
+		{
+			if ( header.getKey().equalsIgnoreCase( Http.CONNECTION ) == false && header.getKey().equalsIgnoreCase( Http.CONTENT_LENGTH ) == false )
+			{
+				headers.put( header.getKey(), header.getValue() );
+			}
+		}
+
+		byte[] body = new byte[ ( response.getEntity() == null ) ? 0 : response.getEntityLength() ];
+		if ( body.length > 0 )
+		{
+			System.arraycopy( response.getEntity(), 0, body, 0, body.length );
+		}
+
+		long now = System.currentTimeMillis();
+		return new CachedResponse( response.getStatusCode(), headers, body, now + policy.getTimeToLive(), now + policy.getTimeToLive() + policy.getStaleWhileRevalidate() );
+	}
+
+	/**
+	 * Fills in a response with the stored one, as the route would have. The body array
+	 * is shared and must not be modified.
+	 *
+	 * @param response Response to the current request, the filters add their headers to it afterwards.
+	 */
+	public void copyTo( BasicHttpResponse response )
+	{
+		response.setStatusCode( statusCode );
+		response.getHeaders().putAll( headers );
+		response.setEntity( body );
+	}
+
+	/**
+	 * Returns true if the TTL of this response has passed.
+	 */
+	public boolean isStale( long now )
+	{
+		return now >= expires;
+	}
+
+	/**
+	 * Returns true if this response may no longer be served, not even while it is being revalidated.
+	 */
+	public boolean isExpired( long now )
+	{
+		return now >= staleUntil;
+	}
+
+	/**
+	 * Claims the background refresh of this response. Only the first caller gets true.
+	 */
+	boolean claimRefresh()
+	{
+		return refreshing.compareAndSet( false, true );
+	}
+
+	void releaseRefresh()
+	{
+		refreshing.set( false );
+	}
+
+	/**
+	 * Returns true if the route answered with 200 OK, other responses are not stored.
+	 */
+	public boolean isOk()
+	{
+		return statusCode == HttpStatusCode.OK;
+	}
+
+	/**
+	 * Returns the number of bytes used by this response.
+	 */
+	public int size()
+	{
+		return size;
+	}
+}
@@ -0,0 +1,63 @@
+package com.cs.cache;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.Callable;
+
+/**
+ * Reads static resources into memory.
+ * <br><br>
+ * Concurrent requests for the same file share a single read, so a popular file
+ * that is requested many times at once is only read from disk once.
+ */
+public class ResourceLoader
+{
+	private static final SingleFlight< String, byte[] > LOADS = new SingleFlight< String, byte[] >();
+
+	private ResourceLoader()
+	{
+		// no instances...
+	}
+
+	/**
+	 * Reads the whole content of a file.
+	 * <br><br>
+	 * The returned array may be shared with other requests and must not be modified.
+	 *
+	 * @param file File to read.
+	 * @return Content of the file.
+	 * @throws IOException If the file can not be read.
+	 */
+	public static byte[] load( final File file ) throws IOException
+	{
+		try
+		{
+			return LOADS.execute( file.getPath(), new Callable< byte[] >()
+			{
+				@Override
+				public byte[] call() throws IOException
+				{
+					try
+					{
+						return Files.readAllBytes( file.toPath() );
+					}
+					catch ( NoSuchFileException e )
+					{
+						throw new FileNotFoundException( file.getPath() );
+					}
+				}
+			} );
+		}
+		catch ( IOException | RuntimeException e )
+		{
+			throw e;
+		}
+		catch ( Exception e )
+		{
+			throw new IOException( "Unable to read " + file.getPath(), e );
+		}
+	}
+}
@@ -0,0 +1,326 @@
+package com.cs.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cs.interfaces.HttpRequest;
+import com.cs.logs.Logger;
+import com.cs.main.Config;
+
+/**
+ * An opt-in cache for the serialised responses of GET routes.
+ * <br><br>
+ * Routes are added with {@link #cacheRoute(String, CachePolicy)}. Responses are
+ * keyed by method, path, the query parameters and the request headers named in the
+ * route's {@link CachePolicy}. When the TTL of a response has passed, the stale
+ * response is still served while a single background task recomputes it. The
+ * cache is bounded by the maximum size set in the config file; the least recently
+ * used responses are evicted first.
+ */
+public class ResponseCache
+{
+	private static final Map< String, CachePolicy > POLICIES = new ConcurrentHashMap< String, CachePolicy >();
+
+	// Access ordered, so the eldest entry is the least recently used one
+	private static final LinkedHashMap< String, CachedResponse > ENTRIES = new LinkedHashMap< String, CachedResponse >( 64, 0.75f, true );
+	private static long totalSize = 0;
+
+	private static final SingleFlight< String, CachedResponse > LOADS = new SingleFlight< String, CachedResponse >();
+
+	private static final AtomicLong HITS = new AtomicLong();
+	private static final AtomicLong STALE_HITS = new AtomicLong();
+	private static final AtomicLong MISSES = new AtomicLong();
+
+	private static final ExecutorService REFRESHSERVICE = Executors.newFixedThreadPool( 2, new ThreadFactory()
+	{
+		@Override
+		public Thread newThread( Runnable runnable )
+		{
+			Thread thread = new Thread( runnable, "response-cache-refresh" );
+			thread.setDaemon( true );
+			return thread;
+		}
+	} );
+
+	private ResponseCache()
+	{
+		// no instances...
+	}
+
+	/**
+	 * Enables caching for a route.
+	 *
+	 * @param path Path of the route without query string, ie. "/news".
+	 * @param policy How responses of the route are cached.
+	 */
+	public static void cacheRoute( String path, CachePolicy policy )
+	{
+		POLICIES.put( path, policy );
+	}
+
+	/**
+	 * Returns the cache policy for the route of a request.
+	 *
+	 * @param request The incoming request.
+	 * @return The cache policy or null if responses of the route are not cached.
+	 */
+	public static CachePolicy getPolicy( HttpRequest request )
+	{
+		if ( POLICIES.isEmpty() )
+		{
+			return null;
+		}
+
+		return POLICIES.get( getPath( request.getRequestUri() ) );
+	}
+
+	/**
+	 * Creates the key a response to the given request is stored under.
+	 *
+	 * @param request The incoming request.
+	 * @param policy Cache policy of the route.
+	 * @return The cache key.
+	 */
+	public static String createKey( HttpRequest request, CachePolicy policy )
+	{
+		String uri = request.getRequestUri();
+		String path = getPath( uri );
+
+		StringBuilder key = new StringBuilder( uri.length() + 32 );
+		key.append( request.getHttpMethod() ).append( ' ' ).append( path );
+
+		if ( policy.getQueryParameters().length > 0 && uri.length() > path.length() )
+		{
+			String query = uri.substring( path.length() + 1 );
+
+			for ( String parameter : policy.getQueryParameters() )
+			{
+				key.append( '&' ).append( parameter ).append( '=' );
+				appendQueryValue( key, query, parameter );
+			}
+		}
+
+		for ( String header : policy.getVaryHeaders() )
+		{
+			key.append( '\n' ).append( header ).append( ':' );
+
+			for ( Map.Entry< String, String > requestHeader : request.getHeaders().entrySet() )
+			{
+				if ( requestHeader.getKey().equalsIgnoreCase( header ) )
+				{
+					key.append( requestHeader.getValue() );
+					break;
+				}
+			}
+		}
+
+		return key.toString();
+	}
+
+	/**
+	 * Returns a stored response that may still be served.
+	 *
+	 * @param key Cache key created with {@link #createKey(HttpRequest, CachePolicy)}.
+	 * @return The stored response or null.
+	 */
+	public static CachedResponse get( String key )
+	{
+		long now = System.currentTimeMillis();
+		CachedResponse response;
+
+		synchronized ( ENTRIES )
+		{
+			response = ENTRIES.get( key );
+
+			if ( response != null && response.isExpired( now ) )
+			{
+				ENTRIES.remove( key );
+				totalSize -= response.size();
+				response = null;
+			}
+		}
+
+		if ( response == null )
+		{
+			MISSES.incrementAndGet();
+		}
+		else if ( response.isStale( now ) )
+		{
+			STALE_HITS.incrementAndGet();
+		}
+		else
+		{
+			HITS.incrementAndGet();
+		}
+
+		return response;
+	}
+
+	/**
+	 * Stores a response, evicting the least recently used responses if the cache is full.
+	 *
+	 * @param key Cache key created with {@link #createKey(HttpRequest, CachePolicy)}.
+	 * @param response The serialised response.
+	 */
+	public static void put( String key, CachedResponse response )
+	{
+		long maxSize = Config.getCacheMaxSize();
+
+		if ( response.size() > maxSize )
+		{
+			return;
+		}
+
+		synchronized ( ENTRIES )
+		{
+			CachedResponse previous = ENTRIES.put( key, response );
+			if ( previous != null )
+			{
+				totalSize -= previous.size();
+			}
+			totalSize += response.size();
+
+			Iterator< CachedResponse > eldest = ENTRIES.values().iterator();
+			while ( totalSize > maxSize && eldest.hasNext() )
+			{
+				totalSize -= eldest.next().size();
+				eldest.remove();
+			}
+		}
+	}
+
+	/**
+	 * Computes a response that is not in the cache.
+	 * <br><br>
+	 * Concurrent calls with the same key are coalesced: only the first one runs the
+	 * loader and all of them receive its response. The loader is responsible for
+	 * storing the response with {@link #put(String, CachedResponse)} if it may be cached.
+	 *
+	 * @param key Cache key of the response.
+	 * @param loader Computes the response.
+	 * @return The computed response.
+	 * @throws Exception The exception thrown by the loader.
+	 */
+	public static CachedResponse load( String key, Callable< CachedResponse > loader ) throws Exception
+	{
+		return LOADS.execute( key, loader );
+	}
+
+	/**
+	 * Recomputes a stale response in the background. Only one refresh runs per
+	 * stored response; calls made while it is running are ignored.
+	 *
+	 * @param key Cache key of the response.
+	 * @param stale The stale response that is being served.
+	 * @param loader Computes the new response.
+	 */
+	public static void refresh( final String key, final CachedResponse stale, final Callable< CachedResponse > loader )
+	{
+		if ( stale.claimRefresh() == false )
+		{
+			return;
+		}
+
+		REFRESHSERVICE.submit( new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					CachedResponse fresh = loader.call();
+					if ( fresh != null )
+					{
+						put( key, fresh );
+					}
+				}
+				catch ( Exception e )
+				{
+					Logger.writeLog( "ERROR", "Unable to refresh cached response " + key + ": " + e.getMessage() );
+				}
+				finally
+				{
+					// Allows another attempt if the stale response is still being served
+					stale.releaseRefresh();
+				}
+			}
+		} );
+	}
+
+	/**
+	 * Removes all stored responses.
+	 */
+	public static void clear()
+	{
+		synchronized ( ENTRIES )
+		{
+			ENTRIES.clear();
+			totalSize = 0;
+		}
+	}
+
+	public static long getHits()
+	{
+		return HITS.get();
+	}
+
+	public static long getStaleHits()
+	{
+		return STALE_HITS.get();
+	}
+
+	public static long getMisses()
+	{
+		return MISSES.get();
+	}
+
+	public static long getSize()
+	{
+		synchronized ( ENTRIES )
+		{
+			return totalSize;
+		}
+	}
+
+	public static int getEntryCount()
+	{
+		synchronized ( ENTRIES )
+		{
+			return ENTRIES.size();
+		}
+	}
+
+	private static String getPath( String uri )
+	{
+		int queryStart = uri.indexOf( '?' );
+		return ( queryStart == -1 ) ? uri : uri.substring( 0, queryStart );
+	}
+
+	private static void appendQueryValue( StringBuilder key, String query, String parameter )
+	{
+		int start = 0;
+		while ( start < query.length() )
+		{
+			int end = query.indexOf( '&', start );
+			if ( end == -1 )
+			{
+				end = query.length();
+			}
+
+			if ( query.startsWith( parameter, start ) && start + parameter.length() < end && query.charAt( start + parameter.length() ) == '=' )
+			{
+				key.append( query, start + parameter.length() + 1, end );
+				return;
+			}
+
+			start = end + 1;
+		}
+	}
+}
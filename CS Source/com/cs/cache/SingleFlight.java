@@ -0,0 +1,86 @@
+package com.cs.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces concurrent executions of the same task.
+ * <br><br>
+ * The first caller for a key runs the task on its own thread. Callers that arrive
+ * with the same key while it is running wait for it and receive the same result
+ * (or exception) instead of running the task again. Once the task has finished the
+ * key is released, so later callers start a new execution.
+ *
+ * @param <K> Type of the key that identifies identical tasks.
+ * @param <V> Type of the result.
+ */
+public class SingleFlight< K, V >
+{
+	private final ConcurrentHashMap< K, FutureTask< V > > inFlight = new ConcurrentHashMap< K, FutureTask< V > >();
+
+	/**
+	 * Runs the task unless an identical task is already running, in which case its result is returned.
+	 *
+	 * @param key Identifies identical tasks.
+	 * @param task Computes the result.
+	 * @return The result of the task.
+	 * @throws Exception The exception thrown by the task.
+	 */
+	public V execute( K key, Callable< V > task ) throws Exception
+	{
+		FutureTask< V > running = inFlight.get( key );
+
+		if ( running == null )
+		{
+			FutureTask< V > ownTask = new FutureTask< V >( task );
+			running = inFlight.putIfAbsent( key, ownTask );
+
+			if ( running == null )
+			{
+				try
+				{
+					ownTask.run();
+				}
+				finally
+				{
+					inFlight.remove( key, ownTask );
+				}
+
+				running = ownTask;
+			}
+		}
+
+		try
+		{
+			return running.get();
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw e;
+		}
+		catch ( ExecutionException e )
+		{
+			if ( e.getCause() instanceof Exception )
+			{
+				throw ( Exception ) e.getCause();
+			}
+			else if ( e.getCause() instanceof Error )
+			{
+				throw ( Error ) e.getCause();
+			}
+
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of tasks that are currently running.
+	 */
+	public int size()
+	{
+		return inFlight.size();
+	}
+}
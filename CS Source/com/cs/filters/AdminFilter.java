@@ -0,0 +1,185 @@
+package com.cs.filters;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import com.cs.cache.ResponseCache;
+import com.cs.http.BasicHttpResponse;
+import com.cs.http.Http;
+import com.cs.http.HttpMethod;
+import com.cs.http.HttpStatusCode;
+import com.cs.interfaces.HttpRequest;
+import com.cs.logs.Logger;
+import com.cs.main.Config;
+import com.cs.metrics.Metrics;
+
+/**
+ * Answers requests below the admin path without running a route, for clients that
+ * send the admin token in an "Authorization: Bearer" header.
+ * <br><br>
+ * GET on the path returns a JSON snapshot of the state of the process. POST on
+ * "path/cache/clear" removes every cached response and POST on
+ * "path/log-level?level=23" changes the types of events that are logged. Both only
+ * change settings that are safe to change while requests are answered.
+ */
+public class AdminFilter extends BasicFilter
+{
+	private static final String BEARER = "Bearer ";
+	private static final String CACHE_CLEAR = "/cache/clear";
+	private static final String LOG_LEVEL = "/log-level";
+	private static final String LEVEL_PARAMETER = "level=";
+
+	private final String path;
+	private final byte[] token;
+	private final int slowestRoutes;
+
+	/**
+	 * Creates a filter that serves the admin endpoint.
+	 *
+	 * @param path Request path of the endpoint, ie. "/admin".
+	 * @param token Token clients must send.
+	 * @param slowestRoutes Number of routes with the slowest requests in the snapshot.
+	 */
+	public AdminFilter( String path, String token, int slowestRoutes )
+	{
+		this.path = path;
+		this.token = token.getBytes( StandardCharsets.UTF_8 );
+		this.slowestRoutes = slowestRoutes;
+	}
+
+	@Override
+	public boolean beforeRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		String uri = request.getRequestUri();
+
+		if ( uri == null )
+		{
+			return true;
+		}
+
+		int queryStart = uri.indexOf( '?' );
+		String target = ( queryStart < 0 ) ? uri : uri.substring( 0, queryStart );
+		String query = ( queryStart < 0 ) ? "" : uri.substring( queryStart + 1 );
+
+		if ( target.equals( path ) == false && target.startsWith( path + "/" ) == false )
+		{
+			return true;
+		}
+
+		response.getHeaders().put( Http.CACHE_CONTROL, "no-store" );
+
+		if ( isAuthorized( request ) == false )
+		{
+			response.setStatusCode( HttpStatusCode.UNAUTHORIZED );
+			response.getHeaders().put( Http.WWW_AUTHENTICATE, "Bearer realm=\"admin\"" );
+			return false;
+		}
+
+		String action = target.substring( path.length() );
+
+		if ( action.isEmpty() )
+		{
+			if ( isMethod( request, HttpMethod.GET, response ) )
+			{
+				setJson( response, HttpStatusCode.OK, Metrics.exportRuntimeStats( slowestRoutes ) );
+			}
+		}
+		else if ( action.equals( CACHE_CLEAR ) )
+		{
+			if ( isMethod( request, HttpMethod.POST, response ) )
+			{
+				int entries = ResponseCache.getEntryCount();
+				ResponseCache.clear();
+
+				Logger.writeLog( "LOG", "Response cache cleared by the admin endpoint, " + entries + " responses removed" );
+				setJson( response, HttpStatusCode.OK, "{\"removedEntries\":" + entries + "}" );
+			}
+		}
+		else if ( action.equals( LOG_LEVEL ) )
+		{
+			if ( isMethod( request, HttpMethod.POST, response ) )
+			{
+				changeLogLevel( getLevel( query ), response );
+			}
+		}
+		else
+		{
+			response.setStatusCode( HttpStatusCode.NOT_FOUND );
+		}
+
+		return false;
+	}
+
+	private void changeLogLevel( String level, BasicHttpResponse response )
+	{
+		try
+		{
+			Config.setLogLevel( level );
+		}
+		catch ( IllegalArgumentException e )
+		{
+			setJson( response, HttpStatusCode.BAD_REQUEST, "{\"error\":\"" + e.getMessage() + "\"}" );
+			return;
+		}
+
+		Logger.writeLog( "LOG", "Log level changed to " + level + " by the admin endpoint" );
+		setJson( response, HttpStatusCode.OK, "{\"logLevel\":\"" + level + "\"}" );
+	}
+
+	/**
+	 * Compares the token in constant time, so the time of a failed request does not tell how much of the token was right.
+	 */
+	private boolean isAuthorized( HttpRequest request )
+	{
+		String authorization = request.getHeaders().get( Http.AUTHORIZATION );
+
+		if ( authorization == null )
+		{
+			// HTTP/2 and some clients send lower case header names
+			authorization = request.getHeaders().get( Http.AUTHORIZATION.toLowerCase() );
+		}
+
+		if ( authorization == null || authorization.regionMatches( true, 0, BEARER, 0, BEARER.length() ) == false )
+		{
+			return false;
+		}
+
+		byte[] given = authorization.substring( BEARER.length() ).trim().getBytes( StandardCharsets.UTF_8 );
+		return MessageDigest.isEqual( token, given );
+	}
+
+	/**
+	 * Answers with 405 unless the request has the given method.
+	 */
+	private static boolean isMethod( HttpRequest request, HttpMethod method, BasicHttpResponse response )
+	{
+		if ( request.getHttpMethod() == method )
+		{
+			return true;
+		}
+
+		response.setStatusCode( HttpStatusCode.METHOD_NOT_ALLOWED );
+		response.getHeaders().put( Http.ALLOW, method.toString() );
+		return false;
+	}
+
+	private static String getLevel( String query )
+	{
+		for ( String parameter : query.split( "&" ) )
+		{
+			if ( parameter.startsWith( LEVEL_PARAMETER ) )
+			{
+				return parameter.substring( LEVEL_PARAMETER.length() );
+			}
+		}
+
+		return null;
+	}
+
+	private static void setJson( BasicHttpResponse response, HttpStatusCode status, String json )
+	{
+		response.setStatusCode( status );
+		response.setEntity( json.getBytes( StandardCharsets.UTF_8 ) );
+		response.getHeaders().put( Http.CONTENT_TYPE, Metrics.JSON_CONTENT_TYPE );
+	}
+}
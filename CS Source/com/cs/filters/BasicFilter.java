@@ -0,0 +1,29 @@
+package com.cs.filters;
+
+import com.cs.http.BasicHttpResponse;
+import com.cs.interfaces.Filter;
+import com.cs.interfaces.HttpRequest;
+
+/**
+ * A filter that does nothing. Extend it to only implement the callbacks that are needed.
+ */
+public abstract class BasicFilter implements Filter
+{
+	@Override
+	public boolean beforeRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		return true;
+	}
+
+	@Override
+	public void afterRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		// Nothing to do
+	}
+
+	@Override
+	public void onError( HttpRequest request, BasicHttpResponse response, Exception error )
+	{
+		// Nothing to do
+	}
+}
@@ -0,0 +1,163 @@
+package com.cs.filters;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.cs.http.BasicHttpResponse;
+import com.cs.http.HttpMethod;
+import com.cs.http.HttpStatusCode;
+import com.cs.interfaces.HttpRequest;
+
+/**
+ * Applies the {@link CorsPolicy} of the requested route.
+ * <br><br>
+ * Preflight requests are answered by the filter without running the route. Other
+ * responses to allowed origins get the pre-encoded CORS headers of their policy.
+ * Responses to origins that are not allowed get no CORS headers, so browsers
+ * block them.
+ * 
+ * @see Cross-Origin Resource Sharing (CORS)
+ */
+public class CorsFilter extends BasicFilter
+{
+	public static final String DEFAULT_METHODS = "GET, POST, OPTIONS";
+	public static final String DEFAULT_HEADERS = "Origin, X-Requested-With, Content-Type, Accept";
+	public static final int DEFAULT_MAX_AGE = 86400;
+
+	private final CorsPolicy[] policies;
+
+	/**
+	 * Creates a filter that allows every origin on every route.
+	 */
+	public CorsFilter()
+	{
+		this( new CorsPolicy[] { new CorsPolicy( "/", new String[] { CorsPolicy.ANY_ORIGIN }, DEFAULT_METHODS, DEFAULT_HEADERS, false, DEFAULT_MAX_AGE ) } );
+	}
+
+	/**
+	 * Creates a filter for the given policies. The policy with the longest matching path wins.
+	 * 
+	 * @param policies CORS policies per path prefix.
+	 */
+	public CorsFilter( CorsPolicy[] policies )
+	{
+		this.policies = policies.clone();
+
+		Arrays.sort( this.policies, new Comparator< CorsPolicy >()
+		{
+			@Override
+			public int compare( CorsPolicy a, CorsPolicy b )
+			{
+				return b.getPath().length() - a.getPath().length();
+			}
+		} );
+	}
+
+	@Override
+	public boolean beforeRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		if ( request.getHttpMethod() != HttpMethod.OPTIONS || getHeader( request, CorsPolicy.REQUEST_METHOD ) == null )
+		{
+			return true;
+		}
+
+		String origin = getHeader( request, CorsPolicy.ORIGIN );
+		CorsPolicy policy = findPolicy( request.getRequestUri() );
+
+		if ( origin != null && policy != null )
+		{
+			byte[] block = policy.getHeaderBlock( origin, true );
+			if ( block != null )
+			{
+				response.addHeaderBlock( block );
+			}
+		}
+
+		response.setStatusCode( HttpStatusCode.NO_CONTENT );
+		return false;
+	}
+
+	@Override
+	public void afterRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		addHeaders( request, response );
+	}
+
+	@Override
+	public void onError( HttpRequest request, BasicHttpResponse response, Exception error )
+	{
+		// Allows the client to read the error response as well
+		addHeaders( request, response );
+	}
+
+	private void addHeaders( HttpRequest request, BasicHttpResponse response )
+	{
+		// Preflight responses already have their headers
+		if ( response.getHeaderBlockCount() > 0 )
+		{
+			return;
+		}
+
+		String origin = getHeader( request, CorsPolicy.ORIGIN );
+		if ( origin == null )
+		{
+			return;
+		}
+
+		CorsPolicy policy = findPolicy( request.getRequestUri() );
+		if ( policy != null )
+		{
+			byte[] block = policy.getHeaderBlock( origin, false );
+			if ( block != null )
+			{
+				response.addHeaderBlock( block );
+			}
+		}
+	}
+
+	private CorsPolicy findPolicy( String requestUri )
+	{
+		for ( int i = 0; i < policies.length; i++ )
+		{
+			if ( isBelow( requestUri, policies[ i ].getPath() ) )
+			{
+				return policies[ i ];
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns whether a request is for the path or a route below it. Paths match whole
+	 * segments, so "/api" applies to "/api/users" but not to "/apiary".
+	 */
+	private static boolean isBelow( String requestUri, String path )
+	{
+		if ( requestUri.startsWith( path ) == false )
+		{
+			return false;
+		}
+
+		if ( requestUri.length() == path.length() || path.endsWith( "/" ) )
+		{
+			return true;
+		}
+
+		char next = requestUri.charAt( path.length() );
+		return next == '/' || next == '?';
+	}
+
+	private static String getHeader( HttpRequest request, String name )
+	{
+		String value = request.getHeaders().get( name );
+
+		if ( value == null )
+		{
+			// HTTP/2 and some clients send lower case header names
+			value = request.getHeaders().get( name.toLowerCase() );
+		}
+
+		return value;
+	}
+}
@@ -0,0 +1,142 @@
+package com.cs.filters;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.cs.http.Http;
+
+/**
+ * The cross-origin rules of the routes below a path.
+ * <br><br>
+ * All header lines a policy can send are encoded when the policy is created. For
+ * every allowed origin the policy keeps one block for normal responses and one for
+ * preflight responses, so answering a request is a single map lookup on the
+ * Origin header.
+ *
+ * @see Cross-Origin Resource Sharing (CORS)
+ */
+public class CorsPolicy
+{
+	public static final String ANY_ORIGIN = "*";
+
+	public static final String ALLOW_ORIGIN = "Access-Control-Allow-Origin";
+	public static final String ALLOW_METHODS = "Access-Control-Allow-Methods";
+	public static final String ALLOW_HEADERS = "Access-Control-Allow-Headers";
+	public static final String ALLOW_CREDENTIALS = "Access-Control-Allow-Credentials";
+	public static final String MAX_AGE = "Access-Control-Max-Age";
+	public static final String REQUEST_METHOD = "Access-Control-Request-Method";
+	public static final String ORIGIN = "Origin";
+
+	private final String path;
+	private final String methods;
+	private final String headers;
+	private final boolean credentials;
+	private final int maxAge;
+
+	// Blocks for the wildcard origin, null if only listed origins are allowed
+	private final byte[] anyOriginBlock;
+	private final byte[] anyOriginPreflightBlock;
+
+	// Blocks for every listed origin
+	private final Map< String, byte[] > originBlocks = new HashMap< String, byte[] >();
+	private final Map< String, byte[] > originPreflightBlocks = new HashMap< String, byte[] >();
+
+	/**
+	 * Creates a CORS policy.
+	 *
+	 * @param path Path prefix of the routes the policy applies to.
+	 * @param origins Allowed origins, ie. "https://example.com", or "*" for every origin.
+	 * @param methods Allowed methods, ie. "GET, POST".
+	 * @param headers Allowed request headers.
+	 * @param credentials Whether requests may include cookies and authorization headers.
+	 * @param maxAge Time in seconds browsers may cache a preflight response.
+	 * @throws IllegalArgumentException If every origin is allowed together with credentials.
+	 */
+	public CorsPolicy( String path, String[] origins, String methods, String headers, boolean credentials, int maxAge )
+	{
+		this.path = path;
+		this.methods = methods;
+		this.headers = headers;
+		this.credentials = credentials;
+		this.maxAge = maxAge;
+
+		boolean anyOrigin = false;
+		for ( String origin : origins )
+		{
+			if ( origin.equals( ANY_ORIGIN ) )
+			{
+				anyOrigin = true;
+			}
+			else
+			{
+				originBlocks.put( origin, encode( origin, false ) );
+				originPreflightBlocks.put( origin, encode( origin, true ) );
+			}
+		}
+
+		// Browsers reject the wildcard with credentials, and echoing any origin would let every site read the responses
+		if ( anyOrigin && credentials )
+		{
+			throw new IllegalArgumentException( "The CORS policy for " + path + " allows every origin with credentials, list the allowed origins instead." );
+		}
+
+		anyOriginBlock = anyOrigin ? encode( ANY_ORIGIN, false ) : null;
+		anyOriginPreflightBlock = anyOrigin ? encode( ANY_ORIGIN, true ) : null;
+	}
+
+	/**
+	 * Returns the encoded header lines for a response to the given origin.
+	 *
+	 * @param origin Value of the Origin request header.
+	 * @param preflight Whether the response answers a preflight request.
+	 * @return Encoded header lines or null if the origin is not allowed.
+	 */
+	public byte[] getHeaderBlock( String origin, boolean preflight )
+	{
+		byte[] block = preflight ? originPreflightBlocks.get( origin ) : originBlocks.get( origin );
+
+		if ( block == null )
+		{
+			block = preflight ? anyOriginPreflightBlock : anyOriginBlock;
+		}
+
+		return block;
+	}
+
+	public String getPath()
+	{
+		return path;
+	}
+
+	private byte[] encode( String origin, boolean preflight )
+	{
+		StringBuilder block = new StringBuilder( 256 );
+		appendHeader( block, ALLOW_ORIGIN, origin );
+
+		if ( credentials )
+		{
+			appendHeader( block, ALLOW_CREDENTIALS, "true" );
+		}
+
+		if ( origin.equals( ANY_ORIGIN ) == false )
+		{
+			// The response differs per origin, caches must take it into account
+			appendHeader( block, Http.VARY, ORIGIN );
+		}
+
+		if ( preflight )
+		{
+			appendHeader( block, ALLOW_METHODS, methods );
+			appendHeader( block, ALLOW_HEADERS, headers );
+			appendHeader( block, MAX_AGE, String.valueOf( maxAge ) );
+		}
+
+		return block.toString().getBytes( StandardCharsets.ISO_8859_1 );
+	}
+
+	private static void appendHeader( StringBuilder block, String name, String value )
+	{
+		block.append( name ).append( ": " ).append( value ).append( Http.CRLF );
+	}
+}
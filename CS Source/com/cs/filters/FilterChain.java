@@ -0,0 +1,123 @@
+package com.cs.filters;
+
+import com.cs.http.BasicHttpResponse;
+import com.cs.interfaces.Filter;
+import com.cs.interfaces.HttpRequest;
+import com.cs.main.Config;
+
+/**
+ * A fixed, ordered list of {@link Filter}s.
+ * <br><br>
+ * The chain is composed once when the server is created. Before-route callbacks
+ * run in the order the filters were given, after-route and error callbacks in the
+ * reverse order. The chain walks a plain array, so running it does not allocate.
+ */
+public class FilterChain
+{
+	private final Filter[] filters;
+
+	public FilterChain( Filter... filters )
+	{
+		this.filters = filters.clone();
+	}
+
+	/**
+	 * Creates the chain of built-in filters enabled in the config file.
+	 * 
+	 * @param secure Whether the chain is used by a HTTPS server.
+	 * @return The filter chain.
+	 */
+	public static FilterChain createDefault( boolean secure )
+	{
+		int count = 2;
+		count += Config.useSecurityHeaders() ? 1 : 0;
+		count += Config.useTimingHeader() ? 1 : 0;
+		count += Config.useServerTimingHeader() ? 1 : 0;
+		count += Config.useMetrics() ? 1 : 0;
+		count += Config.useAdmin() ? 1 : 0;
+
+		Filter[] filters = new Filter[ count ];
+		int i = 0;
+
+		// The timing filters come first, so their after-route callbacks run last
+		if ( Config.useTimingHeader() )
+		{
+			filters[ i++ ] = new TimingFilter();
+		}
+
+		if ( Config.useServerTimingHeader() )
+		{
+			filters[ i++ ] = new ServerTimingFilter();
+		}
+
+		filters[ i++ ] = new ServerHeaderFilter();
+
+		if ( Config.useMetrics() )
+		{
+			filters[ i++ ] = new MetricsFilter( Config.getMetricsPath() );
+		}
+
+		if ( Config.useAdmin() )
+		{
+			filters[ i++ ] = new AdminFilter( Config.getAdminPath(), Config.getAdminToken(), Config.getAdminSlowestRoutes() );
+		}
+
+		filters[ i++ ] = ( Config.getCorsPolicies().length > 0 ) ? new CorsFilter( Config.getCorsPolicies() ) : new CorsFilter();
+
+		if ( Config.useSecurityHeaders() )
+		{
+			filters[ i++ ] = new SecurityHeadersFilter( secure );
+		}
+
+		return new FilterChain( filters );
+	}
+
+	/**
+	 * Creates a chain that runs the given filter after the filters of this chain.
+	 *
+	 * @param filter The filter to add.
+	 * @return The new chain, this chain is not changed.
+	 */
+	public FilterChain append( Filter filter )
+	{
+		Filter[] appended = new Filter[ filters.length + 1 ];
+		System.arraycopy( filters, 0, appended, 0, filters.length );
+		appended[ filters.length ] = filter;
+
+		return new FilterChain( appended );
+	}
+
+	/**
+	 * Runs the before-route callbacks until one of them answers the request.
+	 * 
+	 * @return false if the route must be skipped.
+	 */
+	public boolean beforeRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		for ( int i = 0; i < filters.length; i++ )
+		{
+			if ( filters[ i ].beforeRoute( request, response ) == false )
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public void afterRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		for ( int i = filters.length - 1; i >= 0; i-- )
+		{
+			filters[ i ].afterRoute( request, response );
+		}
+	}
+
+	public void onError( HttpRequest request, BasicHttpResponse response, Exception error )
+	{
+		for ( int i = filters.length - 1; i >= 0; i-- )
+		{
+			filters[ i ].onError( request, response, error );
+		}
+	}
+}
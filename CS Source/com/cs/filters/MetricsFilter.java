@@ -0,0 +1,49 @@
+package com.cs.filters;
+
+import java.nio.charset.StandardCharsets;
+
+import com.cs.http.BasicHttpResponse;
+import com.cs.http.Http;
+import com.cs.http.HttpMethod;
+import com.cs.http.HttpStatusCode;
+import com.cs.interfaces.HttpRequest;
+import com.cs.metrics.Metrics;
+
+/**
+ * Answers requests for the metrics path with the {@link Metrics} of the process in
+ * the Prometheus text format, without running a route.
+ */
+public class MetricsFilter extends BasicFilter
+{
+	private final String path;
+
+	/**
+	 * Creates a filter that serves the metrics.
+	 * 
+	 * @param path Request path of the metrics, ie. "/metrics".
+	 */
+	public MetricsFilter( String path )
+	{
+		this.path = path;
+	}
+
+	@Override
+	public boolean beforeRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		if ( request.getHttpMethod() != HttpMethod.GET || isMetricsPath( request.getRequestUri() ) == false )
+		{
+			return true;
+		}
+
+		response.setStatusCode( HttpStatusCode.OK );
+		response.setEntity( Metrics.export().getBytes( StandardCharsets.UTF_8 ) );
+		response.getHeaders().put( Http.CONTENT_TYPE, Metrics.CONTENT_TYPE );
+		response.getHeaders().put( Http.CACHE_CONTROL, "no-store" );
+		return false;
+	}
+
+	private boolean isMetricsPath( String uri )
+	{
+		return uri != null && uri.startsWith( path ) && ( uri.length() == path.length() || uri.charAt( path.length() ) == '?' );
+	}
+}
@@ -0,0 +1,35 @@
+package com.cs.filters;
+
+import com.cs.http.BasicHttpResponse;
+import com.cs.interfaces.HttpRequest;
+
+/**
+ * Adds common security headers to every response.
+ * <br><br>
+ * The Strict-Transport-Security header is only sent by HTTPS servers.
+ */
+public class SecurityHeadersFilter extends BasicFilter
+{
+	private final boolean secure;
+
+	/**
+	 * @param secure Whether the filter is used by a HTTPS server.
+	 */
+	public SecurityHeadersFilter( boolean secure )
+	{
+		this.secure = secure;
+	}
+
+	@Override
+	public void afterRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		response.getHeaders().put( "X-Content-Type-Options", "nosniff" );
+		response.getHeaders().put( "X-Frame-Options", "SAMEORIGIN" );
+		response.getHeaders().put( "Referrer-Policy", "strict-origin-when-cross-origin" );
+
+		if ( secure )
+		{
+			response.getHeaders().put( "Strict-Transport-Security", "max-age=31536000" );
+		}
+	}
+}
@@ -0,0 +1,19 @@
+package com.cs.filters;
+
+import com.cs.http.BasicHttpResponse;
+import com.cs.http.Http;
+import com.cs.interfaces.HttpRequest;
+import com.cs.server.HttpServer;
+
+/**
+ * Adds the Server header with the web server signature to every response.
+ */
+public class ServerHeaderFilter extends BasicFilter
+{
+	@Override
+	public boolean beforeRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		response.getHeaders().put( Http.SERVER, HttpServer.getServerSignature() );
+		return true;
+	}
+}
@@ -0,0 +1,38 @@
+package com.cs.filters;
+
+import com.cs.http.BasicHttpResponse;
+import com.cs.interfaces.HttpRequest;
+
+/**
+ * Adds a Server-Timing header with the time the request spent in every phase
+ * measured before the response is sent, so it shows up in the developer tools of browsers.
+ * <br><br>
+ * Sending the response is timed after the headers are written, it is only recorded
+ * in the metrics.
+ */
+public class ServerTimingFilter extends BasicFilter
+{
+	public static final String SERVER_TIMING = "Server-Timing";
+
+	@Override
+	public void afterRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		addHeader( request, response );
+	}
+
+	@Override
+	public void onError( HttpRequest request, BasicHttpResponse response, Exception error )
+	{
+		addHeader( request, response );
+	}
+
+	private void addHeader( HttpRequest request, BasicHttpResponse response )
+	{
+		String value = request.getTiming().toServerTiming();
+
+		if ( value.isEmpty() == false )
+		{
+			response.getHeaders().put( SERVER_TIMING, value );
+		}
+	}
+}
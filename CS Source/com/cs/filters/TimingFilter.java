@@ -0,0 +1,31 @@
+package com.cs.filters;
+
+import com.cs.http.BasicHttpResponse;
+import com.cs.interfaces.HttpRequest;
+
+/**
+ * Adds an X-Response-Time header with the time in milliseconds between reading
+ * the request line and finishing the response.
+ */
+public class TimingFilter extends BasicFilter
+{
+	public static final String RESPONSE_TIME = "X-Response-Time";
+
+	@Override
+	public void afterRoute( HttpRequest request, BasicHttpResponse response )
+	{
+		addHeader( request, response );
+	}
+
+	@Override
+	public void onError( HttpRequest request, BasicHttpResponse response, Exception error )
+	{
+		addHeader( request, response );
+	}
+
+	private void addHeader( HttpRequest request, BasicHttpResponse response )
+	{
+		long micros = ( System.nanoTime() - request.getStartTime() ) / 1000;
+		response.getHeaders().put( RESPONSE_TIME, ( micros / 1000 ) + "." + ( ( micros % 1000 ) / 100 ) + "ms" );
+	}
+}
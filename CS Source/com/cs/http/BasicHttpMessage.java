@@ -8,6 +8,7 @@ public class BasicHttpMessage implements HttpMessage
 {
 	private HttpVersion version;
 	private byte[] entity = null;
+	private int entityLength = 0;
 	private Map< String, String > headers;
 	
 	
@@ -29,6 +30,12 @@ public class BasicHttpMessage implements HttpMessage
 		return entity;
 	}
 
+	@Override
+	public int getEntityLength()
+	{
+		return entityLength;
+	}
+
 	public HttpVersion getVersion()
 	{
 		return version;
@@ -42,6 +49,19 @@ public class BasicHttpMessage implements HttpMessage
 	public void setEntity( byte[] entity )
 	{
 		this.entity = entity;
+		this.entityLength = ( entity == null ) ? 0 : entity.length;
+	}
+
+	/**
+	 * Sets an entity that only uses the first part of the given array.
+	 * 
+	 * @param entity Array holding the entity.
+	 * @param length Number of valid bytes in the array.
+	 */
+	public void setEntity( byte[] entity, int length )
+	{
+		this.entity = entity;
+		this.entityLength = length;
 	}
 
 	public void setHeaders( Map< String, String > headers )
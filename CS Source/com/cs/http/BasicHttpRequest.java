@@ -6,6 +6,8 @@ public class BasicHttpRequest extends BasicHttpMessage implements HttpRequest
 {
 	HttpMethod method;
 	String requestUri;
+	long startTime;
+	final RequestTiming timing = new RequestTiming();
 
 	@Override
 	public HttpMethod getHttpMethod()
@@ -19,6 +21,18 @@ public class BasicHttpRequest extends BasicHttpMessage implements HttpRequest
 		return requestUri;
 	}
 
+	@Override
+	public long getStartTime()
+	{
+		return startTime;
+	}
+
+	@Override
+	public RequestTiming getTiming()
+	{
+		return timing;
+	}
+
 	public HttpMethod getMethod()
 	{
 		return method;
@@ -33,4 +47,9 @@ public class BasicHttpRequest extends BasicHttpMessage implements HttpRequest
 	{
 		this.requestUri = requestUri;
 	}
+
+	public void setStartTime( long startTime )
+	{
+		this.startTime = startTime;
+	}
 }
@@ -1,5 +1,8 @@
 package com.cs.http;
 
+import java.util.Arrays;
+import java.util.Map;
+
 import com.cs.interfaces.HttpResponse;
 
 public class BasicHttpResponse extends BasicHttpMessage implements HttpResponse
@@ -7,6 +10,10 @@ public class BasicHttpResponse extends BasicHttpMessage implements HttpResponse
 	HttpStatusCode statusCode;
 	boolean resourceAsBody = false;
 	String resourceLocation;
+	String view;
+	Map< String, Object > model;
+	byte[][] headerBlocks;
+	int headerBlockCount = 0;
 
 	@Override
 	public HttpStatusCode getStatusCode()
@@ -38,4 +45,58 @@ public class BasicHttpResponse extends BasicHttpMessage implements HttpResponse
 	{
 		resourceLocation = location;
 	}
+	
+	public String getView()
+	{
+		return view;
+	}
+	
+	public Map< String, Object > getModel()
+	{
+		return model;
+	}
+	
+	/**
+	 * Renders a template from the resource folder as the body of this response.
+	 * 
+	 * @param view Path of the template relative to the resource folder, ie. "/index.html".
+	 * @param model Values used by the template.
+	 */
+	public void setView( String view, Map< String, Object > model )
+	{
+		this.view = view;
+		this.model = model;
+	}
+	
+	@Override
+	public int getHeaderBlockCount()
+	{
+		return headerBlockCount;
+	}
+	
+	@Override
+	public byte[] getHeaderBlock( int index )
+	{
+		return headerBlocks[ index ];
+	}
+	
+	/**
+	 * Adds header lines that were encoded in advance. The block is sent as is, so
+	 * every line must end with a CRLF.
+	 * 
+	 * @param block Encoded header lines.
+	 */
+	public void addHeaderBlock( byte[] block )
+	{
+		if ( headerBlocks == null )
+		{
+			headerBlocks = new byte[ 2 ][];
+		}
+		else if ( headerBlockCount == headerBlocks.length )
+		{
+			headerBlocks = Arrays.copyOf( headerBlocks, headerBlockCount * 2 );
+		}
+		
+		headerBlocks[ headerBlockCount++ ] = block;
+	}
 }
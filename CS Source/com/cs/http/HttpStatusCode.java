@@ -28,6 +28,7 @@ public enum HttpStatusCode
 	USE_PROXY(305, "Use Proxy"),
 	SWITCH_PROXY(306, "Switch Proxy"),
 	TEMPORARY_REDIRECT(307, "Temporary Redirect "),
+	PERMANENT_REDIRECT(308, "Permanent Redirect"),
 	BAD_REQUEST(400, "Bad Request"),
 	UNAUTHORIZED(401, "Unauthorized"),
 	PAYMENT_REQUIRED(402, "Payment Required"),
@@ -6,7 +6,8 @@ import java.util.regex.Pattern;
 public enum HttpVersion
 {
 	VERSION_1_0(1, 0),
-	VERSION_1_1(1, 1);
+	VERSION_1_1(1, 1),
+	VERSION_2_0(2, 0);
 
 	private final int major;
 	private final int minor;
@@ -24,11 +25,13 @@ public enum HttpVersion
 	}
 
 	/**
-	 * Extracts the HTTP version from the header line.
+	 * Extracts the HTTP version from the header line of a HTTP/1 request. HTTP/2 is
+	 * never sent in a request line, its requests get their version from the HTTP/2 connection.
 	 * 
 	 * @param headerLine HTTP request header line
 	 * @return
-	 * @throws IllegalArgumentException
+	 * @throws UnsupportedVersionException If the version is not HTTP/1.0 or HTTP/1.1.
+	 * @throws IllegalArgumentException If the line has no HTTP version.
 	 */
 	public static HttpVersion extractVersion(String headerLine) throws IllegalArgumentException
 	{
@@ -45,7 +48,7 @@ public enum HttpVersion
 			}
 			else
 			{
-				throw new IllegalArgumentException( "Unknown HTTP Version" );
+				throw new UnsupportedVersionException( "Unsupported HTTP Version" );
 			}
 		}
 		else
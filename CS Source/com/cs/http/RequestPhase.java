@@ -0,0 +1,35 @@
+package com.cs.http;
+
+/**
+ * An enum of the phases a request is timed in, in the order they happen.
+ */
+public enum RequestPhase
+{
+	/** From receiving the complete request to a worker starting on it. */
+	WAIT( "wait" ),
+	/** Reading the request line, headers and body. */
+	PARSE( "parse" ),
+	/** Running the route handler. */
+	ROUTE( "route" ),
+	/** Reading the resource the route selected. */
+	FILE( "file" ),
+	/** Rendering the view the route selected. */
+	RENDER( "render" ),
+	/** Writing the response to the connection. */
+	SEND( "send" );
+
+	private final String name;
+
+	private RequestPhase( String name )
+	{
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name used in headers and metrics.
+	 */
+	public String getName()
+	{
+		return name;
+	}
+}
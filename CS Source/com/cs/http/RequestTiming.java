@@ -0,0 +1,76 @@
+package com.cs.http;
+
+/**
+ * The time a request spent in every {@link RequestPhase}, measured with {@link System#nanoTime()}.
+ * <br><br>
+ * Every request has its own timing, filled in by the thread that handles the request.
+ * Phases that did not happen, ie. reading a file for a rendered view, stay unmeasured.
+ */
+public class RequestTiming
+{
+	private static final RequestPhase[] PHASES = RequestPhase.values();
+
+	private final long[] DURATIONS = new long[ PHASES.length ];
+
+	public RequestTiming()
+	{
+		for ( int i = 0; i < DURATIONS.length; i++ )
+		{
+			DURATIONS[ i ] = -1;
+		}
+	}
+
+	/**
+	 * Adds time to a phase, a phase that happens more than once is summed up.
+	 * 
+	 * @param phase The phase.
+	 * @param duration Duration in nanoseconds.
+	 */
+	public void add( RequestPhase phase, long duration )
+	{
+		int i = phase.ordinal();
+		DURATIONS[ i ] = Math.max( DURATIONS[ i ], 0 ) + Math.max( duration, 0 );
+	}
+
+	/**
+	 * Returns the duration of a phase in nanoseconds, or -1 if the phase was not measured.
+	 */
+	public long getDuration( RequestPhase phase )
+	{
+		return DURATIONS[ phase.ordinal() ];
+	}
+
+	/**
+	 * Returns the measured phases as the value of a Server-Timing header, ie.
+	 * "parse;dur=0.041, route;dur=1.250", with durations in milliseconds.
+	 * 
+	 * @return The value, empty if no phase was measured.
+	 * @see https://www.w3.org/TR/server-timing/
+	 */
+	public String toServerTiming()
+	{
+		StringBuilder value = new StringBuilder( 96 );
+
+		for ( int i = 0; i < PHASES.length; i++ )
+		{
+			if ( DURATIONS[ i ] < 0 )
+			{
+				continue;
+			}
+
+			if ( value.length() > 0 )
+			{
+				value.append( ", " );
+			}
+
+			long micros = DURATIONS[ i ] / 1000;
+			value.append( PHASES[ i ].getName() ).append( ";dur=" ).append( micros / 1000 ).append( '.' );
+
+			// Three decimals, the header is parsed as a double
+			long fraction = micros % 1000;
+			value.append( fraction < 100 ? ( fraction < 10 ? "00" : "0" ) : "" ).append( fraction );
+		}
+
+		return value.toString();
+	}
+}
@@ -0,0 +1,15 @@
+package com.cs.http;
+
+/**
+ * Thrown for a request line with a well-formed HTTP version that is not spoken over
+ * HTTP/1 framing, so the client can be answered with 505 instead of a dropped connection.
+ */
+public class UnsupportedVersionException extends IllegalArgumentException
+{
+	private static final long serialVersionUID = 1L;
+
+	public UnsupportedVersionException( String message )
+	{
+		super( message );
+	}
+}
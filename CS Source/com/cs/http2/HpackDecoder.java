@@ -0,0 +1,171 @@
+package com.cs.http2;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes HPACK header blocks received from the client.
+ * <br><br>
+ * Every header block of a connection must be decoded in order, even those of
+ * streams that are refused, because they may change the dynamic table.
+ *
+ * @see RFC 7541
+ */
+class HpackDecoder
+{
+	private final HpackTable table;
+	// Largest dynamic table the client may ask for, as announced in our settings
+	private final int maxTableSize;
+	// Largest decoded header list accepted, as announced in our settings
+	private final int maxHeaderListSize;
+
+	HpackDecoder( int maxTableSize, int maxHeaderListSize )
+	{
+		this.table = new HpackTable( maxTableSize );
+		this.maxTableSize = maxTableSize;
+		this.maxHeaderListSize = maxHeaderListSize;
+	}
+
+	/**
+	 * Decodes a complete header block.
+	 *
+	 * @param block The header block fragments of a HEADERS frame and its CONTINUATION frames.
+	 * @param length Number of bytes in the block.
+	 * @return Name and value pairs in the order they were sent.
+	 * @throws Http2Exception If the block is malformed.
+	 */
+	List< String[] > decode( byte[] block, int length ) throws Http2Exception
+	{
+		List< String[] > headers = new ArrayList< String[] >();
+		int[] position = { 0 };
+		int listSize = 0;
+		int counted = 0;
+
+		while ( position[ 0 ] < length )
+		{
+			int b = block[ position[ 0 ] ] & 0xff;
+
+			if ( ( b & 0x80 ) != 0 )
+			{
+				// Indexed header field
+				headers.add( table.get( readInteger( block, length, position, 7 ) ) );
+			}
+			else if ( ( b & 0x40 ) != 0 )
+			{
+				// Literal with incremental indexing
+				String[] header = readLiteral( block, length, position, 6 );
+				table.add( header[ 0 ], header[ 1 ] );
+				headers.add( header );
+			}
+			else if ( ( b & 0x20 ) != 0 )
+			{
+				// Dynamic table size update
+				int size = readInteger( block, length, position, 5 );
+				if ( size > maxTableSize )
+				{
+					throw new Http2Exception( Http2Exception.COMPRESSION_ERROR, "Header table size " + size + " exceeds the limit" );
+				}
+				table.setMaxSize( size );
+			}
+			else
+			{
+				// Literal without indexing or never indexed
+				headers.add( readLiteral( block, length, position, 4 ) );
+			}
+
+			if ( headers.size() > counted )
+			{
+				String[] header = headers.get( counted++ );
+				listSize += header[ 0 ].length() + header[ 1 ].length() + 32;
+			}
+
+			// Indexed fields make small blocks decode to large lists, the limit applies to the decoded size
+			if ( listSize > maxHeaderListSize )
+			{
+				throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Header list too large" );
+			}
+		}
+
+		return headers;
+	}
+
+	private String[] readLiteral( byte[] block, int length, int[] position, int prefix ) throws Http2Exception
+	{
+		int nameIndex = readInteger( block, length, position, prefix );
+		String name = ( nameIndex == 0 ) ? readString( block, length, position ) : table.get( nameIndex )[ 0 ];
+		String value = readString( block, length, position );
+
+		return new String[] { name, value };
+	}
+
+	private static String readString( byte[] block, int length, int[] position ) throws Http2Exception
+	{
+		if ( position[ 0 ] >= length )
+		{
+			throw new Http2Exception( Http2Exception.COMPRESSION_ERROR, "Truncated header block" );
+		}
+
+		boolean huffman = ( block[ position[ 0 ] ] & 0x80 ) != 0;
+		int stringLength = readInteger( block, length, position, 7 );
+		if ( stringLength > length - position[ 0 ] )
+		{
+			throw new Http2Exception( Http2Exception.COMPRESSION_ERROR, "Truncated header block" );
+		}
+
+		String value;
+		if ( huffman )
+		{
+			try
+			{
+				value = new String( Huffman.decode( block, position[ 0 ], stringLength ), StandardCharsets.ISO_8859_1 );
+			}
+			catch ( IOException e )
+			{
+				throw new Http2Exception( Http2Exception.COMPRESSION_ERROR, e.getMessage() );
+			}
+		}
+		else
+		{
+			value = new String( block, position[ 0 ], stringLength, StandardCharsets.ISO_8859_1 );
+		}
+
+		position[ 0 ] += stringLength;
+		return value;
+	}
+
+	/**
+	 * Reads an integer with an N-bit prefix.
+	 *
+	 * @see RFC 7541, Section 5.1
+	 */
+	private static int readInteger( byte[] block, int length, int[] position, int prefix ) throws Http2Exception
+	{
+		int mask = ( 1 << prefix ) - 1;
+		int value = block[ position[ 0 ]++ ] & mask;
+
+		if ( value < mask )
+		{
+			return value;
+		}
+
+		int shift = 0;
+		while ( true )
+		{
+			if ( position[ 0 ] >= length || shift > 21 )
+			{
+				throw new Http2Exception( Http2Exception.COMPRESSION_ERROR, "Invalid integer in header block" );
+			}
+
+			int b = block[ position[ 0 ]++ ] & 0xff;
+			value += ( b & 0x7f ) << shift;
+			shift += 7;
+
+			if ( ( b & 0x80 ) == 0 )
+			{
+				return value;
+			}
+		}
+	}
+}
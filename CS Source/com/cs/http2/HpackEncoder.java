@@ -0,0 +1,137 @@
+package com.cs.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes HPACK header blocks sent to the client.
+ * <br><br>
+ * Headers that repeat across responses, ie. server or content-type, are added to
+ * the dynamic table so later responses only send their index. Headers that change
+ * with every response are sent as literals without indexing so they do not push
+ * the repeating ones out of the table.
+ *
+ * @see RFC 7541
+ */
+class HpackEncoder
+{
+	// Our preferred dynamic table size, used unless the client allows less
+	private static final int DEFAULT_TABLE_SIZE = 4096;
+
+	private final HpackTable table = new HpackTable( DEFAULT_TABLE_SIZE );
+	// Set when the client changed the table size, the change is signalled at the start of the next block
+	private boolean tableSizeChanged = false;
+
+	/**
+	 * Applies the SETTINGS_HEADER_TABLE_SIZE of the client.
+	 */
+	void setMaxTableSize( int maxSize )
+	{
+		int size = Math.min( maxSize, DEFAULT_TABLE_SIZE );
+		if ( size != table.getMaxSize() )
+		{
+			table.setMaxSize( size );
+			tableSizeChanged = true;
+		}
+	}
+
+	/**
+	 * Starts a new header block.
+	 */
+	void beginBlock( ByteArrayOutputStream out )
+	{
+		if ( tableSizeChanged )
+		{
+			writeInteger( out, 0x20, 5, table.getMaxSize() );
+			tableSizeChanged = false;
+		}
+	}
+
+	/**
+	 * Appends a header to the current block.
+	 *
+	 * @param name Lower case header name.
+	 * @param value Header value.
+	 */
+	void encode( ByteArrayOutputStream out, String name, String value )
+	{
+		int index = table.find( name, value );
+
+		if ( index > 0 )
+		{
+			writeInteger( out, 0x80, 7, index );
+		}
+		else if ( isVolatile( name ) )
+		{
+			writeInteger( out, 0x00, 4, -index );
+			if ( index == 0 )
+			{
+				writeString( out, name );
+			}
+			writeString( out, value );
+		}
+		else
+		{
+			writeInteger( out, 0x40, 6, -index );
+			if ( index == 0 )
+			{
+				writeString( out, name );
+			}
+			writeString( out, value );
+			table.add( name, value );
+		}
+	}
+
+	/**
+	 * Returns true for headers whose value is expected to differ between responses.
+	 */
+	private static boolean isVolatile( String name )
+	{
+		return name.equals( "content-length" ) || name.equals( "date" ) || name.equals( "etag" ) || name.equals( "last-modified" )
+				|| name.equals( "set-cookie" ) || name.equals( "location" ) || name.equals( "x-response-time" )
+				|| name.equals( "server-timing" );
+	}
+
+	private static void writeString( ByteArrayOutputStream out, String value )
+	{
+		byte[] data = value.getBytes( StandardCharsets.ISO_8859_1 );
+		int huffmanLength = Huffman.encodedLength( data );
+
+		if ( huffmanLength < data.length )
+		{
+			writeInteger( out, 0x80, 7, huffmanLength );
+			Huffman.encode( data, out );
+		}
+		else
+		{
+			writeInteger( out, 0x00, 7, data.length );
+			out.write( data, 0, data.length );
+		}
+	}
+
+	/**
+	 * Writes an integer with an N-bit prefix.
+	 *
+	 * @see RFC 7541, Section 5.1
+	 */
+	private static void writeInteger( ByteArrayOutputStream out, int flags, int prefix, int value )
+	{
+		int mask = ( 1 << prefix ) - 1;
+
+		if ( value < mask )
+		{
+			out.write( flags | value );
+			return;
+		}
+
+		out.write( flags | mask );
+		value -= mask;
+
+		while ( value >= 0x80 )
+		{
+			out.write( ( value & 0x7f ) | 0x80 );
+			value >>>= 7;
+		}
+		out.write( value );
+	}
+}
@@ -0,0 +1,212 @@
+package com.cs.http2;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The HPACK index address space: the static table followed by a dynamic table.
+ * <br><br>
+ * Index 1 to 61 address the static table, higher indexes address the dynamic
+ * table with the most recently added entry first.
+ *
+ * @see RFC 7541, Section 2.3
+ */
+class HpackTable
+{
+	// Every entry takes the length of its name and value plus this overhead
+	private static final int ENTRY_OVERHEAD = 32;
+
+	static final String[][] STATIC_TABLE =
+	{
+		{ ":authority", "" },
+		{ ":method", "GET" },
+		{ ":method", "POST" },
+		{ ":path", "/" },
+		{ ":path", "/index.html" },
+		{ ":scheme", "http" },
+		{ ":scheme", "https" },
+		{ ":status", "200" },
+		{ ":status", "204" },
+		{ ":status", "206" },
+		{ ":status", "304" },
+		{ ":status", "400" },
+		{ ":status", "404" },
+		{ ":status", "500" },
+		{ "accept-charset", "" },
+		{ "accept-encoding", "gzip, deflate" },
+		{ "accept-language", "" },
+		{ "accept-ranges", "" },
+		{ "accept", "" },
+		{ "access-control-allow-origin", "" },
+		{ "age", "" },
+		{ "allow", "" },
+		{ "authorization", "" },
+		{ "cache-control", "" },
+		{ "content-disposition", "" },
+		{ "content-encoding", "" },
+		{ "content-language", "" },
+		{ "content-length", "" },
+		{ "content-location", "" },
+		{ "content-range", "" },
+		{ "content-type", "" },
+		{ "cookie", "" },
+		{ "date", "" },
+		{ "etag", "" },
+		{ "expect", "" },
+		{ "expires", "" },
+		{ "from", "" },
+		{ "host", "" },
+		{ "if-match", "" },
+		{ "if-modified-since", "" },
+		{ "if-none-match", "" },
+		{ "if-range", "" },
+		{ "if-unmodified-since", "" },
+		{ "last-modified", "" },
+		{ "link", "" },
+		{ "location", "" },
+		{ "max-forwards", "" },
+		{ "proxy-authenticate", "" },
+		{ "proxy-authorization", "" },
+		{ "range", "" },
+		{ "referer", "" },
+		{ "refresh", "" },
+		{ "retry-after", "" },
+		{ "server", "" },
+		{ "set-cookie", "" },
+		{ "strict-transport-security", "" },
+		{ "transfer-encoding", "" },
+		{ "user-agent", "" },
+		{ "vary", "" },
+		{ "via", "" },
+		{ "www-authenticate", "" }
+	};
+
+	// Static index of every name and of every name with a value
+	private static final Map< String, Integer > STATIC_NAMES = new HashMap< String, Integer >();
+	private static final Map< String, Integer > STATIC_FIELDS = new HashMap< String, Integer >();
+
+	static
+	{
+		for ( int i = STATIC_TABLE.length - 1; i >= 0; i-- )
+		{
+			STATIC_NAMES.put( STATIC_TABLE[ i ][ 0 ], i + 1 );
+			if ( STATIC_TABLE[ i ][ 1 ].isEmpty() == false )
+			{
+				STATIC_FIELDS.put( STATIC_TABLE[ i ][ 0 ] + '\0' + STATIC_TABLE[ i ][ 1 ], i + 1 );
+			}
+		}
+	}
+
+	// Newest entry first
+	private final ArrayDeque< String[] > entries = new ArrayDeque< String[] >();
+	private int size = 0;
+	private int maxSize;
+
+	HpackTable( int maxSize )
+	{
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the name and value at the given index.
+	 *
+	 * @throws Http2Exception If the index is not in use.
+	 */
+	String[] get( int index ) throws Http2Exception
+	{
+		if ( index >= 1 && index <= STATIC_TABLE.length )
+		{
+			return STATIC_TABLE[ index - 1 ];
+		}
+
+		int dynamicIndex = index - STATIC_TABLE.length - 1;
+		if ( index < 1 || dynamicIndex >= entries.size() )
+		{
+			throw new Http2Exception( Http2Exception.COMPRESSION_ERROR, "Invalid header index " + index );
+		}
+
+		Iterator< String[] > iterator = entries.iterator();
+		for ( int i = 0; i < dynamicIndex; i++ )
+		{
+			iterator.next();
+		}
+
+		return iterator.next();
+	}
+
+	/**
+	 * Finds a header in the table.
+	 *
+	 * @return The index of the name and value, or the negated index of the name only, or 0 if neither is known.
+	 */
+	int find( String name, String value )
+	{
+		Integer field = STATIC_FIELDS.get( name + '\0' + value );
+		if ( field != null )
+		{
+			return field;
+		}
+
+		int nameIndex = 0;
+		int index = STATIC_TABLE.length + 1;
+		for ( String[] entry : entries )
+		{
+			if ( entry[ 0 ].equals( name ) )
+			{
+				if ( entry[ 1 ].equals( value ) )
+				{
+					return index;
+				}
+				else if ( nameIndex == 0 )
+				{
+					nameIndex = index;
+				}
+			}
+			index++;
+		}
+
+		Integer staticName = STATIC_NAMES.get( name );
+		if ( staticName != null )
+		{
+			return -staticName;
+		}
+
+		return -nameIndex;
+	}
+
+	void add( String name, String value )
+	{
+		int entrySize = name.length() + value.length() + ENTRY_OVERHEAD;
+
+		// An entry larger than the table empties it and is not stored
+		evict( maxSize - entrySize );
+
+		if ( entrySize <= maxSize )
+		{
+			entries.addFirst( new String[] { name, value } );
+			size += entrySize;
+		}
+	}
+
+	void setMaxSize( int maxSize )
+	{
+		this.maxSize = maxSize;
+		evict( maxSize );
+	}
+
+	int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	private void evict( int targetSize )
+	{
+		while ( size > Math.max( targetSize, 0 ) && entries.isEmpty() == false )
+		{
+			String[] oldest = entries.removeLast();
+			size -= oldest[ 0 ].length() + oldest[ 1 ].length() + ENTRY_OVERHEAD;
+		}
+	}
+}
@@ -0,0 +1,949 @@
+package com.cs.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.cs.http.BasicHttpRequest;
+import com.cs.http.BasicHttpResponse;
+import com.cs.http.Http;
+import com.cs.http.HttpMethod;
+import com.cs.http.HttpStatusCode;
+import com.cs.http.HttpVersion;
+import com.cs.http.RequestPhase;
+import com.cs.interfaces.HttpResponse;
+import com.cs.interfaces.RequestHandler;
+import com.cs.logs.AccessLog;
+import com.cs.logs.Logger;
+import com.cs.metrics.Metrics;
+import com.cs.metrics.RequestParsedEvent;
+import com.cs.metrics.ResponseWrittenEvent;
+import com.cs.metrics.ServerEvents;
+
+/**
+ * The server side of a HTTP/2 connection.
+ * <br><br>
+ * The connection is push based: the transport hands it every received byte with
+ * {@link #onData(byte[], int, int)} and it writes frames through its
+ * {@link Output}. Every stream is answered by the {@link RequestHandler} on the
+ * given executor, so requests on one connection are processed concurrently and a
+ * slow response does not hold up the others. Response bodies are sent within the
+ * flow control windows of the client and continue when it opens them.
+ *
+ * @see RFC 7540
+ */
+public class Http2Connection
+{
+	/**
+	 * The request line of the client connection preface, which tells a HTTP/1.x parser
+	 * that the client speaks HTTP/2 with prior knowledge.
+	 */
+	public static final String PREFACE_LINE = "PRI * HTTP/2.0";
+	public static final String ALPN_PROTOCOL = "h2";
+
+	private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes( StandardCharsets.ISO_8859_1 );
+
+	private static final int FRAME_HEADER_LENGTH = 9;
+	private static final int DEFAULT_WINDOW_SIZE = 65535;
+	private static final int DEFAULT_FRAME_SIZE = 16384;
+	private static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+
+	private static final int MAX_CONCURRENT_STREAMS = 100;
+	private static final int MAX_HEADER_LIST_SIZE = 65536;
+	private static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+	private static final int DATA = 0x0;
+	private static final int HEADERS = 0x1;
+	private static final int PRIORITY = 0x2;
+	private static final int RST_STREAM = 0x3;
+	private static final int SETTINGS = 0x4;
+	private static final int PUSH_PROMISE = 0x5;
+	private static final int PING = 0x6;
+	private static final int GOAWAY = 0x7;
+	private static final int WINDOW_UPDATE = 0x8;
+	private static final int CONTINUATION = 0x9;
+
+	private static final int FLAG_END_STREAM = 0x1;
+	private static final int FLAG_ACK = 0x1;
+	private static final int FLAG_END_HEADERS = 0x4;
+	private static final int FLAG_PADDED = 0x8;
+	private static final int FLAG_PRIORITY = 0x20;
+
+	private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+	private static final int SETTINGS_ENABLE_PUSH = 0x2;
+	private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+	private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+	private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+	private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+	/**
+	 * Sends frames to the client. Implementations must keep the order of writes.
+	 */
+	public interface Output
+	{
+		/**
+		 * Sends the given bytes. The array is not modified afterwards.
+		 */
+		void write( byte[] data );
+
+		/**
+		 * Closes the connection after everything written so far has been sent.
+		 */
+		void close();
+
+		/**
+		 * Returns the address of the client or null if it is not known.
+		 */
+		SocketAddress getRemoteAddress();
+	}
+
+	private final Output OUTPUT;
+	private final RequestHandler HANDLER;
+	private final Executor EXECUTOR;
+
+	private final HpackDecoder decoder = new HpackDecoder( 4096, MAX_HEADER_LIST_SIZE );
+	private final HpackEncoder encoder = new HpackEncoder();
+	private final Map< Integer, Http2Stream > streams = new HashMap< Integer, Http2Stream >();
+
+	// Frames are collected here and handed to the transport in one write
+	private ByteArrayOutputStream output = new ByteArrayOutputStream( 1024 );
+
+	// Received bytes that do not form a complete frame yet
+	private byte[] input = new byte[ DEFAULT_FRAME_SIZE + FRAME_HEADER_LENGTH ];
+	private int inputLength = 0;
+	private int prefaceReceived = 0;
+
+	// Header block of the stream whose HEADERS frame is continued by CONTINUATION frames
+	private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+	private int headerBlockStream = 0;
+	private boolean headerBlockEndStream = false;
+
+	private int lastStreamId = 0;
+	private long connectionSendWindow = DEFAULT_WINDOW_SIZE;
+	private int initialSendWindow = DEFAULT_WINDOW_SIZE;
+	private int peerMaxFrameSize = DEFAULT_FRAME_SIZE;
+	private boolean goingAway = false;
+	private boolean closed = false;
+
+	/**
+	 * Creates the server side of a HTTP/2 connection.
+	 *
+	 * @param output Sends frames to the client.
+	 * @param handler Answers the requests.
+	 * @param executor Runs the handler for each stream.
+	 */
+	public Http2Connection( Output output, RequestHandler handler, Executor executor )
+	{
+		this.OUTPUT = output;
+		this.HANDLER = handler;
+		this.EXECUTOR = executor;
+	}
+
+	/**
+	 * Sends the server connection preface. Must be called before any data is passed to the connection.
+	 */
+	public synchronized void start()
+	{
+		ByteBuffer settings = ByteBuffer.allocate( 12 );
+		settings.putShort( ( short ) SETTINGS_MAX_CONCURRENT_STREAMS ).putInt( MAX_CONCURRENT_STREAMS );
+		settings.putShort( ( short ) SETTINGS_MAX_HEADER_LIST_SIZE ).putInt( MAX_HEADER_LIST_SIZE );
+
+		writeFrame( SETTINGS, 0, 0, settings.array(), 0, settings.capacity() );
+		flush();
+	}
+
+	/**
+	 * Processes bytes received from the client.
+	 *
+	 * @param data Array holding the bytes.
+	 * @param offset Start of the bytes in the array.
+	 * @param length Number of bytes.
+	 */
+	public synchronized void onData( byte[] data, int offset, int length )
+	{
+		if ( closed )
+		{
+			return;
+		}
+
+		try
+		{
+			// The client connection preface precedes all frames
+			while ( prefaceReceived < PREFACE.length && length > 0 )
+			{
+				if ( data[ offset ] != PREFACE[ prefaceReceived ] )
+				{
+					throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Invalid connection preface" );
+				}
+				prefaceReceived++;
+				offset++;
+				length--;
+			}
+
+			if ( inputLength + length > input.length )
+			{
+				input = Arrays.copyOf( input, Math.max( input.length * 2, inputLength + length ) );
+			}
+			System.arraycopy( data, offset, input, inputLength, length );
+			inputLength += length;
+
+			int position = 0;
+			while ( closed == false && inputLength - position >= FRAME_HEADER_LENGTH )
+			{
+				int frameLength = ( ( input[ position ] & 0xff ) << 16 ) | ( ( input[ position + 1 ] & 0xff ) << 8 ) | ( input[ position + 2 ] & 0xff );
+				if ( frameLength > DEFAULT_FRAME_SIZE )
+				{
+					throw new Http2Exception( Http2Exception.FRAME_SIZE_ERROR, "Frame of " + frameLength + " bytes exceeds the maximum frame size" );
+				}
+				else if ( inputLength - position < FRAME_HEADER_LENGTH + frameLength )
+				{
+					break;
+				}
+
+				int type = input[ position + 3 ] & 0xff;
+				int flags = input[ position + 4 ] & 0xff;
+				int streamId = ByteBuffer.wrap( input, position + 5, 4 ).getInt() & 0x7fffffff;
+
+				processFrame( type, flags, streamId, position + FRAME_HEADER_LENGTH, frameLength );
+				position += FRAME_HEADER_LENGTH + frameLength;
+			}
+
+			System.arraycopy( input, position, input, 0, inputLength - position );
+			inputLength -= position;
+		}
+		catch ( Http2Exception e )
+		{
+			connectionError( e );
+		}
+
+		flush();
+	}
+
+	/**
+	 * Returns true while requests are being processed or responses are being sent.
+	 */
+	public synchronized boolean hasActiveStreams()
+	{
+		return streams.isEmpty() == false;
+	}
+
+	public synchronized boolean isClosed()
+	{
+		return closed;
+	}
+
+	private void processFrame( int type, int flags, int streamId, int offset, int length ) throws Http2Exception
+	{
+		if ( headerBlockStream != 0 && ( type != CONTINUATION || streamId != headerBlockStream ) )
+		{
+			throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Expected a CONTINUATION frame" );
+		}
+
+		switch ( type )
+		{
+			case DATA:
+				processData( flags, streamId, offset, length );
+				break;
+			case HEADERS:
+				processHeaders( flags, streamId, offset, length );
+				break;
+			case CONTINUATION:
+				if ( headerBlockStream == 0 )
+				{
+					throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Unexpected CONTINUATION frame" );
+				}
+				appendHeaderBlock( flags, input, offset, length );
+				break;
+			case PRIORITY:
+				if ( length != 5 )
+				{
+					throw new Http2Exception( Http2Exception.FRAME_SIZE_ERROR, "Invalid PRIORITY frame" );
+				}
+				break;
+			case RST_STREAM:
+				processReset( streamId, length );
+				break;
+			case SETTINGS:
+				processSettings( flags, streamId, offset, length );
+				break;
+			case PING:
+				if ( length != 8 || streamId != 0 )
+				{
+					throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Invalid PING frame" );
+				}
+				if ( ( flags & FLAG_ACK ) == 0 )
+				{
+					writeFrame( PING, FLAG_ACK, 0, input, offset, length );
+				}
+				break;
+			case GOAWAY:
+				goingAway = true;
+				closeIfDone();
+				break;
+			case WINDOW_UPDATE:
+				processWindowUpdate( streamId, offset, length );
+				break;
+			case PUSH_PROMISE:
+				throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Clients must not push" );
+			default:
+				// Unknown frame types are ignored
+				break;
+		}
+	}
+
+	private void processHeaders( int flags, int streamId, int offset, int length ) throws Http2Exception
+	{
+		if ( streamId == 0 )
+		{
+			throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "HEADERS frame without a stream" );
+		}
+
+		int padding = 0;
+		if ( ( flags & FLAG_PADDED ) != 0 )
+		{
+			padding = input[ offset ] & 0xff;
+			offset++;
+			length--;
+		}
+		if ( ( flags & FLAG_PRIORITY ) != 0 )
+		{
+			offset += 5;
+			length -= 5;
+		}
+		if ( padding > length )
+		{
+			throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Invalid padding" );
+		}
+
+		headerBlock.reset();
+		headerBlockStream = streamId;
+		headerBlockEndStream = ( flags & FLAG_END_STREAM ) != 0;
+		appendHeaderBlock( flags, input, offset, length - padding );
+	}
+
+	private void appendHeaderBlock( int flags, byte[] data, int offset, int length ) throws Http2Exception
+	{
+		if ( headerBlock.size() + length > MAX_HEADER_LIST_SIZE )
+		{
+			throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Header block too large" );
+		}
+		headerBlock.write( data, offset, length );
+
+		if ( ( flags & FLAG_END_HEADERS ) != 0 )
+		{
+			int streamId = headerBlockStream;
+			headerBlockStream = 0;
+
+			// Decoded even if the stream is refused, the block may change the dynamic table
+			List< String[] > headers = decoder.decode( headerBlock.toByteArray(), headerBlock.size() );
+			headersReceived( streamId, headers, headerBlockEndStream );
+		}
+	}
+
+	private void headersReceived( int streamId, List< String[] > headers, boolean endStream ) throws Http2Exception
+	{
+		Http2Stream stream = streams.get( streamId );
+
+		if ( stream != null )
+		{
+			// Trailers, they must end the request and are not passed on
+			if ( endStream == false || stream.endStream )
+			{
+				throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Unexpected HEADERS frame on stream " + streamId );
+			}
+			stream.endStream = true;
+			dispatch( stream );
+			return;
+		}
+
+		if ( ( streamId & 1 ) == 0 || streamId <= lastStreamId )
+		{
+			throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Invalid stream identifier " + streamId );
+		}
+		lastStreamId = streamId;
+
+		if ( goingAway || streams.size() >= MAX_CONCURRENT_STREAMS )
+		{
+			resetStream( streamId, Http2Exception.REFUSED_STREAM );
+			return;
+		}
+
+		stream = new Http2Stream( streamId, initialSendWindow );
+		stream.headers = headers;
+		stream.endStream = endStream;
+		streams.put( streamId, stream );
+
+		if ( endStream )
+		{
+			dispatch( stream );
+		}
+	}
+
+	private void processData( int flags, int streamId, int offset, int length ) throws Http2Exception
+	{
+		if ( streamId == 0 )
+		{
+			throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "DATA frame without a stream" );
+		}
+
+		// Request bodies are buffered completely, so the windows are opened again right away
+		int frameLength = length;
+		if ( frameLength > 0 )
+		{
+			writeWindowUpdate( 0, frameLength );
+		}
+
+		int padding = 0;
+		if ( ( flags & FLAG_PADDED ) != 0 )
+		{
+			padding = ( length > 0 ) ? input[ offset ] & 0xff : 0;
+			offset++;
+			length--;
+		}
+		if ( length < 0 || padding > length )
+		{
+			throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Invalid padding" );
+		}
+
+		Http2Stream stream = streams.get( streamId );
+		if ( stream == null || stream.endStream )
+		{
+			if ( streamId > lastStreamId )
+			{
+				throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "DATA frame on idle stream " + streamId );
+			}
+			resetStream( streamId, Http2Exception.STREAM_CLOSED );
+			return;
+		}
+
+		length -= padding;
+		if ( stream.body == null )
+		{
+			stream.body = new ByteArrayOutputStream( Math.max( length, 256 ) );
+		}
+
+		if ( stream.body.size() + length > MAX_BODY_SIZE )
+		{
+			streams.remove( streamId );
+			resetStream( streamId, Http2Exception.REFUSED_STREAM );
+			return;
+		}
+
+		stream.body.write( input, offset, length );
+		if ( frameLength > 0 && ( flags & FLAG_END_STREAM ) == 0 )
+		{
+			writeWindowUpdate( streamId, frameLength );
+		}
+
+		if ( ( flags & FLAG_END_STREAM ) != 0 )
+		{
+			stream.endStream = true;
+			dispatch( stream );
+		}
+	}
+
+	private void processReset( int streamId, int length ) throws Http2Exception
+	{
+		if ( length != 4 || streamId == 0 )
+		{
+			throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Invalid RST_STREAM frame" );
+		}
+
+		Http2Stream stream = streams.remove( streamId );
+		if ( stream != null )
+		{
+			stream.reset = true;
+			stream.pending = null;
+		}
+
+		closeIfDone();
+	}
+
+	private void processSettings( int flags, int streamId, int offset, int length ) throws Http2Exception
+	{
+		if ( streamId != 0 || length % 6 != 0 )
+		{
+			throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Invalid SETTINGS frame" );
+		}
+		else if ( ( flags & FLAG_ACK ) != 0 )
+		{
+			return;
+		}
+
+		ByteBuffer settings = ByteBuffer.wrap( input, offset, length );
+		while ( settings.hasRemaining() )
+		{
+			int id = settings.getShort() & 0xffff;
+			long value = settings.getInt() & 0xffffffffL;
+
+			switch ( id )
+			{
+				case SETTINGS_HEADER_TABLE_SIZE:
+					encoder.setMaxTableSize( ( int ) Math.min( value, Integer.MAX_VALUE ) );
+					break;
+				case SETTINGS_ENABLE_PUSH:
+					if ( value > 1 )
+					{
+						throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Invalid SETTINGS_ENABLE_PUSH" );
+					}
+					break;
+				case SETTINGS_INITIAL_WINDOW_SIZE:
+					if ( value > MAX_WINDOW_SIZE )
+					{
+						throw new Http2Exception( Http2Exception.FLOW_CONTROL_ERROR, "Invalid SETTINGS_INITIAL_WINDOW_SIZE" );
+					}
+
+					// The change applies to the windows of all open streams
+					int delta = ( int ) value - initialSendWindow;
+					initialSendWindow = ( int ) value;
+					for ( Http2Stream stream : streams.values() )
+					{
+						stream.sendWindow += delta;
+					}
+					break;
+				case SETTINGS_MAX_FRAME_SIZE:
+					if ( value < DEFAULT_FRAME_SIZE || value > 16777215 )
+					{
+						throw new Http2Exception( Http2Exception.PROTOCOL_ERROR, "Invalid SETTINGS_MAX_FRAME_SIZE" );
+					}
+					peerMaxFrameSize = ( int ) value;
+					break;
+				default:
+					// SETTINGS_MAX_CONCURRENT_STREAMS and SETTINGS_MAX_HEADER_LIST_SIZE only matter for pushes and requests we do not make
+					break;
+			}
+		}
+
+		writeFrame( SETTINGS, FLAG_ACK, 0, null, 0, 0 );
+		flushAllStreams();
+	}
+
+	private void processWindowUpdate( int streamId, int offset, int length ) throws Http2Exception
+	{
+		if ( length != 4 )
+		{
+			throw new Http2Exception( Http2Exception.FRAME_SIZE_ERROR, "Invalid WINDOW_UPDATE frame" );
+		}
+
+		int increment = ByteBuffer.wrap( input, offset, 4 ).getInt() & 0x7fffffff;
+
+		if ( streamId == 0 )
+		{
+			if ( increment == 0 || connectionSendWindow + increment > MAX_WINDOW_SIZE )
+			{
+				throw new Http2Exception( Http2Exception.FLOW_CONTROL_ERROR, "Invalid connection window update" );
+			}
+			connectionSendWindow += increment;
+			flushAllStreams();
+		}
+		else
+		{
+			Http2Stream stream = streams.get( streamId );
+			if ( stream == null )
+			{
+				return;
+			}
+
+			if ( increment == 0 || stream.sendWindow + increment > MAX_WINDOW_SIZE )
+			{
+				streams.remove( streamId );
+				resetStream( streamId, Http2Exception.FLOW_CONTROL_ERROR );
+				return;
+			}
+			stream.sendWindow += increment;
+			flushStream( stream );
+		}
+	}
+
+	/**
+	 * Hands a complete request to the executor.
+	 */
+	private void dispatch( final Http2Stream stream )
+	{
+		RequestParsedEvent parsedEvent = ServerEvents.beginRequestParsed();
+		long parseStart = System.nanoTime();
+		final BasicHttpRequest request = createRequest( stream );
+
+		if ( request == null )
+		{
+			streams.remove( stream.id );
+			resetStream( stream.id, Http2Exception.PROTOCOL_ERROR );
+			return;
+		}
+
+		final long dispatchTime = System.nanoTime();
+		request.getTiming().add( RequestPhase.PARSE, dispatchTime - parseStart );
+		ServerEvents.commitRequestParsed( parsedEvent, request );
+
+		try
+		{
+			EXECUTOR.execute( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					request.getTiming().add( RequestPhase.WAIT, System.nanoTime() - dispatchTime );
+					HttpResponse response;
+
+					if ( request.getHttpMethod() == null )
+					{
+						response = createErrorResponse( HttpStatusCode.NOT_IMPLEMENTED );
+					}
+					else
+					{
+						try
+						{
+							response = HANDLER.handleRequest( request );
+						}
+						catch ( RuntimeException e )
+						{
+							Logger.writeLog( "ERROR", "Error while processing " + request.getRequestUri() + ": " + e.toString() );
+							response = createErrorResponse( HttpStatusCode.INTERNAL_SERVER_ERROR );
+						}
+					}
+
+					ResponseWrittenEvent writtenEvent = ServerEvents.beginResponseWritten();
+					long sendStart = System.nanoTime();
+					sendResponse( stream, response );
+					request.getTiming().add( RequestPhase.SEND, System.nanoTime() - sendStart );
+
+					int bodyLength = ( response.getEntity() == null ) ? 0 : response.getEntityLength();
+					ServerEvents.commitResponseWritten( writtenEvent, request, response.getStatusCode().getCode(), bodyLength, false );
+					AccessLog.record( request, response.getStatusCode().getCode(), bodyLength, OUTPUT.getRemoteAddress() );
+					Metrics.recordRequest( request, response.getStatusCode().getCode() );
+				}
+			} );
+		}
+		catch ( RejectedExecutionException e )
+		{
+			streams.remove( stream.id );
+			resetStream( stream.id, Http2Exception.REFUSED_STREAM );
+		}
+	}
+
+	/**
+	 * Converts the received headers to a request.
+	 *
+	 * @return The request or null if the pseudo headers are invalid. The method is null if it is not supported.
+	 */
+	private BasicHttpRequest createRequest( Http2Stream stream )
+	{
+		String method = null;
+		String path = null;
+		String authority = null;
+
+		// Header names are lower case in HTTP/2, routes and filters look them up in their usual spelling
+		Map< String, String > headers = new TreeMap< String, String >( String.CASE_INSENSITIVE_ORDER );
+
+		for ( String[] header : stream.headers )
+		{
+			String name = header[ 0 ];
+
+			if ( name.startsWith( ":" ) )
+			{
+				if ( name.equals( ":method" ) )
+				{
+					method = header[ 1 ];
+				}
+				else if ( name.equals( ":path" ) )
+				{
+					path = header[ 1 ];
+				}
+				else if ( name.equals( ":authority" ) )
+				{
+					authority = header[ 1 ];
+				}
+			}
+			else if ( headers.containsKey( name ) )
+			{
+				// Repeated headers are folded, cookies may be split into several fields in HTTP/2
+				String separator = name.equals( "cookie" ) ? "; " : ", ";
+				headers.put( name, headers.get( name ) + separator + header[ 1 ] );
+			}
+			else
+			{
+				headers.put( name, header[ 1 ] );
+			}
+		}
+
+		if ( method == null || path == null || path.isEmpty() )
+		{
+			return null;
+		}
+
+		if ( authority != null && headers.containsKey( "host" ) == false )
+		{
+			headers.put( "Host", authority );
+		}
+
+		BasicHttpRequest request = new BasicHttpRequest();
+		request.setStartTime( stream.startTime );
+		request.setVersion( HttpVersion.VERSION_2_0 );
+		request.setRequestUri( path );
+		request.setHeaders( headers );
+		request.setEntity( ( stream.body == null ) ? null : stream.body.toByteArray() );
+
+		try
+		{
+			request.setMethod( HttpMethod.valueOf( method ) );
+		}
+		catch ( IllegalArgumentException e )
+		{
+			request.setMethod( null );
+		}
+
+		stream.headers = null;
+		stream.body = null;
+		return request;
+	}
+
+	private static HttpResponse createErrorResponse( HttpStatusCode statusCode )
+	{
+		BasicHttpResponse response = new BasicHttpResponse();
+		response.setHeaders( new HashMap< String, String >() );
+		response.setStatusCode( statusCode );
+		return response;
+	}
+
+	/**
+	 * Sends the response of a stream. Called by the executor.
+	 */
+	private synchronized void sendResponse( Http2Stream stream, HttpResponse response )
+	{
+		if ( closed || stream.reset )
+		{
+			return;
+		}
+
+		int bodyLength = ( response.getEntity() == null ) ? 0 : response.getEntityLength();
+
+		ByteArrayOutputStream block = new ByteArrayOutputStream( 256 );
+		encoder.beginBlock( block );
+		encoder.encode( block, ":status", String.valueOf( response.getStatusCode().getCode() ) );
+
+		if ( response.getHeaders() != null )
+		{
+			for ( Map.Entry< String, String > header : response.getHeaders().entrySet() )
+			{
+				encodeHeader( block, header.getKey(), header.getValue() );
+			}
+		}
+
+		// Pre-encoded header lines, ie. from the CORS policy
+		for ( int i = 0; i < response.getHeaderBlockCount(); i++ )
+		{
+			String lines = new String( response.getHeaderBlock( i ), StandardCharsets.ISO_8859_1 );
+			for ( String line : lines.split( Http.CRLF ) )
+			{
+				int colon = line.indexOf( ':' );
+				if ( colon > 0 )
+				{
+					encodeHeader( block, line.substring( 0, colon ), line.substring( colon + 1 ).trim() );
+				}
+			}
+		}
+
+		encoder.encode( block, "content-length", String.valueOf( bodyLength ) );
+		writeHeaderBlock( stream.id, block.toByteArray(), bodyLength == 0 );
+
+		if ( bodyLength == 0 )
+		{
+			closeStream( stream );
+		}
+		else
+		{
+			stream.pending = ByteBuffer.wrap( response.getEntity(), 0, bodyLength );
+			flushStream( stream );
+
+			if ( stream.pending != null )
+			{
+				// The entity may be a reused render buffer, keep a copy of what could not be sent yet
+				ByteBuffer copy = ByteBuffer.allocate( stream.pending.remaining() );
+				copy.put( stream.pending );
+				copy.flip();
+				stream.pending = copy;
+			}
+		}
+
+		flush();
+	}
+
+	private void encodeHeader( ByteArrayOutputStream block, String name, String value )
+	{
+		String lowerCaseName = name.toLowerCase();
+
+		// Connection specific headers are not allowed in HTTP/2, the length is sent separately
+		if ( lowerCaseName.equals( "connection" ) || lowerCaseName.equals( "keep-alive" ) || lowerCaseName.equals( "transfer-encoding" )
+				|| lowerCaseName.equals( "upgrade" ) || lowerCaseName.equals( "content-length" ) )
+		{
+			return;
+		}
+
+		encoder.encode( block, lowerCaseName, value );
+	}
+
+	/**
+	 * Sends as much of the pending body of a stream as the flow control windows allow.
+	 */
+	private void flushStream( Http2Stream stream )
+	{
+		ByteBuffer pending = stream.pending;
+		if ( pending == null )
+		{
+			return;
+		}
+
+		while ( pending.hasRemaining() && connectionSendWindow > 0 && stream.sendWindow > 0 )
+		{
+			int length = ( int ) Math.min( Math.min( pending.remaining(), peerMaxFrameSize ), Math.min( connectionSendWindow, stream.sendWindow ) );
+			boolean last = ( length == pending.remaining() );
+
+			writeFrame( DATA, last ? FLAG_END_STREAM : 0, stream.id, pending.array(), pending.arrayOffset() + pending.position(), length );
+			pending.position( pending.position() + length );
+			connectionSendWindow -= length;
+			stream.sendWindow -= length;
+		}
+
+		if ( pending.hasRemaining() == false )
+		{
+			stream.pending = null;
+			closeStream( stream );
+		}
+	}
+
+	private void flushAllStreams()
+	{
+		for ( Http2Stream stream : streams.values().toArray( new Http2Stream[ streams.size() ] ) )
+		{
+			if ( connectionSendWindow <= 0 )
+			{
+				break;
+			}
+			flushStream( stream );
+		}
+	}
+
+	private void closeStream( Http2Stream stream )
+	{
+		streams.remove( stream.id );
+		closeIfDone();
+	}
+
+	/**
+	 * Closes the connection once the client sent GOAWAY and all streams are answered.
+	 */
+	private void closeIfDone()
+	{
+		if ( goingAway && streams.isEmpty() && closed == false )
+		{
+			writeGoAway( Http2Exception.NO_ERROR );
+			closed = true;
+			flush();
+			OUTPUT.close();
+		}
+	}
+
+	private void connectionError( Http2Exception e )
+	{
+		if ( closed )
+		{
+			return;
+		}
+
+		Logger.writeLog( "WARNING", "HTTP/2 connection error: " + e.getMessage() );
+
+		writeGoAway( e.getErrorCode() );
+		closed = true;
+		flush();
+		OUTPUT.close();
+	}
+
+	private void writeGoAway( int errorCode )
+	{
+		ByteBuffer payload = ByteBuffer.allocate( 8 );
+		payload.putInt( lastStreamId ).putInt( errorCode );
+		writeFrame( GOAWAY, 0, 0, payload.array(), 0, 8 );
+	}
+
+	private void resetStream( int streamId, int errorCode )
+	{
+		ByteBuffer payload = ByteBuffer.allocate( 4 );
+		payload.putInt( errorCode );
+		writeFrame( RST_STREAM, 0, streamId, payload.array(), 0, 4 );
+	}
+
+	private void writeWindowUpdate( int streamId, int increment )
+	{
+		ByteBuffer payload = ByteBuffer.allocate( 4 );
+		payload.putInt( increment );
+		writeFrame( WINDOW_UPDATE, 0, streamId, payload.array(), 0, 4 );
+	}
+
+	/**
+	 * Writes a header block as a HEADERS frame followed by CONTINUATION frames if it does not fit in one frame.
+	 */
+	private void writeHeaderBlock( int streamId, byte[] block, boolean endStream )
+	{
+		int offset = 0;
+		int type = HEADERS;
+
+		do
+		{
+			int length = Math.min( block.length - offset, peerMaxFrameSize );
+			int flags = ( offset + length == block.length ) ? FLAG_END_HEADERS : 0;
+			if ( type == HEADERS && endStream )
+			{
+				flags |= FLAG_END_STREAM;
+			}
+
+			writeFrame( type, flags, streamId, block, offset, length );
+			offset += length;
+			type = CONTINUATION;
+		}
+		while ( offset < block.length );
+	}
+
+	private void writeFrame( int type, int flags, int streamId, byte[] payload, int offset, int length )
+	{
+		output.write( length >>> 16 );
+		output.write( length >>> 8 );
+		output.write( length );
+		output.write( type );
+		output.write( flags );
+		output.write( streamId >>> 24 );
+		output.write( streamId >>> 16 );
+		output.write( streamId >>> 8 );
+		output.write( streamId );
+
+		if ( length > 0 )
+		{
+			output.write( payload, offset, length );
+		}
+	}
+
+	private void flush()
+	{
+		if ( output.size() > 0 )
+		{
+			OUTPUT.write( output.toByteArray() );
+
+			// Large bodies are not kept around for the lifetime of the connection
+			if ( output.size() > 65536 )
+			{
+				output = new ByteArrayOutputStream( 1024 );
+			}
+			else
+			{
+				output.reset();
+			}
+		}
+	}
+}
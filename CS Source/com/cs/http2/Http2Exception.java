@@ -0,0 +1,36 @@
+package com.cs.http2;
+
+import java.io.IOException;
+
+/**
+ * A violation of the HTTP/2 protocol that ends the connection.
+ *
+ * @see RFC 7540, Section 7
+ */
+class Http2Exception extends IOException
+{
+	private static final long serialVersionUID = 1L;
+
+	static final int NO_ERROR = 0x0;
+	static final int PROTOCOL_ERROR = 0x1;
+	static final int INTERNAL_ERROR = 0x2;
+	static final int FLOW_CONTROL_ERROR = 0x3;
+	static final int STREAM_CLOSED = 0x5;
+	static final int FRAME_SIZE_ERROR = 0x6;
+	static final int REFUSED_STREAM = 0x7;
+	static final int CANCEL = 0x8;
+	static final int COMPRESSION_ERROR = 0x9;
+
+	private final int errorCode;
+
+	Http2Exception( int errorCode, String message )
+	{
+		super( message );
+		this.errorCode = errorCode;
+	}
+
+	int getErrorCode()
+	{
+		return errorCode;
+	}
+}
@@ -0,0 +1,31 @@
+package com.cs.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The state of one request and response exchange on a {@link Http2Connection}.
+ * Only accessed while holding the lock of the connection.
+ */
+class Http2Stream
+{
+	final int id;
+	final long startTime = System.nanoTime();
+
+	List< String[] > headers;
+	ByteArrayOutputStream body;
+	boolean endStream = false;
+
+	// Bytes the client is willing to receive on this stream
+	long sendWindow;
+	// Response body that did not fit in the flow control windows yet
+	ByteBuffer pending;
+	boolean reset = false;
+
+	Http2Stream( int id, long sendWindow )
+	{
+		this.id = id;
+		this.sendWindow = sendWindow;
+	}
+}
@@ -0,0 +1,44 @@
+package com.cs.interfaces;
+
+import com.cs.http.BasicHttpResponse;
+
+/**
+ * An interface for middleware that runs around every routed request.
+ * <br><br>
+ * Filters are composed into a {@link com.cs.filters.FilterChain} when the server
+ * starts. A single instance handles all requests, so implementations must be
+ * thread safe and should not keep per-request state in fields.
+ * <br><br>
+ * Filters run on every request, responses of cached routes included. The cache
+ * only holds what the route created, so headers added by filters are not shared
+ * between requests.
+ */
+public interface Filter
+{
+	/**
+	 * Called before the request is routed.
+	 * 
+	 * @param request The parsed request.
+	 * @param response The response the route will fill in.
+	 * @return false if the filter answered the request itself and the route must be skipped.
+	 */
+	boolean beforeRoute( HttpRequest request, BasicHttpResponse response );
+
+	/**
+	 * Called after the route has created the response.
+	 * 
+	 * @param request The parsed request.
+	 * @param response The response that will be sent.
+	 */
+	void afterRoute( HttpRequest request, BasicHttpResponse response );
+
+	/**
+	 * Called instead of {@link #afterRoute(HttpRequest, BasicHttpResponse)} when the route
+	 * or another filter threw an exception. The response status is already set to 500.
+	 * 
+	 * @param request The parsed request.
+	 * @param response The response that will be sent.
+	 * @param error The exception that was thrown.
+	 */
+	void onError( HttpRequest request, BasicHttpResponse response, Exception error );
+}
@@ -24,4 +24,9 @@ public interface HttpMessage
 	 */
 	byte[] getEntity();
 
+	/**
+	 * Returns the number of valid bytes in the entity array.
+	 */
+	int getEntityLength();
+
 }
@@ -1,6 +1,7 @@
 package com.cs.interfaces;
 
 import com.cs.http.HttpMethod;
+import com.cs.http.RequestTiming;
 
 /**
  * An interface for HTTP requests.
@@ -16,4 +17,14 @@ public interface HttpRequest extends HttpMessage
 	 * Returns the request URI of this request.
 	 */
 	String getRequestUri();
+
+	/**
+	 * Returns the value of {@link System#nanoTime()} when the request line was read.
+	 */
+	long getStartTime();
+
+	/**
+	 * Returns the time spent in the phases of this request so far.
+	 */
+	RequestTiming getTiming();
 }
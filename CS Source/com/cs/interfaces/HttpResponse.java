@@ -11,4 +11,15 @@ public interface HttpResponse extends HttpMessage
 	 * Returns the HTTP Status Code of this response.
 	 */
 	HttpStatusCode getStatusCode();
+
+	/**
+	 * Returns the number of pre-encoded header blocks.
+	 */
+	int getHeaderBlockCount();
+
+	/**
+	 * Returns a block of pre-encoded header lines that is sent after the headers map.
+	 * Every line in the block ends with a CRLF.
+	 */
+	byte[] getHeaderBlock( int index );
 }
@@ -0,0 +1,20 @@
+package com.cs.interfaces;
+
+/**
+ * An interface for components that turn a parsed request into a response without
+ * writing it anywhere.
+ * <br><br>
+ * Used by transports that frame responses themselves, ie. HTTP/2 where every
+ * request is a stream on a shared connection. Implementations are called from
+ * several threads at once.
+ */
+public interface RequestHandler
+{
+	/**
+	 * Answers a request, from the response cache if the route is cached.
+	 *
+	 * @param request The parsed request.
+	 * @return The response to send.
+	 */
+	HttpResponse handleRequest( HttpRequest request );
+}
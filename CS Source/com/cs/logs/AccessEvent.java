@@ -0,0 +1,17 @@
+package com.cs.logs;
+
+import java.net.SocketAddress;
+
+/**
+ * A request in the access log, as it is kept in the ring buffer.
+ */
+class AccessEvent
+{
+	long time;
+	String method;
+	String uri;
+	int status;
+	long bytes;
+	long duration;
+	SocketAddress client;
+}
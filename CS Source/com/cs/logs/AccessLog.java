@@ -0,0 +1,109 @@
+package com.cs.logs;
+
+import java.net.SocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.cs.interfaces.HttpRequest;
+import com.cs.main.Config;
+
+/**
+ * Records every answered request in the access log, when it is enabled in the config file.
+ * <br><br>
+ * Recording only fills in a preallocated event in a ring buffer, a background thread
+ * formats the events and writes them in batches. With a sample rate below 1 only that
+ * share of the requests is recorded, server errors are always recorded. If the thread
+ * falls a whole ring behind, requests are not recorded rather than wait for it.
+ */
+public class AccessLog
+{
+	private static volatile AsyncAppender< AccessEvent > appender;
+	private static final LongAdder DROPPED = new LongAdder();
+
+	/**
+	 * Records an answered request.
+	 * 
+	 * @param request The request.
+	 * @param status Status code of the response.
+	 * @param bytes Length of the response body.
+	 * @param client Address of the client, or null if it is not known.
+	 */
+	public static void record( HttpRequest request, int status, long bytes, SocketAddress client )
+	{
+		String method = ( request.getHttpMethod() == null ) ? null : request.getHttpMethod().name();
+		record( method, request.getRequestUri(), status, bytes, request.getStartTime(), client );
+	}
+
+	/**
+	 * Records an answered request.
+	 * 
+	 * @param method Method of the request.
+	 * @param uri Target of the request.
+	 * @param status Status code of the response.
+	 * @param bytes Length of the response body.
+	 * @param startTime Value of {@link System#nanoTime()} when the request was read.
+	 * @param client Address of the client, or null if it is not known.
+	 */
+	public static void record( String method, String uri, int status, long bytes, long startTime, SocketAddress client )
+	{
+		if ( Config.useAccessLog() == false || isSampled( status ) == false )
+		{
+			return;
+		}
+
+		long duration = System.nanoTime() - startTime;
+		AsyncAppender< AccessEvent > current = getAppender();
+		long sequence = current.tryClaim();
+
+		if ( sequence < 0 )
+		{
+			DROPPED.increment();
+			return;
+		}
+
+		AccessEvent event = current.get( sequence );
+		event.time = System.currentTimeMillis();
+		event.method = method;
+		event.uri = uri;
+		event.status = status;
+		event.bytes = bytes;
+		event.duration = duration;
+		event.client = client;
+
+		current.publish( sequence );
+	}
+
+	/**
+	 * Returns the number of requests that were not recorded because the access log fell behind.
+	 */
+	public static long getDroppedCount()
+	{
+		return DROPPED.sum();
+	}
+
+	private static boolean isSampled( int status )
+	{
+		double rate = Config.getAccessLogSampleRate();
+		return rate >= 1 || status >= 500 || ThreadLocalRandom.current().nextDouble() < rate;
+	}
+
+	private static AsyncAppender< AccessEvent > getAppender()
+	{
+		AsyncAppender< AccessEvent > current = appender;
+
+		if ( current == null )
+		{
+			synchronized ( AccessLog.class )
+			{
+				if ( appender == null )
+				{
+					appender = new AsyncAppender< AccessEvent >( "Access log", new AccessLogWriter(), Config.getAccessLogBufferSize() );
+				}
+
+				current = appender;
+			}
+		}
+
+		return current;
+	}
+}
@@ -0,0 +1,152 @@
+package com.cs.logs;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Writes requests to the access log as one JSON object per line, ie.
+ * <br><br>
+ * {"time":"2024-01-31T13:00:00.123Z","client":"127.0.0.1","method":"GET","uri":"/","status":200,"bytes":512,"durationMicros":830}
+ * <br><br>
+ * Times are in UTC, so lines of servers in different time zones can be merged.
+ * Not thread safe, only the thread of the access log calls it.
+ */
+class AccessLogWriter implements EventWriter< AccessEvent >
+{
+	private final static String PREFIX = "access-";
+
+	private final RollingLogFile FILE = new RollingLogFile( PREFIX, null );
+	private final SimpleDateFormat DATEFORMAT = new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss" );
+	private final StringBuilder LINE = new StringBuilder( 256 );
+
+	private long cachedSecond = -1;
+	private String cachedDate;
+
+	AccessLogWriter()
+	{
+		DATEFORMAT.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+	}
+
+	@Override
+	public AccessEvent createEvent()
+	{
+		return new AccessEvent();
+	}
+
+	@Override
+	public void write( AccessEvent event ) throws IOException
+	{
+		Writer writer = FILE.getWriter( event.time );
+		StringBuilder line = LINE;
+		line.setLength( 0 );
+
+		line.append( "{\"time\":\"" ).append( formatDate( event.time ) ).append( '.' );
+		appendMillis( line, event.time % 1000 );
+		line.append( "Z\",\"client\":" );
+		appendString( line, formatAddress( event.client ) );
+		line.append( ",\"method\":" );
+		appendString( line, event.method );
+		line.append( ",\"uri\":" );
+		appendString( line, event.uri );
+		line.append( ",\"status\":" ).append( event.status );
+		line.append( ",\"bytes\":" ).append( event.bytes );
+		line.append( ",\"durationMicros\":" ).append( event.duration / 1000 );
+		line.append( "}\n" );
+
+		writer.append( line );
+
+		event.method = null;
+		event.uri = null;
+		event.client = null;
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		FILE.flush();
+	}
+
+	@Override
+	public void close()
+	{
+		FILE.close();
+	}
+
+	/**
+	 * Formats the time again only once a second, the milliseconds are added to it.
+	 */
+	private String formatDate( long time )
+	{
+		long second = time / 1000;
+
+		if ( second != cachedSecond )
+		{
+			cachedDate = DATEFORMAT.format( new Date( time ) );
+			cachedSecond = second;
+		}
+
+		return cachedDate;
+	}
+
+	private static void appendMillis( StringBuilder line, long millis )
+	{
+		if ( millis < 100 )
+		{
+			line.append( '0' );
+		}
+		if ( millis < 10 )
+		{
+			line.append( '0' );
+		}
+		line.append( millis );
+	}
+
+	private static String formatAddress( SocketAddress address )
+	{
+		if ( address instanceof InetSocketAddress && ( ( InetSocketAddress ) address ).getAddress() != null )
+		{
+			return ( ( InetSocketAddress ) address ).getAddress().getHostAddress();
+		}
+
+		return ( address == null ) ? null : address.toString();
+	}
+
+	/**
+	 * Appends a JSON string, or null.
+	 */
+	private static void appendString( StringBuilder line, String value )
+	{
+		if ( value == null )
+		{
+			line.append( "null" );
+			return;
+		}
+
+		line.append( '"' );
+
+		for ( int i = 0; i < value.length(); i++ )
+		{
+			char c = value.charAt( i );
+
+			if ( c == '"' || c == '\\' )
+			{
+				line.append( '\\' ).append( c );
+			}
+			else if ( c < 0x20 )
+			{
+				line.append( String.format( "\\u%04x", ( int ) c ) );
+			}
+			else
+			{
+				line.append( c );
+			}
+		}
+
+		line.append( '"' );
+	}
+}
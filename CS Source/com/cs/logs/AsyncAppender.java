@@ -0,0 +1,159 @@
+package com.cs.logs;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes the events of a {@link LogRingBuffer} to a log file on a background thread.
+ * <br><br>
+ * Threads claim an event, fill it in and publish it. The background thread writes
+ * the events in batches of whatever is in the ring and flushes the file once a batch
+ * is done.
+ */
+class AsyncAppender< E > implements Runnable
+{
+	// Longest time the thread sleeps without being woken, in case a wake up is missed
+	private final static long MAX_IDLE = TimeUnit.MILLISECONDS.toNanos( 100 );
+	// Time a thread waits before trying a full ring again
+	private final static long FULL_WAIT = TimeUnit.MICROSECONDS.toNanos( 50 );
+	// Time given to the thread to write what is left when the process stops
+	private final static long STOP_TIMEOUT = 2000;
+
+	private final LogRingBuffer< E > RING;
+	private final EventWriter< E > WRITER;
+	private final Thread THREAD;
+
+	private volatile boolean sleeping = false;
+	private volatile boolean running = true;
+
+	/**
+	 * Creates an appender and starts its thread.
+	 *
+	 * @param name Name of the thread.
+	 * @param writer Writes the events, only called by the thread of the appender.
+	 * @param bufferSize Number of events the thread can fall behind.
+	 */
+	AsyncAppender( String name, EventWriter< E > writer, int bufferSize )
+	{
+		WRITER = writer;
+		RING = new LogRingBuffer< E >( bufferSize, writer );
+
+		THREAD = new Thread( this, name );
+		THREAD.setDaemon( true );
+		THREAD.start();
+
+		Runtime.getRuntime().addShutdownHook( new Thread( name + " shutdown" )
+		{
+			@Override
+			public void run()
+			{
+				AsyncAppender.this.stop();
+			}
+		} );
+	}
+
+	/**
+	 * Claims an event, waiting for room if the ring is full. Events are never lost
+	 * this way, the ring only fills up when the disk can not keep up anyway.
+	 *
+	 * @return The sequence of the event.
+	 */
+	long claim()
+	{
+		long sequence;
+
+		while ( ( sequence = RING.claim() ) < 0 )
+		{
+			LockSupport.unpark( THREAD );
+			LockSupport.parkNanos( FULL_WAIT );
+		}
+
+		return sequence;
+	}
+
+	/**
+	 * Claims an event if there is room.
+	 *
+	 * @return The sequence of the event, or -1 if the ring is full.
+	 */
+	long tryClaim()
+	{
+		return RING.claim();
+	}
+
+	/**
+	 * Returns the event of a claimed sequence to fill in.
+	 */
+	E get( long sequence )
+	{
+		return RING.get( sequence );
+	}
+
+	/**
+	 * Hands a filled in event to the background thread.
+	 */
+	void publish( long sequence )
+	{
+		RING.publish( sequence );
+
+		if ( sleeping )
+		{
+			LockSupport.unpark( THREAD );
+		}
+	}
+
+	/**
+	 * Writes the events still in the ring and closes the file.
+	 */
+	void stop()
+	{
+		running = false;
+		LockSupport.unpark( THREAD );
+
+		try
+		{
+			THREAD.join( STOP_TIMEOUT );
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		try
+		{
+			while ( running || RING.isEmpty() == false )
+			{
+				if ( RING.drain( WRITER ) > 0 )
+				{
+					// More events may have come in while the batch was written
+					continue;
+				}
+
+				WRITER.flush();
+
+				// Writers check the flag after publishing, the ring is checked again after setting it
+				sleeping = true;
+				if ( running && RING.isEmpty() )
+				{
+					LockSupport.parkNanos( this, MAX_IDLE );
+				}
+				sleeping = false;
+			}
+		}
+		catch ( IOException e )
+		{
+			System.out.println( "ERROR: IO Exception." );
+			System.out.println( "\t" + e.getMessage() );
+			System.exit( 2 );
+		}
+		finally
+		{
+			WRITER.close();
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package com.cs.logs;
+
+/**
+ * A captured request, as it is kept in the ring buffer.
+ */
+class CaptureEvent
+{
+	byte[] request;
+	long offset;
+	int status;
+	long bytes;
+}
@@ -0,0 +1,95 @@
+package com.cs.logs;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the requests of a file written by the {@link TrafficCapture}.
+ * <br><br>
+ * A capture that is still being written, or whose server was killed, ends with a
+ * partly written request. It is read as the end of the capture.
+ */
+public class CaptureReader implements Closeable
+{
+	private final static int BUFFER_SIZE = 64 * 1024;
+
+	private final DataInputStream IN;
+	private final long STARTMILLIS;
+
+	/**
+	 * Opens a capture file and reads its header.
+	 *
+	 * @param file The capture file.
+	 * @throws IOException If the file can not be read or is not a capture of this version.
+	 */
+	public CaptureReader( File file ) throws IOException
+	{
+		IN = new DataInputStream( new BufferedInputStream( new GZIPInputStream( new FileInputStream( file ), BUFFER_SIZE ), BUFFER_SIZE ) );
+
+		try
+		{
+			if ( IN.readInt() != TrafficCapture.MAGIC )
+			{
+				throw new IOException( file + " is not a capture file" );
+			}
+
+			short version = IN.readShort();
+
+			if ( version != TrafficCapture.VERSION )
+			{
+				throw new IOException( file + " has version " + version + ", only version " + TrafficCapture.VERSION + " can be read" );
+			}
+
+			STARTMILLIS = IN.readLong();
+		}
+		catch ( IOException e )
+		{
+			IN.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the time the capture started in milliseconds since the epoch.
+	 */
+	public long getStartMillis()
+	{
+		return STARTMILLIS;
+	}
+
+	/**
+	 * Reads the next request.
+	 *
+	 * @return The request, or null at the end of the capture.
+	 * @throws IOException If the file can not be read.
+	 */
+	public CapturedRequest read() throws IOException
+	{
+		try
+		{
+			long offset = IN.readLong();
+			int status = IN.readUnsignedShort();
+			long bytes = IN.readLong();
+			byte[] request = new byte[ IN.readInt() ];
+			IN.readFully( request );
+
+			return new CapturedRequest( offset, request, status, bytes );
+		}
+		catch ( EOFException e )
+		{
+			return null;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		IN.close();
+	}
+}
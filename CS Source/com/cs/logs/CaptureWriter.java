@@ -0,0 +1,267 @@
+package com.cs.logs;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+import com.cs.main.Config;
+
+/**
+ * Writes captured requests to a "capture-" file in the log folder, in the format
+ * described by {@link TrafficCapture}.
+ * <br><br>
+ * The values of the redacted headers are replaced before a request is written, and
+ * its body when bodies are not captured. Every flush of a batch is a sync flush of
+ * the gzip stream, so a capture can be replayed while the server is still running.
+ * Not thread safe, only the thread of the capture calls it.
+ */
+class CaptureWriter implements EventWriter< CaptureEvent >
+{
+	private final static String PREFIX = "capture-";
+	private final static String EXTENSION = ".cap.gz";
+	private final static int BUFFER_SIZE = 64 * 1024;
+	// Offset, status, body length and request length written before every request
+	private final static int RECORD_HEADER_SIZE = 8 + 2 + 8 + 4;
+	private final static byte[] REDACTED = ": redacted\r\n".getBytes( StandardCharsets.ISO_8859_1 );
+
+	private final long STARTMILLIS;
+	private final String[] REDACTEDHEADERS = Config.getCaptureRedactedHeaders();
+	private final boolean BODIES = Config.captureBodies();
+	private final long MAXSIZE = Config.getCaptureMaxSize();
+	private final ByteArrayOutputStream REQUEST = new ByteArrayOutputStream( 4096 );
+
+	private DataOutputStream out;
+	private long size;
+	private boolean stopped = false;
+
+	/**
+	 * @param startMillis Time the arrival times of the requests count from.
+	 */
+	CaptureWriter( long startMillis )
+	{
+		this.STARTMILLIS = startMillis;
+	}
+
+	@Override
+	public CaptureEvent createEvent()
+	{
+		return new CaptureEvent();
+	}
+
+	@Override
+	public void write( CaptureEvent event )
+	{
+		byte[] request = event.request;
+		event.request = null;
+
+		if ( stopped )
+		{
+			return;
+		}
+
+		try
+		{
+			if ( out == null )
+			{
+				open();
+			}
+
+			REQUEST.reset();
+			redact( request );
+
+			out.writeLong( event.offset );
+			out.writeShort( event.status );
+			out.writeLong( event.bytes );
+			out.writeInt( REQUEST.size() );
+			REQUEST.writeTo( out );
+
+			size += RECORD_HEADER_SIZE + REQUEST.size();
+
+			if ( size >= MAXSIZE )
+			{
+				Logger.writeLog( "WARNING", "Traffic capture stopped, it reached its maximum size of " + MAXSIZE + " bytes" );
+				stop();
+			}
+		}
+		catch ( IOException e )
+		{
+			// A broken capture must not stop the server like a broken log does
+			Logger.writeLog( "ERROR", "Traffic capture stopped, the file could not be written: " + e.getMessage() );
+			stop();
+		}
+	}
+
+	@Override
+	public void flush()
+	{
+		if ( out != null )
+		{
+			try
+			{
+				out.flush();
+			}
+			catch ( IOException e )
+			{
+				Logger.writeLog( "ERROR", "Traffic capture stopped, the file could not be written: " + e.getMessage() );
+				stop();
+			}
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		if ( out != null )
+		{
+			try
+			{
+				out.close();
+			}
+			catch ( IOException e )
+			{
+				// Nothing is written after this
+			}
+
+			out = null;
+		}
+	}
+
+	private void open() throws IOException
+	{
+		String stamp = new SimpleDateFormat( Config.getLogDateFormat() ).format( new Date( STARTMILLIS ) );
+		File file = new File( Config.getLogPath(), PREFIX + stamp + EXTENSION );
+
+		out = new DataOutputStream( new BufferedOutputStream( new GZIPOutputStream( new FileOutputStream( file ), BUFFER_SIZE, true ), BUFFER_SIZE ) );
+		out.writeInt( TrafficCapture.MAGIC );
+		out.writeShort( TrafficCapture.VERSION );
+		out.writeLong( STARTMILLIS );
+
+		Logger.writeLog( "LOG", "Capturing requests to " + file.getPath() );
+	}
+
+	private void stop()
+	{
+		stopped = true;
+		TrafficCapture.stop();
+		close();
+	}
+
+	/**
+	 * Copies a request into the request buffer, with the values of the redacted headers and, if needed, the body replaced.
+	 */
+	private void redact( byte[] request )
+	{
+		int headerEnd = indexOfHeaderEnd( request );
+
+		if ( headerEnd < 0 )
+		{
+			REQUEST.write( request, 0, request.length );
+			return;
+		}
+
+		// The request line is kept, the header lines follow it
+		int lineStart = nextLine( request, 0 );
+		REQUEST.write( request, 0, lineStart );
+
+		while ( lineStart < headerEnd )
+		{
+			int lineEnd = nextLine( request, lineStart );
+
+			if ( isRedacted( request, lineStart, lineEnd ) )
+			{
+				int colon = indexOf( request, lineStart, lineEnd, ( byte ) ':' );
+				REQUEST.write( request, lineStart, colon - lineStart );
+				REQUEST.write( REDACTED, 0, REDACTED.length );
+			}
+			else
+			{
+				REQUEST.write( request, lineStart, lineEnd - lineStart );
+			}
+
+			lineStart = lineEnd;
+		}
+
+		// The empty line that ends the headers, then the body
+		REQUEST.write( '\r' );
+		REQUEST.write( '\n' );
+
+		if ( BODIES )
+		{
+			REQUEST.write( request, headerEnd + 2, request.length - headerEnd - 2 );
+		}
+		else
+		{
+			for ( int i = headerEnd + 2; i < request.length; i++ )
+			{
+				REQUEST.write( 'x' );
+			}
+		}
+	}
+
+	private boolean isRedacted( byte[] request, int lineStart, int lineEnd )
+	{
+		int colon = indexOf( request, lineStart, lineEnd, ( byte ) ':' );
+
+		if ( colon < 0 )
+		{
+			return false;
+		}
+
+		String name = new String( request, lineStart, colon - lineStart, StandardCharsets.ISO_8859_1 ).trim();
+
+		for ( String header : REDACTEDHEADERS )
+		{
+			if ( header.equalsIgnoreCase( name ) )
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the index of the "\r\n" that ends the headers, the one of the empty line.
+	 */
+	private static int indexOfHeaderEnd( byte[] request )
+	{
+		for ( int i = 0; i + 3 < request.length; i++ )
+		{
+			if ( request[ i ] == '\r' && request[ i + 1 ] == '\n' && request[ i + 2 ] == '\r' && request[ i + 3 ] == '\n' )
+			{
+				return i + 2;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the index after the "\n" that ends the line starting at the given index.
+	 */
+	private static int nextLine( byte[] request, int start )
+	{
+		int newLine = indexOf( request, start, request.length, ( byte ) '\n' );
+		return ( newLine < 0 ) ? request.length : newLine + 1;
+	}
+
+	private static int indexOf( byte[] request, int start, int end, byte value )
+	{
+		for ( int i = start; i < end; i++ )
+		{
+			if ( request[ i ] == value )
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+}
@@ -0,0 +1,52 @@
+package com.cs.logs;
+
+/**
+ * A request read from a capture file, with the response it got when it was captured.
+ */
+public class CapturedRequest
+{
+	private final long offset;
+	private final byte[] request;
+	private final int status;
+	private final long bytes;
+
+	CapturedRequest( long offset, byte[] request, int status, long bytes )
+	{
+		this.offset = offset;
+		this.request = request;
+		this.status = status;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Returns the microseconds after the start of the capture the request arrived.
+	 */
+	public long getOffsetMicros()
+	{
+		return offset;
+	}
+
+	/**
+	 * Returns the raw bytes of the request, after redaction.
+	 */
+	public byte[] getRequest()
+	{
+		return request;
+	}
+
+	/**
+	 * Returns the status code of the captured response.
+	 */
+	public int getStatus()
+	{
+		return status;
+	}
+
+	/**
+	 * Returns the length of the body of the captured response.
+	 */
+	public long getBytes()
+	{
+		return bytes;
+	}
+}
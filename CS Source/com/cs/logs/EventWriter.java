@@ -0,0 +1,24 @@
+package com.cs.logs;
+
+import java.io.IOException;
+
+/**
+ * Writes the events of a log to its file, called by one thread at a time.
+ */
+interface EventWriter< E >
+{
+	/**
+	 * Creates an empty event, the ring buffer fills in and reuses it.
+	 */
+	E createEvent();
+
+	/**
+	 * Writes an event into the buffer of the file. References held by the event
+	 * should be cleared, the event stays in the ring buffer until it is reused.
+	 */
+	void write( E event ) throws IOException;
+
+	void flush() throws IOException;
+
+	void close();
+}
@@ -0,0 +1,13 @@
+package com.cs.logs;
+
+/**
+ * An event of the server log, as it is kept in the ring buffer.
+ */
+class LogEvent
+{
+	long time;
+	String logType;
+	String message;
+	String callingTrace;
+	String currentTrace;
+}
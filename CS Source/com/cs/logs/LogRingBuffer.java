@@ -0,0 +1,123 @@
+package com.cs.logs;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A preallocated ring of events written by many threads and read by one.
+ * <br><br>
+ * Writers claim a sequence number with a compare-and-set, fill the event of that
+ * number and publish it. The reader only ever sees published events and reads them
+ * in the order they were claimed. Nothing is allocated or locked on the way in, the
+ * events are created once and reused.
+ */
+class LogRingBuffer< E >
+{
+	private final E[] EVENTS;
+	private final int MASK;
+	// Sequence of the event in every slot, set once the event is filled in
+	private final AtomicLongArray PUBLISHED;
+	// Next sequence a writer can claim
+	private final AtomicLong CLAIMED = new AtomicLong();
+	// Next sequence the reader will read
+	private final AtomicLong CONSUMED = new AtomicLong();
+
+	/**
+	 * Creates a ring buffer.
+	 *
+	 * @param size Number of events, rounded up to a power of two.
+	 * @param writer Creates the events.
+	 */
+	@SuppressWarnings( "unchecked" )
+	LogRingBuffer( int size, EventWriter< E > writer )
+	{
+		int capacity = Integer.highestOneBit( Math.max( size, 2 ) - 1 ) << 1;
+
+		EVENTS = ( E[] ) new Object[ capacity ];
+		MASK = capacity - 1;
+		PUBLISHED = new AtomicLongArray( capacity );
+
+		for ( int i = 0; i < capacity; i++ )
+		{
+			EVENTS[ i ] = writer.createEvent();
+			PUBLISHED.set( i, -1 );
+		}
+	}
+
+	/**
+	 * Claims the next event to fill in.
+	 *
+	 * @return The sequence of the event, or -1 if the ring is full.
+	 */
+	long claim()
+	{
+		long sequence;
+
+		do
+		{
+			sequence = CLAIMED.get();
+
+			if ( sequence - CONSUMED.get() >= EVENTS.length )
+			{
+				return -1;
+			}
+		}
+		while ( CLAIMED.compareAndSet( sequence, sequence + 1 ) == false );
+
+		return sequence;
+	}
+
+	/**
+	 * Returns the event of a claimed sequence.
+	 */
+	E get( long sequence )
+	{
+		return EVENTS[ ( int ) ( sequence & MASK ) ];
+	}
+
+	/**
+	 * Hands a filled in event to the reader.
+	 */
+	void publish( long sequence )
+	{
+		PUBLISHED.set( ( int ) ( sequence & MASK ), sequence );
+	}
+
+	/**
+	 * Passes every published event to the writer in order. Called by the reader only.
+	 *
+	 * @return The number of events written.
+	 */
+	int drain( EventWriter< E > writer ) throws IOException
+	{
+		int count = 0;
+		long sequence = CONSUMED.get();
+
+		while ( PUBLISHED.get( ( int ) ( sequence & MASK ) ) == sequence )
+		{
+			try
+			{
+				writer.write( EVENTS[ ( int ) ( sequence & MASK ) ] );
+			}
+			finally
+			{
+				// Hands the event back even if the file failed, so writers never wait on a broken file
+				CONSUMED.lazySet( ++sequence );
+			}
+
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns whether the next event for the reader is not published yet.
+	 */
+	boolean isEmpty()
+	{
+		long sequence = CONSUMED.get();
+		return PUBLISHED.get( ( int ) ( sequence & MASK ) ) != sequence;
+	}
+}
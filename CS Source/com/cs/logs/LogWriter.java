@@ -0,0 +1,105 @@
+package com.cs.logs;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import com.cs.main.Config;
+
+/**
+ * Formats log events and writes them to the log file, which stays open between events.
+ * <br><br>
+ * Not thread safe, the logger only calls it from its background thread or while
+ * holding a lock.
+ */
+class LogWriter implements EventWriter< LogEvent >
+{
+	private final static String NEW_LINE_SPACE = "\n\t\t";
+
+	private final SimpleDateFormat DATEFORMAT;
+	// Formats without milliseconds only change once a second
+	private final long CLOCKRESOLUTION;
+
+	private final RollingLogFile FILE = new RollingLogFile( "", Config.getLogFileName() );
+
+	private long cachedTime = -1;
+	private String cachedDate;
+
+	LogWriter()
+	{
+		DATEFORMAT = new SimpleDateFormat( Config.getLogDateFormat() );
+		CLOCKRESOLUTION = Config.getLogDateFormat().contains( "S" ) ? 1 : 1000;
+	}
+
+	@Override
+	public LogEvent createEvent()
+	{
+		return new LogEvent();
+	}
+
+	@Override
+	public void write( LogEvent event ) throws IOException
+	{
+		Writer writer = FILE.getWriter( event.time );
+
+		if ( FILE.getFileName().equals( Config.getLogFileName() ) == false )
+		{
+			Config.setLogFileName( FILE.getFileName() );
+		}
+
+		writer.write( formatDate( event.time ) );
+		writer.write( "\t[" );
+		writer.write( event.logType );
+		writer.write( "]" );
+		writeTrace( writer, event.callingTrace );
+		writeTrace( writer, event.currentTrace );
+		writer.write( NEW_LINE_SPACE );
+		writer.write( String.valueOf( event.message ) );
+		writer.write( System.lineSeparator() );
+
+		event.message = null;
+		event.callingTrace = null;
+		event.currentTrace = null;
+	}
+
+	@Override
+	public void flush() throws IOException
+	{
+		FILE.flush();
+	}
+
+	@Override
+	public void close()
+	{
+		FILE.close();
+	}
+
+	/**
+	 * Formats the time again only once the clock moved past what the format shows.
+	 */
+	private String formatDate( long time )
+	{
+		long unit = time / CLOCKRESOLUTION;
+
+		if ( unit != cachedTime )
+		{
+			cachedDate = DATEFORMAT.format( new Date( time ) );
+			cachedTime = unit;
+		}
+
+		return cachedDate;
+	}
+
+	/**
+	 * Events logged from a call site id have no calling trace.
+	 */
+	private static void writeTrace( Writer writer, String trace ) throws IOException
+	{
+		if ( trace != null )
+		{
+			writer.write( NEW_LINE_SPACE );
+			writer.write( trace );
+		}
+	}
+}
@@ -1,66 +1,170 @@
 package com.cs.logs;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 
 import com.cs.main.Config;
 
+/**
+ * Writes events to the log file of the server.
+ * <br><br>
+ * By default events are handed to a background thread through a ring buffer, so
+ * request threads never wait on the file. With async logging turned off in the config
+ * file, events are written and flushed on the calling thread instead.
+ */
 public class Logger
 {
+	private static volatile AsyncAppender< LogEvent > appender;
+	private static LogWriter syncWriter;
+	private static final LogEvent SYNCEVENT = new LogEvent();
+
+	/**
+	 * Writes an event with the location it was logged from.
+	 * <br><br>
+	 * The location is only looked up when the log level of the event is enabled.
+	 * 
+	 * @param logType "LOG", "WARNING" or "ERROR".
+	 * @param message Description of the event.
+	 */
+	public static void writeLog( String logType, String message )
+	{
+		String type = logType.toUpperCase();
+		
+		if ( isEnabled( type ) )
+		{
+			// 0 is this method, 1 the method that logs and 2 the method that called it
+			StackTraceElement[] ste = new Throwable().getStackTrace();
+			String callingMethod = ste.length > 2 ? formatLocation( ste[ 2 ] ) : null;
+			String currentMethod = ste.length > 1 ? formatLocation( ste[ 1 ] ) : null;
+			
+			publish( type, message, callingMethod, currentMethod );
+		}
+	}
+	
+	/**
+	 * Writes an event from a known location, without looking at the stack.
+	 * <br><br>
+	 * Meant for events that can happen on every request, ie. a missing route.
+	 * 
+	 * @param logType "LOG", "WARNING" or "ERROR".
+	 * @param message Description of the event.
+	 * @param callSite Constant that names the location, ie. "com.cs.routes.HandleGetRequest_processRequest".
+	 */
+	public static void writeLog( String logType, String message, String callSite )
+	{
+		String type = logType.toUpperCase();
+		
+		if ( isEnabled( type ) )
+		{
+			publish( type, message, null, callSite );
+		}
+	}
+	
+	/**
+	 * Writes an event with locations the caller looked up itself.
+	 */
 	public static void writeLog( String logType, String message, String callingTrace, String currentTrace )
 	{
-		String formatMessage = "";
+		String type = logType.toUpperCase();
 		
-		if ( logType.toUpperCase().equals( "LOG" ) && Config.getLogLevel().contains( "1" ) )
+		if ( isEnabled( type ) )
 		{
-			formatMessage = formatLogString( logType, message, callingTrace, currentTrace );
+			publish( type, message, callingTrace, currentTrace );
 		}
-		else if ( logType.toUpperCase().equals( "WARNING" ) && Config.getLogLevel().contains( "2" ) )
+	}
+	
+	/**
+	 * Returns whether events of a type are written with the log level of the config file.
+	 * 
+	 * @param logType "LOG", "WARNING" or "ERROR".
+	 */
+	public static boolean isEnabled( String logType )
+	{
+		String type = logType.toUpperCase();
+		
+		if ( type.equals( "LOG" ) )
 		{
-			formatMessage = formatLogString( logType, message, callingTrace, currentTrace );
+			return Config.getLogLevel().contains( "1" );
 		}
-		else if ( logType.toUpperCase().equals( "ERROR" ) && Config.getLogLevel().contains( "3" ) )
+		else if ( type.equals( "WARNING" ) )
 		{
-			formatMessage = formatLogString( logType, message, callingTrace, currentTrace );
+			return Config.getLogLevel().contains( "2" );
 		}
-		else
+		else if ( type.equals( "ERROR" ) )
 		{
-			System.out.println( "Unable to write the log. \n\t Config log level: " + Config.getLogLevel() + ", Log type: " + logType.toUpperCase() );
-			System.exit( 3 );
+			return Config.getLogLevel().contains( "3" );
 		}
 		
-		WriteToLog( formatMessage );
+		System.out.println( "Unable to write the log. \n\t Unknown log type: " + type );
+		System.exit( 3 );
+		return false;
 	}
-
-	// Log everything
-	private static String formatLogString( String logType, String message, String callingTrace, String currentTrace )
+	
+	private static String formatLocation( StackTraceElement element )
+	{
+		return element.getClassName() + "_" + element.getMethodName() + "_" + element.getLineNumber();
+	}
+	
+	private static void publish( String type, String message, String callingTrace, String currentTrace )
 	{
-		SimpleDateFormat sdfDate = new SimpleDateFormat( Config.getLogDateFormat() );
-		Date now = new Date();
-		String newLineSpace = "\n\t\t";
+		long now = System.currentTimeMillis();
 		
-		String logLine = sdfDate.format( now ) + "\t[" + logType.toUpperCase() + "]";
+		if ( Config.useAsyncLog() )
+		{
+			AsyncAppender< LogEvent > appender = getAppender();
+			long sequence = appender.claim();
+			
+			LogEvent event = appender.get( sequence );
+			event.time = now;
+			event.logType = type;
+			event.message = message;
+			event.callingTrace = callingTrace;
+			event.currentTrace = currentTrace;
+			
+			appender.publish( sequence );
+		}
+		else
+		{
+			WriteToLog( now, type, message, callingTrace, currentTrace );
+		}
+	}
+	
+	private static AsyncAppender< LogEvent > getAppender()
+	{
+		AsyncAppender< LogEvent > current = appender;
 		
-		logLine += newLineSpace + callingTrace;
-		logLine += newLineSpace + currentTrace;
-		logLine += newLineSpace + message;
+		if ( current == null )
+		{
+			synchronized ( Logger.class )
+			{
+				if ( appender == null )
+				{
+					appender = new AsyncAppender< LogEvent >( "Logger", new LogWriter(), Config.getLogBufferSize() );
+				}
+				
+				current = appender;
+			}
+		}
 		
-		return logLine;
+		return current;
 	}
 	
-	private static void WriteToLog( String data )
+	private static synchronized void WriteToLog( long time, String logType, String message, String callingTrace, String currentTrace )
 	{
-		PrintWriter out = null;
-
 		try
 		{
-			String filePath = Config.getLogPath() + System.getProperty( "file.separator" ) + Config.getLogFileName();
-			out = new PrintWriter( new BufferedWriter( new FileWriter( filePath, true ) ) );
-			out.println( data );
+			if ( syncWriter == null )
+			{
+				syncWriter = new LogWriter();
+			}
+			
+			SYNCEVENT.time = time;
+			SYNCEVENT.logType = logType;
+			SYNCEVENT.message = message;
+			SYNCEVENT.callingTrace = callingTrace;
+			SYNCEVENT.currentTrace = currentTrace;
+			
+			syncWriter.write( SYNCEVENT );
+			syncWriter.flush();
 		}
 		catch ( IOException e )
 		{
@@ -68,12 +172,5 @@ public class Logger
 			System.out.println( "\t" + e.getMessage() );
 			System.exit( 2 );
 		}
-		finally
-		{
-			if ( out != null )
-			{
-				out.close();
-			}
-		}
 	}
-}
\ No newline at end of file
+}
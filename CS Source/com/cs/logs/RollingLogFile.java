@@ -0,0 +1,373 @@
+package com.cs.logs;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPOutputStream;
+
+import com.cs.main.Config;
+
+/**
+ * A log file in the log folder that is replaced by a new one once it gets too big or too old.
+ * <br><br>
+ * Files are named with the date format of the config file, ie. "2024-01-31 13.00.00.log",
+ * after an optional prefix. Rotating only closes the file and opens the next one, the
+ * old file is compressed and the oldest files are removed on a background thread with
+ * a low priority, so whoever writes the log never waits for it.
+ * <br><br>
+ * Not thread safe, like {@link LogWriter}.
+ */
+class RollingLogFile
+{
+	private final static int BUFFER_SIZE = 64 * 1024;
+	private final static String EXTENSION = ".log";
+	private final static String COMPRESSED_EXTENSION = ".gz";
+
+	// One thread compresses the files of every log, at the lowest priority
+	private final static ExecutorService COMPRESSOR = Executors.newSingleThreadExecutor( new ThreadFactory()
+	{
+		@Override
+		public Thread newThread( Runnable task )
+		{
+			Thread thread = new Thread( task, "Log compressor" );
+			thread.setDaemon( true );
+			thread.setPriority( Thread.MIN_PRIORITY );
+			return thread;
+		}
+	} );
+
+	private final File FOLDER;
+	private final String PREFIX;
+	private final SimpleDateFormat DATEFORMAT;
+	private final long MAXSIZE;
+	private final long INTERVAL;
+	private final int MAXFILES;
+	private final boolean COMPRESS;
+
+	// Read by the compressor thread to never remove the current file
+	private volatile String fileName;
+	private Writer out;
+	private long size;
+	private long rotateTime = Long.MAX_VALUE;
+	// Files started within one time stamp are numbered, never reusing a number of a removed file
+	private String lastStamp;
+	private int lastCounter;
+
+	/**
+	 * Creates a log file with the rotation settings of the config file.
+	 *
+	 * @param prefix Start of the file names, to keep several logs in one folder apart.
+	 * @param fileName Name of the first file, or null to name it after the time it is opened.
+	 */
+	RollingLogFile( String prefix, String fileName )
+	{
+		this.FOLDER = new File( Config.getLogPath() );
+		this.PREFIX = prefix;
+		this.DATEFORMAT = new SimpleDateFormat( Config.getLogDateFormat() );
+		this.MAXSIZE = Config.getLogMaxFileSize();
+		this.INTERVAL = Config.getLogRotateInterval();
+		this.MAXFILES = Config.getLogMaxFiles();
+		this.COMPRESS = Config.compressLogs();
+		this.fileName = fileName;
+	}
+
+	/**
+	 * Returns the writer of the current file, rotating it first when it is due.
+	 *
+	 * @param time Time of the event about to be written in milliseconds.
+	 */
+	Writer getWriter( long time ) throws IOException
+	{
+		if ( out != null && ( time >= rotateTime || ( MAXSIZE > 0 && size >= MAXSIZE ) ) )
+		{
+			rotate();
+		}
+
+		if ( out == null )
+		{
+			open( time );
+		}
+
+		return out;
+	}
+
+	/**
+	 * Returns the name of the file written to now.
+	 */
+	String getFileName()
+	{
+		return fileName;
+	}
+
+	void flush() throws IOException
+	{
+		if ( out != null )
+		{
+			out.flush();
+		}
+	}
+
+	void close()
+	{
+		if ( out != null )
+		{
+			try
+			{
+				out.close();
+			}
+			catch ( IOException e )
+			{
+				// Nothing is written after this
+			}
+
+			out = null;
+		}
+	}
+
+	private void open( long time ) throws IOException
+	{
+		if ( fileName == null )
+		{
+			fileName = createFileName( time );
+		}
+
+		File file = new File( FOLDER, fileName );
+		size = file.length();
+		out = new CountingWriter( new BufferedWriter( new FileWriter( file, true ), BUFFER_SIZE ) );
+
+		if ( INTERVAL > 0 )
+		{
+			// Rotate on whole intervals of the local time, ie. at midnight for daily files
+			long offset = TimeZone.getDefault().getOffset( time );
+			rotateTime = ( ( time + offset ) / INTERVAL + 1 ) * INTERVAL - offset;
+		}
+	}
+
+	private void rotate()
+	{
+		final File rotated = new File( FOLDER, fileName );
+
+		close();
+		fileName = null;
+		rotateTime = Long.MAX_VALUE;
+
+		COMPRESSOR.execute( new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if ( COMPRESS )
+				{
+					compress( rotated );
+				}
+
+				removeOldFiles();
+			}
+		} );
+	}
+
+	/**
+	 * Names a new file after the time, with a counter if that time was used already.
+	 */
+	private String createFileName( long time )
+	{
+		String stamp = PREFIX + DATEFORMAT.format( new Date( time ) );
+		int counter = stamp.equals( lastStamp ) ? lastCounter + 1 : 0;
+		String fileName;
+
+		while ( true )
+		{
+			fileName = stamp + ( counter > 0 ? "-" + counter : "" ) + EXTENSION;
+
+			if ( new File( FOLDER, fileName ).exists() == false && new File( FOLDER, fileName + COMPRESSED_EXTENSION ).exists() == false )
+			{
+				break;
+			}
+
+			counter++;
+		}
+
+		lastStamp = stamp;
+		lastCounter = counter;
+		return fileName;
+	}
+
+	/**
+	 * Replaces a file with a gzip compressed copy. Runs on the compressor thread.
+	 */
+	private static void compress( File file )
+	{
+		if ( file.exists() == false )
+		{
+			// Removed as one of the oldest files already
+			return;
+		}
+
+		File compressed = new File( file.getPath() + COMPRESSED_EXTENSION );
+
+		try ( InputStream in = new FileInputStream( file ); OutputStream gzip = new GZIPOutputStream( new FileOutputStream( compressed ), BUFFER_SIZE ) )
+		{
+			byte[] buffer = new byte[ BUFFER_SIZE ];
+			int n;
+
+			while ( ( n = in.read( buffer ) ) != -1 )
+			{
+				gzip.write( buffer, 0, n );
+			}
+		}
+		catch ( IOException e )
+		{
+			// Keep the uncompressed file rather than half of it
+			compressed.delete();
+			System.out.println( "ERROR: Unable to compress log file " + file.getName() + "\n\t" + e.getMessage() );
+			return;
+		}
+
+		file.delete();
+	}
+
+	/**
+	 * Removes the oldest rotated files of this log beyond the limit. Runs on the compressor thread.
+	 */
+	private void removeOldFiles()
+	{
+		File[] files = FOLDER.listFiles();
+
+		if ( MAXFILES < 1 || files == null )
+		{
+			return;
+		}
+
+		// The date format is used by the writing thread, this thread needs its own
+		SimpleDateFormat dateFormat = new SimpleDateFormat( DATEFORMAT.toPattern() );
+		dateFormat.setLenient( false );
+		String current = fileName;
+		List< RotatedFile > rotated = new ArrayList< RotatedFile >();
+
+		for ( File file : files )
+		{
+			RotatedFile logFile = parseFileName( file, dateFormat );
+
+			if ( logFile != null && file.getName().equals( current ) == false )
+			{
+				rotated.add( logFile );
+			}
+		}
+
+		if ( rotated.size() <= MAXFILES )
+		{
+			return;
+		}
+
+		// Modification times are not precise enough for files rotated quickly, the names are
+		Collections.sort( rotated, new Comparator< RotatedFile >()
+		{
+			@Override
+			public int compare( RotatedFile a, RotatedFile b )
+			{
+				return a.time != b.time ? Long.compare( b.time, a.time ) : Integer.compare( b.counter, a.counter );
+			}
+		} );
+
+		for ( RotatedFile logFile : rotated.subList( MAXFILES, rotated.size() ) )
+		{
+			logFile.file.delete();
+		}
+	}
+
+	/**
+	 * Reads the time and counter from a file name this log would create, other files in the folder are never removed.
+	 *
+	 * @return The rotated file, or null if the name is not one of this log.
+	 */
+	private RotatedFile parseFileName( File file, SimpleDateFormat dateFormat )
+	{
+		String name = file.getName();
+
+		if ( name.endsWith( COMPRESSED_EXTENSION ) )
+		{
+			name = name.substring( 0, name.length() - COMPRESSED_EXTENSION.length() );
+		}
+
+		if ( name.startsWith( PREFIX ) == false || name.endsWith( EXTENSION ) == false )
+		{
+			return null;
+		}
+
+		String stamp = name.substring( PREFIX.length(), name.length() - EXTENSION.length() );
+		ParsePosition position = new ParsePosition( 0 );
+		Date time = dateFormat.parse( stamp, position );
+		String counter = stamp.substring( position.getIndex() );
+
+		if ( time == null || ( counter.isEmpty() == false && counter.matches( "-\\d+" ) == false ) )
+		{
+			return null;
+		}
+
+		return new RotatedFile( file, time.getTime(), counter.isEmpty() ? 0 : Integer.parseInt( counter.substring( 1 ) ) );
+	}
+
+	private static class RotatedFile
+	{
+		private final File file;
+		private final long time;
+		private final int counter;
+
+		RotatedFile( File file, long time, int counter )
+		{
+			this.file = file;
+			this.time = time;
+			this.counter = counter;
+		}
+	}
+
+	/**
+	 * Keeps track of the size of the file without asking the file system.
+	 */
+	private class CountingWriter extends FilterWriter
+	{
+		CountingWriter( Writer out )
+		{
+			super( out );
+		}
+
+		@Override
+		public void write( int c ) throws IOException
+		{
+			out.write( c );
+			size++;
+		}
+
+		@Override
+		public void write( char[] buffer, int offset, int length ) throws IOException
+		{
+			out.write( buffer, offset, length );
+			size += length;
+		}
+
+		@Override
+		public void write( String text, int offset, int length ) throws IOException
+		{
+			out.write( text, offset, length );
+			size += length;
+		}
+	}
+}
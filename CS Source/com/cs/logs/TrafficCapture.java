@@ -0,0 +1,121 @@
+package com.cs.logs;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.cs.main.Config;
+
+/**
+ * Captures the raw bytes and arrival times of HTTP/1.1 requests to a file, when it
+ * is enabled in the config file, so the real mix of requests can be replayed
+ * against a local server.
+ * <br><br>
+ * The connection decides whether a request is sampled when it has been received
+ * and keeps its bytes, the worker records it with the status and body length of the
+ * response. Like the {@link AccessLog}, recording only fills in an event of a ring
+ * buffer; redacting the headers and writing the file is done by a background thread.
+ * Capturing stops once the file reaches its maximum size or can not be written.
+ * <br><br>
+ * A capture file is a gzip stream of big endian values. It starts with the magic
+ * number "CSCP", a short version and the time the capture started in milliseconds
+ * since the epoch. Every request follows as the microseconds it arrived after the
+ * start, a short status code, a long body length of the response, an int length of
+ * the request and the request itself. Requests are written in the order they are
+ * answered, which is not always the order they arrived in.
+ */
+public class TrafficCapture
+{
+	static final int MAGIC = 0x43534350;
+	static final short VERSION = 1;
+
+	// The arrival of a request is taken from System.nanoTime(), which only counts from some point in time
+	private static final long STARTNANOS = System.nanoTime();
+	private static final long STARTMILLIS = System.currentTimeMillis();
+
+	private static volatile AsyncAppender< CaptureEvent > appender;
+	private static volatile boolean stopped = false;
+	private static final LongAdder DROPPED = new LongAdder();
+
+	/**
+	 * Decides whether a request that has just been received is captured.
+	 */
+	public static boolean isSampled()
+	{
+		if ( Config.useCapture() == false || stopped )
+		{
+			return false;
+		}
+
+		double rate = Config.getCaptureSampleRate();
+		return rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate;
+	}
+
+	/**
+	 * Records a sampled request once it has been answered.
+	 *
+	 * @param request The raw bytes of the request, not changed afterwards.
+	 * @param arrivalTime Value of {@link System#nanoTime()} when the request was received.
+	 * @param status Status code of the response.
+	 * @param bytes Length of the response body.
+	 */
+	public static void record( byte[] request, long arrivalTime, int status, long bytes )
+	{
+		if ( stopped )
+		{
+			return;
+		}
+
+		AsyncAppender< CaptureEvent > current = getAppender();
+		long sequence = current.tryClaim();
+
+		if ( sequence < 0 )
+		{
+			DROPPED.increment();
+			return;
+		}
+
+		CaptureEvent event = current.get( sequence );
+		event.request = request;
+		event.offset = ( arrivalTime - STARTNANOS ) / 1000;
+		event.status = status;
+		event.bytes = bytes;
+
+		current.publish( sequence );
+	}
+
+	/**
+	 * Returns the number of sampled requests that were not captured because the capture fell behind.
+	 */
+	public static long getDroppedCount()
+	{
+		return DROPPED.sum();
+	}
+
+	/**
+	 * Stops sampling requests, called by the writer when it will not write any more.
+	 */
+	static void stop()
+	{
+		stopped = true;
+	}
+
+	private static AsyncAppender< CaptureEvent > getAppender()
+	{
+		AsyncAppender< CaptureEvent > current = appender;
+
+		if ( current == null )
+		{
+			synchronized ( TrafficCapture.class )
+			{
+				if ( appender == null )
+				{
+					appender = new AsyncAppender< CaptureEvent >( "Traffic capture", new CaptureWriter( STARTMILLIS ), Config.getCaptureBufferSize() );
+				}
+
+				current = appender;
+			}
+		}
+
+		return current;
+	}
+}
@@ -4,42 +4,32 @@ import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
+import com.cs.filters.CorsPolicy;
+import com.cs.server.Listener;
+
+/**
+ * The settings of the config file, for the whole process.
+ * <br><br>
+ * The settings are kept in a {@link ConfigSnapshot} that is replaced as a whole when
+ * the file changes or a setting is changed at runtime. Every getter reads the current
+ * snapshot once, without locking, so reading settings on the hot path costs one
+ * volatile read.
+ */
 public class Config
 {
-	// Web Server
-	private static String serverType;
-	private static String serverPort;
-	private static String keyFile;
-	private static String password1;
-	private static String password2;
-	private static boolean	folderCreation = true;
-	private static boolean	defaultWebSettings = false;
-	
-	// Log files
-	private static String logPath;
-	private static String logFile;
-	private static String logDateFormat;
-	private static String logLevel;
-	private static boolean	defaultLogSettings = false;
-	
-	// Web resources
-	private static String resourcePath;
-	
-	// Database settings
-	private static String dbIP;
-	private static String dbPort;
-	private static String dbName;
+	private static final AtomicReference< ConfigSnapshot > CURRENT = new AtomicReference< ConfigSnapshot >();
+	
+	// Name of the log file written to now, changed by the logger when it starts a new one
+	private static volatile String logFile;
+	private static String configLocation;
+	private static ConfigWatcher watcher;
 	
 	/**
 	 * Initialize the config controller.
@@ -48,8 +38,8 @@ public class Config
 	 */
 	public static void Initialize( String confLoc )
 	{
-		readConfig( confLoc );
-		processDefaults();
+		CURRENT.set( readConfig( confLoc ) );
+		configLocation = confLoc;
 		setLogFileName();
 		createFolders();
 	}
@@ -64,102 +54,59 @@ public class Config
 	 */
 	public static boolean validateConfig()
 	{
-		if ( serverType.toLowerCase().equals( "http" ) == false && serverType.toLowerCase().equals( "https" ) == false )
-		{
-			System.out.println( "ERROR: Invalid server type. \n\t Only http and https is accepted values." );
-			return false;
-		}
-		
-		try
-		{
-			if ( Integer.parseInt( serverPort ) < 1 )
-			{
-				System.out.println( "ERROR: Invalid server port. \n\t Port numbers can not be less than 1." );
-				return false;
-			}
-			else if ( Integer.parseInt( serverPort ) > 65535 )
-			{
-				System.out.println( "ERROR: Invalid server port. \n\t Port numbers can not be more than 65,535." );
-				return false;
-			}
-		}
-		catch ( NumberFormatException e )
-		{
-			System.out.println( "ERROR: Number Format Exception." );
-			System.out.println( "\t" + e.getMessage() );
-			System.exit( 3 );
-		}
-		
-		if ( serverType.toLowerCase().equals( "https" ) && keyFile.equals( "" ) || keyFile == null )
-		{
-			System.out.println( "ERROR: Invalid HTTPS keyfile location. \n\t A full system path is needed for the HTTPS Certificate location." );
-			return false;
-		}
-		
-		if ( serverType.toLowerCase().equals( "https" ) && password1.equals( "" ) || password1 == null )
-		{
-			System.out.println( "ERROR: Invalid keystore password. \n\t A first password needs to be specified for the keystore file." );
-			return false;
-		}
-		
-		if ( serverType.toLowerCase().equals( "https" ) && password2.equals( "" ) || password2 == null )
-		{
-			System.out.println( "ERROR: Invalid keystore password. \n\t A second password needs to be specified for the keystore file." );
-			return false;
-		}
-		
-		if ( logPath == null || logPath.equals( "" ) )
-		{
-			System.out.println( "ERROR: Invalid system log path. \n\t A full system path is needed for system logs to be created." );
-			return false;
-		}
-		else if ( new File(logPath).exists() == false )
-		{
-			System.out.println( "ERROR: Invalid system log path. \n\t The folder logs will be saved in does not exist." );
-			return false;
-		}
-		
-		if ( logDateFormat == null || logDateFormat.equals( "" ) )
-		{
-			System.out.println( "ERROR: Invalid log date format. \n\t A valid date format is needed to dateTime stamp the system logs." );
-			return false;
-		}
-		
-		if ( logLevel.contains( "1" ) == false && logLevel.contains( "2" ) == false && logLevel.contains( "3" ) == false )
+		return CURRENT.get().validateConfig();
+	}
+	
+	/**
+	 * Starts applying changes of the config file to the running server. Settings that
+	 * can not change while the server runs are logged when they change instead.
+	 */
+	public static synchronized void watchConfigFile()
+	{
+		if ( watcher == null )
 		{
-			System.out.println( "ERROR: Invalid log level. \n\t Valid log level values are only '1', '2' and '3'. Or any combanation of these numbers." );
-			return false;
+			watcher = new ConfigWatcher( new File( configLocation ), CURRENT.get() );
+			watcher.start();
 		}
+	}
+	
+	/**
+	 * Returns the current settings, to read several settings that belong together.
+	 */
+	public static ConfigSnapshot getSnapshot()
+	{
+		return CURRENT.get();
+	}
+	
+	/**
+	 * Replaces live settings of the current snapshot with the values of another one.
+	 * Settings changed at runtime since then, like the log level, are kept unless
+	 * they are among the given ones.
+	 * 
+	 * @param source Snapshot read from the changed config file.
+	 * @param names Names of the live settings that changed in the file.
+	 */
+	static void applyLiveSettings( ConfigSnapshot source, Set< String > names )
+	{
+		ConfigSnapshot current;
 		
-		if ( resourcePath == null || resourcePath.equals( "" ) )
+		do
 		{
-			System.out.println( "ERROR: Invalid resource path. \n\t A valid path is needed for the web resources." );
-			return false;
+			current = CURRENT.get();
 		}
-		
-		return true;
+		while ( CURRENT.compareAndSet( current, current.withLiveSettings( source, names ) ) == false );
 	}
 	
 	/**
-	 * Read the config file. 
+	 * Read the config file, the process is stopped if it can not be read.
 	 * 
 	 * @param confLoc Full path to config file
 	 */
-	private static void readConfig( String confLoc )
+	private static ConfigSnapshot readConfig( String confLoc )
 	{
 		try
 		{
-			File fXmlFile = new File( confLoc );
-			DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-
-			Document doc = dBuilder.parse( fXmlFile );
-			doc.getDocumentElement().normalize();
-
-			processWebSettings( doc );
-			processLogSettings( doc );
-			processResourceSettings( doc );
-			processDatabaseSettings( doc );
+			return new ConfigSnapshot( confLoc );
 		}
 		catch ( ParserConfigurationException e )
 		{
@@ -179,30 +126,13 @@ public class Config
 			System.out.println( e.getMessage() );
 			System.exit( 2 );
 		}
-	}
-	
-	/**
-	 * Use default settings for components specified in config file.
-	 */
-	private static void processDefaults()
-	{
-		if ( defaultWebSettings == true )
-		{
-			serverType = "http";
-			serverPort = "80";
-			folderCreation = true;
-		}
-		
-		if ( defaultLogSettings == true )
+		catch ( IllegalArgumentException e )
 		{
-			logPath = System.getProperty( "user.dir" ) + System.getProperty( "file.separator" ) + "logs";
-			logDateFormat = "yyyy-MM-dd HH.mm.ss";
+			System.out.println( "ERROR: " + e.getMessage() );
+			System.exit( 3 );
 		}
 		
-		if ( logLevel.length() < 1 )
-		{
-			logLevel = "123";
-		}
+		return null;
 	}
 	
 	/**
@@ -212,7 +142,7 @@ public class Config
 	 */
 	private static void setLogFileName()
 	{
-		SimpleDateFormat sdfDate = new SimpleDateFormat( logDateFormat );
+		SimpleDateFormat sdfDate = new SimpleDateFormat( getLogDateFormat() );
 		Date now = new Date();
 	    String strDate = sdfDate.format(now);
 		
@@ -224,212 +154,376 @@ public class Config
 	 */
 	private static void createFolders()
 	{
-		if ( folderCreation == true )
+		if ( CURRENT.get().createsFolders() == true )
 		{
-			new File( logPath ).mkdir();
-			new File( resourcePath ).mkdir();
+			new File( getLogPath() ).mkdir();
+			new File( getResourcePath() ).mkdir();
 		}
 	}
 	
 	
 	
+	// Public get methods
+	public static String getServerType()
+	{
+		return CURRENT.get().getServerType();
+	}
+	
+	public static int getServerPort()
+	{
+		return CURRENT.get().getServerPort();
+	}
+	
 	/**
-	 * Refactors paths to allow keywords to be used in the config file.
-	 * <br>
-	 * <br>
-	 * This method only allows the keyword "curdir" to be translated to the
-	 * working directory of this application. The keyword is NOT case sensitive. 
-	 * 
-	 * @param line Path string that needs refactoring.
-	 * @return Refactored path
+	 * Returns the listeners of the process. Without a listeners section this is a
+	 * single listener with the type and port of the web section.
 	 */
-	private static String refactorConfigPathString( String line )
+	public static Listener[] getListeners()
 	{
-		if ( line.toLowerCase().startsWith( "curdir" ) )
-		{
-			String curDir = line.substring( 0, 6 );
-			return line.replace( curDir, System.getProperty( "user.dir" ) );
-		}
-		else
-		{
-			return line;
-		}
+		return CURRENT.get().getListeners();
 	}
 	
 	/**
-	 * Reads and returns a XML element string value.
+	 * Returns true if any listener serves HTTPS and therefore needs the keystore.
+	 */
+	public static boolean usesHttps()
+	{
+		return CURRENT.get().usesHttps();
+	}
+	
+	public static String keyFilePath()
+	{
+		return CURRENT.get().keyFilePath();
+	}
+	
+	public static String keyStorePassword1()
+	{
+		return CURRENT.get().keyStorePassword1();
+	}
+	
+	public static String keyStorePassword2()
+	{
+		return CURRENT.get().keyStorePassword2();
+	}
+	
+	public static String getLogPath()
+	{
+		return CURRENT.get().getLogPath();
+	}
+	
+	public static void setLogFileName( String fileName )
+	{
+		logFile = fileName;
+	}
+	
+	public static String getLogFileName()
+	{
+		return logFile;
+	}
+	
+	public static String getLogDateFormat()
+	{
+		return CURRENT.get().getLogDateFormat();
+	}
+	
+	public static String getLogLevel()
+	{
+		return CURRENT.get().getLogLevel();
+	}
+	
+	/**
+	 * Changes the types of events that are logged from now on, until the log level in the config file changes.
 	 * 
-	 * @param eElement XML element.
-	 * @param tagName Tag name as is specified in the config file.
-	 * @param itemNumber Element number based on tag name.
-	 * @return String found in the XML based on the tag name and item number.
+	 * @param level Any combination of '1' (LOG), '2' (WARNING) and '3' (ERROR).
+	 * @throws IllegalArgumentException If the level has other characters or none of them.
 	 */
-	private static String getXmlValue( Element eElement, String tagName, int itemNumber )
+	public static void setLogLevel( String level )
 	{
-		try
+		if ( level == null || level.matches( "[123]+" ) == false )
 		{
-			return eElement.getElementsByTagName( tagName ).item( itemNumber ).getTextContent();
+			throw new IllegalArgumentException( "Valid log level values are only '1', '2' and '3'. Or any combination of these numbers." );
 		}
-		catch ( Exception ex )
+		
+		ConfigSnapshot current;
+		
+		do
 		{
-			// There is no value in the config file. Return an empty string
-			return "";
+			current = CURRENT.get();
 		}
+		while ( CURRENT.compareAndSet( current, current.withLogLevel( level ) ) == false );
 	}
 	
 	/**
-	 * Process the web settings section of the config file.
-	 * 
-	 * @param doc XML document.
+	 * Returns whether log events are written by a background thread.
 	 */
-	private static void processWebSettings( Document doc )
+	public static boolean useAsyncLog()
 	{
-		NodeList nList = doc.getElementsByTagName( "web" );
-		Node node = nList.item( 0 );
-
-		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
-		{
-			Element eElement = ( Element ) node;
-			
-			serverType = getXmlValue( eElement, "type", 0 );
-			serverPort = getXmlValue( eElement, "port", 0 );
-			keyFile = refactorConfigPathString( getXmlValue( eElement, "keyfile", 0 ) );
-			password1 = getXmlValue( eElement, "password1", 0 );
-			password2 = getXmlValue( eElement, "password2", 0 );
-			folderCreation = Boolean.parseBoolean( getXmlValue( eElement, "createFolders", 0 ) );
-			defaultWebSettings = Boolean.parseBoolean( getXmlValue( eElement, "defaultSettings", 0 ) );
-		}
+		return CURRENT.get().useAsyncLog();
 	}
 	
 	/**
-	 * Process the log settings section of the config file.
-	 * 
-	 * @param doc XML document.
+	 * Returns the number of log events the background thread can fall behind.
 	 */
-	private static void processLogSettings( Document doc )
+	public static int getLogBufferSize()
 	{
-		NodeList nList = doc.getElementsByTagName( "log" );
-		Node node = nList.item( 0 );
-
-		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
-		{
-			Element eElement = ( Element ) node;
-
-			logPath = refactorConfigPathString( getXmlValue( eElement, "path", 0 ) );
-			logDateFormat = getXmlValue( eElement, "dateFormat", 0 );
-			logLevel = getXmlValue( eElement, "logLevel", 0 );
-			defaultLogSettings = Boolean.parseBoolean( getXmlValue( eElement, "defaultSettings", 0 ) );
-		}
+		return CURRENT.get().getLogBufferSize();
 	}
 	
 	/**
-	 * Process the web recourse section of the config file.
-	 * 
-	 * @param doc XML document.
+	 * Returns the size in bytes a log file can grow to before a new one is started, 0 for no limit.
 	 */
-	private static void processResourceSettings( Document doc )
+	public static long getLogMaxFileSize()
 	{
-		NodeList nList = doc.getElementsByTagName( "recourse" );
-		Node node = nList.item( 0 );
-
-		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
-		{
-			Element eElement = ( Element ) node;
-
-			resourcePath = refactorConfigPathString( getXmlValue( eElement, "path", 0 ) );
-		}
+		return CURRENT.get().getLogMaxFileSize();
 	}
 	
 	/**
-	 * Process the database section of the config file.
-	 * 
-	 * @param doc XML document.
+	 * Returns the milliseconds after which a new log file is started, 0 for never.
 	 */
-	private static void processDatabaseSettings( Document doc )
+	public static long getLogRotateInterval()
 	{
-		NodeList nList = doc.getElementsByTagName( "database" );
-		Node node = nList.item( 0 );
-
-		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
-		{
-			Element eElement = ( Element ) node;
-			
-			dbIP = getXmlValue( eElement, "ip", 0 );
-			dbPort = getXmlValue( eElement, "port", 0 );
-			dbName = getXmlValue( eElement, "dbName", 0 );
-		}
+		return CURRENT.get().getLogRotateInterval();
 	}
 	
+	/**
+	 * Returns the number of old log files kept, 0 to keep all of them.
+	 */
+	public static int getLogMaxFiles()
+	{
+		return CURRENT.get().getLogMaxFiles();
+	}
 	
+	/**
+	 * Returns whether old log files are compressed with gzip.
+	 */
+	public static boolean compressLogs()
+	{
+		return CURRENT.get().compressLogs();
+	}
 	
-	// Public get methods
-	public static String getServerType()
+	public static String getResourcePath()
 	{
-		return serverType;
+		return CURRENT.get().getResourcePath();
 	}
 	
-	public static int getServerPort()
+	public static boolean useSecurityHeaders()
 	{
-		return Integer.parseInt( serverPort );
+		return CURRENT.get().useSecurityHeaders();
 	}
 	
-	public static String keyFilePath()
+	public static boolean useTimingHeader()
 	{
-		return keyFile;
+		return CURRENT.get().useTimingHeader();
 	}
 	
-	public static String keyStorePassword1()
+	public static boolean useServerTimingHeader()
 	{
-		return password1;
+		return CURRENT.get().useServerTimingHeader();
 	}
 	
-	public static String keyStorePassword2()
+	/**
+	 * Returns the CORS policies in the config file. The array is empty if the config file has none.
+	 */
+	public static CorsPolicy[] getCorsPolicies()
 	{
-		return password2;
+		return CURRENT.get().getCorsPolicies();
 	}
 	
-	public static String getLogPath()
+	/**
+	 * Returns whether answered requests are written to the access log.
+	 */
+	public static boolean useAccessLog()
 	{
-		return logPath;
+		return CURRENT.get().useAccessLog();
 	}
 	
-	public static void setLogFileName( String fileName )
+	/**
+	 * Returns the share of requests written to the access log, between 0 and 1.
+	 */
+	public static double getAccessLogSampleRate()
 	{
-		logFile = fileName;
+		return CURRENT.get().getAccessLogSampleRate();
 	}
 	
-	public static String getLogFileName()
+	/**
+	 * Returns the number of requests the access log can fall behind before requests are not recorded.
+	 */
+	public static int getAccessLogBufferSize()
 	{
-		return logFile;
+		return CURRENT.get().getAccessLogBufferSize();
 	}
 	
-	public static String getLogDateFormat()
+	/**
+	 * Returns whether the raw bytes of requests are captured for replaying them.
+	 */
+	public static boolean useCapture()
 	{
-		return logDateFormat;
+		return CURRENT.get().useCapture();
 	}
 	
-	public static String getLogLevel()
+	/**
+	 * Returns the share of requests that is captured, between 0 and 1.
+	 */
+	public static double getCaptureSampleRate()
 	{
-		return logLevel;
+		return CURRENT.get().getCaptureSampleRate();
 	}
 	
-	public static String getResourcePath()
+	/**
+	 * Returns the lower case names of the headers whose values are not captured.
+	 */
+	public static String[] getCaptureRedactedHeaders()
+	{
+		return CURRENT.get().getCaptureRedactedHeaders();
+	}
+	
+	/**
+	 * Returns whether request bodies are captured, or replaced by as many filler bytes.
+	 */
+	public static boolean captureBodies()
+	{
+		return CURRENT.get().captureBodies();
+	}
+	
+	/**
+	 * Returns the size in bytes of the captured requests after which capturing stops.
+	 */
+	public static long getCaptureMaxSize()
+	{
+		return CURRENT.get().getCaptureMaxSize();
+	}
+	
+	/**
+	 * Returns the number of requests the capture can fall behind before requests are not captured.
+	 */
+	public static int getCaptureBufferSize()
+	{
+		return CURRENT.get().getCaptureBufferSize();
+	}
+	
+	/**
+	 * Returns whether request durations, connections and bytes are counted and exported.
+	 */
+	public static boolean useMetrics()
+	{
+		return CURRENT.get().useMetrics();
+	}
+	
+	/**
+	 * Returns the request path the metrics are exported on.
+	 */
+	public static String getMetricsPath()
+	{
+		return CURRENT.get().getMetricsPath();
+	}
+	
+	/**
+	 * Returns whether the admin endpoint is served.
+	 */
+	public static boolean useAdmin()
+	{
+		return CURRENT.get().useAdmin();
+	}
+	
+	/**
+	 * Returns the request path of the admin endpoint.
+	 */
+	public static String getAdminPath()
+	{
+		return CURRENT.get().getAdminPath();
+	}
+	
+	/**
+	 * Returns the bearer token clients must send to use the admin endpoint.
+	 */
+	public static String getAdminToken()
+	{
+		return CURRENT.get().getAdminToken();
+	}
+	
+	/**
+	 * Returns the number of routes with the slowest requests shown by the admin endpoint.
+	 */
+	public static int getAdminSlowestRoutes()
+	{
+		return CURRENT.get().getAdminSlowestRoutes();
+	}
+	
+	/**
+	 * Returns the milliseconds after which a request still running is logged as slow, 0 if requests are not watched.
+	 */
+	public static long getSlowRequestMillis()
+	{
+		return CURRENT.get().getSlowRequestMillis();
+	}
+	
+	/**
+	 * Returns the milliseconds after which the worker thread of a request still running is interrupted, 0 for never.
+	 */
+	public static long getRequestDeadlineMillis()
+	{
+		return CURRENT.get().getRequestDeadlineMillis();
+	}
+	
+	/**
+	 * Returns the maximum size of the response cache in bytes.
+	 */
+	public static long getCacheMaxSize()
+	{
+		return CURRENT.get().getCacheMaxSize();
+	}
+	
+	/**
+	 * Returns the enabled TLS protocols, most preferred first.
+	 */
+	public static String[] getTlsProtocols()
+	{
+		return CURRENT.get().getTlsProtocols();
+	}
+	
+	/**
+	 * Returns the enabled cipher suites, most preferred first, or an empty array for the defaults of the JRE.
+	 */
+	public static String[] getTlsCipherSuites()
+	{
+		return CURRENT.get().getTlsCipherSuites();
+	}
+	
+	public static int getTlsSessionCacheSize()
+	{
+		return CURRENT.get().getTlsSessionCacheSize();
+	}
+	
+	/**
+	 * Returns the time in seconds a TLS session can be resumed.
+	 */
+	public static int getTlsSessionTimeout()
+	{
+		return CURRENT.get().getTlsSessionTimeout();
+	}
+	
+	public static boolean useTlsSessionTickets()
+	{
+		return CURRENT.get().useTlsSessionTickets();
+	}
+	
+	public static boolean reloadTlsKeyStore()
 	{
-		return resourcePath;
+		return CURRENT.get().reloadTlsKeyStore();
 	}
 	
 	public static String getDbIP()
 	{
-		return dbIP;
+		return CURRENT.get().getDbIP();
 	}
 	
 	public static String getDbPort()
 	{
-		return dbPort;
+		return CURRENT.get().getDbPort();
 	}
 	
 	public static String getDbName()
 	{
-		return dbName;
+		return CURRENT.get().getDbName();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,1540 @@
+package com.cs.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import com.cs.filters.CorsFilter;
+import com.cs.filters.CorsPolicy;
+import com.cs.server.Listener;
+
+/**
+ * The settings of one version of the config file, with the defaults filled in.
+ * <br><br>
+ * A snapshot is never changed once {@link Config} has published it. A change to
+ * the file or a setting changed at runtime creates a new snapshot that replaces the
+ * old one as a whole, so whoever reads several settings from one snapshot gets
+ * settings that belong together.
+ * <br><br>
+ * Only the settings in {@link #LIVE_SETTINGS} are read again every time they are
+ * used. The others are read once when the server starts, a changed value of one of
+ * them only applies after a restart.
+ */
+public final class ConfigSnapshot implements Cloneable
+{
+	/**
+	 * Names of the settings that apply to a running server as soon as they change.
+	 */
+	public static final Set< String > LIVE_SETTINGS = Collections.unmodifiableSet( new HashSet< String >( Arrays.asList(
+			"log.logLevel", "accessLog.enabled", "accessLog.sampleRate", "capture.enabled", "capture.sampleRate", "cache.maxSize" ) ) );
+	
+	// Settings whose values are not logged when they change
+	private static final Set< String > SECRET_SETTINGS = Collections.unmodifiableSet( new HashSet< String >( Arrays.asList(
+			"web.password1", "web.password2", "admin.token" ) ) );
+	
+	// Web Server
+	private String serverType;
+	private String serverPort;
+	private String keyFile;
+	private String password1;
+	private String password2;
+	private boolean folderCreation = true;
+	private boolean defaultWebSettings = false;
+	
+	// Log files
+	private String logPath;
+	private String logDateFormat;
+	private String logLevel;
+	private boolean logAsync = true;
+	private String logBufferSize;
+	private String logMaxFileSize;
+	private String logRotateHours;
+	private String logMaxFiles;
+	private boolean logCompress = true;
+	private boolean defaultLogSettings = false;
+	
+	// Access log
+	private boolean accessLog = false;
+	private String accessLogSampleRate;
+	private String accessLogBufferSize;
+	
+	// Traffic capture
+	private boolean capture = false;
+	private String captureSampleRate;
+	private String captureRedactHeaders;
+	private boolean captureBodies = true;
+	private String captureMaxSize;
+	private String captureBufferSize;
+	
+	// Web resources
+	private String resourcePath;
+	
+	// Filters
+	private boolean securityHeaders = false;
+	private boolean timingHeader = false;
+	private boolean serverTimingHeader = false;
+	
+	// CORS policies, and their settings as they are in the file to compare them
+	private CorsPolicy[] corsPolicies = new CorsPolicy[ 0 ];
+	private String corsSettings = "";
+	
+	// Listeners
+	private Listener[] listeners = new Listener[ 0 ];
+	
+	// Metrics
+	private boolean metrics = false;
+	private String metricsPath;
+	
+	// Admin endpoint
+	private boolean admin = false;
+	private String adminPath;
+	private String adminToken;
+	private String adminSlowestRoutes;
+	
+	// Request watchdog
+	private String slowRequestMillis;
+	private String requestDeadlineMillis;
+	
+	// Response cache
+	private String cacheMaxSize;
+	
+	// TLS settings
+	private String tlsProtocols;
+	private String tlsCipherSuites;
+	private String tlsSessionCacheSize;
+	private String tlsSessionTimeout;
+	private boolean tlsSessionTickets = true;
+	private boolean tlsReloadKeyStore = true;
+	
+	// Database settings
+	private String dbIP;
+	private String dbPort;
+	private String dbName;
+	
+	// The numbers and lists of the settings above, parsed once when the snapshot is built
+	private Values values;
+	
+	/**
+	 * Reads a config file and fills in the defaults of the settings it does not have.
+	 * 
+	 * @param confLoc Full path to the config file
+	 * @throws ParserConfigurationException If no XML parser is available.
+	 * @throws SAXException If the file is not valid XML.
+	 * @throws IOException If the file can not be read.
+	 * @throws IllegalArgumentException If a CORS policy or a listener has a value that is not a number, with the error as message.
+	 */
+	ConfigSnapshot( String confLoc ) throws ParserConfigurationException, SAXException, IOException
+	{
+		readConfig( confLoc );
+		processDefaults();
+		values = new Values( this );
+	}
+	
+	/**
+	 * Validates the config file.
+	 * <br><br>
+	 * The function will return false if there is an error in the config file
+	 * and true if the config file is valid.
+	 * 
+	 * @return Boolean value whether the config file is valid or not.
+	 */
+	public boolean validateConfig()
+	{
+		if ( serverType.toLowerCase().equals( "http" ) == false && serverType.toLowerCase().equals( "https" ) == false )
+		{
+			System.out.println( "ERROR: Invalid server type. \n\t Only http and https is accepted values." );
+			return false;
+		}
+		
+		if ( values.serverPort == Values.NOT_AN_INT )
+		{
+			System.out.println( "ERROR: Invalid server port. \n\t The port must be a whole number." );
+			return false;
+		}
+		else if ( values.serverPort < 1 )
+		{
+			System.out.println( "ERROR: Invalid server port. \n\t Port numbers can not be less than 1." );
+			return false;
+		}
+		else if ( values.serverPort > 65535 )
+		{
+			System.out.println( "ERROR: Invalid server port. \n\t Port numbers can not be more than 65,535." );
+			return false;
+		}
+		
+		for ( int i = 0; i < listeners.length; i++ )
+		{
+			if ( listeners[ i ].getType().equals( "http" ) == false && listeners[ i ].getType().equals( "https" ) == false )
+			{
+				System.out.println( "ERROR: Invalid listener type. \n\t Only http and https is accepted values." );
+				return false;
+			}
+			else if ( listeners[ i ].getPort() < 1 || listeners[ i ].getPort() > 65535 )
+			{
+				System.out.println( "ERROR: Invalid listener port. \n\t Port numbers must be between 1 and 65,535." );
+				return false;
+			}
+			else if ( listeners[ i ].isRedirect() && listeners[ i ].getType().equals( "http" ) == false )
+			{
+				System.out.println( "ERROR: Invalid listener redirect. \n\t Only http listeners can redirect requests." );
+				return false;
+			}
+			else if ( listeners[ i ].isRedirect() && listeners[ i ].getRedirectTarget().matches( "https?://[^/\\s]+/?" ) == false )
+			{
+				System.out.println( "ERROR: Invalid listener redirect. \n\t Requests can only be redirected to an origin, ie. https://example.com" );
+				return false;
+			}
+			
+			for ( int j = 0; j < i; j++ )
+			{
+				if ( listeners[ i ].getPort() == listeners[ j ].getPort() )
+				{
+					System.out.println( "ERROR: Invalid listener port. \n\t Port " + listeners[ i ].getPort() + " is used by more than one listener." );
+					return false;
+				}
+			}
+		}
+		
+		if ( usesHttps() && keyFile.equals( "" ) || keyFile == null )
+		{
+			System.out.println( "ERROR: Invalid HTTPS keyfile location. \n\t A full system path is needed for the HTTPS Certificate location." );
+			return false;
+		}
+		
+		if ( usesHttps() && password1.equals( "" ) || password1 == null )
+		{
+			System.out.println( "ERROR: Invalid keystore password. \n\t A first password needs to be specified for the keystore file." );
+			return false;
+		}
+		
+		if ( usesHttps() && password2.equals( "" ) || password2 == null )
+		{
+			System.out.println( "ERROR: Invalid keystore password. \n\t A second password needs to be specified for the keystore file." );
+			return false;
+		}
+		
+		if ( logPath == null || logPath.equals( "" ) )
+		{
+			System.out.println( "ERROR: Invalid system log path. \n\t A full system path is needed for system logs to be created." );
+			return false;
+		}
+		else if ( new File(logPath).exists() == false )
+		{
+			System.out.println( "ERROR: Invalid system log path. \n\t The folder logs will be saved in does not exist." );
+			return false;
+		}
+		
+		if ( logDateFormat == null || logDateFormat.equals( "" ) )
+		{
+			System.out.println( "ERROR: Invalid log date format. \n\t A valid date format is needed to dateTime stamp the system logs." );
+			return false;
+		}
+		
+		if ( logLevel.contains( "1" ) == false && logLevel.contains( "2" ) == false && logLevel.contains( "3" ) == false )
+		{
+			System.out.println( "ERROR: Invalid log level. \n\t Valid log level values are only '1', '2' and '3'. Or any combanation of these numbers." );
+			return false;
+		}
+		
+		if ( values.logBufferSize == Values.NOT_AN_INT )
+		{
+			System.out.println( "ERROR: Invalid log buffer size. \n\t The log buffer size must be a whole number of events." );
+			return false;
+		}
+		else if ( values.logBufferSize < 1 || values.logBufferSize > 1048576 )
+		{
+			System.out.println( "ERROR: Invalid log buffer size. \n\t The log buffer size must be between 1 and 1048576 events." );
+			return false;
+		}
+		
+		if ( values.logMaxFileSize == Values.NOT_A_LONG || values.logRotateInterval == Values.NOT_A_LONG || values.logMaxFiles == Values.NOT_AN_INT )
+		{
+			System.out.println( "ERROR: Invalid log rotation. \n\t The maximum file size, rotation hours and maximum files must be whole numbers." );
+			return false;
+		}
+		else if ( values.logMaxFileSize < 0 || values.logRotateInterval < 0 || values.logMaxFiles < 0 )
+		{
+			System.out.println( "ERROR: Invalid log rotation. \n\t The maximum file size, rotation hours and maximum files can not be less than 0." );
+			return false;
+		}
+		
+		if ( Double.isNaN( values.accessLogSampleRate ) || values.accessLogBufferSize == Values.NOT_AN_INT )
+		{
+			System.out.println( "ERROR: Invalid access log. \n\t The sample rate must be a number and the buffer size a whole number of requests." );
+			return false;
+		}
+		else if ( values.accessLogSampleRate < 0 || values.accessLogSampleRate > 1 )
+		{
+			System.out.println( "ERROR: Invalid access log sample rate. \n\t The sample rate must be between 0 and 1." );
+			return false;
+		}
+		else if ( values.accessLogBufferSize < 1 || values.accessLogBufferSize > 1048576 )
+		{
+			System.out.println( "ERROR: Invalid access log buffer size. \n\t The access log buffer size must be between 1 and 1048576 requests." );
+			return false;
+		}
+		
+		if ( Double.isNaN( values.captureSampleRate ) || values.captureMaxSize == Values.NOT_A_LONG || values.captureBufferSize == Values.NOT_AN_INT )
+		{
+			System.out.println( "ERROR: Invalid capture. \n\t The sample rate must be a number, the maximum size and buffer size whole numbers." );
+			return false;
+		}
+		else if ( values.captureSampleRate < 0 || values.captureSampleRate > 1 )
+		{
+			System.out.println( "ERROR: Invalid capture sample rate. \n\t The sample rate must be between 0 and 1." );
+			return false;
+		}
+		else if ( values.captureMaxSize < 1 )
+		{
+			System.out.println( "ERROR: Invalid capture maximum size. \n\t The maximum size of a capture must be at least 1 MB." );
+			return false;
+		}
+		else if ( values.captureBufferSize < 1 || values.captureBufferSize > 1048576 )
+		{
+			System.out.println( "ERROR: Invalid capture buffer size. \n\t The capture buffer size must be between 1 and 1048576 requests." );
+			return false;
+		}
+		
+		if ( metricsPath.startsWith( "/" ) == false || metricsPath.contains( "?" ) )
+		{
+			System.out.println( "ERROR: Invalid metrics path. \n\t The metrics path must start with '/' and can not have a query." );
+			return false;
+		}
+		
+		if ( admin && ( adminPath.startsWith( "/" ) == false || adminPath.contains( "?" ) ) )
+		{
+			System.out.println( "ERROR: Invalid admin path. \n\t The admin path must start with '/' and can not have a query." );
+			return false;
+		}
+		
+		if ( admin && adminToken.length() < 16 )
+		{
+			System.out.println( "ERROR: Invalid admin token. \n\t The admin endpoint needs a token of at least 16 characters." );
+			return false;
+		}
+		
+		if ( values.adminSlowestRoutes == Values.NOT_AN_INT )
+		{
+			System.out.println( "ERROR: Invalid admin slowest routes. \n\t The number of slowest routes must be a whole number." );
+			return false;
+		}
+		else if ( values.adminSlowestRoutes < 0 )
+		{
+			System.out.println( "ERROR: Invalid admin slowest routes. \n\t The number of slowest routes can not be less than 0." );
+			return false;
+		}
+		
+		if ( values.slowRequestMillis == Values.NOT_A_LONG || values.requestDeadlineMillis == Values.NOT_A_LONG )
+		{
+			System.out.println( "ERROR: Invalid watchdog. \n\t The slow request time and deadline must be whole numbers of milliseconds." );
+			return false;
+		}
+		else if ( values.slowRequestMillis < 0 || values.requestDeadlineMillis < 0 )
+		{
+			System.out.println( "ERROR: Invalid watchdog. \n\t The slow request time and deadline can not be less than 0." );
+			return false;
+		}
+		
+		if ( resourcePath == null || resourcePath.equals( "" ) )
+		{
+			System.out.println( "ERROR: Invalid resource path. \n\t A valid path is needed for the web resources." );
+			return false;
+		}
+		
+		if ( values.cacheMaxSize == Values.NOT_A_LONG )
+		{
+			System.out.println( "ERROR: Invalid cache size. \n\t The maximum cache size must be a whole number of megabytes." );
+			return false;
+		}
+		else if ( values.cacheMaxSize < 0 )
+		{
+			System.out.println( "ERROR: Invalid cache size. \n\t The maximum cache size can not be less than 0." );
+			return false;
+		}
+		
+		if ( values.tlsSessionCacheSize == Values.NOT_AN_INT || values.tlsSessionTimeout == Values.NOT_AN_INT )
+		{
+			System.out.println( "ERROR: Invalid TLS session settings. \n\t The session cache size and timeout must be whole numbers." );
+			return false;
+		}
+		else if ( values.tlsSessionCacheSize < 0 || values.tlsSessionTimeout < 0 )
+		{
+			System.out.println( "ERROR: Invalid TLS session settings. \n\t The session cache size and timeout can not be less than 0." );
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Read the config file. 
+	 * 
+	 * @param confLoc Full path to config file
+	 */
+	private void readConfig( String confLoc ) throws ParserConfigurationException, SAXException, IOException
+	{
+		File fXmlFile = new File( confLoc );
+		DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+		DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
+
+		Document doc = dBuilder.parse( fXmlFile );
+		doc.getDocumentElement().normalize();
+
+		processWebSettings( doc );
+		processLogSettings( doc );
+		processAccessLogSettings( doc );
+		processCaptureSettings( doc );
+		processResourceSettings( doc );
+		processFilterSettings( doc );
+		processCorsSettings( doc );
+		processListenerSettings( doc );
+		processMetricsSettings( doc );
+		processAdminSettings( doc );
+		processWatchdogSettings( doc );
+		processCacheSettings( doc );
+		processTlsSettings( doc );
+		processDatabaseSettings( doc );
+	}
+	
+	/**
+	 * Use default settings for components specified in config file.
+	 */
+	private void processDefaults()
+	{
+		if ( defaultWebSettings == true )
+		{
+			serverType = "http";
+			serverPort = "80";
+			folderCreation = true;
+		}
+		
+		if ( defaultLogSettings == true )
+		{
+			logPath = System.getProperty( "user.dir" ) + System.getProperty( "file.separator" ) + "logs";
+			logDateFormat = "yyyy-MM-dd HH.mm.ss";
+		}
+		
+		if ( logLevel.length() < 1 )
+		{
+			logLevel = "123";
+		}
+		
+		if ( logBufferSize == null || logBufferSize.length() < 1 )
+		{
+			logBufferSize = "8192";
+		}
+		
+		if ( logMaxFileSize == null || logMaxFileSize.length() < 1 )
+		{
+			logMaxFileSize = "100";
+		}
+		
+		if ( logRotateHours == null || logRotateHours.length() < 1 )
+		{
+			logRotateHours = "24";
+		}
+		
+		if ( logMaxFiles == null || logMaxFiles.length() < 1 )
+		{
+			logMaxFiles = "30";
+		}
+		
+		if ( accessLogSampleRate == null || accessLogSampleRate.length() < 1 )
+		{
+			accessLogSampleRate = "1";
+		}
+		
+		if ( accessLogBufferSize == null || accessLogBufferSize.length() < 1 )
+		{
+			accessLogBufferSize = "16384";
+		}
+		
+		if ( captureSampleRate == null || captureSampleRate.length() < 1 )
+		{
+			captureSampleRate = "1";
+		}
+		
+		if ( captureRedactHeaders == null || captureRedactHeaders.length() < 1 )
+		{
+			captureRedactHeaders = "Authorization, Cookie, Proxy-Authorization";
+		}
+		
+		if ( captureMaxSize == null || captureMaxSize.length() < 1 )
+		{
+			captureMaxSize = "256";
+		}
+		
+		if ( captureBufferSize == null || captureBufferSize.length() < 1 )
+		{
+			captureBufferSize = "4096";
+		}
+		
+		if ( metricsPath == null || metricsPath.length() < 1 )
+		{
+			metricsPath = "/metrics";
+		}
+		
+		if ( adminPath == null || adminPath.length() < 1 )
+		{
+			adminPath = "/admin";
+		}
+		
+		if ( adminToken == null )
+		{
+			adminToken = "";
+		}
+		
+		if ( adminSlowestRoutes == null || adminSlowestRoutes.length() < 1 )
+		{
+			adminSlowestRoutes = "10";
+		}
+		
+		if ( slowRequestMillis == null || slowRequestMillis.length() < 1 )
+		{
+			slowRequestMillis = "5000";
+		}
+		
+		if ( requestDeadlineMillis == null || requestDeadlineMillis.length() < 1 )
+		{
+			requestDeadlineMillis = "0";
+		}
+		
+		if ( cacheMaxSize == null || cacheMaxSize.length() < 1 )
+		{
+			cacheMaxSize = "64";
+		}
+		
+		if ( tlsProtocols == null || tlsProtocols.length() < 1 )
+		{
+			tlsProtocols = "TLSv1.3, TLSv1.2";
+		}
+		
+		if ( tlsCipherSuites == null )
+		{
+			tlsCipherSuites = "";
+		}
+		
+		if ( tlsSessionCacheSize == null || tlsSessionCacheSize.length() < 1 )
+		{
+			tlsSessionCacheSize = "20480";
+		}
+		
+		if ( tlsSessionTimeout == null || tlsSessionTimeout.length() < 1 )
+		{
+			tlsSessionTimeout = "86400";
+		}
+	}
+	
+	/**
+	 * Refactors paths to allow keywords to be used in the config file.
+	 * <br>
+	 * <br>
+	 * This method only allows the keyword "curdir" to be translated to the
+	 * working directory of this application. The keyword is NOT case sensitive. 
+	 * 
+	 * @param line Path string that needs refactoring.
+	 * @return Refactored path
+	 */
+	private static String refactorConfigPathString( String line )
+	{
+		if ( line.toLowerCase().startsWith( "curdir" ) )
+		{
+			String curDir = line.substring( 0, 6 );
+			return line.replace( curDir, System.getProperty( "user.dir" ) );
+		}
+		else
+		{
+			return line;
+		}
+	}
+	
+	/**
+	 * Reads and returns a XML element string value.
+	 * 
+	 * @param eElement XML element.
+	 * @param tagName Tag name as is specified in the config file.
+	 * @param itemNumber Element number based on tag name.
+	 * @return String found in the XML based on the tag name and item number.
+	 */
+	private static String getXmlValue( Element eElement, String tagName, int itemNumber )
+	{
+		try
+		{
+			return eElement.getElementsByTagName( tagName ).item( itemNumber ).getTextContent();
+		}
+		catch ( Exception ex )
+		{
+			// There is no value in the config file. Return an empty string
+			return "";
+		}
+	}
+	
+	/**
+	 * Process the web settings section of the config file.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processWebSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "web" );
+		Node node = nList.item( 0 );
+
+		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
+		{
+			Element eElement = ( Element ) node;
+			
+			serverType = getXmlValue( eElement, "type", 0 );
+			serverPort = getXmlValue( eElement, "port", 0 );
+			keyFile = refactorConfigPathString( getXmlValue( eElement, "keyfile", 0 ) );
+			password1 = getXmlValue( eElement, "password1", 0 );
+			password2 = getXmlValue( eElement, "password2", 0 );
+			folderCreation = Boolean.parseBoolean( getXmlValue( eElement, "createFolders", 0 ) );
+			defaultWebSettings = Boolean.parseBoolean( getXmlValue( eElement, "defaultSettings", 0 ) );
+		}
+	}
+	
+	/**
+	 * Process the log settings section of the config file.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processLogSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "log" );
+		Node node = nList.item( 0 );
+
+		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
+		{
+			Element eElement = ( Element ) node;
+
+			logPath = refactorConfigPathString( getXmlValue( eElement, "path", 0 ) );
+			logDateFormat = getXmlValue( eElement, "dateFormat", 0 );
+			logLevel = getXmlValue( eElement, "logLevel", 0 );
+			logAsync = getXmlValue( eElement, "async", 0 ).equalsIgnoreCase( "false" ) == false;
+			logBufferSize = getXmlValue( eElement, "bufferSize", 0 );
+			logMaxFileSize = getXmlValue( eElement, "maxFileSize", 0 );
+			logRotateHours = getXmlValue( eElement, "rotateHours", 0 );
+			logMaxFiles = getXmlValue( eElement, "maxFiles", 0 );
+			logCompress = getXmlValue( eElement, "compress", 0 ).equalsIgnoreCase( "false" ) == false;
+			defaultLogSettings = Boolean.parseBoolean( getXmlValue( eElement, "defaultSettings", 0 ) );
+		}
+	}
+	
+	/**
+	 * Process the web recourse section of the config file.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processResourceSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "recourse" );
+		Node node = nList.item( 0 );
+
+		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
+		{
+			Element eElement = ( Element ) node;
+
+			resourcePath = refactorConfigPathString( getXmlValue( eElement, "path", 0 ) );
+		}
+	}
+	
+	/**
+	 * Process the filters section of the config file.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processFilterSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "filters" );
+		Node node = nList.item( 0 );
+
+		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
+		{
+			Element eElement = ( Element ) node;
+
+			securityHeaders = Boolean.parseBoolean( getXmlValue( eElement, "securityHeaders", 0 ) );
+			timingHeader = Boolean.parseBoolean( getXmlValue( eElement, "timing", 0 ) );
+			serverTimingHeader = Boolean.parseBoolean( getXmlValue( eElement, "serverTiming", 0 ) );
+		}
+	}
+	
+	/**
+	 * Process the CORS section of the config file. Every policy element applies to the routes below its path.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processCorsSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "policy" );
+		List< CorsPolicy > policies = new ArrayList< CorsPolicy >();
+
+		for ( int i = 0; i < nList.getLength(); i++ )
+		{
+			Node node = nList.item( i );
+
+			if ( node.getNodeType() == Node.ELEMENT_NODE && node.getParentNode().getNodeName().equals( "cors" ) )
+			{
+				Element eElement = ( Element ) node;
+				
+				String path = getXmlValue( eElement, "path", 0 );
+				String origins = getXmlValue( eElement, "origins", 0 );
+				String methods = getXmlValue( eElement, "methods", 0 );
+				String headers = getXmlValue( eElement, "headers", 0 );
+				String maxAge = getXmlValue( eElement, "maxAge", 0 );
+				boolean credentials = Boolean.parseBoolean( getXmlValue( eElement, "credentials", 0 ) );
+				
+				try
+				{
+					policies.add( new CorsPolicy( path.isEmpty() ? "/" : path,
+							origins.isEmpty() ? new String[] { CorsPolicy.ANY_ORIGIN } : origins.trim().split( "\\s*,\\s*" ),
+							methods.isEmpty() ? CorsFilter.DEFAULT_METHODS : methods,
+							headers.isEmpty() ? CorsFilter.DEFAULT_HEADERS : headers,
+							credentials,
+							maxAge.isEmpty() ? CorsFilter.DEFAULT_MAX_AGE : Integer.parseInt( maxAge ) ) );
+				}
+				catch ( NumberFormatException e )
+				{
+					throw new IllegalArgumentException( "Invalid CORS max age. \n\t The max age of a CORS policy must be a whole number of seconds." );
+				}
+				
+				corsSettings += ( corsSettings.isEmpty() ? "" : "; " ) + path + " " + origins + " " + methods + " " + headers + " " + credentials + " " + maxAge;
+			}
+		}
+
+		corsPolicies = policies.toArray( new CorsPolicy[ policies.size() ] );
+	}
+	
+	/**
+	 * Process the listeners section of the config file. Without it the process listens
+	 * on the type and port of the web section only.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processListenerSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "listener" );
+		List< Listener > result = new ArrayList< Listener >();
+
+		for ( int i = 0; i < nList.getLength(); i++ )
+		{
+			Node node = nList.item( i );
+
+			if ( node.getNodeType() == Node.ELEMENT_NODE && node.getParentNode().getNodeName().equals( "listeners" ) )
+			{
+				Element eElement = ( Element ) node;
+				
+				String type = getXmlValue( eElement, "type", 0 ).trim();
+				String redirectTo = getXmlValue( eElement, "redirectTo", 0 ).trim();
+				
+				try
+				{
+					result.add( new Listener( type, Integer.parseInt( getXmlValue( eElement, "port", 0 ).trim() ), redirectTo.isEmpty() ? null : redirectTo ) );
+				}
+				catch ( NumberFormatException e )
+				{
+					throw new IllegalArgumentException( "Invalid listener port. \n\t The port of every listener must be a whole number." );
+				}
+			}
+		}
+
+		listeners = result.toArray( new Listener[ result.size() ] );
+	}
+	
+	/**
+	 * Process the access log section of the config file.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processAccessLogSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "accessLog" );
+		Node node = nList.item( 0 );
+
+		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
+		{
+			Element eElement = ( Element ) node;
+
+			accessLog = Boolean.parseBoolean( getXmlValue( eElement, "enabled", 0 ) );
+			accessLogSampleRate = getXmlValue( eElement, "sampleRate", 0 );
+			accessLogBufferSize = getXmlValue( eElement, "bufferSize", 0 );
+		}
+	}
+	
+	/**
+	 * Process the traffic capture section of the config file.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processCaptureSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "capture" );
+		Node node = nList.item( 0 );
+
+		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
+		{
+			Element eElement = ( Element ) node;
+
+			capture = Boolean.parseBoolean( getXmlValue( eElement, "enabled", 0 ) );
+			captureSampleRate = getXmlValue( eElement, "sampleRate", 0 );
+			captureRedactHeaders = getXmlValue( eElement, "redactHeaders", 0 );
+			captureMaxSize = getXmlValue( eElement, "maxSize", 0 );
+			captureBufferSize = getXmlValue( eElement, "bufferSize", 0 );
+
+			captureBodies = getXmlValue( eElement, "bodies", 0 ).equalsIgnoreCase( "false" ) == false;
+		}
+	}
+	
+	/**
+	 * Process the metrics section of the config file.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processMetricsSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "metrics" );
+		Node node = nList.item( 0 );
+
+		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
+		{
+			Element eElement = ( Element ) node;
+
+			metrics = Boolean.parseBoolean( getXmlValue( eElement, "enabled", 0 ) );
+			metricsPath = getXmlValue( eElement, "path", 0 );
+		}
+	}
+	
+	/**
+	 * Process the admin section of the config file.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processAdminSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "admin" );
+		Node node = nList.item( 0 );
+
+		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
+		{
+			Element eElement = ( Element ) node;
+
+			admin = Boolean.parseBoolean( getXmlValue( eElement, "enabled", 0 ) );
+			adminPath = getXmlValue( eElement, "path", 0 );
+			adminToken = getXmlValue( eElement, "token", 0 );
+			adminSlowestRoutes = getXmlValue( eElement, "slowestRoutes", 0 );
+		}
+	}
+	
+	/**
+	 * Process the watchdog section of the config file.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processWatchdogSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "watchdog" );
+		Node node = nList.item( 0 );
+
+		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
+		{
+			Element eElement = ( Element ) node;
+
+			slowRequestMillis = getXmlValue( eElement, "slowRequestMillis", 0 );
+			requestDeadlineMillis = getXmlValue( eElement, "deadlineMillis", 0 );
+		}
+	}
+	
+	/**
+	 * Process the response cache section of the config file.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processCacheSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "cache" );
+		Node node = nList.item( 0 );
+
+		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
+		{
+			Element eElement = ( Element ) node;
+
+			cacheMaxSize = getXmlValue( eElement, "maxSize", 0 );
+		}
+	}
+	
+	/**
+	 * Process the TLS section of the config file.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processTlsSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "tls" );
+		Node node = nList.item( 0 );
+
+		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
+		{
+			Element eElement = ( Element ) node;
+
+			tlsProtocols = getXmlValue( eElement, "protocols", 0 );
+			tlsCipherSuites = getXmlValue( eElement, "cipherSuites", 0 );
+			tlsSessionCacheSize = getXmlValue( eElement, "sessionCacheSize", 0 );
+			tlsSessionTimeout = getXmlValue( eElement, "sessionTimeout", 0 );
+			tlsSessionTickets = getXmlValue( eElement, "sessionTickets", 0 ).equalsIgnoreCase( "false" ) == false;
+			tlsReloadKeyStore = getXmlValue( eElement, "reloadKeystore", 0 ).equalsIgnoreCase( "false" ) == false;
+		}
+	}
+	
+	/**
+	 * Process the database section of the config file.
+	 * 
+	 * @param doc XML document.
+	 */
+	private void processDatabaseSettings( Document doc )
+	{
+		NodeList nList = doc.getElementsByTagName( "database" );
+		Node node = nList.item( 0 );
+
+		if ( node != null && node.getNodeType() == Node.ELEMENT_NODE )
+		{
+			Element eElement = ( Element ) node;
+			
+			dbIP = getXmlValue( eElement, "ip", 0 );
+			dbPort = getXmlValue( eElement, "port", 0 );
+			dbName = getXmlValue( eElement, "dbName", 0 );
+		}
+	}
+	
+	
+	
+	/**
+	 * Returns every setting by the name of its section and element, ie. "log.logLevel",
+	 * with the defaults filled in. The CORS policies and listeners are one setting each.
+	 */
+	public Map< String, String > getSettings()
+	{
+		Map< String, String > settings = new LinkedHashMap< String, String >();
+		
+		settings.put( "web.type", serverType );
+		settings.put( "web.port", serverPort );
+		settings.put( "web.keyfile", keyFile );
+		settings.put( "web.password1", password1 );
+		settings.put( "web.password2", password2 );
+		settings.put( "web.createFolders", String.valueOf( folderCreation ) );
+		settings.put( "log.path", logPath );
+		settings.put( "log.dateFormat", logDateFormat );
+		settings.put( "log.logLevel", logLevel );
+		settings.put( "log.async", String.valueOf( logAsync ) );
+		settings.put( "log.bufferSize", logBufferSize );
+		settings.put( "log.maxFileSize", logMaxFileSize );
+		settings.put( "log.rotateHours", logRotateHours );
+		settings.put( "log.maxFiles", logMaxFiles );
+		settings.put( "log.compress", String.valueOf( logCompress ) );
+		settings.put( "accessLog.enabled", String.valueOf( accessLog ) );
+		settings.put( "accessLog.sampleRate", accessLogSampleRate );
+		settings.put( "accessLog.bufferSize", accessLogBufferSize );
+		settings.put( "capture.enabled", String.valueOf( capture ) );
+		settings.put( "capture.sampleRate", captureSampleRate );
+		settings.put( "capture.redactHeaders", captureRedactHeaders );
+		settings.put( "capture.bodies", String.valueOf( captureBodies ) );
+		settings.put( "capture.maxSize", captureMaxSize );
+		settings.put( "capture.bufferSize", captureBufferSize );
+		settings.put( "recourse.path", resourcePath );
+		settings.put( "filters.securityHeaders", String.valueOf( securityHeaders ) );
+		settings.put( "filters.timing", String.valueOf( timingHeader ) );
+		settings.put( "filters.serverTiming", String.valueOf( serverTimingHeader ) );
+		settings.put( "cors.policy", corsSettings );
+		settings.put( "listeners.listener", Arrays.toString( listeners ) );
+		settings.put( "metrics.enabled", String.valueOf( metrics ) );
+		settings.put( "metrics.path", metricsPath );
+		settings.put( "admin.enabled", String.valueOf( admin ) );
+		settings.put( "admin.path", adminPath );
+		settings.put( "admin.token", adminToken );
+		settings.put( "admin.slowestRoutes", adminSlowestRoutes );
+		settings.put( "watchdog.slowRequestMillis", slowRequestMillis );
+		settings.put( "watchdog.deadlineMillis", requestDeadlineMillis );
+		settings.put( "cache.maxSize", cacheMaxSize );
+		settings.put( "tls.protocols", tlsProtocols );
+		settings.put( "tls.cipherSuites", tlsCipherSuites );
+		settings.put( "tls.sessionCacheSize", tlsSessionCacheSize );
+		settings.put( "tls.sessionTimeout", tlsSessionTimeout );
+		settings.put( "tls.sessionTickets", String.valueOf( tlsSessionTickets ) );
+		settings.put( "tls.reloadKeystore", String.valueOf( tlsReloadKeyStore ) );
+		settings.put( "database.ip", dbIP );
+		settings.put( "database.port", dbPort );
+		settings.put( "database.dbName", dbName );
+		
+		return settings;
+	}
+	
+	/**
+	 * Returns whether the value of a setting must not be written to the log.
+	 */
+	public static boolean isSecret( String name )
+	{
+		return SECRET_SETTINGS.contains( name );
+	}
+	
+	/**
+	 * Creates a copy of this snapshot with the values of some live settings taken from another snapshot.
+	 * 
+	 * @param source Snapshot the values are taken from.
+	 * @param names Names of the settings to take, all of them in {@link #LIVE_SETTINGS}.
+	 * @return The new snapshot, this snapshot is not changed.
+	 */
+	ConfigSnapshot withLiveSettings( ConfigSnapshot source, Set< String > names )
+	{
+		ConfigSnapshot copy = clone();
+		
+		for ( String name : names )
+		{
+			switch ( name )
+			{
+				case "log.logLevel":
+					copy.logLevel = source.logLevel;
+					break;
+				case "accessLog.enabled":
+					copy.accessLog = source.accessLog;
+					break;
+				case "accessLog.sampleRate":
+					copy.accessLogSampleRate = source.accessLogSampleRate;
+					break;
+				case "capture.enabled":
+					copy.capture = source.capture;
+					break;
+				case "capture.sampleRate":
+					copy.captureSampleRate = source.captureSampleRate;
+					break;
+				case "cache.maxSize":
+					copy.cacheMaxSize = source.cacheMaxSize;
+					break;
+				default:
+					throw new IllegalArgumentException( name + " can not be changed while the server runs" );
+			}
+		}
+		
+		copy.values = new Values( copy );
+		
+		return copy;
+	}
+	
+	/**
+	 * Creates a copy of this snapshot that logs other types of events.
+	 * 
+	 * @param level Any combination of '1' (LOG), '2' (WARNING) and '3' (ERROR), already checked.
+	 * @return The new snapshot, this snapshot is not changed.
+	 */
+	ConfigSnapshot withLogLevel( String level )
+	{
+		ConfigSnapshot copy = clone();
+		copy.logLevel = level;
+		
+		return copy;
+	}
+	
+	@Override
+	protected ConfigSnapshot clone()
+	{
+		try
+		{
+			// The arrays and values are shared, they are never changed and arrays are only handed out as copies
+			return ( ConfigSnapshot ) super.clone();
+		}
+		catch ( CloneNotSupportedException e )
+		{
+			throw new IllegalStateException( e );
+		}
+	}
+	
+	// Public get methods
+	public String getServerType()
+	{
+		return serverType;
+	}
+	
+	public int getServerPort()
+	{
+		return values.serverPort;
+	}
+	
+	/**
+	 * Returns whether the log and resource folders are created when they do not exist.
+	 */
+	public boolean createsFolders()
+	{
+		return folderCreation;
+	}
+	
+	/**
+	 * Returns the listeners of the process. Without a listeners section this is a
+	 * single listener with the type and port of the web section.
+	 */
+	public Listener[] getListeners()
+	{
+		if ( listeners.length == 0 )
+		{
+			return new Listener[] { new Listener( serverType, getServerPort(), null ) };
+		}
+		
+		return listeners.clone();
+	}
+	
+	/**
+	 * Returns true if any listener serves HTTPS and therefore needs the keystore.
+	 */
+	public boolean usesHttps()
+	{
+		if ( listeners.length == 0 )
+		{
+			return serverType.toLowerCase().equals( "https" );
+		}
+		
+		for ( Listener listener : listeners )
+		{
+			if ( listener.getType().equals( "https" ) )
+			{
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	public String keyFilePath()
+	{
+		return keyFile;
+	}
+	
+	public String keyStorePassword1()
+	{
+		return password1;
+	}
+	
+	public String keyStorePassword2()
+	{
+		return password2;
+	}
+	
+	public String getLogPath()
+	{
+		return logPath;
+	}
+	
+	public String getLogDateFormat()
+	{
+		return logDateFormat;
+	}
+	
+	public String getLogLevel()
+	{
+		return logLevel;
+	}
+	
+	/**
+	 * Returns whether log events are written by a background thread.
+	 */
+	public boolean useAsyncLog()
+	{
+		return logAsync;
+	}
+	
+	/**
+	 * Returns the number of log events the background thread can fall behind.
+	 */
+	public int getLogBufferSize()
+	{
+		return values.logBufferSize;
+	}
+	
+	/**
+	 * Returns the size in bytes a log file can grow to before a new one is started, 0 for no limit.
+	 */
+	public long getLogMaxFileSize()
+	{
+		return values.logMaxFileSize;
+	}
+	
+	/**
+	 * Returns the milliseconds after which a new log file is started, 0 for never.
+	 */
+	public long getLogRotateInterval()
+	{
+		return values.logRotateInterval;
+	}
+	
+	/**
+	 * Returns the number of old log files kept, 0 to keep all of them.
+	 */
+	public int getLogMaxFiles()
+	{
+		return values.logMaxFiles;
+	}
+	
+	/**
+	 * Returns whether old log files are compressed with gzip.
+	 */
+	public boolean compressLogs()
+	{
+		return logCompress;
+	}
+	
+	public String getResourcePath()
+	{
+		return resourcePath;
+	}
+	
+	public boolean useSecurityHeaders()
+	{
+		return securityHeaders;
+	}
+	
+	public boolean useTimingHeader()
+	{
+		return timingHeader;
+	}
+	
+	public boolean useServerTimingHeader()
+	{
+		return serverTimingHeader;
+	}
+	
+	/**
+	 * Returns the CORS policies in the config file. The array is empty if the config file has none.
+	 */
+	public CorsPolicy[] getCorsPolicies()
+	{
+		return corsPolicies.clone();
+	}
+	
+	/**
+	 * Returns whether answered requests are written to the access log.
+	 */
+	public boolean useAccessLog()
+	{
+		return accessLog;
+	}
+	
+	/**
+	 * Returns the share of requests written to the access log, between 0 and 1.
+	 */
+	public double getAccessLogSampleRate()
+	{
+		return values.accessLogSampleRate;
+	}
+	
+	/**
+	 * Returns the number of requests the access log can fall behind before requests are not recorded.
+	 */
+	public int getAccessLogBufferSize()
+	{
+		return values.accessLogBufferSize;
+	}
+	
+	/**
+	 * Returns whether the raw bytes of requests are captured for replaying them.
+	 */
+	public boolean useCapture()
+	{
+		return capture;
+	}
+	
+	/**
+	 * Returns the share of requests that is captured, between 0 and 1.
+	 */
+	public double getCaptureSampleRate()
+	{
+		return values.captureSampleRate;
+	}
+	
+	/**
+	 * Returns the lower case names of the headers whose values are not captured.
+	 */
+	public String[] getCaptureRedactedHeaders()
+	{
+		return values.captureRedactedHeaders.clone();
+	}
+	
+	/**
+	 * Returns whether request bodies are captured, or replaced by as many filler bytes.
+	 */
+	public boolean captureBodies()
+	{
+		return captureBodies;
+	}
+	
+	/**
+	 * Returns the size in bytes of the captured requests after which capturing stops.
+	 */
+	public long getCaptureMaxSize()
+	{
+		return values.captureMaxSize;
+	}
+	
+	/**
+	 * Returns the number of requests the capture can fall behind before requests are not captured.
+	 */
+	public int getCaptureBufferSize()
+	{
+		return values.captureBufferSize;
+	}
+	
+	/**
+	 * Returns whether request durations, connections and bytes are counted and exported.
+	 */
+	public boolean useMetrics()
+	{
+		return metrics;
+	}
+	
+	/**
+	 * Returns the request path the metrics are exported on.
+	 */
+	public String getMetricsPath()
+	{
+		return metricsPath;
+	}
+	
+	/**
+	 * Returns whether the admin endpoint is served.
+	 */
+	public boolean useAdmin()
+	{
+		return admin;
+	}
+	
+	/**
+	 * Returns the request path of the admin endpoint.
+	 */
+	public String getAdminPath()
+	{
+		return adminPath;
+	}
+	
+	/**
+	 * Returns the bearer token clients must send to use the admin endpoint.
+	 */
+	public String getAdminToken()
+	{
+		return adminToken;
+	}
+	
+	/**
+	 * Returns the number of routes with the slowest requests shown by the admin endpoint.
+	 */
+	public int getAdminSlowestRoutes()
+	{
+		return values.adminSlowestRoutes;
+	}
+	
+	/**
+	 * Returns the milliseconds after which a request still running is logged as slow, 0 if requests are not watched.
+	 */
+	public long getSlowRequestMillis()
+	{
+		return values.slowRequestMillis;
+	}
+	
+	/**
+	 * Returns the milliseconds after which the worker thread of a request still running is interrupted, 0 for never.
+	 */
+	public long getRequestDeadlineMillis()
+	{
+		return values.requestDeadlineMillis;
+	}
+	
+	/**
+	 * Returns the maximum size of the response cache in bytes.
+	 */
+	public long getCacheMaxSize()
+	{
+		return values.cacheMaxSize;
+	}
+	
+	/**
+	 * Returns the enabled TLS protocols, most preferred first.
+	 */
+	public String[] getTlsProtocols()
+	{
+		return values.tlsProtocols.clone();
+	}
+	
+	/**
+	 * Returns the enabled cipher suites, most preferred first, or an empty array for the defaults of the JRE.
+	 */
+	public String[] getTlsCipherSuites()
+	{
+		return values.tlsCipherSuites.clone();
+	}
+	
+	public int getTlsSessionCacheSize()
+	{
+		return values.tlsSessionCacheSize;
+	}
+	
+	/**
+	 * Returns the time in seconds a TLS session can be resumed.
+	 */
+	public int getTlsSessionTimeout()
+	{
+		return values.tlsSessionTimeout;
+	}
+	
+	public boolean useTlsSessionTickets()
+	{
+		return tlsSessionTickets;
+	}
+	
+	public boolean reloadTlsKeyStore()
+	{
+		return tlsReloadKeyStore;
+	}
+	
+	public String getDbIP()
+	{
+		return dbIP;
+	}
+	
+	public String getDbPort()
+	{
+		return dbPort;
+	}
+	
+	public String getDbName()
+	{
+		return dbName;
+	}
+	
+	/**
+	 * The settings that are numbers or lists, parsed from the strings of a snapshot.
+	 * <br><br>
+	 * Built once for every snapshot, so reading a setting never parses it again.
+	 * Values that are not numbers are stored as {@link #NOT_AN_INT}, {@link #NOT_A_LONG}
+	 * or NaN and reported by {@link ConfigSnapshot#validateConfig()}.
+	 */
+	private static final class Values
+	{
+		static final int NOT_AN_INT = Integer.MIN_VALUE;
+		static final long NOT_A_LONG = Long.MIN_VALUE;
+		
+		final int serverPort;
+		final int logBufferSize;
+		// In bytes
+		final long logMaxFileSize;
+		// In milliseconds
+		final long logRotateInterval;
+		final int logMaxFiles;
+		final double accessLogSampleRate;
+		final int accessLogBufferSize;
+		final double captureSampleRate;
+		final String[] captureRedactedHeaders;
+		// In bytes
+		final long captureMaxSize;
+		final int captureBufferSize;
+		final int adminSlowestRoutes;
+		final long slowRequestMillis;
+		final long requestDeadlineMillis;
+		// In bytes
+		final long cacheMaxSize;
+		final String[] tlsProtocols;
+		final String[] tlsCipherSuites;
+		final int tlsSessionCacheSize;
+		final int tlsSessionTimeout;
+		
+		Values( ConfigSnapshot settings )
+		{
+			serverPort = parseInt( settings.serverPort );
+			logBufferSize = parseInt( settings.logBufferSize );
+			logMaxFileSize = multiply( parseLong( settings.logMaxFileSize ), 1024 * 1024 );
+			logRotateInterval = multiply( parseLong( settings.logRotateHours ), 60 * 60 * 1000 );
+			logMaxFiles = parseInt( settings.logMaxFiles );
+			accessLogSampleRate = parseDouble( settings.accessLogSampleRate );
+			accessLogBufferSize = parseInt( settings.accessLogBufferSize );
+			captureSampleRate = parseDouble( settings.captureSampleRate );
+			captureMaxSize = multiply( parseLong( settings.captureMaxSize ), 1024 * 1024 );
+			captureBufferSize = parseInt( settings.captureBufferSize );
+			adminSlowestRoutes = parseInt( settings.adminSlowestRoutes );
+			slowRequestMillis = parseLong( settings.slowRequestMillis );
+			requestDeadlineMillis = parseLong( settings.requestDeadlineMillis );
+			cacheMaxSize = multiply( parseLong( settings.cacheMaxSize ), 1024 * 1024 );
+			tlsSessionCacheSize = parseInt( settings.tlsSessionCacheSize );
+			tlsSessionTimeout = parseInt( settings.tlsSessionTimeout );
+			
+			if ( settings.captureRedactHeaders.trim().equalsIgnoreCase( "none" ) )
+			{
+				captureRedactedHeaders = new String[ 0 ];
+			}
+			else
+			{
+				captureRedactedHeaders = settings.captureRedactHeaders.split( "," );
+				
+				for ( int i = 0; i < captureRedactedHeaders.length; i++ )
+				{
+					captureRedactedHeaders[ i ] = captureRedactedHeaders[ i ].trim().toLowerCase();
+				}
+			}
+			
+			tlsProtocols = settings.tlsProtocols.trim().split( "\\s*,\\s*" );
+			tlsCipherSuites = settings.tlsCipherSuites.trim().isEmpty() ? new String[ 0 ] : settings.tlsCipherSuites.trim().split( "\\s*,\\s*" );
+		}
+		
+		private static int parseInt( String value )
+		{
+			try
+			{
+				return Integer.parseInt( value );
+			}
+			catch ( NumberFormatException e )
+			{
+				return NOT_AN_INT;
+			}
+		}
+		
+		private static long parseLong( String value )
+		{
+			try
+			{
+				return Long.parseLong( value );
+			}
+			catch ( NumberFormatException e )
+			{
+				return NOT_A_LONG;
+			}
+		}
+		
+		private static double parseDouble( String value )
+		{
+			try
+			{
+				return Double.parseDouble( value );
+			}
+			catch ( NumberFormatException | NullPointerException e )
+			{
+				return Double.NaN;
+			}
+		}
+		
+		/**
+		 * Converts a setting to a smaller unit, keeping {@link #NOT_A_LONG}.
+		 */
+		private static long multiply( long value, long factor )
+		{
+			return ( value == NOT_A_LONG ) ? NOT_A_LONG : value * factor;
+		}
+	}
+}
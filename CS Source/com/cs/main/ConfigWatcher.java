@@ -0,0 +1,181 @@
+package com.cs.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import com.cs.logs.Logger;
+
+/**
+ * Watches the config file and applies its changes to the running server.
+ * <br><br>
+ * Editors save a file in several steps, so the file is only read once its folder has
+ * been quiet for a moment. A file that can not be read or is not valid is logged and
+ * the running settings are kept. Of the settings that changed since the file was last
+ * read, the live ones are applied and the others are logged as waiting for a restart.
+ */
+class ConfigWatcher implements Runnable
+{
+	// Time the folder must be quiet after a change before the file is read
+	private final static long SETTLE_MILLIS = 200;
+
+	private final File FILE;
+	private final Thread THREAD;
+
+	// The file as it was last read, the changes of the next version are found by comparing with it
+	private ConfigSnapshot lastRead;
+
+	/**
+	 * @param file The config file.
+	 * @param current The settings the server was started with.
+	 */
+	ConfigWatcher( File file, ConfigSnapshot current )
+	{
+		this.FILE = file.getAbsoluteFile();
+		this.lastRead = current;
+
+		THREAD = new Thread( this, "Config watcher" );
+		THREAD.setDaemon( true );
+	}
+
+	void start()
+	{
+		THREAD.start();
+	}
+
+	@Override
+	public void run()
+	{
+		try ( WatchService watcher = FileSystems.getDefault().newWatchService() )
+		{
+			FILE.getParentFile().toPath().register( watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY );
+
+			while ( true )
+			{
+				if ( isFileChanged( watcher.take() ) == false )
+				{
+					continue;
+				}
+
+				WatchKey more;
+
+				while ( ( more = watcher.poll( SETTLE_MILLIS, TimeUnit.MILLISECONDS ) ) != null )
+				{
+					isFileChanged( more );
+				}
+
+				reload();
+			}
+		}
+		catch ( IOException e )
+		{
+			Logger.writeLog( "ERROR", "The config file is not watched, changes apply after a restart: " + e.getMessage() );
+		}
+		catch ( InterruptedException e )
+		{
+			// The process is stopping
+		}
+	}
+
+	/**
+	 * Takes the events of a key and returns whether one of them is about the config file.
+	 */
+	private boolean isFileChanged( WatchKey key ) throws IOException
+	{
+		boolean changed = false;
+
+		for ( WatchEvent< ? > event : key.pollEvents() )
+		{
+			// Events were lost, the file may be one of them
+			if ( event.kind() == StandardWatchEventKinds.OVERFLOW || ( ( Path ) event.context() ).getFileName().toString().equals( FILE.getName() ) )
+			{
+				changed = true;
+			}
+		}
+
+		if ( key.reset() == false )
+		{
+			throw new IOException( "The folder " + FILE.getParent() + " can not be watched any more" );
+		}
+
+		return changed;
+	}
+
+	private void reload()
+	{
+		ConfigSnapshot read;
+
+		try
+		{
+			read = new ConfigSnapshot( FILE.getPath() );
+
+			if ( read.validateConfig() == false )
+			{
+				Logger.writeLog( "WARNING", "The changed config file is not valid, the running settings are kept. The error is printed to the console." );
+				return;
+			}
+		}
+		catch ( ParserConfigurationException | SAXException | IOException | RuntimeException e )
+		{
+			Logger.writeLog( "WARNING", "The changed config file could not be read, the running settings are kept: " + e.getMessage() );
+			return;
+		}
+
+		Map< String, String > before = lastRead.getSettings();
+		Map< String, String > after = read.getSettings();
+		Set< String > live = new LinkedHashSet< String >();
+		List< String > restart = new ArrayList< String >();
+
+		for ( Map.Entry< String, String > setting : after.entrySet() )
+		{
+			String previous = before.get( setting.getKey() );
+
+			if ( previous == null ? setting.getValue() == null : previous.equals( setting.getValue() ) )
+			{
+				continue;
+			}
+
+			if ( ConfigSnapshot.LIVE_SETTINGS.contains( setting.getKey() ) )
+			{
+				live.add( setting.getKey() );
+			}
+			else
+			{
+				restart.add( setting.getKey() );
+			}
+		}
+
+		lastRead = read;
+
+		if ( live.isEmpty() == false )
+		{
+			Config.applyLiveSettings( read, live );
+		}
+
+		for ( String name : live )
+		{
+			Logger.writeLog( "LOG", "Config setting " + name + " changed from " + before.get( name ) + " to " + after.get( name ) );
+		}
+
+		for ( String name : restart )
+		{
+			String change = ConfigSnapshot.isSecret( name ) ? "" : " from " + before.get( name ) + " to " + after.get( name );
+			Logger.writeLog( "WARNING", "Config setting " + name + " changed" + change + ", restart the server to apply it" );
+		}
+	}
+}
@@ -5,8 +5,10 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import com.cs.routes.HandleGetRequest;
 import com.cs.server.HttpServer;
-import com.cs.server.HttpsServer;
+import com.cs.server.Listener;
+import com.cs.server.WorkerPools;
 
 public class Driver
 {
@@ -20,26 +22,35 @@ public class Driver
 			System.exit( 1 );
 		}
 		
-		if ( Config.getServerType().toLowerCase().equals( "http" ) )
+		// Settings that can change while the server runs are applied when the file is saved
+		Config.watchConfigFile();
+		
+		HandleGetRequest.registerCachedRoutes();
+		
+		// All listeners share the threads, and the routes and caches are shared by the process anyway
+		WorkerPools pools = new WorkerPools();
+		Listener browserListener = null;
+		
+		for ( Listener listener : Config.getListeners() )
 		{
-			HttpServer httpServer = new HttpServer( Config.getServerPort() );
-			httpServer.start();
+			HttpServer server = listener.createServer( pools );
+			server.start();
 			
-			// Opens browser on the correct address and port number to view the index page
-			openBrowser();
+			if ( browserListener == null && listener.isRedirect() == false )
+			{
+				browserListener = listener;
+			}
 		}
-		else if ( Config.getServerType().toLowerCase().equals( "https" ) )
+		
+		if ( browserListener != null )
 		{
-			HttpsServer httpsServer = new HttpsServer( Config.getServerPort() );
-			httpsServer.start();
-			
 			// Opens browser on the correct address and port number to view the index page
-			openBrowser();
+			openBrowser( browserListener );
 		}
 	}
 	
-	private static void openBrowser() throws IOException, URISyntaxException
+	private static void openBrowser( Listener listener ) throws IOException, URISyntaxException
 	{
-		Desktop.getDesktop().browse( new URI( Config.getServerType() +  "://localhost:" + Config.getServerPort() ) );
+		Desktop.getDesktop().browse( new URI( listener.getType() +  "://localhost:" + listener.getPort() ) );
 	}
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package com.cs.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for a connection accepted by a listener.
+ */
+@Name( "com.cs.ConnectionAccepted" )
+@Label( "Connection Accepted" )
+@Description( "Creating the transport of an accepted connection and handing it to an event loop" )
+@Category( { "Coffee Spider", "HTTP" } )
+@StackTrace( false )
+public class ConnectionAcceptedEvent extends Event
+{
+	@Label( "Remote Address" )
+	String remoteAddress;
+
+	@Label( "Local Port" )
+	int localPort;
+
+	@Label( "Scheme" )
+	String scheme;
+}
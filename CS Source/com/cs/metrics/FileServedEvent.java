@@ -0,0 +1,30 @@
+package com.cs.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for a resource read to answer a request.
+ */
+@Name( "com.cs.FileServed" )
+@Label( "File Served" )
+@Description( "Reading the resource a route selected" )
+@Category( { "Coffee Spider", "HTTP" } )
+@StackTrace( false )
+public class FileServedEvent extends Event
+{
+	@Label( "Path" )
+	String path;
+
+	@Label( "Size" )
+	@DataAmount
+	long bytes;
+
+	@Label( "Status" )
+	int status;
+}
@@ -0,0 +1,9 @@
+package com.cs.metrics;
+
+/**
+ * A value that is read when the metrics are exported, ie. the length of a queue.
+ */
+public interface Gauge
+{
+	long getValue();
+}
@@ -0,0 +1,177 @@
+package com.cs.metrics;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * A lock-free log-linear histogram of durations in microseconds.
+ * <br><br>
+ * Every power of two is split into 16 buckets of equal width, so a recorded value
+ * is reported within 1/16 of itself from 1 microsecond up to several days. Buckets
+ * are striped counters created on their first use, so threads that record the same
+ * duration at the same time do not contend and the many buckets that are never hit
+ * cost no memory.
+ */
+public class LatencyHistogram
+{
+	private final static int SUB_BUCKET_BITS = 4;
+	private final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// Largest power of two with its own buckets, larger values are counted in the last bucket
+	private final static int MAX_EXPONENT = 40;
+	private final static int BUCKET_COUNT = SUB_BUCKETS + ( MAX_EXPONENT - SUB_BUCKET_BITS + 1 ) * SUB_BUCKETS;
+
+	private final static LongBinaryOperator MAX = new LongBinaryOperator()
+	{
+		@Override
+		public long applyAsLong( long a, long b )
+		{
+			return Math.max( a, b );
+		}
+	};
+
+	private final AtomicReferenceArray< LongAdder > BUCKETS = new AtomicReferenceArray< LongAdder >( BUCKET_COUNT );
+	private final LongAdder SUM = new LongAdder();
+	private final LongAccumulator MAXIMUM = new LongAccumulator( MAX, 0 );
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param micros The duration in microseconds.
+	 */
+	public void record( long micros )
+	{
+		micros = Math.max( micros, 0 );
+		int index = bucketIndex( micros );
+		LongAdder bucket = BUCKETS.get( index );
+
+		if ( bucket == null )
+		{
+			BUCKETS.compareAndSet( index, null, new LongAdder() );
+			bucket = BUCKETS.get( index );
+		}
+
+		bucket.increment();
+		SUM.add( micros );
+		MAXIMUM.accumulate( micros );
+	}
+
+	/**
+	 * Returns the number of recorded durations.
+	 */
+	public long getCount()
+	{
+		long count = 0;
+
+		for ( long bucket : snapshot() )
+		{
+			count += bucket;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the sum of the recorded durations in microseconds.
+	 */
+	public long getSum()
+	{
+		return SUM.sum();
+	}
+
+	/**
+	 * Returns the largest recorded duration in microseconds.
+	 */
+	public long getMax()
+	{
+		return MAXIMUM.get();
+	}
+
+	/**
+	 * Returns the durations below which the given shares of the recorded durations are.
+	 * All quantiles are taken from the same counts.
+	 *
+	 * @param quantiles Shares between 0 and 1, ie. 0.99, in ascending order.
+	 * @return The duration of every quantile in microseconds, 0 if nothing is recorded.
+	 */
+	public long[] getValuesAtQuantiles( double... quantiles )
+	{
+		long[] counts = snapshot();
+		long[] values = new long[ quantiles.length ];
+		long total = 0;
+
+		for ( long count : counts )
+		{
+			total += count;
+		}
+
+		if ( total == 0 )
+		{
+			return values;
+		}
+
+		long max = getMax();
+		long seen = 0;
+		int q = 0;
+
+		for ( int i = 0; i < counts.length && q < quantiles.length; i++ )
+		{
+			seen += counts[ i ];
+
+			while ( q < quantiles.length && seen > 0 && seen >= Math.ceil( quantiles[ q ] * total ) )
+			{
+				values[ q++ ] = Math.min( bucketUpperBound( i ), max );
+			}
+		}
+
+		return values;
+	}
+
+	private long[] snapshot()
+	{
+		long[] counts = new long[ BUCKET_COUNT ];
+
+		for ( int i = 0; i < BUCKET_COUNT; i++ )
+		{
+			LongAdder bucket = BUCKETS.get( i );
+			counts[ i ] = ( bucket == null ) ? 0 : bucket.sum();
+		}
+
+		return counts;
+	}
+
+	static int bucketIndex( long value )
+	{
+		if ( value < SUB_BUCKETS )
+		{
+			return ( int ) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros( value );
+
+		if ( exponent > MAX_EXPONENT )
+		{
+			return BUCKET_COUNT - 1;
+		}
+
+		int shift = exponent - SUB_BUCKET_BITS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + ( int ) ( ( value >>> shift ) - SUB_BUCKETS );
+	}
+
+	/**
+	 * Returns the largest value counted in a bucket.
+	 */
+	static long bucketUpperBound( int index )
+	{
+		if ( index < SUB_BUCKETS )
+		{
+			return index;
+		}
+
+		int shift = ( index - SUB_BUCKETS ) / SUB_BUCKETS;
+		long lower = ( long ) ( SUB_BUCKETS + ( index - SUB_BUCKETS ) % SUB_BUCKETS ) << shift;
+
+		return lower + ( 1L << shift ) - 1;
+	}
+}
@@ -0,0 +1,341 @@
+package com.cs.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.cs.http.RequestPhase;
+import com.cs.http.RequestTiming;
+import com.cs.interfaces.HttpRequest;
+import com.cs.main.Config;
+
+/**
+ * The metrics of the process, exported by the {@link com.cs.filters.MetricsFilter}.
+ * <br><br>
+ * Counters are striped, so recording from many threads at once does not contend.
+ * Request durations are kept in a {@link LatencyHistogram} per route and status
+ * class. Requests that were not found are counted under one route, and once the
+ * number of routes reaches a limit new ones are counted under another, so
+ * clients can not grow the metrics by requesting made up paths. The time spent in
+ * every {@link RequestPhase} is kept in one histogram per phase for all routes.
+ * Nothing is recorded unless metrics are enabled in the config file.
+ */
+public class Metrics
+{
+	public static final String UNMATCHED_ROUTE = "unmatched";
+	public static final String OTHER_ROUTE = "other";
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	public static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+
+	private final static int MAX_ROUTES = 256;
+	// One histogram for every status class, 1xx to 5xx, created on first use
+	private final static int STATUS_CLASSES = 6;
+
+	private final static Map< String, AtomicReferenceArray< LatencyHistogram > > ROUTES = new ConcurrentHashMap< String, AtomicReferenceArray< LatencyHistogram > >();
+	private final static LatencyHistogram[] PHASES = new LatencyHistogram[ RequestPhase.values().length ];
+	private final static Map< String, Gauge > GAUGES = new ConcurrentSkipListMap< String, Gauge >();
+	private final static Map< String, String > GAUGEHELP = new ConcurrentHashMap< String, String >();
+	private final static LongAdder BYTESRECEIVED = new LongAdder();
+	private final static LongAdder BYTESSENT = new LongAdder();
+	private final static LongAdder OPENCONNECTIONS = new LongAdder();
+	private final static LongAdder SLOWREQUESTS = new LongAdder();
+	private final static LongAdder INTERRUPTEDREQUESTS = new LongAdder();
+	private final static LongAdder FULLHANDSHAKES = new LongAdder();
+	private final static LongAdder RESUMEDHANDSHAKES = new LongAdder();
+	private final static LongAdder FAILEDHANDSHAKES = new LongAdder();
+	private final static LongAdder FULLHANDSHAKEMICROS = new LongAdder();
+	private final static LongAdder RESUMEDHANDSHAKEMICROS = new LongAdder();
+
+	static
+	{
+		for ( int i = 0; i < PHASES.length; i++ )
+		{
+			PHASES[ i ] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Records the duration of an answered request under the path of its URI, and the
+	 * duration of every phase of it that was measured.
+	 * 
+	 * @param request The request.
+	 * @param status Status code of the response.
+	 */
+	public static void recordRequest( HttpRequest request, int status )
+	{
+		if ( Config.useMetrics() == false )
+		{
+			return;
+		}
+
+		String route = UNMATCHED_ROUTE;
+
+		if ( status != 404 && request.getRequestUri() != null )
+		{
+			String uri = request.getRequestUri();
+			int query = uri.indexOf( '?' );
+			route = ( query < 0 ) ? uri : uri.substring( 0, query );
+		}
+
+		recordRequest( route, status, System.nanoTime() - request.getStartTime() );
+
+		RequestTiming timing = request.getTiming();
+
+		for ( RequestPhase phase : RequestPhase.values() )
+		{
+			long duration = timing.getDuration( phase );
+
+			if ( duration >= 0 )
+			{
+				PHASES[ phase.ordinal() ].record( duration / 1000 );
+			}
+		}
+	}
+
+	/**
+	 * Records the duration of an answered request.
+	 * 
+	 * @param route Name of the route.
+	 * @param status Status code of the response.
+	 * @param duration Duration in nanoseconds.
+	 */
+	public static void recordRequest( String route, int status, long duration )
+	{
+		if ( Config.useMetrics() == false )
+		{
+			return;
+		}
+
+		int statusClass = Math.max( 0, Math.min( STATUS_CLASSES - 1, status / 100 ) );
+		getHistogram( route, statusClass ).record( duration / 1000 );
+	}
+
+	public static void bytesReceived( long bytes )
+	{
+		if ( Config.useMetrics() )
+		{
+			BYTESRECEIVED.add( bytes );
+		}
+	}
+
+	public static void bytesSent( long bytes )
+	{
+		if ( Config.useMetrics() )
+		{
+			BYTESSENT.add( bytes );
+		}
+	}
+
+	public static void connectionOpened()
+	{
+		OPENCONNECTIONS.increment();
+	}
+
+	public static void connectionClosed()
+	{
+		OPENCONNECTIONS.decrement();
+	}
+
+	/**
+	 * Counts a request that was still running after the slow request time of the watchdog.
+	 */
+	public static void slowRequest()
+	{
+		if ( Config.useMetrics() )
+		{
+			SLOWREQUESTS.increment();
+		}
+	}
+
+	/**
+	 * Counts a request whose worker thread was interrupted at the deadline of the watchdog.
+	 */
+	public static void requestInterrupted()
+	{
+		if ( Config.useMetrics() )
+		{
+			INTERRUPTEDREQUESTS.increment();
+		}
+	}
+
+	/**
+	 * Counts a finished TLS handshake of any HTTPS server.
+	 * 
+	 * @param resumed Whether the handshake resumed an earlier session.
+	 * @param duration Time from accepting the connection to the end of the handshake in nanoseconds.
+	 */
+	public static void tlsHandshake( boolean resumed, long duration )
+	{
+		if ( Config.useMetrics() == false )
+		{
+			return;
+		}
+
+		if ( resumed )
+		{
+			RESUMEDHANDSHAKES.increment();
+			RESUMEDHANDSHAKEMICROS.add( duration / 1000 );
+		}
+		else
+		{
+			FULLHANDSHAKES.increment();
+			FULLHANDSHAKEMICROS.add( duration / 1000 );
+		}
+	}
+
+	/**
+	 * Counts a TLS handshake that failed or was abandoned by the client.
+	 */
+	public static void tlsHandshakeFailed()
+	{
+		if ( Config.useMetrics() )
+		{
+			FAILEDHANDSHAKES.increment();
+		}
+	}
+
+	/**
+	 * Adds a value that is read on every export. A gauge with the same name is replaced.
+	 * 
+	 * @param name Metric name, ie. "coffeespider_worker_queue_depth".
+	 * @param help Description of the metric.
+	 * @param gauge Reads the value.
+	 */
+	public static void registerGauge( String name, String help, Gauge gauge )
+	{
+		GAUGEHELP.put( name, help );
+		GAUGES.put( name, gauge );
+	}
+
+	public static void unregisterGauge( String name )
+	{
+		GAUGES.remove( name );
+		GAUGEHELP.remove( name );
+	}
+
+	/**
+	 * Returns all metrics in the Prometheus text format.
+	 */
+	public static String export()
+	{
+		return new PrometheusExporter().export();
+	}
+
+	/**
+	 * Returns a JSON snapshot of the state of the process, for the admin endpoint.
+	 * 
+	 * @param slowestRoutes Number of routes with the slowest requests to include.
+	 */
+	public static String exportRuntimeStats( int slowestRoutes )
+	{
+		return new RuntimeStatsExporter( slowestRoutes ).export();
+	}
+
+	static Map< String, AtomicReferenceArray< LatencyHistogram > > getRoutes()
+	{
+		return ROUTES;
+	}
+
+	static LatencyHistogram getPhase( RequestPhase phase )
+	{
+		return PHASES[ phase.ordinal() ];
+	}
+
+	static Map< String, Gauge > getGauges()
+	{
+		return GAUGES;
+	}
+
+	static String getGaugeHelp( String name )
+	{
+		return GAUGEHELP.get( name );
+	}
+
+	static long getBytesReceived()
+	{
+		return BYTESRECEIVED.sum();
+	}
+
+	static long getBytesSent()
+	{
+		return BYTESSENT.sum();
+	}
+
+	static long getSlowRequests()
+	{
+		return SLOWREQUESTS.sum();
+	}
+
+	static long getInterruptedRequests()
+	{
+		return INTERRUPTEDREQUESTS.sum();
+	}
+
+	static long getFullHandshakes()
+	{
+		return FULLHANDSHAKES.sum();
+	}
+
+	static long getResumedHandshakes()
+	{
+		return RESUMEDHANDSHAKES.sum();
+	}
+
+	static long getFailedHandshakes()
+	{
+		return FAILEDHANDSHAKES.sum();
+	}
+
+	static long getFullHandshakeMicros()
+	{
+		return FULLHANDSHAKEMICROS.sum();
+	}
+
+	static long getResumedHandshakeMicros()
+	{
+		return RESUMEDHANDSHAKEMICROS.sum();
+	}
+
+	static long getOpenConnections()
+	{
+		return OPENCONNECTIONS.sum();
+	}
+
+	static String getStatusClass( int index )
+	{
+		return index + "xx";
+	}
+
+	private static LatencyHistogram getHistogram( String route, int statusClass )
+	{
+		AtomicReferenceArray< LatencyHistogram > histograms = ROUTES.get( route );
+
+		if ( histograms == null )
+		{
+			if ( ROUTES.size() >= MAX_ROUTES )
+			{
+				route = OTHER_ROUTE;
+			}
+
+			AtomicReferenceArray< LatencyHistogram > created = new AtomicReferenceArray< LatencyHistogram >( STATUS_CLASSES );
+			histograms = ROUTES.putIfAbsent( route, created );
+
+			if ( histograms == null )
+			{
+				histograms = created;
+			}
+		}
+
+		LatencyHistogram histogram = histograms.get( statusClass );
+
+		if ( histogram == null )
+		{
+			histograms.compareAndSet( statusClass, null, new LatencyHistogram() );
+			histogram = histograms.get( statusClass );
+		}
+
+		return histogram;
+	}
+}
@@ -0,0 +1,174 @@
+package com.cs.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.cs.http.RequestPhase;
+
+/**
+ * Writes the {@link Metrics} in the Prometheus text exposition format.
+ * <br><br>
+ * Request durations are exported as summaries with the 50th, 99th and 99.9th
+ * percentile since the start of the process, labelled with the route and status class.
+ * The durations of the phases of requests are exported the same way, labelled with the phase.
+ * 
+ * @see https://prometheus.io/docs/instrumenting/exposition_formats/
+ */
+class PrometheusExporter
+{
+	private final static double[] QUANTILES = { 0.5, 0.99, 0.999 };
+	private final static String[] QUANTILE_LABELS = { "0.5", "0.99", "0.999" };
+	private final static String DURATION = "coffeespider_request_duration_seconds";
+	private final static String PHASE_DURATION = "coffeespider_request_phase_duration_seconds";
+
+	private final StringBuilder OUT = new StringBuilder( 4096 );
+
+	String export()
+	{
+		writeDurations();
+		writePhaseDurations();
+
+		writeHeader( "coffeespider_open_connections", "gauge", "Connections that are open now." );
+		writeValue( "coffeespider_open_connections", null, Metrics.getOpenConnections() );
+
+		writeHeader( "coffeespider_received_bytes_total", "counter", "Bytes read from clients, before decryption." );
+		writeValue( "coffeespider_received_bytes_total", null, Metrics.getBytesReceived() );
+
+		writeHeader( "coffeespider_sent_bytes_total", "counter", "Bytes written to clients, after encryption." );
+		writeValue( "coffeespider_sent_bytes_total", null, Metrics.getBytesSent() );
+
+		writeHeader( "coffeespider_slow_requests_total", "counter", "Requests still running after the slow request time of the watchdog." );
+		writeValue( "coffeespider_slow_requests_total", null, Metrics.getSlowRequests() );
+
+		writeHeader( "coffeespider_interrupted_requests_total", "counter", "Requests whose worker thread was interrupted at the deadline of the watchdog." );
+		writeValue( "coffeespider_interrupted_requests_total", null, Metrics.getInterruptedRequests() );
+
+		writeHeader( "coffeespider_tls_handshakes_total", "counter", "TLS handshakes by type, full, resumed or failed." );
+		writeValue( "coffeespider_tls_handshakes_total", "type=\"full\"", Metrics.getFullHandshakes() );
+		writeValue( "coffeespider_tls_handshakes_total", "type=\"resumed\"", Metrics.getResumedHandshakes() );
+		writeValue( "coffeespider_tls_handshakes_total", "type=\"failed\"", Metrics.getFailedHandshakes() );
+
+		writeHeader( "coffeespider_tls_handshake_seconds_total", "counter", "Time from accepting a connection to the end of its TLS handshake, summed by type." );
+		writeSeconds( "coffeespider_tls_handshake_seconds_total", "type=\"full\"", Metrics.getFullHandshakeMicros() );
+		writeSeconds( "coffeespider_tls_handshake_seconds_total", "type=\"resumed\"", Metrics.getResumedHandshakeMicros() );
+
+		for ( Map.Entry< String, Gauge > gauge : Metrics.getGauges().entrySet() )
+		{
+			writeHeader( gauge.getKey(), "gauge", Metrics.getGaugeHelp( gauge.getKey() ) );
+			writeValue( gauge.getKey(), null, gauge.getValue().getValue() );
+		}
+
+		return OUT.toString();
+	}
+
+	private void writeDurations()
+	{
+		// Sorted, so the output is stable between scrapes
+		Map< String, AtomicReferenceArray< LatencyHistogram > > routes = new TreeMap< String, AtomicReferenceArray< LatencyHistogram > >( Metrics.getRoutes() );
+		List< String > labels = new ArrayList< String >();
+		List< LatencyHistogram > histograms = new ArrayList< LatencyHistogram >();
+
+		for ( Map.Entry< String, AtomicReferenceArray< LatencyHistogram > > route : routes.entrySet() )
+		{
+			for ( int i = 0; i < route.getValue().length(); i++ )
+			{
+				if ( route.getValue().get( i ) != null )
+				{
+					labels.add( "route=\"" + escape( route.getKey() ) + "\",status=\"" + Metrics.getStatusClass( i ) + "\"" );
+					histograms.add( route.getValue().get( i ) );
+				}
+			}
+		}
+
+		writeSummary( DURATION, "Time from reading the request line to handing off the response.", "Longest request since the start of the process.", labels, histograms );
+	}
+
+	private void writePhaseDurations()
+	{
+		List< String > labels = new ArrayList< String >();
+		List< LatencyHistogram > histograms = new ArrayList< LatencyHistogram >();
+
+		for ( RequestPhase phase : RequestPhase.values() )
+		{
+			if ( Metrics.getPhase( phase ).getCount() > 0 )
+			{
+				labels.add( "phase=\"" + phase.getName() + "\"" );
+				histograms.add( Metrics.getPhase( phase ) );
+			}
+		}
+
+		writeSummary( PHASE_DURATION, "Time requests spent in every phase of handling them.", "Longest phase of a request since the start of the process.", labels, histograms );
+	}
+
+	private void writeSummary( String name, String help, String maxHelp, List< String > labels, List< LatencyHistogram > histograms )
+	{
+		writeHeader( name, "summary", help );
+
+		for ( int i = 0; i < histograms.size(); i++ )
+		{
+			long[] values = histograms.get( i ).getValuesAtQuantiles( QUANTILES );
+
+			for ( int q = 0; q < QUANTILES.length; q++ )
+			{
+				writeSeconds( name, labels.get( i ) + ",quantile=\"" + QUANTILE_LABELS[ q ] + "\"", values[ q ] );
+			}
+
+			writeSeconds( name + "_sum", labels.get( i ), histograms.get( i ).getSum() );
+			writeValue( name + "_count", labels.get( i ), histograms.get( i ).getCount() );
+		}
+
+		// Every metric is written as one block, the maximum is a metric of its own
+		writeHeader( name + "_max", "gauge", maxHelp );
+
+		for ( int i = 0; i < histograms.size(); i++ )
+		{
+			writeSeconds( name + "_max", labels.get( i ), histograms.get( i ).getMax() );
+		}
+	}
+
+	private void writeHeader( String name, String type, String help )
+	{
+		OUT.append( "# HELP " ).append( name ).append( ' ' ).append( help ).append( '\n' );
+		OUT.append( "# TYPE " ).append( name ).append( ' ' ).append( type ).append( '\n' );
+	}
+
+	private void writeValue( String name, String labels, long value )
+	{
+		writeName( name, labels );
+		OUT.append( value ).append( '\n' );
+	}
+
+	private void writeSeconds( String name, String labels, long micros )
+	{
+		writeName( name, labels );
+		OUT.append( micros / 1000000 ).append( '.' );
+
+		String fraction = String.valueOf( micros % 1000000 );
+		for ( int i = fraction.length(); i < 6; i++ )
+		{
+			OUT.append( '0' );
+		}
+
+		OUT.append( fraction ).append( '\n' );
+	}
+
+	private void writeName( String name, String labels )
+	{
+		OUT.append( name );
+
+		if ( labels != null )
+		{
+			OUT.append( '{' ).append( labels ).append( '}' );
+		}
+
+		OUT.append( ' ' );
+	}
+
+	private static String escape( String value )
+	{
+		return value.replace( "\\", "\\\\" ).replace( "\"", "\\\"" ).replace( "\n", "\\n" );
+	}
+}
@@ -0,0 +1,33 @@
+package com.cs.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for a parsed request.
+ */
+@Name( "com.cs.RequestParsed" )
+@Label( "Request Parsed" )
+@Description( "Reading the request line, headers and body of a request" )
+@Category( { "Coffee Spider", "HTTP" } )
+@StackTrace( false )
+public class RequestParsedEvent extends Event
+{
+	@Label( "Method" )
+	String method;
+
+	@Label( "URI" )
+	String uri;
+
+	@Label( "Version" )
+	String version;
+
+	@Label( "Body Size" )
+	@DataAmount
+	int bodyBytes;
+}
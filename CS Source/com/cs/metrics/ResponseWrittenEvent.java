@@ -0,0 +1,36 @@
+package com.cs.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for a response handed to the connection.
+ */
+@Name( "com.cs.ResponseWritten" )
+@Label( "Response Written" )
+@Description( "Writing the response of a request to the connection" )
+@Category( { "Coffee Spider", "HTTP" } )
+@StackTrace( false )
+public class ResponseWrittenEvent extends Event
+{
+	@Label( "URI" )
+	String uri;
+
+	@Label( "Status" )
+	int status;
+
+	@Label( "Body Size" )
+	@DataAmount
+	long bodyBytes;
+
+	@Label( "Version" )
+	String version;
+
+	@Label( "Cached" )
+	boolean cached;
+}
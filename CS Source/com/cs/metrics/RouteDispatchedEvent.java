@@ -0,0 +1,28 @@
+package com.cs.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for the route handler run for a request.
+ */
+@Name( "com.cs.RouteDispatched" )
+@Label( "Route Dispatched" )
+@Description( "Running the route handler of a request" )
+@Category( { "Coffee Spider", "HTTP" } )
+@StackTrace( false )
+public class RouteDispatchedEvent extends Event
+{
+	@Label( "Method" )
+	String method;
+
+	@Label( "URI" )
+	String uri;
+
+	@Label( "Status" )
+	int status;
+}
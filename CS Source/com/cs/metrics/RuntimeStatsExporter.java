@@ -0,0 +1,271 @@
+package com.cs.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.cs.cache.ResponseCache;
+import com.cs.main.Config;
+
+/**
+ * Writes a JSON snapshot of the state of the process for the admin endpoint: the
+ * gauges, the response cache, the TLS handshakes, the heap and garbage collectors,
+ * the threads and the routes with the slowest requests.
+ * <br><br>
+ * Durations are in milliseconds, sizes in bytes. The slowest routes are ranked by
+ * their 99th percentile and are only known while metrics are enabled.
+ */
+class RuntimeStatsExporter
+{
+	private final static double[] QUANTILES = { 0.5, 0.99 };
+
+	private final int SLOWESTROUTES;
+	private final StringBuilder OUT = new StringBuilder( 4096 );
+
+	RuntimeStatsExporter( int slowestRoutes )
+	{
+		this.SLOWESTROUTES = slowestRoutes;
+	}
+
+	String export()
+	{
+		OUT.append( '{' );
+		appendName( "uptimeMillis" ).append( ManagementFactory.getRuntimeMXBean().getUptime() );
+		appendName( "openConnections" ).append( Metrics.getOpenConnections() );
+		writeGauges();
+		writeCache();
+		writeTlsHandshakes();
+		writeMemory();
+		writeThreads();
+		writeSlowestRoutes();
+		appendName( "logLevel" );
+		appendString( Config.getLogLevel() );
+		OUT.append( '}' );
+
+		return OUT.toString();
+	}
+
+	private void writeGauges()
+	{
+		appendName( "gauges" ).append( '{' );
+
+		for ( Map.Entry< String, Gauge > gauge : Metrics.getGauges().entrySet() )
+		{
+			appendName( gauge.getKey() ).append( gauge.getValue().getValue() );
+		}
+
+		OUT.append( '}' );
+	}
+
+	private void writeCache()
+	{
+		long hits = ResponseCache.getHits();
+		long staleHits = ResponseCache.getStaleHits();
+		long misses = ResponseCache.getMisses();
+		long lookups = hits + staleHits + misses;
+
+		appendName( "cache" ).append( '{' );
+		appendName( "hits" ).append( hits );
+		appendName( "staleHits" ).append( staleHits );
+		appendName( "misses" ).append( misses );
+		appendName( "hitRatio" ).append( ( lookups == 0 ) ? 0 : Math.round( ( hits + staleHits ) * 10000.0 / lookups ) / 10000.0 );
+		appendName( "entries" ).append( ResponseCache.getEntryCount() );
+		appendName( "sizeBytes" ).append( ResponseCache.getSize() );
+		appendName( "maxSizeBytes" ).append( Config.getCacheMaxSize() );
+		OUT.append( '}' );
+	}
+
+	private void writeTlsHandshakes()
+	{
+		long full = Metrics.getFullHandshakes();
+		long resumed = Metrics.getResumedHandshakes();
+
+		appendName( "tlsHandshakes" ).append( '{' );
+		appendName( "full" ).append( full );
+		appendName( "resumed" ).append( resumed );
+		appendName( "failed" ).append( Metrics.getFailedHandshakes() );
+		appendName( "resumptionRatio" ).append( ( full + resumed == 0 ) ? 0 : Math.round( resumed * 10000.0 / ( full + resumed ) ) / 10000.0 );
+		appendName( "fullAvgMillis" );
+		appendMillis( ( full == 0 ) ? 0 : Metrics.getFullHandshakeMicros() / full );
+		appendName( "resumedAvgMillis" );
+		appendMillis( ( resumed == 0 ) ? 0 : Metrics.getResumedHandshakeMicros() / resumed );
+		OUT.append( '}' );
+	}
+
+	private void writeMemory()
+	{
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+
+		appendName( "memory" ).append( '{' );
+		appendName( "heapUsedBytes" ).append( heap.getUsed() );
+		appendName( "heapCommittedBytes" ).append( heap.getCommitted() );
+		appendName( "heapMaxBytes" ).append( heap.getMax() );
+		appendName( "nonHeapUsedBytes" ).append( nonHeap.getUsed() );
+		OUT.append( '}' );
+
+		appendName( "garbageCollectors" ).append( '[' );
+
+		for ( GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans() )
+		{
+			if ( OUT.charAt( OUT.length() - 1 ) != '[' )
+			{
+				OUT.append( ',' );
+			}
+
+			OUT.append( '{' );
+			appendName( "name" );
+			appendString( collector.getName() );
+			appendName( "collections" ).append( collector.getCollectionCount() );
+			appendName( "timeMillis" ).append( collector.getCollectionTime() );
+			OUT.append( '}' );
+		}
+
+		OUT.append( ']' );
+	}
+
+	private void writeThreads()
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		appendName( "threads" ).append( '{' );
+		appendName( "live" ).append( threads.getThreadCount() );
+		appendName( "daemon" ).append( threads.getDaemonThreadCount() );
+		appendName( "peak" ).append( threads.getPeakThreadCount() );
+		OUT.append( '}' );
+	}
+
+	private void writeSlowestRoutes()
+	{
+		List< RouteStats > routes = new ArrayList< RouteStats >();
+
+		for ( Map.Entry< String, AtomicReferenceArray< LatencyHistogram > > route : Metrics.getRoutes().entrySet() )
+		{
+			for ( int i = 0; i < route.getValue().length(); i++ )
+			{
+				LatencyHistogram histogram = route.getValue().get( i );
+
+				if ( histogram != null && histogram.getCount() > 0 )
+				{
+					routes.add( new RouteStats( route.getKey(), Metrics.getStatusClass( i ), histogram ) );
+				}
+			}
+		}
+
+		Collections.sort( routes, new Comparator< RouteStats >()
+		{
+			@Override
+			public int compare( RouteStats a, RouteStats b )
+			{
+				return Long.compare( b.quantiles[ 1 ], a.quantiles[ 1 ] );
+			}
+		} );
+
+		appendName( "slowestRoutes" ).append( '[' );
+
+		for ( int i = 0; i < Math.min( SLOWESTROUTES, routes.size() ); i++ )
+		{
+			RouteStats route = routes.get( i );
+
+			OUT.append( ( i > 0 ) ? ",{" : "{" );
+			appendName( "route" );
+			appendString( route.route );
+			appendName( "status" );
+			appendString( route.status );
+			appendName( "count" ).append( route.count );
+			appendName( "p50Millis" );
+			appendMillis( route.quantiles[ 0 ] );
+			appendName( "p99Millis" );
+			appendMillis( route.quantiles[ 1 ] );
+			appendName( "maxMillis" );
+			appendMillis( route.max );
+			OUT.append( '}' );
+		}
+
+		OUT.append( ']' );
+	}
+
+	/**
+	 * Appends the name of a member, after a comma unless it is the first one of its object.
+	 */
+	private StringBuilder appendName( String name )
+	{
+		if ( OUT.charAt( OUT.length() - 1 ) != '{' )
+		{
+			OUT.append( ',' );
+		}
+
+		appendString( name );
+		return OUT.append( ':' );
+	}
+
+	private void appendMillis( long micros )
+	{
+		OUT.append( micros / 1000 ).append( '.' );
+
+		long fraction = micros % 1000;
+		OUT.append( fraction < 100 ? ( fraction < 10 ? "00" : "0" ) : "" ).append( fraction );
+	}
+
+	/**
+	 * Appends a JSON string, or null.
+	 */
+	private void appendString( String value )
+	{
+		if ( value == null )
+		{
+			OUT.append( "null" );
+			return;
+		}
+
+		OUT.append( '"' );
+
+		for ( int i = 0; i < value.length(); i++ )
+		{
+			char c = value.charAt( i );
+
+			if ( c == '"' || c == '\\' )
+			{
+				OUT.append( '\\' ).append( c );
+			}
+			else if ( c < 0x20 )
+			{
+				OUT.append( String.format( "\\u%04x", ( int ) c ) );
+			}
+			else
+			{
+				OUT.append( c );
+			}
+		}
+
+		OUT.append( '"' );
+	}
+
+	/**
+	 * The figures of a route read once, so sorting compares stable values while requests are recorded.
+	 */
+	private static class RouteStats
+	{
+		private final String route;
+		private final String status;
+		private final long count;
+		private final long[] quantiles;
+		private final long max;
+
+		RouteStats( String route, String status, LatencyHistogram histogram )
+		{
+			this.route = route;
+			this.status = status;
+			this.count = histogram.getCount();
+			this.quantiles = histogram.getValuesAtQuantiles( QUANTILES );
+			this.max = histogram.getMax();
+		}
+	}
+}
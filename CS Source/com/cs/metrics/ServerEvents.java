@@ -0,0 +1,192 @@
+package com.cs.metrics;
+
+import java.net.SocketAddress;
+
+import javax.net.ssl.SSLSession;
+
+import com.cs.interfaces.HttpRequest;
+
+/**
+ * Creates and commits the JDK Flight Recorder events of the server.
+ * <br><br>
+ * Every event is begun where its phase starts and committed with its fields where
+ * the phase ends, so it shows up next to GC pauses and safepoints in the same
+ * recording. Flight Recorder decides which events are written, ie. with
+ * -XX:StartFlightRecording or jcmd JFR.start, and an event that is not enabled
+ * is dropped on commit.
+ * <br><br>
+ * The JRE has Flight Recorder since Java 8u262. On older JREs every begin method
+ * returns null and every commit method ignores null, so the event classes are never
+ * loaded. The event classes must only be created here for the same reason.
+ */
+public class ServerEvents
+{
+	private final static boolean AVAILABLE = isAvailable();
+
+	public static ConnectionAcceptedEvent beginConnectionAccepted()
+	{
+		if ( AVAILABLE == false )
+		{
+			return null;
+		}
+
+		ConnectionAcceptedEvent event = new ConnectionAcceptedEvent();
+		event.begin();
+		return event;
+	}
+
+	public static void commitConnectionAccepted( ConnectionAcceptedEvent event, SocketAddress remoteAddress, int localPort, String scheme )
+	{
+		if ( event != null && event.shouldCommit() )
+		{
+			event.remoteAddress = String.valueOf( remoteAddress );
+			event.localPort = localPort;
+			event.scheme = scheme;
+			event.commit();
+		}
+	}
+
+	public static TlsHandshakeEvent beginTlsHandshake()
+	{
+		if ( AVAILABLE == false )
+		{
+			return null;
+		}
+
+		TlsHandshakeEvent event = new TlsHandshakeEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * @param session Session of the finished handshake, or null if it failed.
+	 */
+	public static void commitTlsHandshake( TlsHandshakeEvent event, SocketAddress remoteAddress, SSLSession session, boolean resumed )
+	{
+		if ( event != null && event.shouldCommit() )
+		{
+			event.remoteAddress = String.valueOf( remoteAddress );
+			event.succeeded = ( session != null );
+			event.resumed = resumed;
+
+			if ( session != null )
+			{
+				event.protocol = session.getProtocol();
+				event.cipherSuite = session.getCipherSuite();
+			}
+
+			event.commit();
+		}
+	}
+
+	public static RequestParsedEvent beginRequestParsed()
+	{
+		if ( AVAILABLE == false )
+		{
+			return null;
+		}
+
+		RequestParsedEvent event = new RequestParsedEvent();
+		event.begin();
+		return event;
+	}
+
+	public static void commitRequestParsed( RequestParsedEvent event, HttpRequest request )
+	{
+		if ( event != null && event.shouldCommit() )
+		{
+			event.method = String.valueOf( request.getHttpMethod() );
+			event.uri = request.getRequestUri();
+			event.version = String.valueOf( request.getHttpVersion() );
+			event.bodyBytes = ( request.getEntity() == null ) ? 0 : request.getEntity().length;
+			event.commit();
+		}
+	}
+
+	public static RouteDispatchedEvent beginRouteDispatched()
+	{
+		if ( AVAILABLE == false )
+		{
+			return null;
+		}
+
+		RouteDispatchedEvent event = new RouteDispatchedEvent();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * @param status Status code the route set, 0 if it did not set one.
+	 */
+	public static void commitRouteDispatched( RouteDispatchedEvent event, HttpRequest request, int status )
+	{
+		if ( event != null && event.shouldCommit() )
+		{
+			event.method = String.valueOf( request.getHttpMethod() );
+			event.uri = request.getRequestUri();
+			event.status = status;
+			event.commit();
+		}
+	}
+
+	public static FileServedEvent beginFileServed()
+	{
+		if ( AVAILABLE == false )
+		{
+			return null;
+		}
+
+		FileServedEvent event = new FileServedEvent();
+		event.begin();
+		return event;
+	}
+
+	public static void commitFileServed( FileServedEvent event, String path, long bytes, int status )
+	{
+		if ( event != null && event.shouldCommit() )
+		{
+			event.path = path;
+			event.bytes = bytes;
+			event.status = status;
+			event.commit();
+		}
+	}
+
+	public static ResponseWrittenEvent beginResponseWritten()
+	{
+		if ( AVAILABLE == false )
+		{
+			return null;
+		}
+
+		ResponseWrittenEvent event = new ResponseWrittenEvent();
+		event.begin();
+		return event;
+	}
+
+	public static void commitResponseWritten( ResponseWrittenEvent event, HttpRequest request, int status, long bodyBytes, boolean cached )
+	{
+		if ( event != null && event.shouldCommit() )
+		{
+			event.uri = request.getRequestUri();
+			event.status = status;
+			event.bodyBytes = bodyBytes;
+			event.version = String.valueOf( request.getHttpVersion() );
+			event.cached = cached;
+			event.commit();
+		}
+	}
+
+	private static boolean isAvailable()
+	{
+		try
+		{
+			Class.forName( "jdk.jfr.Event" );
+			return true;
+		}
+		catch ( ClassNotFoundException | LinkageError e )
+		{
+			return false;
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.cs.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event for the TLS handshake of a connection.
+ */
+@Name( "com.cs.TlsHandshake" )
+@Label( "TLS Handshake" )
+@Description( "TLS handshake from accepting the connection until it finished or failed" )
+@Category( { "Coffee Spider", "HTTP" } )
+@StackTrace( false )
+public class TlsHandshakeEvent extends Event
+{
+	@Label( "Remote Address" )
+	String remoteAddress;
+
+	@Label( "Protocol" )
+	String protocol;
+
+	@Label( "Cipher Suite" )
+	String cipherSuite;
+
+	@Label( "Resumed" )
+	boolean resumed;
+
+	@Label( "Succeeded" )
+	boolean succeeded;
+}
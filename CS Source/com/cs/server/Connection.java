@@ -0,0 +1,818 @@
+package com.cs.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.cs.http2.Http2Connection;
+import com.cs.logs.TrafficCapture;
+import com.cs.metrics.Metrics;
+
+/**
+ * A client connection driven by an {@link EventLoop}, with a pluggable {@link Transport}
+ * underneath.
+ * <br><br>
+ * The handshake, reading, decoding and encoding all happen on the event loop
+ * thread, with the slow parts of a handshake handed to a separate bounded
+ * executor. Once a complete request has been decoded it is handed to a
+ * {@link HttpWorker}, which reads it from {@link #getInputStream()} and writes the
+ * response to {@link #getOutputStream()}. A worker thread is therefore only used
+ * while a request is being processed, never while a client is handshaking or idle.
+ * <br><br>
+ * If the client negotiated HTTP/2 through ALPN, or starts with the HTTP/2 connection
+ * preface, the decoded data is passed to a {@link Http2Connection} instead, which
+ * dispatches every stream to the worker pool.
+ * <br><br>
+ * Unless stated otherwise the methods of this class must only be called on the
+ * event loop thread.
+ */
+public class Connection implements Http2Connection.Output
+{
+	// Requests larger than this are rejected by closing the connection
+	private static final int MAX_REQUEST_SIZE = 16 * 1024 * 1024;
+	// Sent before closing when a request announces a body that makes it too large
+	private static final byte[] REQUEST_TOO_LARGE = ( "HTTP/1.1 413 Request Entity Too Large\r\nContent-Length: 0\r\nConnection: close\r\n\r\n" ).getBytes( StandardCharsets.ISO_8859_1 );
+	private static final byte[] HEADER_END = { '\r', '\n', '\r', '\n' };
+	private static final byte[] HTTP2_PREFACE_LINE = Http2Connection.PREFACE_LINE.getBytes( StandardCharsets.ISO_8859_1 );
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate( 0 );
+	// Connections of every server in every state, counted without touching the event loops
+	private static final LongAdder[] STATECOUNTS = new LongAdder[ State.values().length ];
+
+	static
+	{
+		for ( int i = 0; i < STATECOUNTS.length; i++ )
+		{
+			STATECOUNTS[ i ] = new LongAdder();
+		}
+	}
+
+	enum State
+	{
+		HANDSHAKING,
+		READING,
+		PROCESSING,
+		CLOSING,
+		CLOSED
+	}
+
+	private final SocketChannel CHANNEL;
+	private final Transport TRANSPORT;
+	private final EventLoop LOOP;
+	private final HttpServer SERVER;
+	// Taken when the connection is accepted, the channel no longer knows it once closed
+	private final SocketAddress REMOTEADDRESS;
+	private SelectionKey key;
+
+	// Data read from the channel, kept in write mode
+	private ByteBuffer netIn;
+	// Encoded data waiting to be written to the channel, kept in read mode
+	private ByteBuffer netOut;
+	// Decoded request data, kept in write mode
+	private ByteBuffer appIn;
+	// Response data waiting to be encoded
+	private final ArrayDeque< ByteBuffer > pendingOutput = new ArrayDeque< ByteBuffer >();
+
+	private State state = State.HANDSHAKING;
+	// Set when the connection switched to HTTP/2
+	private Http2Connection http2;
+	private boolean tasksRunning = false;
+	// The handshake must finish within its timeout from here, however slowly the client sends it
+	private final long ACCEPTTIME = System.currentTimeMillis();
+	private long lastActivity = ACCEPTTIME;
+
+	// Set on the event loop before the request is handed to a worker
+	private volatile InputStream requestStream;
+	// Raw bytes of the request if it is sampled by the traffic capture, taken by its worker on the event loop
+	private byte[] capturedRequest;
+	private final ResponseStream responseStream = new ResponseStream();
+
+	Connection( SocketChannel channel, Transport transport, EventLoop loop, HttpServer server )
+	{
+		this.CHANNEL = channel;
+		this.TRANSPORT = transport;
+		this.LOOP = loop;
+		this.SERVER = server;
+		this.REMOTEADDRESS = readRemoteAddress( channel );
+
+		int packetSize = transport.getPacketBufferSize();
+		netIn = ByteBuffer.allocate( packetSize );
+		netOut = ByteBuffer.allocate( packetSize );
+		netOut.flip();
+		appIn = ByteBuffer.allocate( transport.getApplicationBufferSize() );
+
+		// Counted until closeNow()
+		Metrics.connectionOpened();
+		STATECOUNTS[ state.ordinal() ].increment();
+	}
+
+	/**
+	 * Returns the number of connections in a state now. May be called from any thread.
+	 */
+	static long countInState( State state )
+	{
+		return STATECOUNTS[ state.ordinal() ].sum();
+	}
+
+	/**
+	 * Starts the handshake of the transport once the channel has been registered.
+	 */
+	void begin( SelectionKey key ) throws IOException
+	{
+		this.key = key;
+
+		TRANSPORT.beginHandshake();
+		if ( TRANSPORT.isHandshaking() == false )
+		{
+			setState( State.READING );
+		}
+	}
+
+	/**
+	 * Returns the raw bytes of the request just dispatched if the traffic capture sampled
+	 * it, or null. Called on the event loop while the request is dispatched, so the bytes
+	 * of a pipelined request that follows are never taken instead.
+	 */
+	byte[] takeCapturedRequest()
+	{
+		byte[] request = capturedRequest;
+		capturedRequest = null;
+		return request;
+	}
+	
+	/**
+	 * Returns a stream holding exactly one complete request. May be called from the worker thread.
+	 */
+	public InputStream getInputStream()
+	{
+		return requestStream;
+	}
+
+	/**
+	 * Returns the stream the response is written to. Flushing the stream hands the
+	 * written data to the event loop. May be called from the worker thread.
+	 */
+	public OutputStream getOutputStream()
+	{
+		return responseStream;
+	}
+
+	/**
+	 * Returns the address of the client or null if it is not known.
+	 */
+	@Override
+	public SocketAddress getRemoteAddress()
+	{
+		return REMOTEADDRESS;
+	}
+
+	private static SocketAddress readRemoteAddress( SocketChannel channel )
+	{
+		try
+		{
+			return channel.getRemoteAddress();
+		}
+		catch ( IOException e )
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Waits for the next request on this connection after the response has been
+	 * written. May be called from the worker thread.
+	 */
+	public void awaitNextRequest()
+	{
+		LOOP.execute( new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if ( state == State.PROCESSING )
+				{
+					setState( State.READING );
+					lastActivity = System.currentTimeMillis();
+					progress();
+				}
+			}
+		} );
+	}
+
+	/**
+	 * Closes the connection once the response has been written. May be called from the worker thread.
+	 */
+	@Override
+	public void close()
+	{
+		LOOP.execute( new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				closeGracefully();
+			}
+		} );
+	}
+
+	/**
+	 * Called by the event loop when the channel is ready.
+	 */
+	void onSelected( boolean readable, boolean writable )
+	{
+		try
+		{
+			if ( writable && flushOutput() == false )
+			{
+				return;
+			}
+
+			if ( readable )
+			{
+				if ( netIn.hasRemaining() == false )
+				{
+					netIn = enlarge( netIn, TRANSPORT.getPacketBufferSize() );
+				}
+
+				int read = CHANNEL.read( netIn );
+				Metrics.bytesReceived( Math.max( read, 0 ) );
+				if ( read < 0 )
+				{
+					closeNow();
+					return;
+				}
+				else if ( read > 0 )
+				{
+					lastActivity = System.currentTimeMillis();
+				}
+			}
+
+			progress();
+		}
+		catch ( IOException e )
+		{
+			failed( e );
+		}
+	}
+
+	private void setState( State next )
+	{
+		STATECOUNTS[ state.ordinal() ].decrement();
+		STATECOUNTS[ next.ordinal() ].increment();
+		state = next;
+	}
+
+	/**
+	 * Returns true if the connection did not finish its handshake or send a new request in time.
+	 */
+	boolean isTimedOut( long now, long handshakeTimeout, long idleTimeout )
+	{
+		if ( state == State.HANDSHAKING )
+		{
+			return now - ACCEPTTIME > handshakeTimeout;
+		}
+		else if ( state == State.READING )
+		{
+			// HTTP/2 connections are busy while any of their streams is
+			return now - lastActivity > idleTimeout && ( http2 == null || http2.hasActiveStreams() == false );
+		}
+
+		return false;
+	}
+
+	/**
+	 * Closes the channel immediately, without sending the closing message of the transport.
+	 */
+	void closeNow()
+	{
+		if ( state == State.CLOSED )
+		{
+			return;
+		}
+
+		setState( State.CLOSED );
+		TRANSPORT.closed();
+		Metrics.connectionClosed();
+		LOOP.closed( this );
+
+		if ( key != null )
+		{
+			key.cancel();
+		}
+
+		try
+		{
+			CHANNEL.close();
+		}
+		catch ( IOException e )
+		{
+			// The connection is gone either way
+		}
+	}
+
+	/**
+	 * Advances the handshake, decodes incoming data and dispatches complete requests.
+	 */
+	private void progress()
+	{
+		try
+		{
+			if ( netOut.hasRemaining() && flushOutput() == false )
+			{
+				return;
+			}
+
+			while ( state != State.CLOSED && tasksRunning == false )
+			{
+				if ( TRANSPORT.needsTasks() )
+				{
+					runDelegatedTasks();
+					return;
+				}
+				else if ( TRANSPORT.needsWrap() )
+				{
+					encode( EMPTY );
+					if ( flushOutput() == false )
+					{
+						return;
+					}
+				}
+				else if ( decode() == false )
+				{
+					break;
+				}
+				else if ( http2 != null )
+				{
+					// HTTP/2 frames are processed as they arrive, so appIn does not have to hold a whole request
+					passToHttp2();
+				}
+			}
+
+			if ( state == State.READING && http2 != null )
+			{
+				passToHttp2();
+			}
+			else if ( state == State.READING )
+			{
+				dispatchRequest();
+			}
+
+			updateInterest();
+		}
+		catch ( IOException e )
+		{
+			failed( e );
+		}
+	}
+
+	/**
+	 * Decodes the data in netIn.
+	 *
+	 * @return true if the transport made progress and should be called again.
+	 */
+	private boolean decode() throws IOException
+	{
+		if ( netIn.position() == 0 )
+		{
+			return false;
+		}
+
+		int decoded = appIn.position();
+		netIn.flip();
+		int received = netIn.remaining();
+		Transport.Status status;
+		try
+		{
+			status = TRANSPORT.decode( netIn, appIn );
+		}
+		finally
+		{
+			received -= netIn.remaining();
+			netIn.compact();
+		}
+
+		switch ( status )
+		{
+			case NEED_SPACE:
+				if ( appIn.capacity() >= MAX_REQUEST_SIZE )
+				{
+					throw new IOException( "Request too large" );
+				}
+				appIn = enlarge( appIn, TRANSPORT.getApplicationBufferSize() );
+				return true;
+			case NEED_INPUT:
+				// Wait for the rest of the record
+				checkHandshake();
+				return false;
+			case CLOSED:
+				closeGracefully();
+				return false;
+			default:
+				break;
+		}
+
+		checkHandshake();
+
+		return received > 0 || appIn.position() > decoded;
+	}
+
+	/**
+	 * Encodes application data into netOut. netOut must have been flushed.
+	 *
+	 * @return true if the transport consumed or produced anything.
+	 */
+	private boolean encode( ByteBuffer plain ) throws IOException
+	{
+		int remaining = plain.remaining();
+		netOut.clear();
+		Transport.Status status;
+		try
+		{
+			status = TRANSPORT.encode( plain, netOut );
+		}
+		finally
+		{
+			netOut.flip();
+		}
+
+		if ( status == Transport.Status.NEED_SPACE )
+		{
+			netOut = ByteBuffer.allocate( TRANSPORT.getPacketBufferSize() );
+			netOut.flip();
+			return encode( plain );
+		}
+
+		checkHandshake();
+
+		return plain.remaining() < remaining || netOut.hasRemaining();
+	}
+
+	/**
+	 * Writes netOut and encodes and writes pending response data.
+	 *
+	 * @return true if everything has been written.
+	 */
+	private boolean flushOutput() throws IOException
+	{
+		while ( true )
+		{
+			if ( netOut.hasRemaining() )
+			{
+				Metrics.bytesSent( CHANNEL.write( netOut ) );
+
+				if ( netOut.hasRemaining() )
+				{
+					// The socket buffer is full, continue when the channel is writable
+					key.interestOps( SelectionKey.OP_WRITE );
+					return false;
+				}
+			}
+
+			ByteBuffer plain = pendingOutput.peek();
+			if ( plain == null || state == State.HANDSHAKING )
+			{
+				break;
+			}
+
+			boolean progress = encode( plain );
+			if ( plain.hasRemaining() == false )
+			{
+				pendingOutput.poll();
+			}
+			else if ( progress == false )
+			{
+				// The transport needs to handshake first, the data is sent afterwards
+				break;
+			}
+		}
+
+		if ( state == State.CLOSING && pendingOutput.isEmpty() )
+		{
+			sendCloseNotify();
+		}
+
+		return true;
+	}
+
+	private void checkHandshake()
+	{
+		if ( state == State.HANDSHAKING && TRANSPORT.isHandshaking() == false )
+		{
+			setState( State.READING );
+
+			if ( Http2Connection.ALPN_PROTOCOL.equals( TRANSPORT.getApplicationProtocol() ) )
+			{
+				startHttp2();
+			}
+		}
+	}
+
+	private void startHttp2()
+	{
+		http2 = SERVER.createHttp2Connection( this );
+		http2.start();
+	}
+
+	/**
+	 * Runs the slow handshake tasks, ie. certificate and key operations, off the event loop.
+	 */
+	private void runDelegatedTasks()
+	{
+		tasksRunning = true;
+		key.interestOps( 0 );
+
+		try
+		{
+			SERVER.runTransportTask( new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					Runnable task;
+					while ( ( task = TRANSPORT.getDelegatedTask() ) != null )
+					{
+						task.run();
+					}
+
+					LOOP.execute( new Runnable()
+					{
+						@Override
+						public void run()
+						{
+							tasksRunning = false;
+							progress();
+						}
+					} );
+				}
+			} );
+		}
+		catch ( RejectedExecutionException e )
+		{
+			// Too many handshakes at once, drop this one instead of queueing without limit
+			closeNow();
+		}
+	}
+
+	private void passToHttp2()
+	{
+		if ( appIn.position() > 0 )
+		{
+			http2.onData( appIn.array(), 0, appIn.position() );
+			appIn.clear();
+		}
+	}
+
+	/**
+	 * Hands a complete request to a worker if one has been received.
+	 */
+	private void dispatchRequest() throws IOException
+	{
+		int available = appIn.position();
+
+		// HTTP/2 with prior knowledge starts with the connection preface instead of a request
+		if ( available >= HTTP2_PREFACE_LINE.length && indexOf( appIn.array(), HTTP2_PREFACE_LINE.length, HTTP2_PREFACE_LINE ) == 0 )
+		{
+			startHttp2();
+			passToHttp2();
+			return;
+		}
+
+		int headerEnd = indexOf( appIn.array(), available, HEADER_END );
+
+		if ( headerEnd == -1 )
+		{
+			if ( available >= MAX_REQUEST_SIZE )
+			{
+				throw new IOException( "Request header too large" );
+			}
+			return;
+		}
+
+		long contentLength = getContentLength( appIn.array(), headerEnd );
+		if ( contentLength < 0 )
+		{
+			throw new IOException( "Invalid Content-Length" );
+		}
+
+		// Checked as a long, a huge Content-Length would overflow the size of the request
+		long declaredSize = headerEnd + HEADER_END.length + contentLength;
+		if ( declaredSize > MAX_REQUEST_SIZE )
+		{
+			pendingOutput.add( ByteBuffer.wrap( REQUEST_TOO_LARGE ) );
+			closeGracefully();
+			return;
+		}
+
+		int requestSize = ( int ) declaredSize;
+		if ( available < requestSize )
+		{
+			if ( appIn.capacity() < requestSize )
+			{
+				appIn = enlarge( appIn, requestSize - appIn.capacity() );
+			}
+			return;
+		}
+
+		byte[] request = new byte[ requestSize ];
+		appIn.flip();
+		appIn.get( request );
+		appIn.compact();
+
+		requestStream = new ByteArrayInputStream( request );
+		capturedRequest = TrafficCapture.isSampled() ? request : null;
+		setState( State.PROCESSING );
+		SERVER.dispatchRequest( this );
+	}
+
+	private void updateInterest()
+	{
+		if ( state == State.CLOSED || key.isValid() == false )
+		{
+			return;
+		}
+
+		if ( netOut.hasRemaining() )
+		{
+			key.interestOps( SelectionKey.OP_WRITE );
+		}
+		else if ( tasksRunning || state == State.PROCESSING || state == State.CLOSING )
+		{
+			key.interestOps( 0 );
+		}
+		else
+		{
+			key.interestOps( SelectionKey.OP_READ );
+		}
+	}
+
+	/**
+	 * Queues response data and sends it. May be called from the worker thread.
+	 */
+	@Override
+	public void write( final byte[] data )
+	{
+		LOOP.execute( new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if ( state == State.CLOSED )
+				{
+					return;
+				}
+
+				pendingOutput.add( ByteBuffer.wrap( data ) );
+
+				try
+				{
+					if ( flushOutput() )
+					{
+						updateInterest();
+					}
+				}
+				catch ( IOException e )
+				{
+					failed( e );
+				}
+			}
+		} );
+	}
+
+	private void closeGracefully()
+	{
+		if ( state == State.CLOSED || state == State.CLOSING )
+		{
+			return;
+		}
+
+		setState( State.CLOSING );
+
+		try
+		{
+			// Pending response data is sent first, the close notification follows once it has been written
+			flushOutput();
+		}
+		catch ( IOException e )
+		{
+			closeNow();
+		}
+	}
+
+	/**
+	 * Sends the closing message of the transport, if the socket accepts it right away, and closes the channel.
+	 */
+	private void sendCloseNotify()
+	{
+		try
+		{
+			TRANSPORT.closeOutbound();
+			encode( EMPTY );
+			Metrics.bytesSent( CHANNEL.write( netOut ) );
+		}
+		catch ( IOException e )
+		{
+			// The connection is closed either way
+		}
+
+		closeNow();
+	}
+
+	private void failed( IOException e )
+	{
+		// The transport logs its own handshake failures, anything else is a client going away
+		closeNow();
+	}
+
+	private static ByteBuffer enlarge( ByteBuffer buffer, int extra )
+	{
+		ByteBuffer larger = ByteBuffer.allocate( buffer.capacity() + Math.max( extra, buffer.capacity() ) );
+		buffer.flip();
+		larger.put( buffer );
+		return larger;
+	}
+
+	private static int indexOf( byte[] data, int length, byte[] pattern )
+	{
+		outer:
+		for ( int i = 0; i <= length - pattern.length; i++ )
+		{
+			for ( int j = 0; j < pattern.length; j++ )
+			{
+				if ( data[ i + j ] != pattern[ j ] )
+				{
+					continue outer;
+				}
+			}
+			return i;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Reads the Content-Length header from the request header.
+	 *
+	 * @return The length, 0 without the header or -1 if its value is not a length.
+	 */
+	private static long getContentLength( byte[] data, int headerEnd )
+	{
+		String header = new String( data, 0, headerEnd, StandardCharsets.ISO_8859_1 );
+
+		for ( String line : header.split( "\r\n" ) )
+		{
+			int colon = line.indexOf( ':' );
+			if ( colon > 0 && line.substring( 0, colon ).trim().equalsIgnoreCase( "Content-Length" ) )
+			{
+				try
+				{
+					return Math.max( -1, Long.parseLong( line.substring( colon + 1 ).trim() ) );
+				}
+				catch ( NumberFormatException e )
+				{
+					return -1;
+				}
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Collects the response written by the worker and hands it to the event loop on flush.
+	 */
+	private class ResponseStream extends OutputStream
+	{
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream( 8192 );
+
+		@Override
+		public void write( int b )
+		{
+			buffer.write( b );
+		}
+
+		@Override
+		public void write( byte[] b, int off, int len )
+		{
+			buffer.write( b, off, len );
+		}
+
+		@Override
+		public void flush()
+		{
+			if ( buffer.size() > 0 )
+			{
+				Connection.this.write( buffer.toByteArray() );
+				buffer.reset();
+			}
+		}
+	}
+}
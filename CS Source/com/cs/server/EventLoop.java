@@ -0,0 +1,208 @@
+package com.cs.server;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.cs.logs.Logger;
+
+/**
+ * A selector thread that drives a set of {@link Connection}s, whatever their transport.
+ * <br><br>
+ * Other threads never touch a connection directly, they hand work to the loop with
+ * {@link #execute(Runnable)}, which wakes up the selector.
+ */
+class EventLoop implements Runnable
+{
+	// Connections that do not finish their handshake within this time are dropped
+	private static final long HANDSHAKE_TIMEOUT = 10000;
+	// Keep-alive connections without a new request within this time are closed
+	private static final long IDLE_TIMEOUT = 60000;
+	private static final long SELECT_TIMEOUT = 1000;
+
+	private final Selector SELECTOR;
+	private final ConcurrentLinkedQueue< Runnable > TASKS = new ConcurrentLinkedQueue< Runnable >();
+	// Open connections, a closed connection leaves right away so its buffers can be collected
+	private final Set< Connection > CONNECTIONS = new HashSet< Connection >();
+
+	private volatile boolean running = true;
+	private long lastSweep = System.currentTimeMillis();
+
+	EventLoop() throws IOException
+	{
+		this.SELECTOR = Selector.open();
+	}
+
+	/**
+	 * Runs the task on the loop thread. May be called from any thread.
+	 */
+	void execute( Runnable task )
+	{
+		TASKS.add( task );
+		SELECTOR.wakeup();
+	}
+
+	/**
+	 * Starts serving a newly accepted channel for a server. May be called from any thread.
+	 */
+	void register( final SocketChannel channel, final Transport transport, final HttpServer server )
+	{
+		execute( new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				Connection connection = null;
+
+				try
+				{
+					channel.configureBlocking( false );
+					channel.socket().setTcpNoDelay( true );
+
+					connection = new Connection( channel, transport, EventLoop.this, server );
+					CONNECTIONS.add( connection );
+					connection.begin( channel.register( SELECTOR, SelectionKey.OP_READ, connection ) );
+				}
+				catch ( IOException e )
+				{
+					if ( connection != null )
+					{
+						// Started already, it cleans up after itself
+						connection.closeNow();
+						return;
+					}
+
+					try
+					{
+						transport.closed();
+						channel.close();
+					}
+					catch ( IOException e1 )
+					{
+						// Nothing left to clean up
+					}
+				}
+			}
+		} );
+	}
+
+	/**
+	 * Stops tracking a connection that has been closed. Called on the loop thread.
+	 */
+	void closed( Connection connection )
+	{
+		CONNECTIONS.remove( connection );
+	}
+
+	void shutdown()
+	{
+		running = false;
+		SELECTOR.wakeup();
+	}
+
+	@Override
+	public void run()
+	{
+		while ( running )
+		{
+			try
+			{
+				SELECTOR.select( SELECT_TIMEOUT );
+
+				Runnable task;
+				while ( ( task = TASKS.poll() ) != null )
+				{
+					try
+					{
+						task.run();
+					}
+					catch ( RuntimeException e )
+					{
+						Logger.writeLog( "ERROR", "Error in an event loop task: " + e.toString() );
+					}
+				}
+
+				Iterator< SelectionKey > keys = SELECTOR.selectedKeys().iterator();
+				while ( keys.hasNext() )
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if ( key.isValid() )
+					{
+						Connection connection = ( Connection ) key.attachment();
+
+						try
+						{
+							connection.onSelected( key.isReadable(), key.isWritable() );
+						}
+						catch ( RuntimeException e )
+						{
+							// Only this connection is dropped, the loop keeps serving the others
+							Logger.writeLog( "ERROR", "Error on a connection, closing it: " + e.toString() );
+							connection.closeNow();
+						}
+					}
+				}
+
+				sweep();
+			}
+			catch ( IOException | ClosedSelectorException e )
+			{
+				Logger.writeLog( "ERROR", "Error in the event loop: " + e.getMessage() );
+				break;
+			}
+		}
+
+		for ( Connection connection : new ArrayList< Connection >( CONNECTIONS ) )
+		{
+			connection.closeNow();
+		}
+
+		try
+		{
+			SELECTOR.close();
+		}
+		catch ( IOException e )
+		{
+			// The loop is stopping anyway
+		}
+	}
+
+	/**
+	 * Closes connections that stalled during the handshake or stayed idle too long.
+	 */
+	private void sweep()
+	{
+		long now = System.currentTimeMillis();
+		if ( now - lastSweep < SELECT_TIMEOUT )
+		{
+			return;
+		}
+		lastSweep = now;
+
+		List< Connection > timedOut = new ArrayList< Connection >();
+
+		for ( Connection connection : CONNECTIONS )
+		{
+			if ( connection.isTimedOut( now, HANDSHAKE_TIMEOUT, IDLE_TIMEOUT ) )
+			{
+				timedOut.add( connection );
+			}
+		}
+
+		// Closing removes the connection from the set
+		for ( Connection connection : timedOut )
+		{
+			connection.closeNow();
+		}
+	}
+}
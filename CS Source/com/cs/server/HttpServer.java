@@ -2,15 +2,33 @@ package com.cs.server;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
+import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
+import com.cs.filters.FilterChain;
+import com.cs.http2.Http2Connection;
 import com.cs.interfaces.Server;
 import com.cs.logs.Logger;
+import com.cs.metrics.ConnectionAcceptedEvent;
+import com.cs.metrics.ServerEvents;
 
+/**
+ * Serves HTTP/1.x and HTTP/2 on one port.
+ * <br><br>
+ * Connections are served by a few {@link EventLoop}s, which read and frame the
+ * requests, and a worker pool that parses, routes and answers them with
+ * {@link HttpWorker}. Idle keep-alive connections therefore only cost a selector
+ * registration. The bytes on the wire are handled by a {@link Transport}, plain
+ * for this class; {@link HttpsServer} only swaps in TLS.
+ * <br><br>
+ * Several servers can listen in one process on the same {@link WorkerPools}.
+ */
 public class HttpServer implements Server
 {
 	private final static String SERVER_NAME = "Coffee Spider";
@@ -19,9 +37,12 @@ public class HttpServer implements Server
 
 	private volatile boolean RUNNING = false;
 
-	private final ServerSocket SERVERSOCKET;
-	private final ExecutorService WORKERPOOL;
+	private final ServerSocketChannel SERVERSOCKET;
 	private final ExecutorService DISPATCHERSERVICE;
+	private final WorkerPools POOLS;
+	// Pools created by this server are stopped with it, shared ones by their creator
+	private final boolean OWNSPOOLS;
+	private final FilterChain FILTERS;
 
 	public HttpServer()
 	{
@@ -30,19 +51,42 @@ public class HttpServer implements Server
 
 	public HttpServer( int port )
 	{
+		this( port, FilterChain.createDefault( false ) );
+	}
+
+	/**
+	 * Creates a server that runs the given filters around every request.
+	 * 
+	 * @param port Port number to listen on.
+	 * @param filters Middleware composed for this server.
+	 */
+	public HttpServer( int port, FilterChain filters )
+	{
+		this( port, filters, null );
+	}
+
+	/**
+	 * Creates a server that serves its connections on shared pools.
+	 * 
+	 * @param port Port number to listen on.
+	 * @param filters Middleware composed for this server.
+	 * @param pools Threads shared with other servers, or null to create them for this server.
+	 */
+	public HttpServer( int port, FilterChain filters, WorkerPools pools )
+	{
+		FILTERS = filters;
+		OWNSPOOLS = ( pools == null );
+		POOLS = OWNSPOOLS ? new WorkerPools() : pools;
+		DISPATCHERSERVICE = Executors.newSingleThreadExecutor();
+		
 		try
 		{
-			SERVERSOCKET = new ServerSocket( port );
-			WORKERPOOL = Executors.newFixedThreadPool( 16 );
-			DISPATCHERSERVICE = Executors.newSingleThreadExecutor();
+			SERVERSOCKET = ServerSocketChannel.open();
+			SERVERSOCKET.bind( new InetSocketAddress( port ) );
 		}
 		catch ( IOException e )
 		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Error while starting server: " + e.getMessage(), callingMethod, currentMethod );
+			Logger.writeLog( "ERROR", "Error while starting server: " + e.getMessage() );
 			throw new RuntimeException( "Error while starting server", e );
 		}
 	}
@@ -51,6 +95,8 @@ public class HttpServer implements Server
 	public void start()
 	{
 		RUNNING = true;
+		POOLS.start();
+		
 		// Initiate the main server loop accepting incoming connections.
 		DISPATCHERSERVICE.submit( new Runnable()
 		{
@@ -61,16 +107,12 @@ public class HttpServer implements Server
 				{
 					try
 					{
-						Socket socket = SERVERSOCKET.accept();
-						dispatchRequest( socket );
+						SocketChannel channel = SERVERSOCKET.accept();
+						dispatchRequest( channel.socket() );
 					}
 					catch ( IOException e )
 					{
-						StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-						String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-						String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-						
-						Logger.writeLog( "ERROR", "Error while accepting a connection: " + e.getMessage(), callingMethod, currentMethod );
+						Logger.writeLog( "ERROR", "Error while accepting a connection: " + e.getMessage() );
 					}
 				}
 			}
@@ -78,19 +120,11 @@ public class HttpServer implements Server
 
 		try
 		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "LOG", "Webserver started: https://" + InetAddress.getLocalHost().getHostName() + ":" + SERVERSOCKET.getLocalPort(), callingMethod, currentMethod );
+			Logger.writeLog( "LOG", "Webserver started: " + getScheme() + "://" + InetAddress.getLocalHost().getHostName() + ":" + SERVERSOCKET.socket().getLocalPort() );
 		}
 		catch ( UnknownHostException e )
 		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Error while getting server details: " + e.getMessage(), callingMethod, currentMethod );
+			Logger.writeLog( "ERROR", "Error while getting server details: " + e.getMessage() );
 		}
 	}
 
@@ -101,31 +135,111 @@ public class HttpServer implements Server
 		{
 			RUNNING = false;
 			DISPATCHERSERVICE.shutdown();
-			WORKERPOOL.shutdown();
 			SERVERSOCKET.close();
+			
+			if ( OWNSPOOLS )
+			{
+				POOLS.stop();
+			}
 		}
 		catch ( IOException e )
 		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Error while shutting down the server: " + e.getMessage(), callingMethod, currentMethod );
+			Logger.writeLog( "ERROR", "Error while shutting down the server: " + e.getMessage() );
 		}
 		finally
 		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "LOG", "The server has been shut down successfully.", callingMethod, currentMethod );
+			Logger.writeLog( "LOG", "The server has been shut down successfully." );
 		}
 	}
 
+	/**
+	 * Hands a newly accepted connection to one of the event loops.
+	 */
 	@Override
 	public void dispatchRequest( Socket socket )
 	{
-		WORKERPOOL.submit( new HttpWorker( socket, this ) );
+		ConnectionAcceptedEvent event = ServerEvents.beginConnectionAccepted();
+		SocketChannel channel = socket.getChannel();
+		
+		POOLS.register( channel, createTransport( channel ), this );
+		ServerEvents.commitConnectionAccepted( event, socket.getRemoteSocketAddress(), socket.getLocalPort(), getScheme() );
+	}
+
+	/**
+	 * Creates the transport of a newly accepted connection.
+	 * 
+	 * @param channel The accepted channel.
+	 * @return The transport that encodes the bytes on the channel.
+	 */
+	protected Transport createTransport( SocketChannel channel )
+	{
+		return new PlainTransport();
+	}
+
+	/**
+	 * Returns the URI scheme served by this server.
+	 * 
+	 * @return "http"
+	 */
+	protected String getScheme()
+	{
+		return "http";
+	}
+
+	/**
+	 * Hands a completely received request to the worker pool.
+	 * 
+	 * @param connection The connection the request was received on.
+	 */
+	void dispatchRequest( Connection connection )
+	{
+		try
+		{
+			POOLS.getWorkerPool().submit( new HttpWorker( connection, this ) );
+		}
+		catch ( RejectedExecutionException e )
+		{
+			// The server is shutting down
+			connection.closeNow();
+		}
+	}
+
+	/**
+	 * Creates the HTTP/2 side of a connection that switched to it. Its streams are processed on the worker pool.
+	 * 
+	 * @param connection The connection carrying the frames.
+	 * @return The HTTP/2 connection.
+	 */
+	Http2Connection createHttp2Connection( Connection connection )
+	{
+		return new Http2Connection( connection, new HttpWorker( connection, this ), POOLS.getWorkerPool() );
+	}
+
+	/**
+	 * Returns the watchdog of the requests answered by the workers of this server.
+	 */
+	RequestWatchdog getWatchdog()
+	{
+		return POOLS.getWatchdog();
+	}
+
+	/**
+	 * Runs a slow transport task, ie. the key exchange of a handshake. Throws a
+	 * {@link RejectedExecutionException} if too many tasks are waiting.
+	 */
+	void runTransportTask( Runnable task )
+	{
+		POOLS.runTransportTask( task );
+	}
+
+	/**
+	 * Returns the filters that run around every request of this server.
+	 * 
+	 * @return The filter chain
+	 */
+	public FilterChain getFilterChain()
+	{
+		return FILTERS;
 	}
 
 	/**
@@ -1,94 +1,362 @@
 package com.cs.server;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.UnsupportedEncodingException;
-import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Callable;
 
+import com.cs.cache.CachePolicy;
+import com.cs.cache.CachedResponse;
+import com.cs.cache.ResourceLoader;
+import com.cs.cache.ResponseCache;
+import com.cs.filters.FilterChain;
 import com.cs.http.BasicHttpRequest;
 import com.cs.http.BasicHttpResponse;
 import com.cs.http.Http;
 import com.cs.http.HttpMethod;
 import com.cs.http.HttpStatusCode;
 import com.cs.http.HttpVersion;
+import com.cs.http.RequestPhase;
+import com.cs.http.UnsupportedVersionException;
 import com.cs.interfaces.HttpRequest;
 import com.cs.interfaces.HttpResponse;
+import com.cs.interfaces.RequestHandler;
+import com.cs.logs.AccessLog;
 import com.cs.logs.Logger;
+import com.cs.logs.TrafficCapture;
+import com.cs.metrics.FileServedEvent;
+import com.cs.metrics.Metrics;
+import com.cs.metrics.RequestParsedEvent;
+import com.cs.metrics.ResponseWrittenEvent;
+import com.cs.metrics.RouteDispatchedEvent;
+import com.cs.metrics.ServerEvents;
 import com.cs.routes.HandleGetRequest;
 import com.cs.routes.HandlePostRequest;
+import com.cs.views.RenderBuffer;
+import com.cs.views.Template;
+import com.cs.views.TemplateEngine;
 
 /**
  * Apache Commons IO library is needed in this class to get file extensions.
  * 
  * @see https://commons.apache.org/
  */
-public class HttpWorker implements Callable<Void>
+public class HttpWorker implements Callable<Void>, RequestHandler
 {
-	private final Socket SOCKET;
+	private static final byte[] CRLF_BYTES = Http.CRLF.getBytes( StandardCharsets.ISO_8859_1 );
+	
+	private final Connection CONNECTION;
 	private final HttpServer SERVER;
+	// Time the connection handed the request over, the start of the wait for a worker
+	private final long DISPATCHTIME = System.nanoTime();
+	// Raw bytes of the request if the traffic capture sampled it
+	private final byte[] CAPTUREDREQUEST;
 	
 	/**
-	 * Creates a new worker that handles the incoming request.
+	 * Creates a new worker that handles a request received on a connection.
+	 * <br><br>
+	 * The connection has already been read up to the end of the request, whatever
+	 * its transport, so parsing and answering it never waits for the client.
 	 * 
-	 * @param socket The socket this request is sent over.
+	 * @param connection The connection holding the complete request.
 	 * @param server A reference to the core server instance.
 	 */
-	public HttpWorker(Socket socket, HttpServer server)
+	public HttpWorker( Connection connection, HttpServer server )
 	{
-		this.SOCKET = socket;
+		this.CONNECTION = connection;
 		this.SERVER = server;
+		this.CAPTUREDREQUEST = ( connection == null ) ? null : connection.takeCapturedRequest();
 	}
 	
 	@Override
 	public Void call() throws Exception
 	{
-		// Parse request from InputStream
-		HttpRequest request = parseRequest(SOCKET.getInputStream());
-		HttpResponse response = null;
+		HttpRequest request;
+		RequestParsedEvent parsedEvent = ServerEvents.beginRequestParsed();
+		long parseStart = System.nanoTime();
+		try
+		{
+			request = parseRequest( CONNECTION.getInputStream() );
+		}
+		catch ( UnsupportedVersionException e )
+		{
+			rejectVersion();
+			return null;
+		}
+		catch ( RuntimeException e )
+		{
+			// Malformed request, the connection would otherwise wait for the worker forever
+			CONNECTION.close();
+			throw e;
+		}
 		
-		switch ( request.getHttpMethod() )
-		{
-			case GET:
-				response = processGetRequest( request );
-				break;
-			case POST:
-				response = processPostRequest( request );
-				break;
-			case OPTIONS:
-				response = processOptionsRequest( request );
-				break;
-			default:
-				break;
+		request.getTiming().add( RequestPhase.WAIT, parseStart - DISPATCHTIME );
+		request.getTiming().add( RequestPhase.PARSE, System.nanoTime() - parseStart );
+		ServerEvents.commitRequestParsed( parsedEvent, request );
+		
+		RequestWatchdog.WatchedRequest watched = SERVER.getWatchdog().begin( request );
+		try
+		{
+			answerRequest( request );
+		}
+		finally
+		{
+			SERVER.getWatchdog().end( watched );
 		}
 		
-		// The following headers is to allow cross-domain connections
-		response.getHeaders().put( "Access-Control-Allow-Origin", "*" );
-		response.getHeaders().put( "Access-Control-Allow-Headers", "Origin, X-Requested-With, Content-Type, Accept" );
+		// We do not return anything here.
+		return null;
+	}
+	
+	/**
+	 * Answers a parsed request, sends the response and hands the connection back for
+	 * the next request or closes it.
+	 * 
+	 * @param request The parsed request.
+	 * @throws Exception If the response could not be sent.
+	 */
+	protected void answerRequest( HttpRequest request ) throws Exception
+	{
+		HttpResponse response = createResponse( request );
+		ResponseWrittenEvent writtenEvent = ServerEvents.beginResponseWritten();
+		long sendStart = System.nanoTime();
 		
 		// Send response and close connection, if necessary
 		if (keepAlive(request, response))
 		{
-			sendResponse(response, SOCKET.getOutputStream());
-			SERVER.dispatchRequest(SOCKET);
+			sendResponse(response, CONNECTION.getOutputStream());
+			CONNECTION.awaitNextRequest();
 		}
 		else
 		{
 			response.getHeaders().put("Connection", "close");
-			sendResponse(response, SOCKET.getOutputStream());
-			SOCKET.close();
+			sendResponse(response, CONNECTION.getOutputStream());
+			CONNECTION.close();
 		}
 		
-		// We do not return anything here.
-		return null;
+		request.getTiming().add( RequestPhase.SEND, System.nanoTime() - sendStart );
+		int bodyLength = ( response.getEntity() == null ) ? 0 : response.getEntityLength();
+		ServerEvents.commitResponseWritten( writtenEvent, request, response.getStatusCode().getCode(), bodyLength, getCachePolicy( request ) != null );
+		AccessLog.record( request, response.getStatusCode().getCode(), bodyLength, CONNECTION.getRemoteAddress() );
+		captureRequest( response.getStatusCode().getCode(), bodyLength );
+		Metrics.recordRequest( request, response.getStatusCode().getCode() );
+	}
+	
+	/**
+	 * Answers a request line with a version other than HTTP/1.0 or HTTP/1.1 and closes the connection.
+	 */
+	private void rejectVersion() throws IOException
+	{
+		BasicHttpResponse response = new BasicHttpResponse();
+		response.setHeaders( new HashMap< String, String >() );
+		response.setVersion( HttpVersion.VERSION_1_1 );
+		response.setStatusCode( HttpStatusCode.HTTP_VERSION_NOT_SUPPORTED );
+		response.getHeaders().put( Http.CONNECTION, "close" );
+		
+		sendResponse( response, CONNECTION.getOutputStream() );
+		CONNECTION.close();
+	}
+	
+	/**
+	 * Hands the request to the traffic capture with its response, if it was sampled.
+	 */
+	private void captureRequest( int status, long bytes )
+	{
+		if ( CAPTUREDREQUEST != null )
+		{
+			TrafficCapture.record( CAPTUREDREQUEST, DISPATCHTIME, status, bytes );
+		}
+	}
+	
+	@Override
+	public HttpResponse handleRequest( HttpRequest request )
+	{
+		RequestWatchdog.WatchedRequest watched = SERVER.getWatchdog().begin( request );
+		
+		try
+		{
+			return createResponse( request );
+		}
+		finally
+		{
+			SERVER.getWatchdog().end( watched );
+		}
+	}
+	
+	/**
+	 * Returns the cache policy of the route a request is sent to.
+	 * 
+	 * @param request The parsed request.
+	 * @return The policy or null if the response must not be cached.
+	 */
+	protected CachePolicy getCachePolicy( HttpRequest request )
+	{
+		return ( request.getHttpMethod() == HttpMethod.GET ) ? ResponseCache.getPolicy( request ) : null;
+	}
+	
+	/**
+	 * Returns the cached response of a request, computing it on a miss and
+	 * refreshing it in the background when it is stale.
+	 * 
+	 * @param request The parsed request.
+	 * @param cachePolicy Cache policy of the route.
+	 * @return The cached response.
+	 * @throws Exception If the response could not be computed.
+	 */
+	protected CachedResponse getCachedResponse( HttpRequest request, CachePolicy cachePolicy ) throws Exception
+	{
+		String cacheKey = ResponseCache.createKey( request, cachePolicy );
+		CachedResponse cached = ResponseCache.get( cacheKey );
+		
+		if ( cached == null )
+		{
+			// Identical requests that arrive while this one is computed share its response
+			cached = ResponseCache.load( cacheKey, createCacheLoader( request, cacheKey, cachePolicy ) );
+		}
+		else if ( cached.isStale( System.currentTimeMillis() ) )
+		{
+			refreshCachedResponse( request, cacheKey, cachePolicy, cached );
+		}
+		
+		return cached;
+	}
+	
+	/**
+	 * Runs the filters and the route for a request.
+	 * 
+	 * @param request The parsed request.
+	 * @return The response to send.
+	 */
+	protected HttpResponse createResponse( HttpRequest request )
+	{
+		FilterChain filters = SERVER.getFilterChain();
+		BasicHttpResponse response = new BasicHttpResponse();
+		response.setHeaders( new HashMap< String, String >() );
+		response.setVersion( request.getHttpVersion() );
+		
+		try
+		{
+			if ( filters.beforeRoute( request, response ) )
+			{
+				switch ( request.getHttpMethod() )
+				{
+					case GET:
+						CachePolicy cachePolicy = getCachePolicy( request );
+						
+						// Cached routes are the innermost step, the filters run on hits as well
+						if ( cachePolicy == null )
+						{
+							processGetRequest( request, response );
+						}
+						else
+						{
+							getCachedResponse( request, cachePolicy ).copyTo( response );
+						}
+						break;
+					case POST:
+						processPostRequest( request, response );
+						break;
+					case OPTIONS:
+						processOptionsRequest( request, response );
+						break;
+					default:
+						response.setStatusCode( HttpStatusCode.NOT_IMPLEMENTED );
+						break;
+				}
+			}
+			
+			filters.afterRoute( request, response );
+		}
+		catch ( Exception e )
+		{
+			response.setStatusCode( HttpStatusCode.INTERNAL_SERVER_ERROR );
+			response.setEntity( null );
+			
+			Logger.writeLog( "ERROR", "Error while processing " + request.getRequestUri() + ": " + e.toString() );
+			
+			filters.onError( request, response, e );
+		}
+		
+		return response;
+	}
+	
+	/**
+	 * Runs the route of a cached GET request, without the filters.
+	 * 
+	 * @param request The request to answer.
+	 * @param cachePolicy Cache policy of the route.
+	 * @return The response created by the route.
+	 */
+	protected CachedResponse createCachedResponse( HttpRequest request, CachePolicy cachePolicy )
+	{
+		BasicHttpResponse response = new BasicHttpResponse();
+		response.setHeaders( new HashMap< String, String >() );
+		response.setVersion( request.getHttpVersion() );
+		
+		processGetRequest( request, response );
+		
+		if ( cachePolicy.getVaryHeaders().length > 0 )
+		{
+			response.getHeaders().put( Http.VARY, String.join( ", ", cachePolicy.getVaryHeaders() ) );
+		}
+		
+		return CachedResponse.create( response, cachePolicy );
+	}
+	
+	/**
+	 * Creates the task that computes the response of a cached route and stores it in the cache.
+	 * 
+	 * @param request The request to answer.
+	 * @param cacheKey Key of the cached response.
+	 * @param cachePolicy Cache policy of the route.
+	 * @return Task returning the route's response, whether it was stored or not.
+	 */
+	protected Callable< CachedResponse > createCacheLoader( final HttpRequest request, final String cacheKey, final CachePolicy cachePolicy )
+	{
+		return new Callable< CachedResponse >()
+		{
+			@Override
+			public CachedResponse call() throws Exception
+			{
+				CachedResponse cached = createCachedResponse( request, cachePolicy );
+				
+				if ( cached.isOk() )
+				{
+					ResponseCache.put( cacheKey, cached );
+				}
+				
+				return cached;
+			}
+		};
+	}
+	
+	/**
+	 * Recomputes a stale cached response in the background while the stale one is served.
+	 * 
+	 * @param request The request the stale response is served to.
+	 * @param cacheKey Key of the cached response.
+	 * @param cachePolicy Cache policy of the route.
+	 * @param stale The stale response.
+	 */
+	protected void refreshCachedResponse( final HttpRequest request, String cacheKey, final CachePolicy cachePolicy, CachedResponse stale )
+	{
+		ResponseCache.refresh( cacheKey, stale, new Callable< CachedResponse >()
+		{
+			@Override
+			public CachedResponse call() throws Exception
+			{
+				CachedResponse cached = createCachedResponse( request, cachePolicy );
+				
+				// Failed refreshes keep the stale response until it expires
+				return cached.isOk() ? cached : null;
+			}
+		} );
 	}
 	
 	/**
@@ -133,8 +401,9 @@ public class HttpWorker implements Callable<Void>
 	protected HttpRequest parseRequest(InputStream inputStream) throws IOException
 	{
 		String firstLine = readLine(inputStream);
-
+		
 		BasicHttpRequest request = new BasicHttpRequest();
+		request.setStartTime(System.nanoTime());
 
 		request.setVersion(HttpVersion.extractVersion(firstLine));
 		request.setRequestUri(firstLine.split(" ", 3)[1]);
@@ -178,18 +447,20 @@ public class HttpWorker implements Callable<Void>
 	 */
 	protected void sendResponse(HttpResponse response, OutputStream outputStream) throws IOException
 	{
-		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream));
+		// Headers and small bodies are sent with a single write
+		BufferedOutputStream out = new BufferedOutputStream(outputStream, 8192);
+		StringBuilder head = new StringBuilder(256);
 
-		writer.write(response.getHttpVersion().toString());
-		writer.write(' ');
-		writer.write("" + response.getStatusCode().getCode());
-		writer.write(' ');
-		writer.write(response.getStatusCode().getReasonPhrase());
-		writer.write(Http.CRLF);
+		head.append(response.getHttpVersion().toString());
+		head.append(' ');
+		head.append(response.getStatusCode().getCode());
+		head.append(' ');
+		head.append(response.getStatusCode().getReasonPhrase());
+		head.append(Http.CRLF);
 
-		if (response.getEntity() != null && response.getEntity().length > 0)
+		if (response.getEntity() != null && response.getEntityLength() > 0)
 		{
-			response.getHeaders().put(Http.CONTENT_LENGTH, "" + response.getEntity().length);
+			response.getHeaders().put(Http.CONTENT_LENGTH, "" + response.getEntityLength());
 		}
 		else
 		{
@@ -198,20 +469,25 @@ public class HttpWorker implements Callable<Void>
 
 		if (response.getHeaders() != null)
 		{
-			for (String key : response.getHeaders().keySet())
+			for (Map.Entry<String, String> header : response.getHeaders().entrySet())
 			{
-				writer.write(key + ": " + response.getHeaders().get(key) + Http.CRLF);
+				head.append(header.getKey()).append(": ").append(header.getValue()).append(Http.CRLF);
 			}
 		}
-		writer.write(Http.CRLF);
-		writer.flush();
+		out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
 
-		if (response.getEntity() != null && response.getEntity().length > 0)
+		// Pre-encoded headers, ie. from the CORS policy
+		for (int i = 0; i < response.getHeaderBlockCount(); i++)
 		{
-			outputStream.write(response.getEntity());
+			out.write(response.getHeaderBlock(i));
 		}
-		outputStream.flush();
+		out.write(CRLF_BYTES);
 
+		if (response.getEntity() != null && response.getEntityLength() > 0)
+		{
+			out.write(response.getEntity(), 0, response.getEntityLength());
+		}
+		out.flush();
 	}
 	
 	/**
@@ -221,13 +497,13 @@ public class HttpWorker implements Callable<Void>
 	 * header values.
 	 * 
 	 * @param request
-	 * @param response
+	 * @param response The response or null if the request is answered from the cache.
 	 * @return true, if the server should keep open the connection, otherwise
 	 *         false.
 	 */
 	protected boolean keepAlive(HttpRequest request, HttpResponse response)
 	{
-		if (response.getHeaders().containsKey(Http.CONNECTION) && response.getHeaders().get(Http.CONNECTION).equalsIgnoreCase("close"))
+		if (response != null && response.getHeaders().containsKey(Http.CONNECTION) && response.getHeaders().get(Http.CONNECTION).equalsIgnoreCase("close"))
 		{
 			return false;
 		}
@@ -245,127 +521,84 @@ public class HttpWorker implements Callable<Void>
 		return false;
 	}
 	
-	protected HttpResponse processGetRequest( HttpRequest request )
+	/**
+	 * Routes a GET request and loads the resource or view the route selected.
+	 * 
+	 * @param request HttpRequest from the client
+	 * @param response Response the route fills in
+	 */
+	protected void processGetRequest( HttpRequest request, BasicHttpResponse response )
 	{
-		BasicHttpResponse response = new BasicHttpResponse();
-		response.setHeaders( new HashMap< String, String >() );
-		response.getHeaders().put( Http.SERVER, HttpServer.getServerSignature() );
-		response.setVersion( request.getHttpVersion() );
-		
-		String bodyAsString = "";
-		byte[] bodyAsBytes = request.getEntity();
+		RouteDispatchedEvent routeEvent = ServerEvents.beginRouteDispatched();
+		long start = System.nanoTime();
+		HandleGetRequest.processRequest( response, request.getRequestUri(), getBodyAsString( request ) );
+		request.getTiming().add( RequestPhase.ROUTE, System.nanoTime() - start );
+		ServerEvents.commitRouteDispatched( routeEvent, request, ( response.getStatusCode() == null ) ? 0 : response.getStatusCode().getCode() );
 		
-		try
-		{
-			if ( bodyAsBytes != null )
-			{
-				bodyAsString = new String( bodyAsBytes, "UTF-8" );
-			}
-		}
-		catch ( UnsupportedEncodingException e )
-		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Unable to set encoding: " + e.getMessage(), callingMethod, currentMethod );
-		}
-		
-		response = HandleGetRequest.processRequest( response, request.getRequestUri(), bodyAsString );
-		
-		if ( response.getResourceAsBody() && ( response.getResourceLocation().isEmpty() == false ) && ( response.getResourceLocation() != null ) )
-		{
-			File f = new File( response.getResourceLocation() );
-			
-			if ( f.exists() )
-			{
-				response.setStatusCode( HttpStatusCode.OK );
-				InputStream inputStream;
-				try
-				{
-					inputStream = new FileInputStream( f );
-					byte fileContent[] = new byte[ ( int ) f.length() ];
-					inputStream.read( fileContent );
-					inputStream.close();
-					response.setEntity( fileContent );
-
-					// guess and set the content type
-					String extention = getExtension( f.getPath() );
-					String httpContentType = Http.getContentType( extention );
-					response.getHeaders().put( Http.CONTENT_TYPE, httpContentType );
-				}
-				catch ( FileNotFoundException e )
-				{
-					response.setStatusCode( HttpStatusCode.NOT_FOUND );
-					
-					StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-					String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-					String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-					
-					Logger.writeLog( "WARNING", "Unable to find resource: " + e.getMessage(), callingMethod, currentMethod );
-				}
-				catch ( IOException e )
-				{
-					response.setStatusCode( HttpStatusCode.INTERNAL_SERVER_ERROR );
-					
-					StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-					String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-					String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-					
-					Logger.writeLog( "ERROR", "Unable to read resource: " + e.getMessage(), callingMethod, currentMethod );
-				}
-			}
-			else
-			{
-				response.setStatusCode( HttpStatusCode.NOT_FOUND );
-			}
-		}
-		
-		return response;
+		loadRouteBody( request, response );
 	}
 	
-	protected HttpResponse processPostRequest( HttpRequest request )
+	/**
+	 * Routes a POST request and loads the resource or view the route selected.
+	 * 
+	 * @param request HttpRequest from the client
+	 * @param response Response the route fills in
+	 */
+	protected void processPostRequest( HttpRequest request, BasicHttpResponse response )
 	{
-		BasicHttpResponse response = new BasicHttpResponse();
-		response.setHeaders( new HashMap< String, String >() );
-		response.getHeaders().put( Http.SERVER, HttpServer.getServerSignature() );
-		response.setVersion( request.getHttpVersion() );
+		RouteDispatchedEvent routeEvent = ServerEvents.beginRouteDispatched();
+		long start = System.nanoTime();
+		HandlePostRequest.processRequest( response, request.getRequestUri(), getBodyAsString( request ) );
+		request.getTiming().add( RequestPhase.ROUTE, System.nanoTime() - start );
+		ServerEvents.commitRouteDispatched( routeEvent, request, ( response.getStatusCode() == null ) ? 0 : response.getStatusCode().getCode() );
 		
-		String bodyAsString = "";
+		loadRouteBody( request, response );
+	}
+	
+	/**
+	 * Returns the request body as UTF-8 text, the form routes are handed it in.
+	 */
+	protected String getBodyAsString( HttpRequest request )
+	{
 		byte[] bodyAsBytes = request.getEntity();
 		
-		try
+		return ( bodyAsBytes == null ) ? "" : new String( bodyAsBytes, StandardCharsets.UTF_8 );
+	}
+	
+	/**
+	 * Renders the view or loads the resource a route selected into the response body.
+	 * A status the route set is kept, a resource is otherwise answered with 200 OK.
+	 * 
+	 * @param request HttpRequest from the client
+	 * @param response Response the route filled in
+	 */
+	protected void loadRouteBody( HttpRequest request, BasicHttpResponse response )
+	{
+		long start;
+		
+		if ( response.getView() != null )
 		{
-			if ( bodyAsBytes != null )
-			{
-				bodyAsString = new String( bodyAsBytes, "UTF-8" );
-			}
+			start = System.nanoTime();
+			renderView( response );
+			request.getTiming().add( RequestPhase.RENDER, System.nanoTime() - start );
 		}
-		catch ( UnsupportedEncodingException e )
-		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Unable to set encoding: " + e.getMessage(), callingMethod, currentMethod );
-		}
-		
-		response = HandlePostRequest.processRequest( response, request.getRequestUri(), bodyAsString );
-		
-		if ( response.getResourceAsBody() && ( response.getResourceLocation().isEmpty() == false ) && ( response.getResourceLocation() != null ) )
+		else if ( response.getResourceAsBody() && ( response.getResourceLocation().isEmpty() == false ) && ( response.getResourceLocation() != null ) )
 		{
 			File f = new File( response.getResourceLocation() );
 			
 			if ( f.exists() )
 			{
-				response.setStatusCode( HttpStatusCode.OK );
-				InputStream inputStream;
+				// A route serving its error page, ie. 404.html, keeps the status it chose
+				if ( response.getStatusCode() == null )
+				{
+					response.setStatusCode( HttpStatusCode.OK );
+				}
+				
+				FileServedEvent fileEvent = ServerEvents.beginFileServed();
+				start = System.nanoTime();
 				try
 				{
-					inputStream = new FileInputStream( f );
-					byte fileContent[] = new byte[ ( int ) f.length() ];
-					inputStream.read( fileContent );
-					inputStream.close();
+					byte fileContent[] = ResourceLoader.load( f );
 					response.setEntity( fileContent );
 
 					// guess and set the content type
@@ -377,47 +610,71 @@ public class HttpWorker implements Callable<Void>
 				{
 					response.setStatusCode( HttpStatusCode.NOT_FOUND );
 					
-					StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-					String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-					String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-					
-					Logger.writeLog( "WARNING", "Unable to find resource: " + e.getMessage(), callingMethod, currentMethod );
+					Logger.writeLog( "WARNING", "Unable to find resource: " + e.getMessage(), "com.cs.server.HttpWorker_loadRouteBody" );
 				}
 				catch ( IOException e )
 				{
 					response.setStatusCode( HttpStatusCode.INTERNAL_SERVER_ERROR );
 					
-					StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-					String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-					String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-					
-					Logger.writeLog( "ERROR", "Unable to read resource: " + e.getMessage(), callingMethod, currentMethod );
+					Logger.writeLog( "ERROR", "Unable to read resource: " + e.getMessage() );
 				}
+				
+				request.getTiming().add( RequestPhase.FILE, System.nanoTime() - start );
+				ServerEvents.commitFileServed( fileEvent, f.getPath(), ( response.getEntity() == null ) ? 0 : response.getEntityLength(), response.getStatusCode().getCode() );
 			}
 			else
 			{
 				response.setStatusCode( HttpStatusCode.NOT_FOUND );
 			}
 		}
-		
-		return response;
 	}
 	
 	/**
 	 * Options request only needs to be taken into account when making use of external API's
 	 * 
 	 * @param request HttpRequest from the client
+	 * @param response Response to the request
 	 * @see Cross-Origin Resource Sharing (CORS)
 	 */
-	protected HttpResponse processOptionsRequest( HttpRequest request )
+	protected void processOptionsRequest( HttpRequest request, BasicHttpResponse response )
+	{
+		response.setStatusCode( HttpStatusCode.OK );
+	}
+	
+	/**
+	 * Renders the view template set by the route into the response body.
+	 * 
+	 * @param response Response holding the view and model.
+	 */
+	protected void renderView( BasicHttpResponse response )
 	{
-		BasicHttpResponse responses = new BasicHttpResponse();
-		responses.setHeaders( new HashMap< String, String >() );
-		responses.getHeaders().put( Http.SERVER, HttpServer.getServerSignature() );
-		responses.setVersion( request.getHttpVersion() );
-		responses.setStatusCode( HttpStatusCode.OK );
+		Template template = TemplateEngine.getTemplate( response.getView() );
 		
-		return responses;
+		if ( template == null )
+		{
+			response.setStatusCode( HttpStatusCode.NOT_FOUND );
+			return;
+		}
+		
+		try
+		{
+			RenderBuffer body = TemplateEngine.render( template, response.getModel() );
+			response.setEntity( body.getBuffer(), body.size() );
+			
+			if ( response.getStatusCode() == null )
+			{
+				response.setStatusCode( HttpStatusCode.OK );
+			}
+			
+			response.getHeaders().put( Http.CONTENT_TYPE, Http.getContentType( getExtension( response.getView() ) ) );
+		}
+		catch ( RuntimeException e )
+		{
+			response.setStatusCode( HttpStatusCode.INTERNAL_SERVER_ERROR );
+			response.setEntity( null );
+			
+			Logger.writeLog( "ERROR", "Unable to render view " + response.getView() + ": " + e.getMessage() );
+		}
 	}
 	
 	protected String getExtension( String fName )
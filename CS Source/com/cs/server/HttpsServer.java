@@ -2,26 +2,21 @@ package com.cs.server;
 
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.UnknownHostException;
-import java.security.KeyManagementException;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLServerSocket;
-import javax.net.ssl.SSLServerSocketFactory;
-import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
 
-import com.cs.interfaces.Server;
+import com.cs.filters.FilterChain;
+import com.cs.http2.Http2Connection;
 import com.cs.logs.Logger;
 import com.cs.main.Config;
 
@@ -30,19 +25,36 @@ import com.cs.main.Config;
  * using the following command in a terminal: 
  * "keytool -genkey -alias mykey -keyalg RSA -keysize 2048 -sigalg SHA256withRSA -validity 365 -keypass password2 -keystore identity.jks -storepass password1"
  * 
+ * <br><br>
+ * The request pipeline is the one of {@link HttpServer}, this class only adds a
+ * {@link TlsTransport} on top of {@link SSLEngine} to every connection. Handshakes
+ * run on the event loops, with their slow tasks on a bounded executor, so they never
+ * hold a worker thread.
+ * 
  * @see https://blogs.oracle.com/blogbypuneeth/entry/steps_to_create_a_self
  */
-public class HttpsServer implements Server
+public class HttpsServer extends HttpServer
 {
-	private final static String SERVER_NAME = "Coffee Spider";
-	private final static String SERVER_VERSION = "v.1.0";
-	private final static String SERVER_SIGNATURE = SERVER_NAME + " " + SERVER_VERSION;
-
-	private volatile boolean RUNNING = false;
-
-	private ServerSocket SERVERSOCKET;
-	private final ExecutorService WORKERPOOL;
-	private final ExecutorService DISPATCHERSERVICE;
+	/**
+	 * A context and the settings created for it, swapped as one when the keystore changes.
+	 */
+	private static class TlsContext
+	{
+		final SSLContext context;
+		// Settings applied to every connection, created from the config
+		final SSLParameters parameters;
+		
+		TlsContext( SSLContext context, SSLParameters parameters )
+		{
+			this.context = context;
+			this.parameters = parameters;
+		}
+	}
+	
+	// Read for every new connection, replaced when the keystore is reloaded
+	private volatile TlsContext TLSCONTEXT;
+	private final TlsHandshakeStats HANDSHAKESTATS = new TlsHandshakeStats();
+	private KeyStoreWatcher KEYSTOREWATCHER;
 	
 	// Full path to the keyfile
 	private final String KSNAME = Config.keyFilePath();
@@ -58,168 +70,209 @@ public class HttpsServer implements Server
 
 	public HttpsServer( int port )
 	{
-		WORKERPOOL = Executors.newFixedThreadPool( 16 );
-		DISPATCHERSERVICE = Executors.newSingleThreadExecutor();
+		this( port, FilterChain.createDefault( true ) );
+	}
+
+	/**
+	 * Creates a server that runs the given filters around every request.
+	 * 
+	 * @param port Port number to listen on.
+	 * @param filters Middleware composed for this server.
+	 */
+	public HttpsServer( int port, FilterChain filters )
+	{
+		this( port, filters, null );
+	}
+
+	/**
+	 * Creates a server that serves its connections on shared pools.
+	 * 
+	 * @param port Port number to listen on.
+	 * @param filters Middleware composed for this server.
+	 * @param pools Threads shared with other servers, or null to create them for this server.
+	 */
+	public HttpsServer( int port, FilterChain filters, WorkerPools pools )
+	{
+		super( port, filters, pools );
+		
+		// Read by the JRE when the context is created, Java 8 always resumes from the session cache
+		System.setProperty( "jdk.tls.server.enableSessionTicketExtension", String.valueOf( Config.useTlsSessionTickets() ) );
 		
 		try
 		{
-			KeyStore ks = KeyStore.getInstance( "JKS" );
-			ks.load( new FileInputStream( KSNAME ), KSPASS );
-			
-			KeyManagerFactory kmf = KeyManagerFactory.getInstance( "SunX509" );
-			kmf.init( ks, CTPASS );
+			TLSCONTEXT = loadTlsContext();
 			
-			SSLContext sc = SSLContext.getInstance( "TLS" );
-			sc.init( kmf.getKeyManagers(), null, null );
-			
-			SSLServerSocketFactory ssf = sc.getServerSocketFactory();
-			
-			SERVERSOCKET = ( SSLServerSocket ) ssf.createServerSocket( port );
+			if ( Config.reloadTlsKeyStore() )
+			{
+				KEYSTOREWATCHER = new KeyStoreWatcher( KSNAME, this );
+			}
 		}
 		catch ( IOException e )
 		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Error while starting server: " + e.getMessage(), callingMethod, currentMethod );
-			throw new RuntimeException( "Error while starting server", e );
-		}
-		catch ( KeyStoreException e )
-		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Error with SSL key: " + e.getMessage(), callingMethod, currentMethod );
-			throw new RuntimeException( "Error while starting server", e );
-		}
-		catch ( NoSuchAlgorithmException e )
-		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Error with SSL key: " + e.getMessage(), callingMethod, currentMethod );
-			throw new RuntimeException( "Error while starting server", e );
-		}
-		catch ( CertificateException e )
-		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Error with SSL key: " + e.getMessage(), callingMethod, currentMethod );
+			Logger.writeLog( "ERROR", "Error while starting server: " + e.getMessage() );
 			throw new RuntimeException( "Error while starting server", e );
 		}
-		catch ( UnrecoverableKeyException e )
+		catch ( GeneralSecurityException e )
 		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Error with SSL key: " + e.getMessage(), callingMethod, currentMethod );
+			Logger.writeLog( "ERROR", "Error with SSL key: " + e.getMessage() );
 			throw new RuntimeException( "Error while starting server", e );
 		}
-		catch ( KeyManagementException e )
+	}
+
+	/**
+	 * Creates the TLS side of a newly accepted connection, which performs the handshake on the event loop.
+	 */
+	@Override
+	protected Transport createTransport( SocketChannel channel )
+	{
+		// Established connections keep the context they were created with
+		TlsContext tls = TLSCONTEXT;
+		
+		SSLEngine engine = tls.context.createSSLEngine();
+		engine.setUseClientMode( false );
+		engine.setSSLParameters( tls.parameters );
+		
+		return new TlsTransport( engine, HANDSHAKESTATS, channel.socket().getRemoteSocketAddress() );
+	}
+
+	@Override
+	protected String getScheme()
+	{
+		return "https";
+	}
+
+	@Override
+	public void start()
+	{
+		super.start();
+		
+		if ( KEYSTOREWATCHER != null )
 		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Error with SSL key: " + e.getMessage(), callingMethod, currentMethod );
-			throw new RuntimeException( "Error while starting server", e );
+			KEYSTOREWATCHER.start();
 		}
 	}
 
 	@Override
-	public void start()
+	public void stop()
 	{
-		RUNNING = true;
-		// Initiate the main server loop accepting incoming connections.
-		DISPATCHERSERVICE.submit( new Runnable()
+		if ( KEYSTOREWATCHER != null )
 		{
-			@Override
-			public void run()
-			{
-				while ( RUNNING )
-				{
-					try
-					{
-						SSLSocket socket = ( SSLSocket ) SERVERSOCKET.accept();
-						dispatchRequest( socket );
-					}
-					catch ( IOException e )
-					{
-						StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-						String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-						String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-						
-						Logger.writeLog( "ERROR", "Error while accepting a connection: " + e.getMessage(), callingMethod, currentMethod );
-					}
-				}
-			}
-		} );
+			KEYSTOREWATCHER.stop();
+		}
+		
+		super.stop();
+	}
 
+	/**
+	 * Loads the keystore again and uses it for connections accepted from now on.
+	 * Established connections keep running on the keys they negotiated. If the
+	 * keystore can not be loaded, ie. because it is still being written, the
+	 * current keys stay in use.
+	 * 
+	 * @return true if the new keystore is in use.
+	 */
+	public boolean reloadKeyStore()
+	{
 		try
 		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
+			TLSCONTEXT = loadTlsContext();
 			
-			Logger.writeLog( "LOG", "Webserver started: https://" + InetAddress.getLocalHost().getHostName() + ":" + SERVERSOCKET.getLocalPort(), callingMethod, currentMethod );
+			Logger.writeLog( "LOG", "Reloaded the TLS keystore " + KSNAME );
+			return true;
 		}
-		catch ( UnknownHostException e )
+		catch ( IOException | GeneralSecurityException | IllegalArgumentException e )
 		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Error while getting server details: " + e.getMessage(), callingMethod, currentMethod );
+			Logger.writeLog( "WARNING", "Unable to reload the TLS keystore, the current keys stay in use: " + e.getMessage() );
+			return false;
 		}
 	}
 
-	@Override
-	public void stop()
+	/**
+	 * Creates a context from the keystore with the session and protocol settings of the config.
+	 */
+	private TlsContext loadTlsContext() throws IOException, GeneralSecurityException
 	{
-		try
+		KeyStore ks = KeyStore.getInstance( "JKS" );
+		try ( FileInputStream keyFile = new FileInputStream( KSNAME ) )
 		{
-			RUNNING = false;
-			DISPATCHERSERVICE.shutdown();
-			WORKERPOOL.shutdown();
-			SERVERSOCKET.close();
+			ks.load( keyFile, KSPASS );
 		}
-		catch ( IOException e )
+		
+		KeyManagerFactory kmf = KeyManagerFactory.getInstance( "SunX509" );
+		kmf.init( ks, CTPASS );
+		
+		SSLContext context = SSLContext.getInstance( "TLS" );
+		context.init( kmf.getKeyManagers(), null, null );
+		
+		SSLSessionContext sessions = context.getServerSessionContext();
+		sessions.setSessionCacheSize( Config.getTlsSessionCacheSize() );
+		sessions.setSessionTimeout( Config.getTlsSessionTimeout() );
+		
+		return new TlsContext( context, createSSLParameters( context ) );
+	}
+
+	/**
+	 * Creates the protocol, cipher suite and ALPN settings of the connections from the config.
+	 * Protocols and cipher suites the JRE does not support are skipped with a warning.
+	 */
+	private SSLParameters createSSLParameters( SSLContext context )
+	{
+		SSLParameters supported = context.getSupportedSSLParameters();
+		SSLParameters parameters = context.getDefaultSSLParameters();
+		
+		String[] protocols = filterSupported( "protocol", Config.getTlsProtocols(), supported.getProtocols() );
+		if ( protocols.length == 0 )
 		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "ERROR", "Error while shutting down the server: " + e.getMessage(), callingMethod, currentMethod );
+			throw new IllegalArgumentException( "None of the configured TLS protocols is supported" );
 		}
-		finally
+		parameters.setProtocols( protocols );
+		
+		if ( Config.getTlsCipherSuites().length > 0 )
 		{
-			StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-			String callingMethod = ste[2].getClassName() + "_" + ste[2].getMethodName() + "_" + ste[2].getLineNumber();
-			String currentMethod = ste[1].getClassName() + "_" + ste[1].getMethodName() + "_" + ste[1].getLineNumber();
-			
-			Logger.writeLog( "LOG", "The server has been shut down successfully.", callingMethod, currentMethod );
+			String[] cipherSuites = filterSupported( "cipher suite", Config.getTlsCipherSuites(), supported.getCipherSuites() );
+			if ( cipherSuites.length == 0 )
+			{
+				throw new IllegalArgumentException( "None of the configured TLS cipher suites is supported" );
+			}
+			parameters.setCipherSuites( cipherSuites );
 		}
+		
+		// The configured order decides, not the order of the client
+		parameters.setUseCipherSuitesOrder( true );
+		
+		// Offer HTTP/2 through ALPN, clients without ALPN continue with HTTP/1.1
+		parameters.setApplicationProtocols( new String[] { Http2Connection.ALPN_PROTOCOL, "http/1.1" } );
+		
+		return parameters;
 	}
-
-	@Override
-	public void dispatchRequest( Socket socket )
+	
+	private static String[] filterSupported( String type, String[] configured, String[] supported )
 	{
-		WORKERPOOL.submit( new HttpsWorker( socket, this ) );
+		List< String > supportedList = Arrays.asList( supported );
+		List< String > result = new ArrayList< String >();
+		
+		for ( String name : configured )
+		{
+			if ( supportedList.contains( name ) )
+			{
+				result.add( name );
+			}
+			else
+			{
+				Logger.writeLog( "WARNING", "Unsupported TLS " + type + " skipped: " + name );
+			}
+		}
+		
+		return result.toArray( new String[ result.size() ] );
 	}
-
+	
 	/**
-	 * Returns the signature of the web server.
+	 * Returns the handshake counters of this server.
 	 * 
-	 * @return String representing the web server name and version
+	 * @return The handshake statistics
 	 */
-	public static String getServerSignature()
+	public TlsHandshakeStats getHandshakeStats()
 	{
-		return SERVER_SIGNATURE;
+		return HANDSHAKESTATS;
 	}
 }
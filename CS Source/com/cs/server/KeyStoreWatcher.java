@@ -0,0 +1,140 @@
+package com.cs.server;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.cs.logs.Logger;
+
+/**
+ * Reloads the keystore of a {@link HttpsServer} when the file changes.
+ * <br><br>
+ * The folder of the keystore is watched rather than the file itself, so files that
+ * are replaced by a rename or a symbolic link swap are noticed as well. Every event
+ * in the folder, and a periodic check for file systems that report none, compares
+ * a digest of the file with the one in use, so unrelated files and rewrites with the
+ * same content never cause a reload. A keystore that can not be loaded, ie. one that
+ * is still being written, is tried again once its content changes.
+ */
+class KeyStoreWatcher implements Runnable
+{
+	// Time given to whoever replaces the file to finish writing it
+	private static final long SETTLE_TIME = 500;
+	// Checks the file without an event, for file systems that do not report changes
+	private static final long CHECK_INTERVAL = 30;
+
+	private final Path FILE;
+	private final HttpsServer SERVER;
+	private final WatchService WATCHSERVICE;
+	private final ExecutorService WATCHERSERVICE = Executors.newSingleThreadExecutor();
+
+	private byte[] digest;
+	// Content that failed to load, tried again only once the file changes
+	private byte[] failedDigest;
+
+	KeyStoreWatcher( String keyFile, HttpsServer server ) throws IOException
+	{
+		this.FILE = Paths.get( keyFile ).toAbsolutePath();
+		this.SERVER = server;
+		this.WATCHSERVICE = FileSystems.getDefault().newWatchService();
+		this.digest = digest();
+
+		FILE.getParent().register( WATCHSERVICE, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE );
+	}
+
+	void start()
+	{
+		WATCHERSERVICE.submit( this );
+	}
+
+	void stop()
+	{
+		try
+		{
+			WATCHSERVICE.close();
+		}
+		catch ( IOException e )
+		{
+			// The watcher stops either way
+		}
+
+		WATCHERSERVICE.shutdownNow();
+	}
+
+	@Override
+	public void run()
+	{
+		try
+		{
+			while ( true )
+			{
+				WatchKey key = WATCHSERVICE.poll( CHECK_INTERVAL, TimeUnit.SECONDS );
+
+				if ( key != null )
+				{
+					// Changes usually come as several events, wait until they are done
+					Thread.sleep( SETTLE_TIME );
+					key.pollEvents();
+					key.reset();
+				}
+
+				checkFile();
+			}
+		}
+		catch ( InterruptedException | ClosedWatchServiceException e )
+		{
+			// The server is stopping
+		}
+	}
+
+	private void checkFile()
+	{
+		byte[] current = digest();
+
+		if ( current == null || Arrays.equals( current, digest ) || Arrays.equals( current, failedDigest ) )
+		{
+			return;
+		}
+
+		if ( SERVER.reloadKeyStore() )
+		{
+			digest = current;
+		}
+		else
+		{
+			failedDigest = current;
+		}
+	}
+
+	/**
+	 * Returns the digest of the keystore or null if it can not be read right now.
+	 */
+	private byte[] digest()
+	{
+		try
+		{
+			return MessageDigest.getInstance( "SHA-256" ).digest( Files.readAllBytes( FILE ) );
+		}
+		catch ( IOException e )
+		{
+			return null;
+		}
+		catch ( NoSuchAlgorithmException e )
+		{
+			Logger.writeLog( "ERROR", "SHA-256 is not available: " + e.getMessage() );
+			return null;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package com.cs.server;
+
+import com.cs.filters.FilterChain;
+
+/**
+ * A port the process listens on, as configured in the listeners section of the config file.
+ */
+public class Listener
+{
+	private final String type;
+	private final int port;
+	private final String redirectTarget;
+
+	/**
+	 * Creates a listener.
+	 *
+	 * @param type "http" or "https".
+	 * @param port Port number to listen on.
+	 * @param redirectTarget Origin every request is redirected to, or null to serve the routes.
+	 */
+	public Listener( String type, int port, String redirectTarget )
+	{
+		this.type = type.toLowerCase();
+		this.port = port;
+		this.redirectTarget = redirectTarget;
+	}
+
+	public String getType()
+	{
+		return type;
+	}
+
+	public int getPort()
+	{
+		return port;
+	}
+
+	public String getRedirectTarget()
+	{
+		return redirectTarget;
+	}
+
+	public boolean isRedirect()
+	{
+		return redirectTarget != null;
+	}
+
+	/**
+	 * Creates the server of this listener.
+	 *
+	 * @param pools Threads shared by all listeners of the process.
+	 * @return The server, not started yet.
+	 */
+	public HttpServer createServer( WorkerPools pools )
+	{
+		if ( isRedirect() )
+		{
+			return new RedirectServer( port, redirectTarget, pools );
+		}
+		else if ( type.equals( "https" ) )
+		{
+			return new HttpsServer( port, FilterChain.createDefault( true ), pools );
+		}
+
+		return new HttpServer( port, FilterChain.createDefault( false ), pools );
+	}
+
+	@Override
+	public String toString()
+	{
+		return type + "://*:" + port + ( isRedirect() ? " -> " + redirectTarget : "" );
+	}
+}
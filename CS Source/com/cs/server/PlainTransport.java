@@ -0,0 +1,101 @@
+package com.cs.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The transport of plain HTTP: the socket carries the application bytes as they are.
+ */
+class PlainTransport implements Transport
+{
+	private static final int BUFFER_SIZE = 65536;
+
+	@Override
+	public void beginHandshake()
+	{
+		// Nothing to negotiate
+	}
+
+	@Override
+	public boolean isHandshaking()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean needsWrap()
+	{
+		return false;
+	}
+
+	@Override
+	public Runnable getDelegatedTask()
+	{
+		return null;
+	}
+
+	@Override
+	public boolean needsTasks()
+	{
+		return false;
+	}
+
+	@Override
+	public Status decode( ByteBuffer source, ByteBuffer destination )
+	{
+		return copy( source, destination );
+	}
+
+	@Override
+	public Status encode( ByteBuffer source, ByteBuffer destination )
+	{
+		return copy( source, destination );
+	}
+
+	@Override
+	public void closeOutbound()
+	{
+		// Closing the socket is all there is
+	}
+
+	@Override
+	public void closed()
+	{
+		// Nothing to clean up
+	}
+
+	@Override
+	public String getApplicationProtocol()
+	{
+		return null;
+	}
+
+	@Override
+	public int getPacketBufferSize()
+	{
+		return BUFFER_SIZE;
+	}
+
+	@Override
+	public int getApplicationBufferSize()
+	{
+		return BUFFER_SIZE;
+	}
+
+	private static Status copy( ByteBuffer source, ByteBuffer destination )
+	{
+		if ( source.hasRemaining() == false )
+		{
+			return Status.NEED_INPUT;
+		}
+		else if ( destination.hasRemaining() == false )
+		{
+			return Status.NEED_SPACE;
+		}
+
+		int length = Math.min( source.remaining(), destination.remaining() );
+		destination.put( source.array(), source.arrayOffset() + source.position(), length );
+		source.position( source.position() + length );
+
+		return Status.OK;
+	}
+}
@@ -0,0 +1,228 @@
+package com.cs.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.Executor;
+
+import com.cs.filters.FilterChain;
+import com.cs.http.BasicHttpResponse;
+import com.cs.http.Http;
+import com.cs.http.HttpMethod;
+import com.cs.http.HttpStatusCode;
+import com.cs.http2.Http2Connection;
+import com.cs.interfaces.HttpRequest;
+import com.cs.interfaces.HttpResponse;
+import com.cs.interfaces.RequestHandler;
+import com.cs.logs.AccessLog;
+import com.cs.logs.TrafficCapture;
+import com.cs.metrics.Metrics;
+
+/**
+ * A plain HTTP listener that sends every request to another origin, ie. from port 80
+ * to the HTTPS listener.
+ * <br><br>
+ * The responses are encoded when the server is created, only the request target is
+ * copied in between. Requests are answered on the event loop from their request
+ * line, without parsing headers or using a worker thread. GET and HEAD requests
+ * get a 301, other methods a 308 so clients repeat them with the same method.
+ */
+public class RedirectServer extends HttpServer implements RequestHandler
+{
+	// Request lines longer than this are redirected to the root of the target
+	private final static int MAX_REQUEST_LINE = 8192;
+	// Redirected targets are counted together in the metrics, they are not routes of this server
+	private final static String REDIRECT_ROUTE = "redirect";
+
+	private final String TARGET;
+	private final byte[] MOVEDHEAD;
+	private final byte[] PERMANENTHEAD;
+	private final byte[] KEEPALIVETAIL;
+	private final byte[] CLOSETAIL;
+
+	/**
+	 * Creates a redirecting server with its own pools.
+	 *
+	 * @param port Port number to listen on.
+	 * @param target Origin requests are sent to, ie. "https://example.com".
+	 */
+	public RedirectServer( int port, String target )
+	{
+		this( port, target, null );
+	}
+
+	/**
+	 * Creates a redirecting server that serves its connections on shared pools.
+	 *
+	 * @param port Port number to listen on.
+	 * @param target Origin requests are sent to, ie. "https://example.com".
+	 * @param pools Threads shared with other servers, or null to create them for this server.
+	 */
+	public RedirectServer( int port, String target, WorkerPools pools )
+	{
+		super( port, new FilterChain(), pools );
+
+		// The request target is appended to the origin, so it must not end with a slash
+		TARGET = target.endsWith( "/" ) ? target.substring( 0, target.length() - 1 ) : target;
+
+		MOVEDHEAD = encodeHead( HttpStatusCode.MOVED_PERMANENTLY );
+		PERMANENTHEAD = encodeHead( HttpStatusCode.PERMANENT_REDIRECT );
+		KEEPALIVETAIL = encodeTail( false );
+		CLOSETAIL = encodeTail( true );
+	}
+
+	/**
+	 * Answers a request straight from its request line. Called on the event loop.
+	 */
+	@Override
+	void dispatchRequest( Connection connection )
+	{
+		long startTime = System.nanoTime();
+		String requestLine = readRequestLine( connection.getInputStream() );
+		String[] parts = requestLine.split( " " );
+
+		boolean valid = ( parts.length == 3 && parts[ 2 ].startsWith( "HTTP/1." ) );
+		boolean close = ( valid == false || parts[ 2 ].equals( "HTTP/1.0" ) );
+		boolean keepMethod = ( valid && parts[ 0 ].equals( "GET" ) == false && parts[ 0 ].equals( "HEAD" ) == false );
+
+		HttpStatusCode statusCode = keepMethod ? HttpStatusCode.PERMANENT_REDIRECT : HttpStatusCode.MOVED_PERMANENTLY;
+		connection.write( encodeResponse( keepMethod ? PERMANENTHEAD : MOVEDHEAD, valid ? parts[ 1 ] : "/", close ? CLOSETAIL : KEEPALIVETAIL ) );
+		AccessLog.record( valid ? parts[ 0 ] : null, valid ? parts[ 1 ] : null, statusCode.getCode(), 0, startTime, connection.getRemoteAddress() );
+		byte[] captured = connection.takeCapturedRequest();
+
+		if ( captured != null )
+		{
+			TrafficCapture.record( captured, startTime, statusCode.getCode(), 0 );
+		}
+		Metrics.recordRequest( REDIRECT_ROUTE, statusCode.getCode(), System.nanoTime() - startTime );
+
+		if ( close )
+		{
+			connection.close();
+		}
+		else
+		{
+			connection.awaitNextRequest();
+		}
+	}
+
+	/**
+	 * Redirects the streams of HTTP/2 connections with prior knowledge as well.
+	 */
+	@Override
+	Http2Connection createHttp2Connection( Connection connection )
+	{
+		return new Http2Connection( connection, this, new Executor()
+		{
+			@Override
+			public void execute( Runnable task )
+			{
+				// Redirects are cheap enough to answer while the frames are read
+				task.run();
+			}
+		} );
+	}
+
+	@Override
+	public HttpResponse handleRequest( HttpRequest request )
+	{
+		BasicHttpResponse response = new BasicHttpResponse();
+		response.setHeaders( new HashMap< String, String >() );
+		response.setVersion( request.getHttpVersion() );
+
+		HttpMethod method = request.getHttpMethod();
+		response.setStatusCode( ( method == HttpMethod.GET || method == HttpMethod.HEAD ) ? HttpStatusCode.MOVED_PERMANENTLY : HttpStatusCode.PERMANENT_REDIRECT );
+		response.getHeaders().put( Http.LOCATION, TARGET + sanitizeTarget( request.getRequestUri() ) );
+		response.getHeaders().put( Http.SERVER, getServerSignature() );
+
+		return response;
+	}
+
+	/**
+	 * Returns the origin requests are redirected to.
+	 *
+	 * @return The target origin.
+	 */
+	public String getTarget()
+	{
+		return TARGET;
+	}
+
+	private byte[] encodeHead( HttpStatusCode statusCode )
+	{
+		return ( "HTTP/1.1 " + statusCode.getCode() + " " + statusCode.getReasonPhrase() + Http.CRLF + Http.LOCATION + ": " + TARGET ).getBytes( StandardCharsets.ISO_8859_1 );
+	}
+
+	private static byte[] encodeTail( boolean close )
+	{
+		String tail = Http.CRLF + Http.SERVER + ": " + getServerSignature() + Http.CRLF + Http.CONTENT_LENGTH + ": 0" + Http.CRLF;
+
+		if ( close )
+		{
+			tail += Http.CONNECTION + ": close" + Http.CRLF;
+		}
+
+		return ( tail + Http.CRLF ).getBytes( StandardCharsets.ISO_8859_1 );
+	}
+
+	private static byte[] encodeResponse( byte[] head, String requestTarget, byte[] tail )
+	{
+		byte[] target = sanitizeTarget( requestTarget ).getBytes( StandardCharsets.ISO_8859_1 );
+		byte[] response = new byte[ head.length + target.length + tail.length ];
+
+		System.arraycopy( head, 0, response, 0, head.length );
+		System.arraycopy( target, 0, response, head.length, target.length );
+		System.arraycopy( tail, 0, response, head.length + target.length, tail.length );
+
+		return response;
+	}
+
+	/**
+	 * Keeps origin-form targets only, anything else could inject headers or point elsewhere.
+	 */
+	private static String sanitizeTarget( String requestTarget )
+	{
+		if ( requestTarget == null || requestTarget.startsWith( "/" ) == false )
+		{
+			return "/";
+		}
+
+		for ( int i = 0; i < requestTarget.length(); i++ )
+		{
+			char c = requestTarget.charAt( i );
+			if ( c <= ' ' || c >= 0x7f )
+			{
+				return "/";
+			}
+		}
+
+		return requestTarget;
+	}
+
+	/**
+	 * Reads the first line of a request, the rest of it is never looked at.
+	 */
+	private static String readRequestLine( InputStream inputStream )
+	{
+		StringBuilder line = new StringBuilder();
+
+		try
+		{
+			int n;
+			while ( ( n = inputStream.read() ) != -1 && n != '\n' && line.length() < MAX_REQUEST_LINE )
+			{
+				if ( n != '\r' )
+				{
+					line.append( ( char ) n );
+				}
+			}
+		}
+		catch ( IOException e )
+		{
+			// The request is held in memory
+		}
+
+		return line.toString();
+	}
+}
@@ -0,0 +1,223 @@
+package com.cs.server;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.cs.interfaces.HttpRequest;
+import com.cs.logs.Logger;
+import com.cs.metrics.Metrics;
+
+/**
+ * Keeps track of the requests the worker threads are answering and reports the
+ * ones that take too long.
+ * <br><br>
+ * A request still running after the slow request time is logged once, with a stack
+ * trace of its worker thread, and counted in the metrics. This shows which route a
+ * worker is stuck in before the pool runs out of threads. A request still running
+ * after the deadline gets its worker thread interrupted once, which ends routes that
+ * wait on I/O or sleep. Routes that never check for interrupts keep running.
+ */
+class RequestWatchdog implements Runnable
+{
+	private final static long MIN_CHECK_INTERVAL = 10;
+	private final static long MAX_CHECK_INTERVAL = 1000;
+
+	private final long SLOWNANOS;
+	private final long DEADLINENANOS;
+	private final long CHECKINTERVAL;
+	private final Set< WatchedRequest > INFLIGHT = ConcurrentHashMap.newKeySet();
+
+	private Thread thread;
+
+	/**
+	 * Creates a watchdog. It only watches requests once started.
+	 *
+	 * @param slowMillis Milliseconds after which a request is reported, 0 to not watch requests.
+	 * @param deadlineMillis Milliseconds after which the worker thread is interrupted, 0 for never.
+	 */
+	RequestWatchdog( long slowMillis, long deadlineMillis )
+	{
+		SLOWNANOS = TimeUnit.MILLISECONDS.toNanos( slowMillis );
+		DEADLINENANOS = TimeUnit.MILLISECONDS.toNanos( deadlineMillis );
+
+		// Check a few times within the shortest limit, so requests are reported close to it
+		long shortest = ( deadlineMillis > 0 ) ? Math.min( slowMillis, deadlineMillis ) : slowMillis;
+		CHECKINTERVAL = Math.max( MIN_CHECK_INTERVAL, Math.min( MAX_CHECK_INTERVAL, shortest / 4 ) );
+	}
+
+	synchronized void start()
+	{
+		if ( SLOWNANOS > 0 && thread == null )
+		{
+			thread = new Thread( this, "Request watchdog" );
+			thread.setDaemon( true );
+			thread.start();
+		}
+	}
+
+	synchronized void stop()
+	{
+		if ( thread != null )
+		{
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	/**
+	 * Starts watching a request answered by the current thread.
+	 *
+	 * @return The watched request, or null if requests are not watched.
+	 */
+	WatchedRequest begin( HttpRequest request )
+	{
+		if ( SLOWNANOS <= 0 )
+		{
+			return null;
+		}
+
+		WatchedRequest watched = new WatchedRequest( Thread.currentThread(), request );
+		INFLIGHT.add( watched );
+		return watched;
+	}
+
+	/**
+	 * Stops watching a request. Called by the thread that began it.
+	 *
+	 * @param watched The watched request, may be null.
+	 */
+	void end( WatchedRequest watched )
+	{
+		if ( watched == null )
+		{
+			return;
+		}
+
+		INFLIGHT.remove( watched );
+
+		if ( watched.finish() )
+		{
+			// The interrupt was meant for this request, not for the next task of the pooled thread
+			Thread.interrupted();
+		}
+	}
+
+	@Override
+	public void run()
+	{
+		while ( Thread.currentThread().isInterrupted() == false )
+		{
+			try
+			{
+				Thread.sleep( CHECKINTERVAL );
+			}
+			catch ( InterruptedException e )
+			{
+				return;
+			}
+
+			long now = System.nanoTime();
+
+			for ( WatchedRequest watched : INFLIGHT )
+			{
+				long elapsed = now - watched.START;
+
+				if ( watched.reported == false && elapsed >= SLOWNANOS )
+				{
+					watched.reported = true;
+					reportSlowRequest( watched, elapsed );
+				}
+
+				if ( DEADLINENANOS > 0 && elapsed >= DEADLINENANOS && watched.interrupt() )
+				{
+					Metrics.requestInterrupted();
+					Logger.writeLog( "WARNING", "Interrupted " + watched.describe() + " after " + TimeUnit.NANOSECONDS.toMillis( elapsed ) + " ms" );
+				}
+			}
+		}
+	}
+
+	private void reportSlowRequest( WatchedRequest watched, long elapsed )
+	{
+		StackTraceElement[] stack = watched.THREAD.getStackTrace();
+
+		// The thread may have finished the request and moved on while the stack was taken
+		if ( watched.isFinished() )
+		{
+			return;
+		}
+
+		StringBuilder message = new StringBuilder( 1024 );
+		message.append( "Slow request: " ).append( watched.describe() ).append( " running for " );
+		message.append( TimeUnit.NANOSECONDS.toMillis( elapsed ) ).append( " ms on " ).append( watched.THREAD.getName() );
+
+		for ( StackTraceElement element : stack )
+		{
+			message.append( "\n\t\t\tat " ).append( element );
+		}
+
+		Metrics.slowRequest();
+		Logger.writeLog( "WARNING", message.toString() );
+	}
+
+	/**
+	 * A request being answered by a worker thread.
+	 */
+	static class WatchedRequest
+	{
+		private final Thread THREAD;
+		private final HttpRequest REQUEST;
+		private final long START = System.nanoTime();
+
+		// Only used by the watchdog thread
+		private boolean reported = false;
+		// Guarded by the request, so an interrupt never reaches the thread after the request finished
+		private boolean interrupted = false;
+		private boolean finished = false;
+
+		private WatchedRequest( Thread thread, HttpRequest request )
+		{
+			this.THREAD = thread;
+			this.REQUEST = request;
+		}
+
+		/**
+		 * Interrupts the thread unless the request finished or was interrupted already.
+		 *
+		 * @return true if the thread was interrupted.
+		 */
+		private synchronized boolean interrupt()
+		{
+			if ( finished || interrupted )
+			{
+				return false;
+			}
+
+			interrupted = true;
+			THREAD.interrupt();
+			return true;
+		}
+
+		/**
+		 * Marks the request finished, after this the thread is never interrupted for it.
+		 *
+		 * @return true if the thread was interrupted for this request.
+		 */
+		private synchronized boolean finish()
+		{
+			finished = true;
+			return interrupted;
+		}
+
+		private synchronized boolean isFinished()
+		{
+			return finished;
+		}
+
+		private String describe()
+		{
+			return REQUEST.getHttpMethod() + " " + REQUEST.getRequestUri();
+		}
+	}
+}
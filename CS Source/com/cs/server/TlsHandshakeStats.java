@@ -0,0 +1,101 @@
+package com.cs.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cs.metrics.Metrics;
+
+/**
+ * Counts the TLS handshakes of a {@link HttpsServer}.
+ * <br><br>
+ * A full handshake runs the key exchange and certificate signature, a resumed one
+ * reuses the keys of an earlier session and is much cheaper. The latency is
+ * measured from the moment the connection was accepted until the handshake
+ * finished, so it includes the time spent waiting for the client.
+ * <br><br>
+ * Every handshake is also counted in the {@link Metrics} of the process, which
+ * adds up the handshakes of all HTTPS servers.
+ */
+public class TlsHandshakeStats
+{
+	private final AtomicLong fullHandshakes = new AtomicLong();
+	private final AtomicLong resumedHandshakes = new AtomicLong();
+	private final AtomicLong failedHandshakes = new AtomicLong();
+	private final AtomicLong fullHandshakeNanos = new AtomicLong();
+	private final AtomicLong resumedHandshakeNanos = new AtomicLong();
+
+	void recordHandshake( boolean resumed, long nanos )
+	{
+		if ( resumed )
+		{
+			resumedHandshakes.incrementAndGet();
+			resumedHandshakeNanos.addAndGet( nanos );
+		}
+		else
+		{
+			fullHandshakes.incrementAndGet();
+			fullHandshakeNanos.addAndGet( nanos );
+		}
+
+		Metrics.tlsHandshake( resumed, nanos );
+	}
+
+	void recordFailure()
+	{
+		failedHandshakes.incrementAndGet();
+		Metrics.tlsHandshakeFailed();
+	}
+
+	public long getFullHandshakes()
+	{
+		return fullHandshakes.get();
+	}
+
+	public long getResumedHandshakes()
+	{
+		return resumedHandshakes.get();
+	}
+
+	public long getFailedHandshakes()
+	{
+		return failedHandshakes.get();
+	}
+
+	/**
+	 * Returns the average latency of full handshakes in milliseconds.
+	 */
+	public double getAverageFullHandshakeMillis()
+	{
+		return average( fullHandshakeNanos.get(), fullHandshakes.get() );
+	}
+
+	/**
+	 * Returns the average latency of resumed handshakes in milliseconds.
+	 */
+	public double getAverageResumedHandshakeMillis()
+	{
+		return average( resumedHandshakeNanos.get(), resumedHandshakes.get() );
+	}
+
+	/**
+	 * Returns the share of successful handshakes that resumed a session, between 0 and 1.
+	 */
+	public double getResumptionRate()
+	{
+		long resumed = resumedHandshakes.get();
+		long total = resumed + fullHandshakes.get();
+
+		return ( total == 0 ) ? 0 : ( double ) resumed / total;
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "full=%d (avg %.2f ms), resumed=%d (avg %.2f ms), failed=%d", getFullHandshakes(), getAverageFullHandshakeMillis(),
+				getResumedHandshakes(), getAverageResumedHandshakeMillis(), getFailedHandshakes() );
+	}
+
+	private static double average( long nanos, long count )
+	{
+		return ( count == 0 ) ? 0 : nanos / 1000000.0 / count;
+	}
+}
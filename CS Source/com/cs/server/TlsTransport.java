@@ -0,0 +1,175 @@
+package com.cs.server;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+import com.cs.logs.Logger;
+import com.cs.metrics.ServerEvents;
+import com.cs.metrics.TlsHandshakeEvent;
+
+/**
+ * The transport of HTTPS, on top of a {@link SSLEngine}.
+ * <br><br>
+ * Counts its handshake in the {@link TlsHandshakeStats} of the server: as full or
+ * resumed once it finishes, as failed if the connection closes before that.
+ */
+class TlsTransport implements Transport
+{
+	private final SSLEngine ENGINE;
+	private final TlsHandshakeStats STATS;
+	private final SocketAddress REMOTEADDRESS;
+
+	private final long acceptTime = System.nanoTime();
+	private final long acceptTimeMillis = System.currentTimeMillis();
+	private final TlsHandshakeEvent handshakeEvent = ServerEvents.beginTlsHandshake();
+	private boolean handshaking = false;
+	private boolean counted = false;
+
+	TlsTransport( SSLEngine engine, TlsHandshakeStats stats, SocketAddress remoteAddress )
+	{
+		this.ENGINE = engine;
+		this.STATS = stats;
+		this.REMOTEADDRESS = remoteAddress;
+	}
+
+	@Override
+	public void beginHandshake() throws IOException
+	{
+		handshaking = true;
+		ENGINE.beginHandshake();
+	}
+
+	@Override
+	public boolean isHandshaking()
+	{
+		return handshaking;
+	}
+
+	@Override
+	public boolean needsWrap()
+	{
+		return ENGINE.getHandshakeStatus() == HandshakeStatus.NEED_WRAP;
+	}
+
+	@Override
+	public Runnable getDelegatedTask()
+	{
+		return ENGINE.getDelegatedTask();
+	}
+
+	@Override
+	public boolean needsTasks()
+	{
+		return ENGINE.getHandshakeStatus() == HandshakeStatus.NEED_TASK;
+	}
+
+	@Override
+	public Status decode( ByteBuffer source, ByteBuffer destination ) throws IOException
+	{
+		try
+		{
+			return toStatus( ENGINE.unwrap( source, destination ) );
+		}
+		catch ( SSLException e )
+		{
+			handshakeFailed( e );
+			throw e;
+		}
+	}
+
+	@Override
+	public Status encode( ByteBuffer source, ByteBuffer destination ) throws IOException
+	{
+		try
+		{
+			return toStatus( ENGINE.wrap( source, destination ) );
+		}
+		catch ( SSLException e )
+		{
+			handshakeFailed( e );
+			throw e;
+		}
+	}
+
+	@Override
+	public void closeOutbound()
+	{
+		ENGINE.closeOutbound();
+	}
+
+	@Override
+	public void closed()
+	{
+		if ( handshaking && counted == false )
+		{
+			// Timed out, dropped because too many handshakes were waiting or closed by the client
+			counted = true;
+			STATS.recordFailure();
+			ServerEvents.commitTlsHandshake( handshakeEvent, REMOTEADDRESS, null, false );
+		}
+	}
+
+	@Override
+	public String getApplicationProtocol()
+	{
+		return ENGINE.getApplicationProtocol();
+	}
+
+	@Override
+	public int getPacketBufferSize()
+	{
+		return ENGINE.getSession().getPacketBufferSize();
+	}
+
+	@Override
+	public int getApplicationBufferSize()
+	{
+		return ENGINE.getSession().getApplicationBufferSize();
+	}
+
+	private Status toStatus( SSLEngineResult result )
+	{
+		if ( result.getHandshakeStatus() == HandshakeStatus.FINISHED && handshaking )
+		{
+			handshaking = false;
+			counted = true;
+
+			// Resumed sessions were created by an earlier connection
+			boolean resumed = ENGINE.getSession().getCreationTime() < acceptTimeMillis;
+			STATS.recordHandshake( resumed, System.nanoTime() - acceptTime );
+			ServerEvents.commitTlsHandshake( handshakeEvent, REMOTEADDRESS, ENGINE.getSession(), resumed );
+		}
+
+		switch ( result.getStatus() )
+		{
+			case BUFFER_OVERFLOW:
+				return Status.NEED_SPACE;
+			case BUFFER_UNDERFLOW:
+				return Status.NEED_INPUT;
+			case CLOSED:
+				return Status.CLOSED;
+			default:
+				return ( result.bytesConsumed() > 0 || result.bytesProduced() > 0 ) ? Status.OK : Status.NEED_INPUT;
+		}
+	}
+
+	private void handshakeFailed( SSLException e )
+	{
+		if ( handshaking == false || counted )
+		{
+			return;
+		}
+
+		counted = true;
+		STATS.recordFailure();
+		ServerEvents.commitTlsHandshake( handshakeEvent, REMOTEADDRESS, null, false );
+
+		Logger.writeLog( "WARNING", "TLS handshake with " + REMOTEADDRESS + " failed: " + e.getMessage() );
+	}
+}
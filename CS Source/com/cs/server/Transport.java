@@ -0,0 +1,101 @@
+package com.cs.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The byte level protocol of a {@link Connection}, underneath the HTTP parser.
+ * <br><br>
+ * A transport turns the bytes read from the socket into request bytes and the
+ * response bytes into the bytes written to the socket. {@link PlainTransport} copies
+ * them, {@link TlsTransport} runs a handshake first and encrypts them afterwards.
+ * Everything above the transport, from framing requests to writing responses, is
+ * the same for every transport.
+ * <br><br>
+ * Transports are only called on the event loop thread of their connection, apart
+ * from the delegated tasks which run on a separate executor.
+ */
+public interface Transport
+{
+	/**
+	 * The outcome of decoding or encoding bytes.
+	 */
+	enum Status
+	{
+		/** Bytes were consumed or produced. */
+		OK,
+		/** More input is needed before anything can be produced. */
+		NEED_INPUT,
+		/** The destination buffer is too small. */
+		NEED_SPACE,
+		/** The peer closed the transport. */
+		CLOSED
+	}
+
+	/**
+	 * Starts the handshake, if the transport has one.
+	 */
+	void beginHandshake() throws IOException;
+
+	/**
+	 * Returns true until the handshake has finished. Always false for transports without one.
+	 */
+	boolean isHandshaking();
+
+	/**
+	 * Returns true if handshake data must be encoded and sent before reading on.
+	 */
+	boolean needsWrap();
+
+	/**
+	 * Returns the next slow handshake task or null if there is none.
+	 */
+	Runnable getDelegatedTask();
+
+	/**
+	 * Returns true if {@link #getDelegatedTask()} must run before the transport can continue.
+	 */
+	boolean needsTasks();
+
+	/**
+	 * Turns received bytes into application bytes.
+	 *
+	 * @param source Received bytes, in read mode.
+	 * @param destination Application bytes, in write mode.
+	 */
+	Status decode( ByteBuffer source, ByteBuffer destination ) throws IOException;
+
+	/**
+	 * Turns application bytes into bytes to send.
+	 *
+	 * @param source Application bytes, in read mode.
+	 * @param destination Bytes to send, in write mode.
+	 */
+	Status encode( ByteBuffer source, ByteBuffer destination ) throws IOException;
+
+	/**
+	 * Marks the end of the application data, after which {@link #encode(ByteBuffer, ByteBuffer)}
+	 * produces the closing message of the protocol, if it has one.
+	 */
+	void closeOutbound();
+
+	/**
+	 * Called once the connection has been closed, for whatever reason.
+	 */
+	void closed();
+
+	/**
+	 * Returns the protocol negotiated during the handshake, ie. "h2", or null.
+	 */
+	String getApplicationProtocol();
+
+	/**
+	 * Returns the size of the buffers holding received and sent bytes.
+	 */
+	int getPacketBufferSize();
+
+	/**
+	 * Returns the size of the buffers holding application bytes.
+	 */
+	int getApplicationBufferSize();
+}
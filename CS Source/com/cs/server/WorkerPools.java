@@ -0,0 +1,202 @@
+package com.cs.server;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.cs.logs.Logger;
+import com.cs.main.Config;
+import com.cs.metrics.Gauge;
+import com.cs.metrics.Metrics;
+
+/**
+ * The threads behind the listeners of a process: the {@link EventLoop}s that serve
+ * connections, the worker pool that answers requests, the executor for slow
+ * transport tasks and the {@link RequestWatchdog} of the workers.
+ * <br><br>
+ * A server created without pools creates its own. Servers created with the same
+ * pools share them, so every extra listener costs a socket and an accept thread but
+ * no extra threads for connections or requests. Shared pools are started by the
+ * first server that starts and must be stopped by their creator, after the servers.
+ */
+public class WorkerPools
+{
+	private final static int WORKER_THREADS = 16;
+
+	// Maximum number of transport tasks, ie. TLS handshakes, waiting for a thread, further ones are dropped
+	private final static int TASK_QUEUE_SIZE = 256;
+
+	private final static String WORKERS = "coffeespider_worker_threads";
+	private final static String ACTIVE_WORKERS = "coffeespider_worker_active_threads";
+	private final static String QUEUED_REQUESTS = "coffeespider_worker_queue_depth";
+	private final static String CONNECTIONS_IN_STATE = "coffeespider_connections_";
+
+	private final ThreadPoolExecutor WORKERPOOL;
+	private final ExecutorService LOOPSERVICE;
+	private final ThreadPoolExecutor TASKPOOL;
+	private final EventLoop[] LOOPS;
+	private final RequestWatchdog WATCHDOG;
+	private final AtomicInteger NEXTLOOP = new AtomicInteger();
+	private final AtomicBoolean STARTED = new AtomicBoolean();
+
+	public WorkerPools()
+	{
+		int cores = Runtime.getRuntime().availableProcessors();
+
+		WORKERPOOL = new ThreadPoolExecutor( WORKER_THREADS, WORKER_THREADS, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue< Runnable >() );
+		LOOPS = new EventLoop[ Math.max( 1, Math.min( 4, cores / 2 ) ) ];
+		LOOPSERVICE = Executors.newFixedThreadPool( LOOPS.length );
+		TASKPOOL = new ThreadPoolExecutor( cores, cores, 60, TimeUnit.SECONDS, new ArrayBlockingQueue< Runnable >( TASK_QUEUE_SIZE ) );
+		WATCHDOG = new RequestWatchdog( Config.getSlowRequestMillis(), Config.getRequestDeadlineMillis() );
+
+		try
+		{
+			for ( int i = 0; i < LOOPS.length; i++ )
+			{
+				LOOPS[ i ] = new EventLoop();
+			}
+		}
+		catch ( IOException e )
+		{
+			Logger.writeLog( "ERROR", "Error while creating the event loops: " + e.getMessage() );
+			throw new RuntimeException( "Error while creating the event loops", e );
+		}
+	}
+
+	/**
+	 * Starts the event loops. Does nothing if they are already running.
+	 */
+	void start()
+	{
+		if ( STARTED.compareAndSet( false, true ) )
+		{
+			for ( EventLoop loop : LOOPS )
+			{
+				LOOPSERVICE.submit( loop );
+			}
+
+			WATCHDOG.start();
+			registerGauges();
+		}
+	}
+
+	/**
+	 * Stops the threads, which closes every connection still open.
+	 */
+	public void stop()
+	{
+		Metrics.unregisterGauge( WORKERS );
+		Metrics.unregisterGauge( ACTIVE_WORKERS );
+		Metrics.unregisterGauge( QUEUED_REQUESTS );
+
+		for ( Connection.State state : Connection.State.values() )
+		{
+			Metrics.unregisterGauge( CONNECTIONS_IN_STATE + state.name().toLowerCase( Locale.ROOT ) );
+		}
+
+		WORKERPOOL.shutdown();
+		TASKPOOL.shutdown();
+		WATCHDOG.stop();
+
+		for ( EventLoop loop : LOOPS )
+		{
+			loop.shutdown();
+		}
+		LOOPSERVICE.shutdown();
+	}
+
+	/**
+	 * Hands a newly accepted connection to one of the event loops.
+	 */
+	void register( SocketChannel channel, Transport transport, HttpServer server )
+	{
+		LOOPS[ Math.abs( NEXTLOOP.getAndIncrement() % LOOPS.length ) ].register( channel, transport, server );
+	}
+
+	/**
+	 * Returns the pool that answers requests.
+	 */
+	ExecutorService getWorkerPool()
+	{
+		return WORKERPOOL;
+	}
+
+	/**
+	 * Returns the watchdog of the requests answered by the worker pool.
+	 */
+	RequestWatchdog getWatchdog()
+	{
+		return WATCHDOG;
+	}
+
+	/**
+	 * Runs a slow transport task, ie. the key exchange of a handshake. Throws a
+	 * {@link RejectedExecutionException} if too many tasks are waiting.
+	 */
+	void runTransportTask( Runnable task )
+	{
+		TASKPOOL.execute( task );
+	}
+
+	/**
+	 * Exports the load of the worker pool and the number of connections in every state.
+	 * Pools started later replace the gauges of earlier ones.
+	 */
+	private void registerGauges()
+	{
+		Metrics.registerGauge( WORKERS, "Worker threads in the pool.", new Gauge()
+		{
+			@Override
+			public long getValue()
+			{
+				return WORKERPOOL.getPoolSize();
+			}
+		} );
+
+		Metrics.registerGauge( ACTIVE_WORKERS, "Worker threads answering a request now.", new Gauge()
+		{
+			@Override
+			public long getValue()
+			{
+				return WORKERPOOL.getActiveCount();
+			}
+		} );
+
+		Metrics.registerGauge( QUEUED_REQUESTS, "Requests waiting for a worker thread.", new Gauge()
+		{
+			@Override
+			public long getValue()
+			{
+				return WORKERPOOL.getQueue().size();
+			}
+		} );
+
+		for ( final Connection.State state : Connection.State.values() )
+		{
+			// Closed connections are not open anymore, their count would only grow
+			if ( state == Connection.State.CLOSED )
+			{
+				continue;
+			}
+
+			String name = state.name().toLowerCase( Locale.ROOT );
+			Metrics.registerGauge( CONNECTIONS_IN_STATE + name, "Connections " + name + " now.", new Gauge()
+			{
+				@Override
+				public long getValue()
+				{
+					return Connection.countInState( state );
+				}
+			} );
+		}
+	}
+}
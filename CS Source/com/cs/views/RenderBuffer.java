@@ -0,0 +1,173 @@
+package com.cs.views;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * A growable byte buffer that templates are rendered into.
+ * <br><br>
+ * Each worker thread owns one buffer which is reset before every render, so the
+ * backing array is reused between requests. The rendered bytes are handed to the
+ * response as is, without copying them into a new array or building a String.
+ */
+public class RenderBuffer extends OutputStream
+{
+	// Buffers that grew past this size are shrunk again on reset to release memory
+	private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+	private static final int INITIAL_SIZE = 8 * 1024;
+
+	private byte[] buffer;
+	private int count;
+	// Partials the current render is inside of, see Template.PartialNode
+	int includeDepth;
+
+	public RenderBuffer()
+	{
+		this( INITIAL_SIZE );
+	}
+
+	public RenderBuffer( int initialSize )
+	{
+		buffer = new byte[ initialSize ];
+	}
+
+	/**
+	 * Empties the buffer so it can be reused for the next render.
+	 */
+	public void reset()
+	{
+		if ( buffer.length > MAX_RETAINED_SIZE )
+		{
+			buffer = new byte[ INITIAL_SIZE ];
+		}
+
+		count = 0;
+		includeDepth = 0;
+	}
+
+	/**
+	 * Returns the backing array. Only the first {@link #size()} bytes are valid.
+	 */
+	public byte[] getBuffer()
+	{
+		return buffer;
+	}
+
+	public int size()
+	{
+		return count;
+	}
+
+	@Override
+	public void write( int b )
+	{
+		ensureCapacity( count + 1 );
+		buffer[ count++ ] = ( byte ) b;
+	}
+
+	@Override
+	public void write( byte[] b, int off, int len )
+	{
+		ensureCapacity( count + len );
+		System.arraycopy( b, off, buffer, count, len );
+		count += len;
+	}
+
+	/**
+	 * Writes the content of this buffer to the given stream.
+	 *
+	 * @param out Stream to write to.
+	 * @throws IOException
+	 */
+	public void writeTo( OutputStream out ) throws IOException
+	{
+		out.write( buffer, 0, count );
+	}
+
+	/**
+	 * Encodes a character sequence as UTF-8 straight into the buffer.
+	 *
+	 * @param value Characters to write.
+	 * @param escapeHtml Whether HTML special characters should be written as entities.
+	 */
+	public void writeText( CharSequence value, boolean escapeHtml )
+	{
+		int length = value.length();
+		ensureCapacity( count + length );
+
+		for ( int i = 0; i < length; i++ )
+		{
+			char c = value.charAt( i );
+
+			if ( escapeHtml )
+			{
+				switch ( c )
+				{
+					case '&':
+						writeAscii( "&amp;" );
+						continue;
+					case '<':
+						writeAscii( "&lt;" );
+						continue;
+					case '>':
+						writeAscii( "&gt;" );
+						continue;
+					case '"':
+						writeAscii( "&quot;" );
+						continue;
+					case '\'':
+						writeAscii( "&#39;" );
+						continue;
+					default:
+						break;
+				}
+			}
+
+			if ( c < 0x80 )
+			{
+				write( c );
+			}
+			else if ( c < 0x800 )
+			{
+				write( 0xC0 | ( c >> 6 ) );
+				write( 0x80 | ( c & 0x3F ) );
+			}
+			else if ( Character.isHighSurrogate( c ) && i + 1 < length && Character.isLowSurrogate( value.charAt( i + 1 ) ) )
+			{
+				int codePoint = Character.toCodePoint( c, value.charAt( ++i ) );
+				write( 0xF0 | ( codePoint >> 18 ) );
+				write( 0x80 | ( ( codePoint >> 12 ) & 0x3F ) );
+				write( 0x80 | ( ( codePoint >> 6 ) & 0x3F ) );
+				write( 0x80 | ( codePoint & 0x3F ) );
+			}
+			else if ( Character.isSurrogate( c ) )
+			{
+				// Unpaired surrogates can not be encoded
+				write( '?' );
+			}
+			else
+			{
+				write( 0xE0 | ( c >> 12 ) );
+				write( 0x80 | ( ( c >> 6 ) & 0x3F ) );
+				write( 0x80 | ( c & 0x3F ) );
+			}
+		}
+	}
+
+	private void writeAscii( String value )
+	{
+		for ( int i = 0; i < value.length(); i++ )
+		{
+			write( value.charAt( i ) );
+		}
+	}
+
+	private void ensureCapacity( int minCapacity )
+	{
+		if ( minCapacity > buffer.length )
+		{
+			buffer = Arrays.copyOf( buffer, Math.max( buffer.length << 1, minCapacity ) );
+		}
+	}
+}
@@ -0,0 +1,322 @@
+package com.cs.views;
+
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A compiled view template.
+ * <br><br>
+ * Templates are parsed once by {@link TemplateParser} into a tree of nodes. Static
+ * text is stored as pre-encoded UTF-8 bytes, so rendering only copies bytes and
+ * writes the model values into a {@link RenderBuffer}.
+ * <br><br>
+ * Supported tags:
+ * <ul>
+ * <li>{{name}} - HTML escaped value. Dotted names (user.name) walk nested maps.</li>
+ * <li>{{{name}}} or {{&amp; name}} - Unescaped value.</li>
+ * <li>{{#name}}...{{/name}} - Section. Repeated for every item of a collection or array,
+ * rendered once for true and any other non-empty value.</li>
+ * <li>{{^name}}...{{/name}} - Inverted section. Rendered if the value is missing, false or empty.</li>
+ * <li>{{&gt; view}} - Includes another template from the resource folder. Partials that include each other fail to render.</li>
+ * <li>{{! comment}} - Ignored.</li>
+ * </ul>
+ * The current item inside a section is available as {{.}}.
+ */
+public class Template
+{
+	private final String name;
+	private final Node[] nodes;
+	private final int maxDepth;
+
+	// Used by the TemplateEngine to detect changes to the template file
+	private final long lastModified;
+	private final long length;
+	private volatile long lastChecked;
+
+	Template( String name, Node[] nodes, int maxDepth, long lastModified, long length )
+	{
+		this.name = name;
+		this.nodes = nodes;
+		this.maxDepth = maxDepth;
+		this.lastModified = lastModified;
+		this.length = length;
+		this.lastChecked = System.currentTimeMillis();
+	}
+
+	/**
+	 * Renders the template into the given buffer.
+	 *
+	 * @param model Values used by the template tags. May be null.
+	 * @param out Buffer the output is written to.
+	 */
+	public void render( Map< String, Object > model, RenderBuffer out )
+	{
+		Object[] scopes = new Object[ maxDepth + 1 ];
+		scopes[ 0 ] = model;
+		render( scopes, 1, out );
+	}
+
+	void render( Object[] scopes, int depth, RenderBuffer out )
+	{
+		renderNodes( nodes, scopes, depth, out );
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	int getMaxDepth()
+	{
+		return maxDepth;
+	}
+
+	long getLastModified()
+	{
+		return lastModified;
+	}
+
+	long getLength()
+	{
+		return length;
+	}
+
+	long getLastChecked()
+	{
+		return lastChecked;
+	}
+
+	void setLastChecked( long time )
+	{
+		lastChecked = time;
+	}
+
+	private static void renderNodes( Node[] nodes, Object[] scopes, int depth, RenderBuffer out )
+	{
+		for ( int i = 0; i < nodes.length; i++ )
+		{
+			nodes[ i ].render( scopes, depth, out );
+		}
+	}
+
+	/**
+	 * Looks up a (dotted) name, starting in the innermost scope.
+	 */
+	private static Object lookup( String[] path, Object[] scopes, int depth )
+	{
+		if ( path.length == 0 )
+		{
+			return scopes[ depth - 1 ];
+		}
+
+		for ( int i = depth - 1; i >= 0; i-- )
+		{
+			if ( scopes[ i ] instanceof Map && ( ( Map< ?, ? > ) scopes[ i ] ).containsKey( path[ 0 ] ) )
+			{
+				Object value = ( ( Map< ?, ? > ) scopes[ i ] ).get( path[ 0 ] );
+
+				for ( int p = 1; p < path.length && value != null; p++ )
+				{
+					value = ( value instanceof Map ) ? ( ( Map< ?, ? > ) value ).get( path[ p ] ) : null;
+				}
+
+				return value;
+			}
+		}
+
+		return null;
+	}
+
+	private static boolean isEmpty( Object value )
+	{
+		if ( value == null || Boolean.FALSE.equals( value ) )
+		{
+			return true;
+		}
+		else if ( value instanceof Collection )
+		{
+			return ( ( Collection< ? > ) value ).isEmpty();
+		}
+		else if ( value.getClass().isArray() )
+		{
+			return Array.getLength( value ) == 0;
+		}
+		else if ( value instanceof CharSequence )
+		{
+			return ( ( CharSequence ) value ).length() == 0;
+		}
+
+		return false;
+	}
+
+	/**
+	 * A single element of the compiled template tree.
+	 */
+	static abstract class Node
+	{
+		abstract void render( Object[] scopes, int depth, RenderBuffer out );
+	}
+
+	static class TextNode extends Node
+	{
+		private final byte[] text;
+
+		TextNode( String text )
+		{
+			this.text = text.getBytes( StandardCharsets.UTF_8 );
+		}
+
+		@Override
+		void render( Object[] scopes, int depth, RenderBuffer out )
+		{
+			out.write( text, 0, text.length );
+		}
+	}
+
+	static class VariableNode extends Node
+	{
+		private final String[] path;
+		private final boolean escape;
+
+		VariableNode( String[] path, boolean escape )
+		{
+			this.path = path;
+			this.escape = escape;
+		}
+
+		@Override
+		void render( Object[] scopes, int depth, RenderBuffer out )
+		{
+			Object value = lookup( path, scopes, depth );
+
+			if ( value instanceof CharSequence )
+			{
+				out.writeText( ( CharSequence ) value, escape );
+			}
+			else if ( value != null )
+			{
+				out.writeText( value.toString(), escape );
+			}
+		}
+	}
+
+	static class SectionNode extends Node
+	{
+		private final String[] path;
+		private final boolean inverted;
+		private final Node[] children;
+
+		SectionNode( String[] path, boolean inverted, Node[] children )
+		{
+			this.path = path;
+			this.inverted = inverted;
+			this.children = children;
+		}
+
+		@Override
+		void render( Object[] scopes, int depth, RenderBuffer out )
+		{
+			Object value = lookup( path, scopes, depth );
+
+			if ( inverted )
+			{
+				if ( isEmpty( value ) )
+				{
+					renderNodes( children, scopes, depth, out );
+				}
+			}
+			else if ( isEmpty( value ) )
+			{
+				return;
+			}
+			else if ( Boolean.TRUE.equals( value ) )
+			{
+				renderNodes( children, scopes, depth, out );
+			}
+			else if ( value instanceof List && value instanceof RandomAccess )
+			{
+				List< ? > list = ( List< ? > ) value;
+				for ( int i = 0; i < list.size(); i++ )
+				{
+					scopes[ depth ] = list.get( i );
+					renderNodes( children, scopes, depth + 1, out );
+				}
+			}
+			else if ( value instanceof Iterable )
+			{
+				for ( Object item : ( Iterable< ? > ) value )
+				{
+					scopes[ depth ] = item;
+					renderNodes( children, scopes, depth + 1, out );
+				}
+			}
+			else if ( value.getClass().isArray() )
+			{
+				int length = Array.getLength( value );
+				for ( int i = 0; i < length; i++ )
+				{
+					scopes[ depth ] = Array.get( value, i );
+					renderNodes( children, scopes, depth + 1, out );
+				}
+			}
+			else
+			{
+				scopes[ depth ] = value;
+				renderNodes( children, scopes, depth + 1, out );
+			}
+		}
+	}
+
+	static class PartialNode extends Node
+	{
+		// Deeper includes are taken as a partial that includes itself, directly or through other partials
+		static final int MAX_INCLUDE_DEPTH = 32;
+
+		private final String template;
+		private final String view;
+
+		PartialNode( String template, String view )
+		{
+			this.template = template;
+			this.view = view;
+		}
+
+		@Override
+		void render( Object[] scopes, int depth, RenderBuffer out )
+		{
+			// Partials are resolved on every render so changes to them are picked up as well
+			Template partial = TemplateEngine.getTemplate( view );
+
+			if ( partial == null )
+			{
+				return;
+			}
+
+			if ( scopes.length < depth + partial.getMaxDepth() )
+			{
+				Object[] larger = new Object[ depth + partial.getMaxDepth() ];
+				System.arraycopy( scopes, 0, larger, 0, depth );
+				scopes = larger;
+			}
+
+			if ( out.includeDepth >= MAX_INCLUDE_DEPTH )
+			{
+				throw new IllegalStateException( "Partial {{> " + view + "}} in template " + template + " is nested more than " + MAX_INCLUDE_DEPTH + " levels deep, the partials include each other" );
+			}
+
+			out.includeDepth++;
+			try
+			{
+				partial.render( scopes, depth, out );
+			}
+			finally
+			{
+				out.includeDepth--;
+			}
+		}
+	}
+}
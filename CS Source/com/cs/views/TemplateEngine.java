@@ -0,0 +1,134 @@
+package com.cs.views;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cs.logs.Logger;
+import com.cs.main.Config;
+
+/**
+ * Loads, compiles and caches the view templates in the resource folder.
+ * <br><br>
+ * A template is parsed the first time it is used and kept in memory. The template
+ * file is checked for changes at most once every {@link #CHECK_INTERVAL} milliseconds
+ * and recompiled when it has been modified.
+ */
+public class TemplateEngine
+{
+	// Minimum time in milliseconds between two checks of a template file
+	public static final long CHECK_INTERVAL = 1000;
+
+	private static final Map< String, Template > TEMPLATES = new ConcurrentHashMap< String, Template >();
+
+	private static final ThreadLocal< RenderBuffer > BUFFERS = new ThreadLocal< RenderBuffer >()
+	{
+		@Override
+		protected RenderBuffer initialValue()
+		{
+			return new RenderBuffer();
+		}
+	};
+
+	private TemplateEngine()
+	{
+		// no instances...
+	}
+
+	/**
+	 * Returns the compiled template for a view.
+	 *
+	 * @param view Path of the template relative to the resource folder, ie. "/index.html".
+	 * @return The compiled template or null if the template does not exist or can not be compiled.
+	 */
+	public static Template getTemplate( String view )
+	{
+		Template template = TEMPLATES.get( view );
+		long now = System.currentTimeMillis();
+
+		if ( template != null && now - template.getLastChecked() < CHECK_INTERVAL )
+		{
+			return template;
+		}
+
+		File file = new File( Config.getResourcePath() + view );
+
+		if ( template != null && file.lastModified() == template.getLastModified() && file.length() == template.getLength() )
+		{
+			template.setLastChecked( now );
+			return template;
+		}
+
+		return compile( view, file, template );
+	}
+
+	/**
+	 * Renders a view into the render buffer of the current thread.
+	 * <br><br>
+	 * The returned buffer is reused by the next render on the same thread, so its
+	 * content must be written out before then.
+	 *
+	 * @param template Compiled template.
+	 * @param model Values used by the template tags.
+	 * @return Buffer holding the rendered view.
+	 */
+	public static RenderBuffer render( Template template, Map< String, Object > model )
+	{
+		RenderBuffer buffer = BUFFERS.get();
+		buffer.reset();
+		template.render( model, buffer );
+
+		return buffer;
+	}
+
+	/**
+	 * Removes all compiled templates from the cache.
+	 */
+	public static void clearCache()
+	{
+		TEMPLATES.clear();
+	}
+
+	private static synchronized Template compile( String view, File file, Template previous )
+	{
+		// Another thread might have compiled the template while this one was waiting
+		Template current = TEMPLATES.get( view );
+		if ( current != null && current != previous )
+		{
+			return current;
+		}
+
+		if ( file.exists() == false )
+		{
+			TEMPLATES.remove( view );
+			return null;
+		}
+
+		try
+		{
+			long lastModified = file.lastModified();
+			long length = file.length();
+			String source = new String( Files.readAllBytes( file.toPath() ), StandardCharsets.UTF_8 );
+
+			Template template = TemplateParser.parse( view, source, lastModified, length );
+			TEMPLATES.put( view, template );
+
+			return template;
+		}
+		catch ( IOException | IllegalArgumentException e )
+		{
+			Logger.writeLog( "ERROR", "Unable to compile template " + view + ": " + e.getMessage() );
+
+			// Keep serving the last working version until the template is fixed
+			if ( previous != null )
+			{
+				previous.setLastChecked( System.currentTimeMillis() );
+			}
+
+			return previous;
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package com.cs.views;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import com.cs.views.Template.Node;
+
+/**
+ * Compiles template source into a {@link Template} node tree.
+ */
+class TemplateParser
+{
+	private static final String OPEN = "{{";
+	private static final String CLOSE = "}}";
+
+	private TemplateParser()
+	{
+		// no instances...
+	}
+
+	/**
+	 * Parses template source.
+	 *
+	 * @param name Name of the template, used in error messages.
+	 * @param source Template source.
+	 * @param lastModified Modification time of the template file.
+	 * @param length Size of the template file.
+	 * @return The compiled template.
+	 * @throws IllegalArgumentException If the template has a syntax error.
+	 */
+	static Template parse( String name, String source, long lastModified, long length ) throws IllegalArgumentException
+	{
+		Deque< List< Node > > children = new ArrayDeque< List< Node > >();
+		Deque< String > openSections = new ArrayDeque< String >();
+		Deque< Boolean > invertedSections = new ArrayDeque< Boolean >();
+		children.push( new ArrayList< Node >() );
+		int maxDepth = 0;
+
+		int pos = 0;
+		while ( pos < source.length() )
+		{
+			int start = source.indexOf( OPEN, pos );
+			if ( start == -1 )
+			{
+				children.peek().add( new Template.TextNode( source.substring( pos ) ) );
+				break;
+			}
+
+			if ( start > pos )
+			{
+				children.peek().add( new Template.TextNode( source.substring( pos, start ) ) );
+			}
+
+			// Triple braces output the value without escaping
+			if ( source.startsWith( "{{{", start ) )
+			{
+				int end = source.indexOf( "}}}", start + 3 );
+				if ( end == -1 )
+				{
+					throw new IllegalArgumentException( "Unclosed tag in template " + name + " at offset " + start );
+				}
+
+				children.peek().add( new Template.VariableNode( splitName( source.substring( start + 3, end ).trim() ), false ) );
+				pos = end + 3;
+				continue;
+			}
+
+			int end = source.indexOf( CLOSE, start + 2 );
+			if ( end == -1 )
+			{
+				throw new IllegalArgumentException( "Unclosed tag in template " + name + " at offset " + start );
+			}
+
+			String tag = source.substring( start + 2, end ).trim();
+			pos = end + 2;
+
+			if ( tag.isEmpty() )
+			{
+				throw new IllegalArgumentException( "Empty tag in template " + name + " at offset " + start );
+			}
+
+			switch ( tag.charAt( 0 ) )
+			{
+				case '!':
+					break;
+				case '#':
+				case '^':
+					openSections.push( tag.substring( 1 ).trim() );
+					invertedSections.push( tag.charAt( 0 ) == '^' );
+					children.push( new ArrayList< Node >() );
+					maxDepth = Math.max( maxDepth, openSections.size() );
+					break;
+				case '/':
+					String section = tag.substring( 1 ).trim();
+					if ( openSections.isEmpty() || openSections.peek().equals( section ) == false )
+					{
+						throw new IllegalArgumentException( "Unexpected closing tag {{/" + section + "}} in template " + name + " at offset " + start );
+					}
+
+					List< Node > sectionChildren = children.pop();
+					children.peek().add( new Template.SectionNode( splitName( openSections.pop() ), invertedSections.pop(), toArray( sectionChildren ) ) );
+					break;
+				case '&':
+					children.peek().add( new Template.VariableNode( splitName( tag.substring( 1 ).trim() ), false ) );
+					break;
+				case '>':
+					children.peek().add( new Template.PartialNode( name, tag.substring( 1 ).trim() ) );
+					break;
+				default:
+					children.peek().add( new Template.VariableNode( splitName( tag ), true ) );
+					break;
+			}
+		}
+
+		if ( openSections.isEmpty() == false )
+		{
+			throw new IllegalArgumentException( "Unclosed section {{#" + openSections.peek() + "}} in template " + name );
+		}
+
+		return new Template( name, toArray( children.pop() ), maxDepth, lastModified, length );
+	}
+
+	private static String[] splitName( String name )
+	{
+		if ( name.equals( "." ) )
+		{
+			return new String[ 0 ];
+		}
+
+		return name.split( "\\." );
+	}
+
+	private static Node[] toArray( List< Node > nodes )
+	{
+		return nodes.toArray( new Node[ nodes.size() ] );
+	}
+}
@@ -9,6 +9,18 @@ import com.cs.main.Config;
 
 public class HandleGetRequest
 {
+	/**
+	 * Registers the GET routes whose responses are cached. This method is called once before the server starts.
+	 * <br><br>
+	 * Example: ResponseCache.cacheRoute( "/news", new CachePolicy( 60000, 300000, new String[] { "page" }, new String[] { Http.ACCEPT_LANGUAGE } ) );
+	 * 
+	 * @see com.cs.cache.ResponseCache
+	 */
+	public static void registerCachedRoutes()
+	{
+		// No cached routes yet
+	}
+	
 	public static BasicHttpResponse processRequest( BasicHttpResponse request, String requestUri, String body )
 	{
 		switch ( requestUri )
@@ -32,11 +44,7 @@ public class HandleGetRequest
 					}
 					else
 					{
-						StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-						String callingMethod = ste[ 2 ].getClassName() + "_" + ste[ 2 ].getMethodName() + "_" + ste[ 2 ].getLineNumber();
-						String currentMethod = ste[ 1 ].getClassName() + "_" + ste[ 1 ].getMethodName() + "_" + ste[ 1 ].getLineNumber();
-						
-						Logger.writeLog( "WARNING", "There is no GET request for: " + requestUri, callingMethod, currentMethod );
+						Logger.writeLog( "WARNING", "There is no GET request for: " + requestUri, "com.cs.routes.HandleGetRequest_processRequest" );
 						
 						request.setResourceAsBody( true );
 						request.setStatusCode( HttpStatusCode.NOT_FOUND );
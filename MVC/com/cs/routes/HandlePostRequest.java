@@ -11,11 +11,7 @@ public class HandlePostRequest
 		switch ( requestUri )
 		{
 			default:
-				StackTraceElement[] ste = Thread.currentThread().getStackTrace();
-				String callingMethod = ste[ 2 ].getClassName() + "_" + ste[ 2 ].getMethodName() + "_" + ste[ 2 ].getLineNumber();
-				String currentMethod = ste[ 1 ].getClassName() + "_" + ste[ 1 ].getMethodName() + "_" + ste[ 1 ].getLineNumber();
-				
-				Logger.writeLog( "WARNING", "There is no POST request for: " + requestUri, callingMethod, currentMethod );
+				Logger.writeLog( "WARNING", "There is no POST request for: " + requestUri, "com.cs.routes.HandlePostRequest_processRequest" );
 				request.setStatusCode( HttpStatusCode.BAD_REQUEST );
 				break;
 		}